@@ -0,0 +1,133 @@
+#!/bin/sh
+
+# Batch snapshot benchmark.
+#
+# Generates a synthetic genome with BAM, VCF and TDF tracks, then runs a batch script which snapshots a fixed
+# set of regions and writes a per command timing report (see TimingReport).  Fixtures are generated with fixed
+# random seeds, so runs on the same machine and build are comparable.
+#
+# Usage: batch_benchmark.sh [workDir] [csv|json]
+#
+# The script must be in the same directory as igv.jar and igvtools.jar, or IGV_HOME must point to that directory.
+# On a machine without a display run it under a virtual X server, e.g. "xvfb-run batch_benchmark.sh".
+#
+# Fixture sizes can be set with environment variables:
+#   CHR_LENGTH   length of each of the 2 chromosomes (default 2000000)
+#   READ_COUNT   number of 100 bp reads (default 200000)
+#   VCF_SAMPLES  number of VCF samples (default 20)
+#   REGIONS      number of snapshot regions (default 50)
+
+prefix=`dirname $(readlink $0 || echo $0)`
+IGV_HOME=${IGV_HOME:-$prefix}
+LIB=${IGV_LIB:-$IGV_HOME/lib}
+
+WORK_DIR=${1:-igv_benchmark}
+FORMAT=${2:-csv}
+CHR_LENGTH=${CHR_LENGTH:-2000000}
+READ_COUNT=${READ_COUNT:-200000}
+VCF_SAMPLES=${VCF_SAMPLES:-20}
+REGIONS=${REGIONS:-50}
+
+set -e
+mkdir -p "$WORK_DIR/snapshots"
+cd "$WORK_DIR"
+
+igvtools() {
+    java -Djava.awt.headless=true -Xmx1500m -jar "$IGV_HOME/igvtools.jar" "$@"
+}
+
+echo "Generating genome"
+awk -v len=$CHR_LENGTH 'BEGIN {
+    srand(1); split("A C G T", bases, " ");
+    for (c = 1; c <= 2; c++) {
+        print ">chr" c;
+        line = "";
+        for (i = 1; i <= len; i++) {
+            line = line bases[int(rand() * 4) + 1];
+            if (length(line) == 60) { print line; line = "" }
+        }
+        if (length(line) > 0) print line;
+    }
+}' > bench.fa
+igvtools index bench.fa
+
+echo "Generating alignments"
+awk -v len=$CHR_LENGTH -v n=$READ_COUNT 'BEGIN {
+    srand(2); split("A C G T", bases, " ");
+    qual = ""; for (i = 0; i < 100; i++) qual = qual "I";
+    print "@HD\tVN:1.0\tSO:coordinate";
+    print "@SQ\tSN:chr1\tLN:" len;
+    print "@SQ\tSN:chr2\tLN:" len;
+    perChr = int(n / 2); step = (len - 200) / perChr;
+    for (c = 1; c <= 2; c++) {
+        for (i = 0; i < perChr; i++) {
+            pos = int(i * step) + 1;
+            seq = ""; for (j = 0; j < 100; j++) seq = seq bases[int(rand() * 4) + 1];
+            flag = rand() < 0.5 ? 0 : 16;
+            printf "r%d_%d\t%d\tchr%d\t%d\t60\t100M\t*\t0\t0\t%s\t%s\n", c, i, flag, c, pos, seq, qual;
+        }
+    }
+}' > bench.sam
+java -Xmx1500m -cp "$LIB/picard-1.104.jar:$LIB/sam-1.104.jar" net.sf.picard.sam.SamFormatConverter \
+    I=bench.sam O=bench.bam VALIDATION_STRINGENCY=SILENT QUIET=true
+java -Xmx1500m -cp "$LIB/picard-1.104.jar:$LIB/sam-1.104.jar" net.sf.picard.sam.BuildBamIndex \
+    I=bench.bam O=bench.bam.bai VALIDATION_STRINGENCY=SILENT QUIET=true
+rm bench.sam
+
+echo "Generating coverage"
+igvtools count bench.bam bench.tdf bench.fa
+
+echo "Generating variants"
+awk -v len=$CHR_LENGTH -v samples=$VCF_SAMPLES 'BEGIN {
+    srand(3); split("A C G T", bases, " "); split("0/0 0/1 1/1", gts, " ");
+    print "##fileformat=VCFv4.1";
+    print "##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">";
+    print "##contig=<ID=chr1,length=" len ">";
+    print "##contig=<ID=chr2,length=" len ">";
+    header = "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT";
+    for (s = 1; s <= samples; s++) header = header "\tS" s;
+    print header;
+    for (c = 1; c <= 2; c++) {
+        for (pos = 100; pos < len; pos += 100 + int(rand() * 400)) {
+            ref = int(rand() * 4) + 1; alt = ref % 4 + 1;
+            line = "chr" c "\t" pos "\t.\t" bases[ref] "\t" bases[alt] "\t50\tPASS\t.\tGT";
+            for (s = 1; s <= samples; s++) line = line "\t" gts[int(rand() * 3) + 1];
+            print line;
+        }
+    }
+}' > bench.vcf
+igvtools index bench.vcf
+
+echo "Generating regions"
+awk -v len=$CHR_LENGTH -v n=$REGIONS 'BEGIN {
+    srand(4);
+    for (i = 0; i < n; i++) {
+        start = int(rand() * (len - 10000));
+        printf "chr%d\t%d\t%d\tregion%d\n", i % 2 + 1, start, start + 10000, i;
+    }
+}' > regions.bed
+
+# The first regions are also snapshot through the main window, for comparison with the offscreen renderer
+awk -v dir="`pwd`" -v format=$FORMAT 'BEGIN {
+    print "timingreport " dir "/report." format;
+    print "new";
+    print "genome " dir "/bench.fa";
+    print "setSleepInterval 0";
+    print "snapshotDirectory " dir "/snapshots";
+    print "load " dir "/bench.bam";
+    print "load " dir "/bench.vcf";
+    print "load " dir "/bench.tdf";
+}
+NR <= 10 {
+    printf "goto %s:%d-%d\n", $1, $2 + 1, $3;
+    printf "snapshot window_%s.png\n", $4;
+}
+END {
+    print "snapshotregions " dir "/regions.bed png";
+    print "exit";
+}' regions.bed > batch.txt
+
+echo "Running batch script"
+java -Xmx2000m -Djava.net.preferIPv4Stack=true -jar "$IGV_HOME/igv.jar" -b batch.txt
+
+echo "Timing report: `pwd`/report.$FORMAT"
@@ -219,6 +219,19 @@ public class DirectoryManager {
         return BAM_CACHE_DIRECTORY;
     }
 
+    /**
+     * Directory for whole genome summaries, which persist across sessions
+     */
+    public static synchronized File getWholeGenomeCacheDirectory() {
+
+        File dir = new File(DirectoryManager.getIgvDirectory(), "wgcache");
+        if (!dir.exists()) {
+            dir.mkdir();
+        }
+        return dir;
+
+    }
+
     public static synchronized File getSamDirectory() {
 
         File samDir = new File(DirectoryManager.getIgvDirectory(), "sam");
@@ -115,11 +115,17 @@ public class PreferenceManager implements PropertyManager {
 
     public static final String SAM_FLAG_LARGE_INSERTIONS = "SAM.FLAG_LARGE_INSERTIONS";
     public static final String SAM_LARGE_INSERTIONS_THRESHOLD = "SAM.LARGE_INSERTIONS_THRESOLD";
+    public static final String SAM_RENDER_TILE_CACHE = "SAM.RENDER_TILE_CACHE";
+    public static final String SAM_PARALLEL_INFLATE = "SAM.PARALLEL_INFLATE";
 
 
     public static final String EXPAND_FEAUTRE_TRACKS = "EXPAND_FEATURE_TRACKS";
+    public static final String VCF_LAZY_GENOTYPES = "VCF.LAZY_GENOTYPES";
+    public static final String WHOLE_GENOME_CACHE = "WHOLE_GENOME_CACHE";
+    public static final String GENOME_CACHE = "COMPILED_GENOME_CACHE";
     public static final String PORT_ENABLED = "PORT_ENABLED";
     public static final String PORT_NUMBER = "PORT_NUMBER";
+    public static final String PORT_CONCURRENT = "PORT_CONCURRENT";
     public static final String COLOR_SCALE_KEY = "COLOR_SCALE_";
     final public static String FRAME_BOUNDS_KEY = "IGV.Bounds";
     final public static String FRAME_STATE_KEY = "IGV.Frame.ExtendedState";
@@ -251,6 +257,11 @@ public class PreferenceManager implements PropertyManager {
 
     private PaletteColorTable mutationColorScheme = null;
 
+    /**
+     * Incremented on every preference change, so cached renderings can tell when they are stale.
+     */
+    private volatile int version = 0;
+
 
     public static PreferenceManager getInstance() {
 
@@ -273,6 +284,13 @@ public class PreferenceManager implements PropertyManager {
         return get(key, defaultValues.get(key));
     }
 
+    /**
+     * @return a counter which changes whenever any preference is changed
+     */
+    public int getVersion() {
+        return version;
+    }
+
     /**
      * Get the default value for the specified key.
      * May be null.
@@ -383,6 +401,7 @@ public class PreferenceManager implements PropertyManager {
      * @param value
      */
     private void updateCaches(String key, String value) {
+        version++;
         if (booleanCache.containsKey(key)) {
             booleanCache.put(key, new Boolean(value));
         }
@@ -391,6 +410,7 @@ public class PreferenceManager implements PropertyManager {
     }
 
     private void clearCaches() {
+        version++;
         colorScaleCache.clear();
         booleanCache.clear();
         objectCache.clear();
@@ -424,6 +444,7 @@ public class PreferenceManager implements PropertyManager {
 
     public void remove(String key) {
         preferences.remove(key);
+        version++;
         booleanCache.remove(key);
         objectCache.remove(key);
         colorScaleCache.remove(key);
@@ -432,6 +453,7 @@ public class PreferenceManager implements PropertyManager {
 
     public void clear() {
         preferences.clear();
+        version++;
         colorScaleCache.clear();
         booleanCache.clear();
         objectCache.clear();
@@ -928,7 +950,11 @@ public class PreferenceManager implements PropertyManager {
         defaultValues.put(OVERLAY_MUTATIONS_WHOLE_GENOME, "true");
         defaultValues.put(SHOW_SINGLE_TRACK_PANE_KEY, "false");
         defaultValues.put(PORT_ENABLED, "true");
+        defaultValues.put(PORT_CONCURRENT, "false");
         defaultValues.put(EXPAND_FEAUTRE_TRACKS, "false");
+        defaultValues.put(VCF_LAZY_GENOTYPES, "true");
+        defaultValues.put(WHOLE_GENOME_CACHE, "true");
+        defaultValues.put(GENOME_CACHE, "true");
         defaultValues.put(SHOW_ATTRIBUTE_VIEWS_KEY, "true");
         defaultValues.put(SHOW_MISSING_DATA_KEY, "false");
         defaultValues.put(SHOW_SINGLE_TRACK_PANE_KEY, "false");
@@ -960,6 +986,8 @@ public class PreferenceManager implements PropertyManager {
         defaultValues.put(SAM_SHADE_CENTER, "true");
         defaultValues.put(SAM_SHOW_REF_SEQ, "false");
         defaultValues.put(SAM_SHOW_CENTER_LINE, "true");
+        defaultValues.put(SAM_RENDER_TILE_CACHE, "true");
+        defaultValues.put(SAM_PARALLEL_INFLATE, "true");
         defaultValues.put(SAM_SHOW_COV_TRACK, "true");
         defaultValues.put(SAM_SHADE_BASES, ShadeBasesOption.QUALITY.toString());
         defaultValues.put(SAM_FILTER_ALIGNMENTS, "false");
@@ -17,6 +17,7 @@ import org.broad.igv.exceptions.DataLoadException;
 import org.broad.igv.ui.WaitCursorManager;
 import org.broad.igv.util.NamedRunnable;
 import org.broad.igv.util.ParsingUtils;
+import org.broad.igv.util.StageTimer;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -46,6 +47,7 @@ public class BatchRunner implements NamedRunnable {
         setIsBatchMode(true);
 
         CommandExecutor cmdExe = new CommandExecutor();
+        TimingReport timingReport = null;
 
         WaitCursorManager.CursorToken cursorToken = null;
         BufferedReader reader = null;
@@ -55,8 +57,22 @@ public class BatchRunner implements NamedRunnable {
 
             while ((inLine = reader.readLine()) != null) {
                 if (!(inLine.startsWith("#") || inLine.startsWith("//"))) {
+                    String[] tokens = Globals.whitespacePattern.split(inLine.trim(), 2);
+                    if (tokens[0].equalsIgnoreCase(TimingReport.COMMAND) && tokens.length > 1) {
+                        timingReport = new TimingReport(tokens[1]);
+                        StageTimer.setEnabled(true);
+                        continue;
+                    }
+                    if (tokens[0].equals("exit") && timingReport != null) {
+                        // The exit command does not return
+                        writeTimingReport(timingReport);
+                        timingReport = null;
+                    }
+
                     log.info("Executing Command: " + inLine);
-                    cmdExe.execute(inLine);
+                    if (timingReport != null) timingReport.start();
+                    String result = cmdExe.execute(inLine);
+                    if (timingReport != null) timingReport.end(inLine, result);
                 }
             }
 
@@ -64,6 +80,9 @@ public class BatchRunner implements NamedRunnable {
         } catch (IOException ioe) {
             throw new DataLoadException(ioe.getMessage(), inputFile);
         } finally {
+            if (timingReport != null) {
+                writeTimingReport(timingReport);
+            }
             setIsBatchMode(false);
             if (cursorToken != null) WaitCursorManager.removeWaitCursor(cursorToken);
             if (reader != null) {
@@ -76,6 +95,16 @@ public class BatchRunner implements NamedRunnable {
         }
     }
 
+    private static void writeTimingReport(TimingReport timingReport) {
+        StageTimer.setEnabled(false);
+        try {
+            timingReport.write();
+            log.info("Wrote timing report: " + timingReport.getPath());
+        } catch (IOException e) {
+            log.error("Error writing timing report: " + timingReport.getPath(), e);
+        }
+    }
+
     /**
      * Returns true if this is "provably" a batch file.  Proof in this instance means the first line of the file
      * is #batch
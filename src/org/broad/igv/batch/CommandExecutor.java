@@ -123,6 +123,8 @@ public class CommandExecutor {
                 } else if (cmd.equalsIgnoreCase("snapshot")) {
                     String filename = param1;
                     result = createSnapshot(filename, param2);
+                } else if (cmd.equalsIgnoreCase("snapshotregions") && param1 != null) {
+                    result = createRegionSnapshots(param1, param2);
                 } else if ((cmd.equalsIgnoreCase("loadfile") || cmd.equalsIgnoreCase("load")) && param1 != null) {
                     result = load(param1, param2, param3);
                 } else if (cmd.equalsIgnoreCase("genome") && args.size() > 1) {
@@ -786,6 +788,33 @@ public class CommandExecutor {
         }
     }
 
+    /**
+     * Write a snapshot of each region in a file, rendered offscreen in parallel.  Visible tracks are drawn, with
+     * the width of the current data panel.
+     *
+     * @param regionsPath bed file or list of loci
+     * @param format      "png" (default) or "svg"
+     * @return
+     */
+    private String createRegionSnapshots(String regionsPath, String format) {
+        format = format == null ? "png" : format.toLowerCase();
+        File directory = snapshotDirectory == null ? new File(".") : snapshotDirectory;
+        int width = FrameManager.getDefaultFrame().getWidthInPixels();
+        if (width <= 0) width = 1000;
+
+        try {
+            List<RegionOfInterest> regions = SnapshotRenderer.readRegions(regionsPath);
+            SnapshotRenderer renderer = new SnapshotRenderer(igv.getAllTracks(), width,
+                    GenomeManager.getInstance().getCurrentGenome());
+            List<File> files = renderer.render(regions, directory, format);
+            log.info("Wrote " + files.size() + " snapshots to " + directory.getAbsolutePath());
+            return "OK";
+        } catch (IOException e) {
+            log.error(e);
+            return "Error: " + e.getMessage();
+        }
+    }
+
     private static RegionScoreType getRegionSortOption(String str) {
         if (str == null) return null;
         String option = str.toUpperCase();
@@ -26,6 +26,11 @@ import java.net.Socket;
 import java.net.URLDecoder;
 import java.nio.channels.ClosedByInterruptException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CommandListener implements Runnable {
 
@@ -39,6 +44,21 @@ public class CommandListener implements Runnable {
     private Thread listenerThread;
     boolean halt = false;
 
+    /**
+     * If true clients are served concurrently, each on its own thread with its own CommandExecutor.  Commands are
+     * run according to the policy of the {@link CommandScheduler}.
+     */
+    private boolean concurrent;
+    private CommandScheduler scheduler = new CommandScheduler();
+    private ExecutorService clientPool;
+    private Set<Socket> clientSockets = Collections.synchronizedSet(new HashSet<Socket>());
+    private AtomicInteger clientCount = new AtomicInteger();
+
+    /**
+     * Number of client sessions running port commands.  Batch mode is on while there is at least one.
+     */
+    private static int batchSessions = 0;
+
     /**
      * Different keys which can be used to specify a file to load
      */
@@ -54,7 +74,17 @@ public class CommandListener implements Runnable {
     }
 
     public static synchronized void start(int port) {
-        listener = new CommandListener(port);
+        start(port, PreferenceManager.getInstance().getAsBoolean(PreferenceManager.PORT_CONCURRENT));
+    }
+
+    /**
+     * Start listening on the port.
+     *
+     * @param port
+     * @param concurrent if true accept concurrent client sessions, otherwise serve one client at a time
+     */
+    public static synchronized void start(int port, boolean concurrent) {
+        listener = new CommandListener(port, concurrent);
         listener.listenerThread.start();
     }
 
@@ -68,31 +98,36 @@ public class CommandListener implements Runnable {
         }
     }
 
-    private CommandListener(int port) {
+    private CommandListener(int port, boolean concurrent) {
         this.port = port;
+        this.concurrent = concurrent;
         listenerThread = new Thread(this);
     }
 
     /**
-     * Loop forever, processing client requests synchronously.  The server is single threaded.
+     * Loop forever, processing client requests.  Unless running concurrently the server is single threaded, and
+     * processes each client session to completion before accepting the next.
      */
     public void run() {
 
-        CommandExecutor cmdExe = new CommandExecutor();
-
         try {
             serverSocket = new ServerSocket(port);
-            log.info("Listening on port " + port);
+            log.info("Listening on port " + port + (concurrent ? " (concurrent)" : ""));
 
-            while (!halt) {
-                clientSocket = serverSocket.accept();
-                processClientSession(cmdExe);
-                if (clientSocket != null) {
-                    try {
-                        clientSocket.close();
-                        clientSocket = null;
-                    } catch (IOException e) {
-                        log.error("Error in client socket loop", e);
+            if (concurrent) {
+                acceptConcurrentClients();
+            } else {
+                CommandExecutor cmdExe = new CommandExecutor();
+                while (!halt) {
+                    clientSocket = serverSocket.accept();
+                    processClientSession(clientSocket, cmdExe);
+                    if (clientSocket != null) {
+                        try {
+                            clientSocket.close();
+                            clientSocket = null;
+                        } catch (IOException e) {
+                            log.error("Error in client socket loop", e);
+                        }
                     }
                 }
             }
@@ -110,16 +145,72 @@ public class CommandListener implements Runnable {
         }
     }
 
+    /**
+     * Accept client connections, processing each session on a thread of the client pool.  Each session has its own
+     * CommandExecutor, so settings such as the snapshot directory are per client.
+     *
+     * @throws IOException
+     */
+    private void acceptConcurrentClients() throws IOException {
+
+        clientPool = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "IGV batch client");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        while (!halt) {
+            final Socket socket = serverSocket.accept();
+            clientSockets.add(socket);
+            clientPool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        processClientSession(socket, new CommandExecutor());
+                    } catch (IOException e) {
+                        log.error("Error processing client session", e);
+                    } finally {
+                        clientSockets.remove(socket);
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            log.error("Error closing client socket", e);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private static synchronized void startBatch() {
+        batchSessions++;
+        Globals.setBatch(true);
+        Globals.setSuppressMessages(true);
+    }
+
+    private static synchronized void endBatch() {
+        batchSessions--;
+        if (batchSessions <= 0) {
+            batchSessions = 0;
+            Globals.setSuppressMessages(false);
+            Globals.setBatch(false);
+        }
+    }
+
     /**
      * Process a client session.  Loop continuously until client sends the "halt" message, or closes the connection.
      *
+     * @param clientSocket
      * @param cmdExe
      * @throws IOException
      */
-    private void processClientSession(CommandExecutor cmdExe) throws IOException {
+    private void processClientSession(Socket clientSocket, final CommandExecutor cmdExe) throws IOException {
         PrintWriter out = null;
         BufferedReader in = null;
+        boolean batchSession = false;
 
+        clientCount.incrementAndGet();
         try {
             out = new PrintWriter(clientSocket.getOutputStream(), true);
             in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
@@ -161,7 +252,13 @@ public class CommandListener implements Runnable {
                         sendHTTPResponse(out, callback);
                     }
 
-                    processGet(command, params, cmdExe);
+                    final String getCommand = command;
+                    final Map<String, String> getParams = params;
+                    scheduler.execute(getPolicy(command, params), new Callable<String>() {
+                        public String call() throws Exception {
+                            return processGet(getCommand, getParams, cmdExe);
+                        }
+                    });
 
                     // If no callback was specified write back a "no response" header
                     if (callback == null) {
@@ -173,23 +270,71 @@ public class CommandListener implements Runnable {
 
                 } else {
                     // Port command
-                    Globals.setBatch(true);
-                    Globals.setSuppressMessages(true);
-                    final String response = cmdExe.execute(inputLine);
+                    if (!batchSession) {
+                        startBatch();
+                        batchSession = true;
+                    }
+                    final String response;
+                    if (inputLine.trim().equalsIgnoreCase(CommandScheduler.STATUS_COMMAND)) {
+                        response = "clients=" + clientCount.get() + " " + scheduler.getStatus();
+                    } else {
+                        final String portCommand = inputLine;
+                        response = scheduler.execute(CommandScheduler.getPolicy(portCommand), new Callable<String>() {
+                            public String call() throws Exception {
+                                return cmdExe.execute(portCommand);
+                            }
+                        });
+                    }
                     out.println(response);
                 }
             }
         } catch (IOException e) {
             log.error("Error processing client session", e);
         } finally {
-            Globals.setSuppressMessages(false);
-            Globals.setBatch(false);
+            clientCount.decrementAndGet();
+            if (batchSession) endBatch();
             if (out != null) out.close();
             if (in != null) in.close();
         }
     }
 
+    /**
+     * Return the scheduling policy for an http get request
+     */
+    static CommandScheduler.Policy getPolicy(String command, Map<String, String> params) {
+        if (command.equals("/load")) {
+            String file = null;
+            for (String fp : fileParams) {
+                file = params.get(fp);
+                if (file != null) break;
+            }
+            boolean viewChange = file == null || CommandScheduler.isSessionFile(file) ||
+                    params.get("genome") != null || params.get("db") != null ||
+                    params.get("locus") != null || params.get("sort") != null ||
+                    "false".equalsIgnoreCase(params.get("merge"));
+            return viewChange ? CommandScheduler.Policy.EXCLUSIVE : CommandScheduler.Policy.SHARED;
+        } else if (command.equals("/execute") && params.get("command") != null) {
+            return CommandScheduler.getPolicy(StringUtils.decodeURL(params.get("command")));
+        } else {
+            return CommandScheduler.Policy.EXCLUSIVE;
+        }
+    }
+
     private void closeSockets() {
+        if (clientPool != null) {
+            clientPool.shutdownNow();
+        }
+        synchronized (clientSockets) {
+            for (Socket socket : clientSockets) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    log.error("Error closing clientSocket", e);
+                }
+            }
+            clientSockets.clear();
+        }
+
         if (clientSocket != null) {
             try {
                 clientSocket.close();
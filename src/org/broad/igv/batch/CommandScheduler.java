@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.batch;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.util.StringUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Concurrency policy for batch commands from port clients.
+ * <p/>
+ * Commands that load data files hold a shared lock, so loads from different clients run in parallel.  Commands that
+ * change the view or the session (locus, genome, snapshots, sorting, track display, session files) hold an
+ * exclusive lock, they run one at a time and never while a load is in progress.  Commands that only report state
+ * run without a lock.  The lock is fair, a waiting view command is not starved by a stream of loads.
+ * <p/>
+ * Only commands that leave the genome, the session and the preferences unchanged are shared, every other command,
+ * including "genome", "preference" and "new", is exclusive.  Shared loads therefore see a fixed genome and session,
+ * and only parse files in parallel, they add tracks to the track panels, and read the loaded tracks, under a lock
+ * held by {@link org.broad.igv.ui.IGV}.
+ * <p/>
+ * The number of commands waiting and running, and their wait and run times, are reported by the
+ * {@link #STATUS_COMMAND} command.
+ */
+public class CommandScheduler {
+
+    private static Logger log = Logger.getLogger(CommandScheduler.class);
+
+    public static final String STATUS_COMMAND = "serverstatus";
+
+    public enum Policy {
+        NONE, SHARED, EXCLUSIVE
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Map<Policy, Stats> stats = new EnumMap<Policy, Stats>(Policy.class);
+
+    public CommandScheduler() {
+        for (Policy policy : Policy.values()) {
+            stats.put(policy, new Stats());
+        }
+    }
+
+    /**
+     * Return the policy for a port command, e.g. "load file.bam"
+     *
+     * @param command
+     * @return
+     */
+    public static Policy getPolicy(String command) {
+        List<String> args = new ArrayList<String>();
+        for (String s : StringUtils.breakQuotedString(command, ' ')) {
+            if (s.trim().length() > 0) args.add(s.trim());
+        }
+        if (args.isEmpty()) return Policy.NONE;
+
+        String cmd = args.get(0).toLowerCase();
+        if (cmd.equals("echo") || cmd.equals("version") || cmd.equals(STATUS_COMMAND)) {
+            return Policy.NONE;
+        } else if ((cmd.equals("load") || cmd.equals("loadfile")) && args.size() > 1) {
+            for (String arg : args.subList(2, args.size())) {
+                if (arg.equalsIgnoreCase("merge=false")) return Policy.EXCLUSIVE;
+            }
+            return isSessionFile(args.get(1)) ? Policy.EXCLUSIVE : Policy.SHARED;
+        } else if (cmd.equals("snapshotregions")) {
+            // Rendered offscreen, the view is not changed
+            return Policy.SHARED;
+        } else {
+            return Policy.EXCLUSIVE;
+        }
+    }
+
+    /**
+     * Session files replace the current session, their load is a view change
+     */
+    static boolean isSessionFile(String fileString) {
+        for (String file : StringUtils.breakQuotedString(fileString, ',')) {
+            file = file.replace("\"", "").replace("'", "");
+            if (file.endsWith(".xml") || file.endsWith(".php") || file.endsWith(".php3") || file.endsWith(".session")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Run the command, waiting for the lock required by its policy.
+     *
+     * @param policy
+     * @param command
+     * @return the command result
+     * @throws IOException
+     */
+    public String execute(Policy policy, Callable<String> command) throws IOException {
+
+        Lock policyLock = policy == Policy.SHARED ? lock.readLock() :
+                (policy == Policy.EXCLUSIVE ? lock.writeLock() : null);
+
+        long t0 = System.currentTimeMillis();
+        queued.incrementAndGet();
+        if (policyLock != null) {
+            policyLock.lock();
+        }
+        long t1 = System.currentTimeMillis();
+        queued.decrementAndGet();
+        running.incrementAndGet();
+        try {
+            return command.call();
+        } catch (IOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            running.decrementAndGet();
+            if (policyLock != null) {
+                policyLock.unlock();
+            }
+            long t2 = System.currentTimeMillis();
+            stats.get(policy).add(t1 - t0, t2 - t1);
+            log.debug(policy + " command waited " + (t1 - t0) + " ms, ran " + (t2 - t1) + " ms");
+        }
+    }
+
+    /**
+     * Number of commands waiting for a lock
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    /**
+     * Return a one line summary of the queue and of command latencies, by policy, e.g.
+     * <p/>
+     * queued=1 running=2 shared: count=10 meanWaitMs=5 maxWaitMs=20 meanRunMs=300 maxRunMs=900 exclusive: ...
+     */
+    public String getStatus() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("queued=").append(getQueueDepth()).append(" running=").append(getRunningCount());
+        for (Policy policy : Policy.values()) {
+            buffer.append(" ").append(policy.toString().toLowerCase()).append(": ").append(stats.get(policy));
+        }
+        return buffer.toString();
+    }
+
+    static class Stats {
+
+        int count;
+        long totalWait;
+        long maxWait;
+        long totalRun;
+        long maxRun;
+
+        synchronized void add(long wait, long run) {
+            count++;
+            totalWait += wait;
+            maxWait = Math.max(maxWait, wait);
+            totalRun += run;
+            maxRun = Math.max(maxRun, run);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "count=" + count +
+                    " meanWaitMs=" + (count == 0 ? 0 : totalWait / count) +
+                    " maxWaitMs=" + maxWait +
+                    " meanRunMs=" + (count == 0 ? 0 : totalRun / count) +
+                    " maxRunMs=" + maxRun;
+        }
+    }
+}
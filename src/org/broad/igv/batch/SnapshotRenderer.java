@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.batch;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.svggen.SVGGraphics2D;
+import org.apache.log4j.Logger;
+import org.broad.igv.Globals;
+import org.broad.igv.feature.Locus;
+import org.broad.igv.feature.RegionOfInterest;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.track.RenderContext;
+import org.broad.igv.track.RenderContextImpl;
+import org.broad.igv.track.Track;
+import org.broad.igv.ui.IGV;
+import org.broad.igv.ui.panel.ReferenceFrame;
+import org.broad.igv.util.ParsingUtils;
+import org.broad.igv.util.StageTimer;
+import org.w3c.dom.Document;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Headless snapshot renderer for batch scripts.  Renders a list of regions for a set of tracks to PNG or SVG files
+ * without going through the Swing component tree.
+ * <p/>
+ * Each region is drawn into its own offscreen image through its own {@link ReferenceFrame}.  Tracks cache loaded
+ * data by frame name, so regions do not disturb each other or the main view.  Data for upcoming regions is loaded on
+ * the loader pool while earlier regions are drawn on the render pool.  Tracks keep loading and rendering state, e.g.
+ * a feature track draws nothing while it loads data for any frame, so a track is loaded and rendered while holding
+ * its lock.  Regions are drawn in parallel, but take turns on each track, and renderers of concurrent batch clients
+ * do the same.
+ * <p/>
+ * The number of regions in flight is bounded by WINDOW_SIZE, and a frame name is reused only after the region that
+ * last used it is written.  Frame names are prefixed by an id which is unique among running renderers, and ids are
+ * reused after a renderer finishes, which also bounds the data cached by the tracks.
+ */
+public class SnapshotRenderer {
+
+    private static Logger log = Logger.getLogger(SnapshotRenderer.class);
+
+    static final int NAME_PANEL_WIDTH = 150;
+    static final int HEADER_HEIGHT = 20;
+
+    private static final int WINDOW_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService loadPool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "IGV snapshot loader");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static final ExecutorService renderPool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "IGV snapshot renderer");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Ids of running renderers
+     */
+    private static final Set<Integer> rendererIds = new HashSet<Integer>();
+
+    private List<Track> tracks;
+    private int width;
+    private Genome genome;
+
+    /**
+     * @param tracks the tracks to render, in order.  Tracks which are not visible are skipped.
+     * @param width  width of the data panel in pixels
+     * @param genome
+     */
+    public SnapshotRenderer(List<Track> tracks, int width, Genome genome) {
+        this.tracks = new ArrayList<Track>();
+        for (Track track : tracks) {
+            if (track.isVisible()) this.tracks.add(track);
+        }
+        this.width = width;
+        this.genome = genome;
+    }
+
+    /**
+     * Read regions from a file.  Lines are either bed records (chr, start, end, and an optional name), or locus
+     * strings (chr:start-end, 1 based).  Comment, track and browser lines are skipped.
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static List<RegionOfInterest> readRegions(String path) throws IOException {
+        List<RegionOfInterest> regions = new ArrayList<RegionOfInterest>();
+        BufferedReader reader = null;
+        try {
+            reader = ParsingUtils.openBufferedReader(path);
+            String nextLine;
+            int lineNumber = 0;
+            while ((nextLine = reader.readLine()) != null) {
+                lineNumber++;
+                nextLine = nextLine.trim();
+                if (nextLine.length() == 0 || nextLine.startsWith("#") || nextLine.startsWith("track") ||
+                        nextLine.startsWith("browser")) {
+                    continue;
+                }
+                String[] tokens = Globals.whitespacePattern.split(nextLine);
+                RegionOfInterest region = null;
+                if (tokens.length >= 3) {
+                    try {
+                        String name = tokens.length > 3 ? tokens[3] : null;
+                        region = new RegionOfInterest(tokens[0], Integer.parseInt(tokens[1]),
+                                Integer.parseInt(tokens[2]), name);
+                    } catch (NumberFormatException e) {
+                        // Handled below
+                    }
+                } else {
+                    Locus locus = Locus.fromString(tokens[0]);
+                    if (locus != null) {
+                        String name = tokens.length > 1 ? tokens[1] : null;
+                        region = new RegionOfInterest(locus.getChr(), Math.max(0, locus.getStart() - 1),
+                                locus.getEnd(), name);
+                    }
+                }
+                if (region == null) {
+                    throw new IOException("Error parsing line " + lineNumber + " of " + path + ": " + nextLine);
+                }
+                regions.add(region);
+            }
+        } finally {
+            if (reader != null) reader.close();
+        }
+        return regions;
+    }
+
+    /**
+     * Return the output file for a region, named by the region description if it has one, otherwise by the locus.
+     */
+    static File getFile(RegionOfInterest region, File directory, String format) {
+        String name = region.getDescription();
+        if (name == null || name.length() == 0) {
+            name = region.getChr() + "_" + (region.getStart() + 1) + "_" + region.getEnd();
+        }
+        return new File(directory, name.replace(File.separatorChar, '_') + "." + format);
+    }
+
+    /**
+     * Render snapshots of the regions.
+     *
+     * @param regions
+     * @param directory output directory
+     * @param format    "png" or "svg"
+     * @return the files written
+     * @throws IOException if a region cannot be rendered.  Snapshots of preceding regions are written.
+     */
+    public List<File> render(List<RegionOfInterest> regions, File directory, String format) throws IOException {
+
+        if (!format.equals("png") && !format.equals("svg")) {
+            throw new IOException("Unsupported snapshot format: " + format);
+        }
+
+        List<File> files = new ArrayList<File>(regions.size());
+        LinkedList<Snapshot> window = new LinkedList<Snapshot>();
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        int rendererId = acquireId();
+        try {
+            for (int i = 0; i < regions.size(); i++) {
+                if (window.size() == WINDOW_SIZE) {
+                    files.add(getFile(window.removeFirst()));
+                }
+
+                RegionOfInterest region = regions.get(i);
+                if (genome != null && genome.getChromosome(region.getChr()) == null) {
+                    throw new IOException("Unknown chromosome: " + region.getChr());
+                }
+
+                // Regions in flight have distinct frame names, see class comment
+                final ReferenceFrame frame = createFrame("Snapshot " + rendererId + "." + (i % WINDOW_SIZE), region);
+                final Future<?> load = loadPool.submit(new Runnable() {
+                    public void run() {
+                        if (!cancelled.get()) load(frame);
+                    }
+                });
+                final File file = getFile(region, directory, format);
+                final String fileFormat = format;
+                Future<File> write = renderPool.submit(new Callable<File>() {
+                    public File call() throws Exception {
+                        load.get();
+                        if (!cancelled.get()) write(frame, file, fileFormat);
+                        return file;
+                    }
+                });
+                window.add(new Snapshot(load, write));
+            }
+            while (!window.isEmpty()) {
+                files.add(getFile(window.removeFirst()));
+            }
+        } finally {
+            // Skip the remaining regions, and wait for regions in progress.  Their frame names are reused by the
+            // next renderer with this id.
+            cancelled.set(true);
+            for (Snapshot snapshot : window) {
+                try {
+                    Uninterruptibles.getUninterruptibly(snapshot.write);
+                } catch (ExecutionException e) {
+                    // Reported by the region which failed
+                }
+            }
+            releaseId(rendererId);
+        }
+        return files;
+    }
+
+    /**
+     * Return the lowest id not used by a running renderer
+     */
+    static synchronized int acquireId() {
+        int id = 0;
+        while (rendererIds.contains(id)) id++;
+        rendererIds.add(id);
+        return id;
+    }
+
+    static synchronized void releaseId(int id) {
+        rendererIds.remove(id);
+    }
+
+    /**
+     * Wait for the snapshot to be drawn
+     *
+     * @return the file written
+     */
+    private static File getFile(Snapshot snapshot) throws IOException {
+        try {
+            return snapshot.write.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ExecutionException) {
+                // Error loading data
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    private ReferenceFrame createFrame(String name, RegionOfInterest region) {
+        ReferenceFrame frame = new ReferenceFrame(name);
+        if (IGV.hasInstance()) {
+            // The main window does not need to repaint when the offscreen frame changes
+            try {
+                frame.getEventBus().unregister(IGV.getInstance());
+            } catch (IllegalArgumentException e) {
+                // Not registered
+            }
+        }
+        frame.setBounds(0, width);
+        frame.jumpTo(region.getChr(), region.getStart(), region.getEnd());
+        return frame;
+    }
+
+    /**
+     * Load data for the frame.  Tracks load synchronously off the event dispatch thread.
+     */
+    private void load(ReferenceFrame frame) {
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scratch.createGraphics();
+        RenderContext context = createContext(graphics, frame, getHeight());
+        try {
+            for (Track track : tracks) {
+                synchronized (track) {
+                    track.load(context);
+                }
+            }
+        } finally {
+            context.dispose();
+            graphics.dispose();
+        }
+    }
+
+    private int getHeight() {
+        int height = HEADER_HEIGHT;
+        for (Track track : tracks) {
+            height += track.getHeight();
+        }
+        return height;
+    }
+
+    private RenderContext createContext(Graphics2D graphics, ReferenceFrame frame, int height) {
+        JPanel panel = new JPanel();
+        panel.setBackground(Color.white);
+        return new RenderContextImpl(panel, graphics, frame, new Rectangle(0, 0, width, height));
+    }
+
+    private void write(ReferenceFrame frame, File file, String format) throws IOException {
+
+        int imageWidth = NAME_PANEL_WIDTH + width;
+        int height = getHeight();
+
+        if (format.equals("svg")) {
+            Document document = GenericDOMImplementation.getDOMImplementation().createDocument(
+                    "http://www.w3.org/2000/svg", "svg", null);
+            SVGGraphics2D svgGraphics = new SVGGraphics2D(document);
+            svgGraphics.setSVGCanvasSize(new Dimension(imageWidth, height));
+            paint(svgGraphics, frame, height);
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+            try {
+                svgGraphics.stream(out, true);
+            } finally {
+                out.close();
+            }
+        } else {
+            BufferedImage image = new BufferedImage(imageWidth, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = image.createGraphics();
+            try {
+                paint(graphics, frame, height);
+            } finally {
+                graphics.dispose();
+            }
+            ImageIO.write(image, format, file);
+        }
+    }
+
+    /**
+     * Paint the locus header, track names, and track data
+     */
+    void paint(Graphics2D graphics, ReferenceFrame frame, int height) {
+
+        graphics.setColor(Color.white);
+        graphics.fillRect(0, 0, NAME_PANEL_WIDTH + width, height);
+        graphics.setColor(Color.black);
+        graphics.drawString(frame.getFormattedLocusString(), NAME_PANEL_WIDTH, HEADER_HEIGHT - 5);
+
+        Graphics2D nameGraphics = (Graphics2D) graphics.create(0, 0, NAME_PANEL_WIDTH, height);
+        Graphics2D dataGraphics = (Graphics2D) graphics.create(NAME_PANEL_WIDTH, 0, width, height);
+        RenderContext context = createContext(dataGraphics, frame, height);
+        StageTimer.push(StageTimer.Stage.PAINT);
+        try {
+            int y = HEADER_HEIGHT;
+            for (Track track : tracks) {
+                int trackHeight = track.getHeight();
+                Rectangle rect = new Rectangle(0, y, width, trackHeight);
+                synchronized (track) {
+                    track.render(context, rect);
+                    if (IGV.hasInstance()) {
+                        track.renderName(nameGraphics, new Rectangle(0, y, NAME_PANEL_WIDTH, trackHeight),
+                                new Rectangle(0, 0, NAME_PANEL_WIDTH, height));
+                    }
+                }
+                if (!IGV.hasInstance()) {
+                    // Display names depend on the session, use the plain name
+                    nameGraphics.setColor(Color.black);
+                    nameGraphics.drawString(track.getName(), 5, y + Math.min(trackHeight, 15) - 3);
+                }
+                y += trackHeight;
+            }
+        } catch (Exception e) {
+            log.error("Error rendering snapshot of " + frame.getFormattedLocusString(), e);
+            throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+        } finally {
+            StageTimer.pop();
+            context.dispose();
+            nameGraphics.dispose();
+            dataGraphics.dispose();
+        }
+    }
+
+    /**
+     * A region in flight
+     */
+    static class Snapshot {
+
+        Future<?> load;
+        Future<File> write;
+
+        Snapshot(Future<?> load, Future<File> write) {
+            this.load = load;
+            this.write = write;
+        }
+    }
+}
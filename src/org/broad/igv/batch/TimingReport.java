@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.batch;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.broad.igv.util.StageTimer;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per command timing of a batch run, broken down by {@link StageTimer.Stage}.  Enabled by the batch command
+ * "timingreport path", the report is written when the batch run ends, as JSON if the path ends with ".json" and
+ * as CSV otherwise.
+ * <p/>
+ * Stage times are summed over all threads and are exclusive of nested stages.  Wall time includes the
+ * sleep interval after each command, set it to 0 for benchmarks.
+ */
+public class TimingReport {
+
+    public static final String COMMAND = "timingreport";
+
+    private static final double NANOS_PER_MS = 1.0e6;
+
+    private String path;
+    private List<Entry> entries = new ArrayList<Entry>();
+
+    // Stage totals when the current command started
+    private long startTime;
+    private long[] startTotals;
+
+    public TimingReport(String path) {
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void start() {
+        startTotals = StageTimer.getTotals();
+        startTime = System.nanoTime();
+    }
+
+    public void end(String command, String result) {
+        long wall = System.nanoTime() - startTime;
+        long[] totals = StageTimer.getTotals();
+        long[] stages = new long[totals.length];
+        for (int i = 0; i < totals.length; i++) {
+            stages[i] = totals[i] - startTotals[i];
+        }
+        entries.add(new Entry(command, result, wall, stages));
+    }
+
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    public void write() throws IOException {
+        PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(path)));
+        try {
+            if (path.toLowerCase().endsWith(".json")) {
+                writeJSON(pw);
+            } else {
+                writeCSV(pw);
+            }
+        } finally {
+            pw.close();
+        }
+    }
+
+    void writeCSV(PrintWriter pw) {
+        pw.print("command,result,wall_ms");
+        for (StageTimer.Stage stage : StageTimer.Stage.values()) {
+            pw.print("," + stage.getLabel() + "_ms");
+        }
+        pw.println();
+
+        Entry total = getTotal();
+        List<Entry> rows = new ArrayList<Entry>(entries);
+        rows.add(total);
+        for (Entry entry : rows) {
+            pw.print(quote(entry.command) + "," + quote(entry.result) + "," + format(entry.wall));
+            for (long nanos : entry.stages) {
+                pw.print("," + format(nanos));
+            }
+            pw.println();
+        }
+    }
+
+    void writeJSON(PrintWriter pw) {
+        List<Map<String, Object>> commands = new ArrayList<Map<String, Object>>();
+        for (Entry entry : entries) {
+            commands.add(toMap(entry));
+        }
+        Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put("commands", commands);
+        report.put("total", toMap(getTotal()));
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        pw.println(gson.toJson(report));
+    }
+
+    private Entry getTotal() {
+        long wall = 0;
+        long[] stages = new long[StageTimer.Stage.values().length];
+        for (Entry entry : entries) {
+            wall += entry.wall;
+            for (int i = 0; i < stages.length; i++) {
+                stages[i] += entry.stages[i];
+            }
+        }
+        return new Entry("total", "", wall, stages);
+    }
+
+    private static Map<String, Object> toMap(Entry entry) {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("command", entry.command);
+        map.put("result", entry.result);
+        map.put("wallMs", entry.wall / NANOS_PER_MS);
+        Map<String, Double> stages = new LinkedHashMap<String, Double>();
+        for (StageTimer.Stage stage : StageTimer.Stage.values()) {
+            stages.put(stage.getLabel(), entry.stages[stage.ordinal()] / NANOS_PER_MS);
+        }
+        map.put("stagesMs", stages);
+        return map;
+    }
+
+    private static String format(long nanos) {
+        return String.format("%.3f", nanos / NANOS_PER_MS);
+    }
+
+    private static String quote(String value) {
+        if (value == null) return "";
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    static class Entry {
+        String command;
+        String result;
+        long wall;
+        long[] stages;
+
+        Entry(String command, String result, long wall, long[] stages) {
+            this.command = command;
+            this.result = result;
+            this.wall = wall;
+            this.stages = stages;
+        }
+    }
+}
@@ -90,6 +90,13 @@ public class Argument{
     @XmlAttribute
     private boolean remembered;
 
+    /**
+     * Whether data for this argument is written to the standard input of the tool,
+     * rather than to a temporary file named on the command line
+     */
+    @XmlAttribute
+    private boolean stdin;
+
     public boolean isRemembered() {
         return remembered;
     }
@@ -184,6 +191,14 @@ public class Argument{
         return visible;
     }
 
+    public boolean isStdin() {
+        return stdin;
+    }
+
+    void setStdin(boolean stdin) {
+        this.stdin = stdin;
+    }
+
     @SubtlyImportant
     private Argument(){}
 
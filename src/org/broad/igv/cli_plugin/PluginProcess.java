@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.cli_plugin;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.util.RuntimeUtils;
+import org.broad.tribble.Feature;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * An external plugin process.  Inputs are encoded to the standard input of the process on a separate thread
+ * while the caller decodes its standard output, so the tool runs concurrently with both, and neither inputs nor
+ * output are written to disk.  The amount of data buffered is bounded by the pipes.
+ * <p/>
+ * If a delimiter is given the process is kept running between queries.  For each query the inputs are followed
+ * by a line containing the delimiter, and the output of the query is read up to a line containing the delimiter.
+ */
+class PluginProcess {
+
+    private static Logger log = Logger.getLogger(PluginProcess.class);
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "IGV plugin input");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Persistent processes, stopped when IGV exits
+     */
+    private static final Set<PluginProcess> persistentProcesses =
+            Collections.synchronizedSet(new HashSet<PluginProcess>());
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                synchronized (persistentProcesses) {
+                    for (PluginProcess process : persistentProcesses) {
+                        process.process.destroy();
+                    }
+                }
+            }
+        });
+    }
+
+    private final String[] command;
+    private final String delimiter;
+    private final Process process;
+    private final OutputStream stdin;
+    private final InputStream stdout;
+    private Future<?> inputTask;
+
+    /**
+     * Start a process
+     *
+     * @param command
+     * @param delimiter query delimiter, or null to run the process for a single query
+     * @throws IOException
+     */
+    PluginProcess(String[] command, String delimiter) throws IOException {
+        this.command = command;
+        this.delimiter = delimiter;
+        process = RuntimeUtils.startExternalProcess(command, null, null);
+        stdin = new BufferedOutputStream(process.getOutputStream(), BUFFER_SIZE);
+        stdout = new BufferedInputStream(process.getInputStream(), BUFFER_SIZE);
+        if (delimiter != null) {
+            persistentProcesses.add(this);
+        }
+    }
+
+    String[] getCommand() {
+        return command;
+    }
+
+    boolean isRunning() {
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Start writing the inputs of a query.  For a single query process the standard input is closed after the
+     * inputs are written.
+     *
+     * @param inputs
+     * @return the output of the query
+     */
+    InputStream query(final List<Input> inputs) {
+        inputTask = executor.submit(new Callable<Object>() {
+            public Object call() throws IOException {
+                try {
+                    for (Input input : inputs) {
+                        input.encoder.encodeAll(new UnclosedOutputStream(stdin), input.features.iterator());
+                    }
+                    if (delimiter != null) {
+                        stdin.write((delimiter + AsciiEncoder.EOL_CHAR).getBytes());
+                    }
+                    stdin.flush();
+                } finally {
+                    if (delimiter == null) {
+                        stdin.close();
+                    }
+                }
+                return null;
+            }
+        });
+        return delimiter == null ? stdout : new DelimitedInputStream(stdout, delimiter);
+    }
+
+    /**
+     * Wait for the inputs of the current query to be written.  A tool which exits without reading all of its
+     * input is not an error for a single query process.
+     *
+     * @throws IOException if the inputs of a persistent process could not be written
+     */
+    void finishQuery() throws IOException {
+        try {
+            inputTask.get();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted writing plugin input");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (delimiter != null) {
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage());
+            }
+            log.warn("Error writing plugin input: " + cause.getMessage());
+        }
+    }
+
+    int waitFor() throws IOException {
+        try {
+            return process.waitFor();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted waiting for " + command[0]);
+        }
+    }
+
+    void destroy() {
+        persistentProcesses.remove(this);
+        process.destroy();
+    }
+
+    /**
+     * Features of an argument passed on standard input
+     */
+    static class Input {
+        final FeatureEncoder<Feature> encoder;
+        final List<? extends Feature> features;
+
+        Input(FeatureEncoder<Feature> encoder, List<? extends Feature> features) {
+            this.encoder = encoder;
+            this.features = features;
+        }
+    }
+
+    /**
+     * Encoders close the stream they write to, the standard input is closed after all inputs are written
+     */
+    private static class UnclosedOutputStream extends FilterOutputStream {
+
+        UnclosedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Output of one query of a persistent process, up to a line containing the delimiter.  Closing the stream
+     * skips the rest of the query output but leaves the process output open.
+     */
+    static class DelimitedInputStream extends InputStream {
+
+        private final InputStream in;
+        private final byte[] delimiter;
+        private byte[] line = new byte[256];
+        private int lineLength = 0;
+        private int position = 0;
+        private boolean done = false;
+
+        DelimitedInputStream(InputStream in, String delimiter) {
+            this.in = in;
+            this.delimiter = delimiter.getBytes();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == lineLength && !nextLine()) return -1;
+            return line[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (position == lineLength && !nextLine()) return -1;
+            int n = Math.min(len, lineLength - position);
+            System.arraycopy(line, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private boolean nextLine() throws IOException {
+            if (done) return false;
+            lineLength = 0;
+            position = 0;
+            int c;
+            while ((c = in.read()) >= 0) {
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, 2 * line.length);
+                }
+                line[lineLength++] = (byte) c;
+                if (c == '\n') break;
+            }
+            if (lineLength == 0 || isDelimiter()) {
+                // End of the query, or the process exited
+                lineLength = 0;
+                done = true;
+                return false;
+            }
+            return true;
+        }
+
+        private boolean isDelimiter() {
+            int length = lineLength;
+            if (length > 0 && line[length - 1] == '\n') length--;
+            if (length > 0 && line[length - 1] == '\r') length--;
+            if (length != delimiter.length) return false;
+            for (int i = 0; i < length; i++) {
+                if (line[i] != delimiter[i]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            while (nextLine()) {
+                position = lineLength;
+            }
+        }
+    }
+}
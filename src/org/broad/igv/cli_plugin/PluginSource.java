@@ -24,6 +24,7 @@ import org.broad.igv.track.FeatureTrack;
 import org.broad.igv.track.Track;
 import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.RuntimeUtils;
+import org.broad.igv.util.collections.LRUCache;
 import org.broad.tribble.AsciiFeatureCodec;
 import org.broad.tribble.Feature;
 import org.broad.tribble.FeatureCodec;
@@ -89,6 +90,23 @@ public abstract class PluginSource<E extends Feature, D extends Feature> {
     protected String lastRunId;
     private static final String RUN_ID_ATTR = "RUN_ID";
 
+    /**
+     * Command line value of arguments written to standard input
+     */
+    static final String STDIN_PATH = "-";
+
+    /**
+     * Decoded results of recent queries, keyed by argument values, region, and the input features of each track.
+     * Results are dropped when the track is refreshed or disposed.
+     */
+    static final int MAX_CACHED_RESULTS = 20;
+    private final LRUCache<String, List<D>> resultCache = new LRUCache<String, List<D>>(MAX_CACHED_RESULTS);
+
+    /**
+     * Running process, if the tool is kept running between queries
+     */
+    private PluginProcess process;
+
     //private QueryTracker queryTracker = new QueryTracker();
 
     @SubtlyImportant
@@ -120,12 +138,13 @@ public abstract class PluginSource<E extends Feature, D extends Feature> {
      * @param argument
      * @return
      */
-    protected final Map<String, Object> writeFeaturesToStream(OutputStream outputStream, Iterator features, Argument argument)
+    protected final Map<String, Object> writeFeaturesToStream(OutputStream outputStream,
+                                                              Iterator<? extends Feature> features, Argument argument)
             throws IOException {
 
         Map<String, Object> attributes = null;
         if (features != null) {
-            FeatureEncoder codec = getEncodingCodec(argument);
+            FeatureEncoder<Feature> codec = getInputEncodingCodec(argument);
             attributes = codec.encodeAll(outputStream, features);
         }
         outputStream.flush();
@@ -135,6 +154,61 @@ public abstract class PluginSource<E extends Feature, D extends Feature> {
     }
 
     protected final String[] genFullCommand(String chr, int start, int end, int zoom) throws IOException {
+        Map<Argument, List<List<? extends Feature>>> inputs = getInputs(chr, start, end, zoom, new StringBuffer());
+        return genFullCommand(chr, start, end, inputs, new ArrayList<PluginProcess.Input>());
+    }
+
+    /**
+     * Read the input features of each track argument, one list per track.  The input features of each track are
+     * identified in {@code inputKey}.  Arguments are validated here, before any input is read.
+     */
+    private Map<Argument, List<List<? extends Feature>>> getInputs(String chr, int start, int end, int zoom,
+                                                                   StringBuffer inputKey) throws IOException {
+
+        Map<Argument, List<List<? extends Feature>>> inputs = new HashMap<Argument, List<List<? extends Feature>>>();
+        for (Map.Entry<Argument, Object> entry : arguments.entrySet()) {
+            Argument arg = entry.getKey();
+
+            if (!arg.isValidValue(entry.getValue())) {
+                String msg = "Type: " + arg.getType() + " value: " + entry.getValue();
+                throw new IllegalArgumentException(msg);
+            }
+
+            List<?> tracks;
+            switch (arg.getType()) {
+                case ALIGNMENT_TRACK:
+                case VARIANT_TRACK:
+                case FEATURE_TRACK:
+                case DATA_TRACK:
+                    tracks = Arrays.asList(entry.getValue());
+                    break;
+                case MULTI_FEATURE_TRACK:
+                    tracks = (List<?>) entry.getValue();
+                    break;
+                default:
+                    continue;
+            }
+
+            List<List<? extends Feature>> trackFeatures = new ArrayList<List<? extends Feature>>(tracks.size());
+            for (Object value : tracks) {
+                Track track = (Track) value;
+                List<? extends Feature> features = getInputFeatures(track, arg, chr, start, end, zoom);
+                addInputKey(inputKey, track, features);
+                trackFeatures.add(features);
+            }
+            inputs.put(arg, trackFeatures);
+        }
+        return inputs;
+    }
+
+    /**
+     * Generate the command line for a query.  Data arguments are written to temporary files, or for arguments read
+     * from standard input, added to {@code stdinInputs}.
+     *
+     * @param inputs input features of each track argument, from {@link #getInputs}
+     */
+    private String[] genFullCommand(String chr, int start, int end, Map<Argument, List<List<? extends Feature>>> inputs,
+                                    List<PluginProcess.Input> stdinInputs) throws IOException {
 
         List<String> fullCmd = new ArrayList<String>(commands);
 
@@ -148,11 +222,6 @@ public abstract class PluginSource<E extends Feature, D extends Feature> {
         for (Map.Entry<Argument, Object> entry : arguments.entrySet()) {
             Argument arg = entry.getKey();
 
-            if (!arg.isValidValue(entry.getValue())) {
-                String msg = "Type: " + arg.getType() + " value: " + entry.getValue();
-                throw new IllegalArgumentException(msg);
-            }
-
             String[] sVal = null;
             String ts = null;
             switch (arg.getType()) {
@@ -176,19 +245,27 @@ public abstract class PluginSource<E extends Feature, D extends Feature> {
                     }
                     break;
                 case ALIGNMENT_TRACK:
-                    ts = createTempFile((AlignmentTrack) entry.getValue(), arg, chr, start, end, zoom);
-                    sVal = new String[]{ts};
-                    break;
                 case VARIANT_TRACK:
                 case FEATURE_TRACK:
                 case DATA_TRACK:
-                    ts = createTempFile((Track) entry.getValue(), arg, chr, start, end, zoom);
+                    List<? extends Feature> features = inputs.get(arg).get(0);
+                    if (arg.isStdin()) {
+                        addStdinInput(features, arg, stdinInputs);
+                        sVal = new String[]{STDIN_PATH};
+                        break;
+                    }
+                    ts = createTempFile(features, arg);
                     sVal = new String[]{ts};
                     break;
                 case MULTI_FEATURE_TRACK:
-                    sVal = createTempFiles((List<FeatureTrack>) entry.getValue(), arg, chr, start, end, zoom);
+                    sVal = createTempFiles(inputs.get(arg), arg);
                     break;
                 case LOCUS:
+                    if (arg.isStdin()) {
+                        addStdinInput(Arrays.asList(new SimpleBEDFeature(start, end, chr)), arg, stdinInputs);
+                        sVal = new String[]{STDIN_PATH};
+                        break;
+                    }
                     ts = writeLocus(arg, chr, start, end);
                     sVal = new String[]{ts};
                     break;
@@ -215,6 +292,31 @@ public abstract class PluginSource<E extends Feature, D extends Feature> {
         return fullCmd.toArray(new String[0]);
     }
 
+    /**
+     * Add features to be written to standard input.  Decoders are configured before the input is written, so
+     * their attributes are taken from encoding the first feature.
+     */
+    private void addStdinInput(List<? extends Feature> features, Argument argument,
+                               List<PluginProcess.Input> stdinInputs) throws IOException {
+        FeatureEncoder<Feature> codec = getInputEncodingCodec(argument);
+        List<? extends Feature> first = features.isEmpty() ? features : features.subList(0, 1);
+        attributes.add(codec.encodeAll(new ByteArrayOutputStream(), first.iterator()));
+        stdinInputs.add(new PluginProcess.Input(getInputEncodingCodec(argument), features));
+    }
+
+    /**
+     * Identify the input from a track by the track id and the positions of its features
+     */
+    private static void addInputKey(StringBuffer inputKey, Track track, List<? extends Feature> features) {
+        int hash = 1;
+        for (Feature f : features) {
+            hash = 31 * hash + (f.getChr() == null ? 0 : f.getChr().hashCode());
+            hash = 31 * hash + f.getStart();
+            hash = 31 * hash + f.getEnd();
+        }
+        inputKey.append('\t').append(track.getId()).append(':').append(features.size()).append(':').append(hash);
+    }
+
     protected String writeLocus(Argument arg, String chr, int start, int end) throws IOException{
         Feature feat = new SimpleBEDFeature(start, end, chr);
         return createTempFile(Arrays.asList(feat), arg);
@@ -251,40 +353,38 @@ public abstract class PluginSource<E extends Feature, D extends Feature> {
     }
 
     /**
-     * Convenience for calling {@link #createTempFile(org.broad.igv.track.Track, org.broad.igv.cli_plugin.Argument, String, int, int, int)};
-     * on each track
+     * Write the input features of each track to a temporary file
      *
-     * @param tracks
-     * @param chr
-     * @param start
-     * @param end
-     * @param zoom
+     * @param trackFeatures
+     * @param argument
      * @return
      * @throws java.io.IOException
      */
-    private String[] createTempFiles(List<FeatureTrack> tracks, Argument argument, String chr, int start, int end, int zoom) throws IOException {
-        String[] fileNames = new String[tracks.size()];
+    private String[] createTempFiles(List<List<? extends Feature>> trackFeatures, Argument argument) throws IOException {
+        String[] fileNames = new String[trackFeatures.size()];
         int fi = 0;
-        for (FeatureTrack track : tracks) {
-            fileNames[fi++] = createTempFile(track, argument, chr, start, end, zoom);
+        for (List<? extends Feature> features : trackFeatures) {
+            fileNames[fi++] = createTempFile(features, argument);
         }
         return fileNames;
     }
 
     /**
-     * Write out data from feature sources within the specified interval
-     * to temporary files.
+     * Get the data from a track within the specified interval, to be passed to the tool
      *
      * @param track
+     * @param argument
      * @param chr
      * @param start
      * @param end
-     * @return String with temp file name.
-     * @throws java.io.IOException
+     * @param zoom
+     * @return
+     * @throws IOException
      */
-    protected abstract String createTempFile(Track track, Argument argument, String chr, int start, int end, int zoom) throws IOException;
+    protected abstract List<? extends Feature> getInputFeatures(Track track, Argument argument, String chr, int start,
+                                                                int end, int zoom) throws IOException;
 
-    protected final String createTempFile(List features, Argument argument) throws IOException {
+    protected final String createTempFile(List<? extends Feature> features, Argument argument) throws IOException {
         String ext = ".tmp";
         switch(argument.getType()){
             case ALIGNMENT_TRACK:
@@ -324,7 +424,9 @@ public abstract class PluginSource<E extends Feature, D extends Feature> {
 
     /**
      * Perform the actual combination operation between the constituent data
-     * sources.
+     * sources.  Results are cached by argument values, region and input features, if
+     * the tool writes them to standard output.  Inputs are read for each query, and only
+     * written out if the results are not cached.
      *
      * @param chr
      * @param start
@@ -337,52 +439,168 @@ public abstract class PluginSource<E extends Feature, D extends Feature> {
             throw new IllegalStateException("Null value for source");
         }
 
-        boolean rerun = true;
-        //synchronized (this.queryTracker){
-        //    rerun = !this.queryTracker.isQuerySame(chr, start, end, zoom);
-        //}
+        StringBuffer inputKey = new StringBuffer();
+        Map<Argument, List<List<? extends Feature>>> inputs = getInputs(chr, start, end, zoom, inputKey);
 
         /**
-         * A process might generate multiple output files, we only want to run it once.
+         * A process might generate multiple output files, which could be changed by another run.
          * e.g. Cufflinks generates transcripts.gtf, genes.fpkm_tracking, isoforms.fpkm_tracking
-         * If the file exists we just read from it
+         * Only output read from stdout is cached
          */
-
-        InputStream dataStream = null;
-        if (!rerun) {
-            File inFile = new File(parser.source);
-            if (inFile.canRead()) {
-                //Use the existing file
-                dataStream = new FileInputStream(parser.source);
+        boolean stdout = parser.source.equals(PluginSpecReader.Parser.SOURCE_STDOUT);
+        String cacheKey = null;
+        if (stdout) {
+            cacheKey = getCacheKey(chr, start, end, zoom, inputKey);
+            List<D> cached;
+            synchronized (resultCache) {
+                cached = resultCache.get(cacheKey);
+            }
+            if (cached != null) {
+                return cached.iterator();
             }
         }
 
-        if (dataStream == null) {
-            //synchronized (this.queryTracker){
-            String[] fullCmd = genFullCommand(chr, start, end, zoom);
-            //log.debug("interval: " + Locus.getFormattedLocusString(chr, start, end));
-            //log.debug(StringUtils.join(fullCmd, " "));
+        List<PluginProcess.Input> stdinInputs = new ArrayList<PluginProcess.Input>();
+        String[] fullCmd = genFullCommand(chr, start, end, inputs, stdinInputs);
+        //log.debug(StringUtils.join(fullCmd, " "));
 
+        FeatureDecoder<D> codec = getDecodingCodec();
+        List<D> results;
+        if (stdout && parser.delimiter != null && !hasFileInputs()) {
+            results = runPersistent(fullCmd, stdinInputs, codec);
+        } else {
             //Start cli_plugin process
-            Process pr = RuntimeUtils.startExternalProcess(fullCmd, null, null);
-
-            if (parser.source.equals(PluginSpecReader.Parser.SOURCE_STDOUT)) {
-                dataStream = pr.getInputStream();
-            } else {
-                try {
+            PluginProcess pr = new PluginProcess(fullCmd, null);
+            boolean success = false;
+            try {
+                InputStream dataStream = pr.query(stdinInputs);
+                if (!stdout) {
+                    pr.finishQuery();
+                    pr.waitFor();
+                    dataStream = new FileInputStream(parser.source);
+                }
+                //Read back in the data which cli_plugin output, while the input is written
+                results = toList(codec.decodeAll(dataStream, parser.strict));
+                pr.finishQuery();
+                success = true;
+            } finally {
+                if (success) {
                     pr.waitFor();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+                } else {
+                    pr.destroy();
                 }
-                dataStream = new FileInputStream(parser.source);
             }
-            //this.queryTracker.setLastQuery(chr, start, end, zoom);
-            //}
         }
-        //Read back in the data which cli_plugin output
-        FeatureDecoder<D> codec = getDecodingCodec();
 
-        return codec.decodeAll(dataStream, parser.strict);
+        if (stdout) {
+            synchronized (resultCache) {
+                resultCache.put(cacheKey, results);
+            }
+        }
+        return results.iterator();
+    }
+
+    /**
+     * Whether any argument is passed to the tool in a file.  A tool kept running between queries would not read
+     * the file again, so such tools are run once per query.
+     */
+    private boolean hasFileInputs() {
+        for (Argument arg : arguments.keySet()) {
+            switch (arg.getType()) {
+                case ALIGNMENT_TRACK:
+                case VARIANT_TRACK:
+                case FEATURE_TRACK:
+                case DATA_TRACK:
+                case LOCUS:
+                    if (!arg.isStdin()) return true;
+                    break;
+                case MULTI_FEATURE_TRACK:
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Run a query on the process kept running for this source.  The process is
+     * restarted if the command line changed or it exited.
+     */
+    private synchronized List<D> runPersistent(String[] fullCmd, List<PluginProcess.Input> stdinInputs,
+                                               FeatureDecoder<D> codec) throws IOException {
+        if (process != null && (!process.isRunning() || !Arrays.equals(process.getCommand(), fullCmd))) {
+            process.destroy();
+            process = null;
+        }
+        if (process == null) {
+            process = new PluginProcess(fullCmd, parser.delimiter);
+        }
+
+        boolean success = false;
+        try {
+            List<D> results = toList(codec.decodeAll(process.query(stdinInputs), parser.strict));
+            process.finishQuery();
+            success = true;
+            return results;
+        } finally {
+            if (!success) {
+                // Input and output might be out of step
+                process.destroy();
+                process = null;
+            }
+        }
+    }
+
+    private static <T> List<T> toList(Iterator<T> iter) {
+        List<T> list = new ArrayList<T>();
+        while (iter.hasNext()) {
+            list.add(iter.next());
+        }
+        return list;
+    }
+
+    /**
+     * Key for the results of a query.  Tracks are identified by id, and their input features by {@code inputKey}.
+     */
+    private String getCacheKey(String chr, int start, int end, int zoom, StringBuffer inputKey) {
+        StringBuffer key = new StringBuffer();
+        key.append(specPath).append('\t').append(commands).append('\t').append(parser.format)
+                .append('\t').append(parser.decodingCodec);
+        for (Map.Entry<Argument, Object> entry : arguments.entrySet()) {
+            key.append('\t').append(entry.getKey().getName()).append('=');
+            Object value = entry.getValue();
+            if (value instanceof Track) {
+                key.append(((Track) value).getId());
+            } else if (value instanceof List) {
+                for (Object track : (List) value) {
+                    key.append(((Track) track).getId()).append(',');
+                }
+            } else {
+                key.append(value);
+            }
+        }
+        key.append('\t').append(chr).append(':').append(start).append('-').append(end).append(':').append(zoom);
+        key.append(inputKey);
+        return key.toString();
+    }
+
+    /**
+     * Remove all cached query results
+     */
+    public void clearResultCache() {
+        synchronized (resultCache) {
+            resultCache.clear();
+        }
+    }
+
+    /**
+     * Drop cached results, and stop the tool if it is kept running.  Called when the track is removed or reloaded.
+     */
+    public synchronized void dispose() {
+        clearResultCache();
+        if (process != null) {
+            process.destroy();
+            process = null;
+        }
     }
 
     /**
@@ -397,6 +615,15 @@ public abstract class PluginSource<E extends Feature, D extends Feature> {
         return codec;
     }
 
+    /**
+     * Encoding codec for the input features of a track.  The codec is chosen by the plugin spec, the features of an
+     * argument are assumed to be of the type it encodes.
+     */
+    @SuppressWarnings("unchecked")
+    private FeatureEncoder<Feature> getInputEncodingCodec(Argument argument) {
+        return (FeatureEncoder<Feature>) getEncodingCodec(argument);
+    }
+
     /**
      * Get the encoding codec for this argument. Default
      * is IGVBEDCodec, if there was none specified.
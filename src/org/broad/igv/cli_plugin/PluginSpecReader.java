@@ -434,6 +434,12 @@ public class PluginSpecReader {
         String decodingCodec;
         @XmlAttribute
         String source = SOURCE_STDOUT;
+        /**
+         * If set, the tool is kept running between queries, and reads and writes this line after each query.
+         * Only used if the output is read from stdout and all inputs are written to stdin.
+         */
+        @XmlAttribute
+        String delimiter;
 
         @XmlElement
         String[] libs;
@@ -21,6 +21,8 @@ import org.broad.igv.track.TrackType;
 import org.broad.igv.track.WindowFunction;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.util.MessageUtils;
+import org.broad.igv.util.ByteLineReader;
+import org.broad.igv.util.ByteTokenizer;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.collections.FloatArrayList;
@@ -31,10 +33,8 @@ import org.broad.tribble.readers.AsciiLineReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
 
 
 /**
@@ -46,6 +46,26 @@ import java.util.Map;
 public class IGVDatasetParser {
 
     private static Logger log = Logger.getLogger(IGVDatasetParser.class);
+
+    private static final String NOT_SORTED_MESSAGE = "File is not sorted, .igv and .cn files must be sorted by " +
+            "start position. Use igvtools (File > Run igvtools..) to sort the file.";
+
+    /**
+     * Size in bytes of the blocks parsed in parallel by {@link #scan(IGVDataset)}.
+     * Note: This is not final so that it can be manipulated by unit tests.
+     */
+    static int scanBlockSize = 4000000;
+
+    private static final int WINDOW_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService scanPool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "IGV dataset scanner");
+            t.setDaemon(true);
+            return t;
+        }
+    });
     private ResourceLocator dataResourceLocator;
     private int chrColumn = -1;
     private int startColumn = -1;
@@ -141,7 +161,8 @@ public class IGVDatasetParser {
     }
 
     /**
-     * Scan the datafile for chromosome breaks.
+     * Scan the datafile for chromosome breaks.  Data lines are read in blocks of {@code scanBlockSize} bytes which
+     * are parsed in parallel, and the results merged in file order.
      *
      * @param dataset
      * @return
@@ -155,7 +176,7 @@ public class IGVDatasetParser {
         float dataMax = 0;
 
         InputStream is = null;
-        AsciiLineReader reader = null;
+        ByteLineReader reader = null;
         String nextLine = null;
         ChromosomeSummary chrSummary = null;
         List<ChromosomeSummary> chrSummaries = new ArrayList();
@@ -167,13 +188,13 @@ public class IGVDatasetParser {
         int count = 0;
 
         boolean logNormalized;
+        LinkedList<Future<ScanBlock>> window = new LinkedList<Future<ScanBlock>>();
         try {
 
             int skipColumns = hasCalls ? 2 : 1;
 
-            // BufferedReader reader = ParsingUtils.openBufferedReader(dataResourceLocator);
             is = ParsingUtils.openInputStreamGZ(dataResourceLocator);
-            reader = new AsciiLineReader(is);
+            reader = new ByteLineReader(is);
 
             // Infer datatype from extension.  This can be overriden in the
             // comment section
@@ -221,22 +242,27 @@ public class IGVDatasetParser {
 
             wgData = new WholeGenomeData(headings);
 
-            int chrRowCount = 0;
-
-            // Update
-            int updateCount = 5000;
-            long lastPosition = 0;
-            while ((nextLine = reader.readLine()) != null) {
-
-                if (igv != null && ++count % updateCount == 0) {
-                    igv.setStatusBarMessage("Loaded: " + count + " / " + estLineCount + " (est)");
+            // Line number of the last line read, for error messages
+            int lineNumber = headerRows + 1;
+
+            boolean moreBlocks = true;
+            while (true) {
+                while (moreBlocks && window.size() < WINDOW_SIZE) {
+                    ByteLineReader block = reader.readBlock(scanBlockSize);
+                    if (block == null) {
+                        moreBlocks = false;
+                    } else {
+                        window.add(scanPool.submit(new ScanTask(block, headings.length, skipColumns)));
+                    }
                 }
-                // Distance since last sample
+                if (window.isEmpty()) {
+                    break;
+                }
+
+                ScanBlock scanBlock = getScanBlock(window.removeFirst(), lineNumber);
 
-                String[] tokens = Globals.tabPattern.split(nextLine, -1);
-                int nTokens = tokens.length;
-                if (nTokens > 0) {
-                    String thisChr = genome.getChromosomeAlias(tokens[chrColumn]);
+                for (ScanSegment segment : scanBlock.segments) {
+                    String thisChr = genome.getChromosomeAlias(segment.fileChr);
                     if (chrSummary == null || !thisChr.equals(chrSummary.getName())) {
                         // Update whole genome and previous chromosome summary, unless this is
                         // the first chromosome
@@ -245,69 +271,33 @@ public class IGVDatasetParser {
                             chrSummary.setNDataPoints(nRows);
                         }
 
-                        // Shart the next chromosome
-                        chrSummary = new ChromosomeSummary(thisChr, lastPosition);
+                        // Start the next chromosome
+                        chrSummary = new ChromosomeSummary(thisChr, chrSummaries.isEmpty() ? 0 : segment.position);
                         chrSummaries.add(chrSummary);
                         nRows = 0;
                         wgData = new WholeGenomeData(headings);
-                        chrRowCount = 0;
 
+                    } else if (wgData.locations.get(wgData.locations.size() - 1) > segment.locations.get(0)) {
+                        throw new ParserException(NOT_SORTED_MESSAGE, lineNumber + segment.firstLine);
                     }
-                    lastPosition = reader.getPosition();
-
-                    int location = -1;
-                    try {
-                        location = ParsingUtils.parseInt(tokens[startColumn]) - startBase;
-
-                    } catch (NumberFormatException numberFormatException) {
-                        log.error("Column " + tokens[startColumn] + " is not a number");
-                        throw new ParserException("Column " + (startColumn + 1) +
-                                " must contain an integer value." + " Found: " + tokens[startColumn],
-                                count + headerRows, nextLine);
-                    }
-
-                    int length = 1;
-                    if (hasEndLocations) {
-                        try {
-                            length = ParsingUtils.parseInt(tokens[endColumn].trim()) - location + 1;
-
-                        } catch (NumberFormatException numberFormatException) {
-                            log.error("Column " + tokens[endColumn] + " is not a number");
-                            throw new ParserException("Column " + (endColumn + 1) +
-                                    " must contain an integer value." + " Found: " + tokens[endColumn],
-                                    count + headerRows, nextLine);
-                        }
-                    }
-
-                    updateLongestFeature(longestFeatureMap, thisChr, length);
-
-                    if (wgData.locations.size() > 0 && wgData.locations.get(wgData.locations.size() - 1) > location) {
-                        throw new ParserException("File is not sorted, .igv and .cn files must be sorted by start position." +
-                                " Use igvtools (File > Run igvtools..) to sort the file.", count + headerRows);
-                    }
-
-                    wgData.locations.add(location);
 
+                    updateLongestFeature(longestFeatureMap, thisChr, segment.longestFeature);
+                    wgData.locations.addAll(segment.locations);
                     for (int idx = 0; idx < headings.length; idx++) {
-                        int i = firstDataColumn + idx * skipColumns;
-
-                        float copyNo = i < tokens.length ? readFloat(tokens[i]) : Float.NaN;
-
-                        if (!Float.isNaN(copyNo)) {
-                            dataMin = Math.min(dataMin, copyNo);
-                            dataMax = Math.max(dataMax, copyNo);
-                        }
-                        if (copyNo < 0) {
-                            logNormalized = true;
-                        }
-                        String heading = headings[idx];
-                        wgData.data.get(heading).add(copyNo);
+                        wgData.data.get(headings[idx]).addAll(segment.data[idx]);
                     }
+                    nRows += segment.locations.size();
+                }
 
-                    nRows++;
+                dataMin = Math.min(dataMin, scanBlock.dataMin);
+                dataMax = Math.max(dataMax, scanBlock.dataMax);
+                logNormalized |= scanBlock.logNormalized;
 
+                lineNumber += scanBlock.lineCount;
+                count += scanBlock.lineCount;
+                if (igv != null) {
+                    igv.setStatusBarMessage("Loaded: " + count + " / " + estLineCount + " (est)");
                 }
-                chrRowCount++;
             }
 
             dataset.setLongestFeatureMap(longestFeatureMap);
@@ -326,6 +316,9 @@ public class IGVDatasetParser {
                 throw new RuntimeException(e);
             }
         } finally {
+            for (Future<ScanBlock> future : window) {
+                future.cancel(true);
+            }
             if (is != null) {
                 try {
                     is.close();
@@ -348,6 +341,29 @@ public class IGVDatasetParser {
         return chrSummaries;
     }
 
+    /**
+     * Wait for a block to be parsed.  Line numbers of parser errors are made relative to the file.
+     *
+     * @param future
+     * @param lineNumber line number preceding the block
+     */
+    private static ScanBlock getScanBlock(Future<ScanBlock> future, int lineNumber) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ParserException) {
+                ParserException pe = (ParserException) cause;
+                pe.setLineNumber(lineNumber + pe.getLineNumber());
+                throw pe;
+            } else if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else {
+                throw e;
+            }
+        }
+    }
+
     private void updateLongestFeature(Map<String, Integer> longestFeatureMap, String thisChr, int length) {
         if (longestFeatureMap.containsKey(thisChr)) {
             longestFeatureMap.put(thisChr, Math.max(longestFeatureMap.get(thisChr), length));
@@ -356,20 +372,6 @@ public class IGVDatasetParser {
         }
     }
 
-    private float readFloat(String token) {
-        float copyNo = Float.NaN;
-        try {
-            if (token != null) {
-                copyNo = Float.parseFloat(token);
-            }
-
-        } catch (NumberFormatException e) {
-            // This is an expected condition.
-        }
-        return copyNo;
-
-    }
-
     /**
      * Load data for a single chromosome.
      *
@@ -379,7 +381,7 @@ public class IGVDatasetParser {
      */
     public ChromosomeData loadChromosomeData(ChromosomeSummary chrSummary, String[] dataHeaders) {
 
-        // InputStream is = null;
+        ByteLineReader reader = null;
         try {
             int skipColumns = hasCalls ? 2 : 1;
 
@@ -388,7 +390,8 @@ public class IGVDatasetParser {
 
             SeekableStream is = IGVSeekableStreamFactory.getInstance().getStreamFor(dataResourceLocator.getPath());
             is.seek(chrSummary.getStartPosition());
-            AsciiLineReader reader = new AsciiLineReader(is);
+            reader = new ByteLineReader(is);
+            ByteTokenizer tokenizer = new ByteTokenizer();
 
 
             // Create containers to hold data
@@ -400,46 +403,51 @@ public class IGVDatasetParser {
             for (String h : dataHeaders) {
                 dataMap.put(h, new FloatArrayList(nRowsEst));
             }
+            FloatArrayList[] dataLists = new FloatArrayList[dataHeaders.length];
+            for (int idx = 0; idx < dataHeaders.length; idx++) {
+                dataLists[idx] = dataMap.get(dataHeaders[idx]);
+            }
 
             // Begin loop through rows
             String chromosome = chrSummary.getName();
             boolean chromosomeStarted = false;
-            String nextLine = reader.readLine();
 
-            while ((nextLine != null) && (nextLine.trim().length() > 0)) {
+            // Chromosome name as it appears in the file, aliasing is only done when it changes
+            String fileChr = null;
+            boolean onChromosome = false;
+
+            while (reader.nextLine() && !reader.isBlank()) {
 
-                if (!nextLine.startsWith("#")) {
+                if (!reader.startsWith("#")) {
                     try {
-                        String[] tokens = Globals.tabPattern.split(nextLine, -1);
+                        int nTokens = tokenizer.tokenize(reader);
 
-                        String thisChromosome = genome.getChromosomeAlias(tokens[chrColumn].trim());
-                        if (thisChromosome.equals(chromosome)) {
+                        if (fileChr == null || !tokenizer.equals(chrColumn, fileChr)) {
+                            fileChr = tokenizer.getString(chrColumn);
+                            onChromosome = genome.getChromosomeAlias(fileChr.trim()).equals(chromosome);
+                        }
+                        if (onChromosome) {
                             chromosomeStarted = true;
 
-                            // chromosomeData.setMarkerId(nRows, tokens[0]);
-
-                            // The probe.  A new string is created to prevent holding on to the entire row through a substring reference
-                            String probe = new String(tokens[probeColumn]);
-                            probes.add(probe);
+                            probes.add(tokenizer.getString(probeColumn));
 
-                            int start = ParsingUtils.parseInt(tokens[startColumn].trim()) - startBase;
+                            int start = tokenizer.getInt(startColumn) - startBase;
                             if (hasEndLocations) {
-                                endLocations.add(ParsingUtils.parseInt(tokens[endColumn].trim()));
+                                endLocations.add(tokenizer.getInt(endColumn));
                             }
 
                             startLocations.add(start);
 
-                            if(tokens.length <= firstDataColumn + (dataHeaders.length - 1)*skipColumns){
-                                String msg = "Line has too few data columns: " + nextLine;
+                            if (nTokens <= firstDataColumn + (dataHeaders.length - 1) * skipColumns) {
+                                String msg = "Line has too few data columns: " + reader.getLine();
                                 log.error(msg);
                                 throw new RuntimeException(msg);
                             }
 
                             for (int idx = 0; idx < dataHeaders.length; idx++) {
                                 int i = firstDataColumn + idx * skipColumns;
-                                float copyNo = i <= lastDataColumn ? readFloat(tokens[i]) : Float.NaN;
-                                String heading = dataHeaders[idx];
-                                dataMap.get(heading).add(copyNo);
+                                float copyNo = i <= lastDataColumn ? tokenizer.getFloat(i, Float.NaN) : Float.NaN;
+                                dataLists[idx].add(copyNo);
                             }
 
 
@@ -450,11 +458,9 @@ public class IGVDatasetParser {
                     } catch (NumberFormatException numberFormatException) {
 
                         // Skip line
-                        log.info("Skipping line (NumberFormatException) " + nextLine);
+                        log.info("Skipping line (NumberFormatException) " + reader.getLine());
                     }
                 }
-
-                nextLine = reader.readLine();
             }
 
             // Loop complete
@@ -474,6 +480,10 @@ public class IGVDatasetParser {
         } catch (IOException ex) {
             log.error("Error parsing cn file", ex);
             throw new RuntimeException("Error parsing cn file", ex);
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
         }
 
     }
@@ -681,4 +691,125 @@ public class IGVDatasetParser {
         }
     }
 
+    /**
+     * Parses a block of data lines
+     */
+    class ScanTask implements Callable<ScanBlock> {
+
+        ByteLineReader lines;
+        int nHeadings;
+        int skipColumns;
+
+        ScanTask(ByteLineReader lines, int nHeadings, int skipColumns) {
+            this.lines = lines;
+            this.nHeadings = nHeadings;
+            this.skipColumns = skipColumns;
+        }
+
+        public ScanBlock call() throws Exception {
+
+            ScanBlock block = new ScanBlock();
+            ByteTokenizer tokenizer = new ByteTokenizer();
+            ScanSegment segment = null;
+
+            while (lines.nextLine()) {
+                block.lineCount++;
+                try {
+                    tokenizer.tokenize(lines);
+
+                    // Chromosome names are aliased when blocks are merged, the alias table is not thread safe
+                    if (segment == null || !tokenizer.equals(chrColumn, segment.fileChr)) {
+                        segment = new ScanSegment(tokenizer.getString(chrColumn), lines.getLinePosition(),
+                                block.lineCount, nHeadings);
+                        block.segments.add(segment);
+                    }
+
+                    int location;
+                    try {
+                        location = tokenizer.getInt(startColumn) - startBase;
+                    } catch (NumberFormatException numberFormatException) {
+                        String value = tokenizer.getString(startColumn);
+                        log.error("Column " + value + " is not a number");
+                        throw new ParserException("Column " + (startColumn + 1) +
+                                " must contain an integer value." + " Found: " + value,
+                                block.lineCount, lines.getLine());
+                    }
+
+                    int length = 1;
+                    if (hasEndLocations) {
+                        try {
+                            length = tokenizer.getInt(endColumn) - location + 1;
+                        } catch (NumberFormatException numberFormatException) {
+                            String value = tokenizer.getString(endColumn);
+                            log.error("Column " + value + " is not a number");
+                            throw new ParserException("Column " + (endColumn + 1) +
+                                    " must contain an integer value." + " Found: " + value,
+                                    block.lineCount, lines.getLine());
+                        }
+                    }
+                    segment.longestFeature = Math.max(segment.longestFeature, length);
+
+                    IntArrayList locations = segment.locations;
+                    if (locations.size() > 0 && locations.get(locations.size() - 1) > location) {
+                        throw new ParserException(NOT_SORTED_MESSAGE, block.lineCount);
+                    }
+                    locations.add(location);
+
+                    for (int idx = 0; idx < nHeadings; idx++) {
+                        int i = firstDataColumn + idx * skipColumns;
+                        float copyNo = tokenizer.getFloat(i, Float.NaN);
+
+                        if (!Float.isNaN(copyNo)) {
+                            block.dataMin = Math.min(block.dataMin, copyNo);
+                            block.dataMax = Math.max(block.dataMax, copyNo);
+                        }
+                        if (copyNo < 0) {
+                            block.logNormalized = true;
+                        }
+                        segment.data[idx].add(copyNo);
+                    }
+
+                } catch (ParserException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    throw new ParserException(e.getMessage(), e, block.lineCount, lines.getLine());
+                }
+            }
+            return block;
+        }
+    }
+
+    /**
+     * Result of parsing a block of lines.  Line numbers are relative to the block.
+     */
+    static class ScanBlock {
+        int lineCount = 0;
+        float dataMin = 0;
+        float dataMax = 0;
+        boolean logNormalized = false;
+        List<ScanSegment> segments = new ArrayList<ScanSegment>();
+    }
+
+    /**
+     * Consecutive lines of a block on the same chromosome
+     */
+    static class ScanSegment {
+        String fileChr;
+        long position;
+        int firstLine;
+        int longestFeature = 0;
+        IntArrayList locations = new IntArrayList();
+        FloatArrayList[] data;
+
+        ScanSegment(String fileChr, long position, int firstLine, int nHeadings) {
+            this.fileChr = fileChr;
+            this.position = position;
+            this.firstLine = firstLine;
+            data = new FloatArrayList[nHeadings];
+            for (int i = 0; i < nHeadings; i++) {
+                data[i] = new FloatArrayList();
+            }
+        }
+    }
+
 }
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.data;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.DirectoryManager;
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.util.FileUtils;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persistent cache of whole genome view scores.  Summaries are stored per data file, genome, and summary type
+ * (e.g. window function), keyed by a checksum of the file, so they survive across sessions.
+ * <p/>
+ * The checksum covers the file length, its modification time, and its first and last CHECKSUM_SAMPLE_SIZE bytes,
+ * so it can be computed without reading large files.  The modification time catches edits which keep the file
+ * length and do not touch the sampled bytes.
+ */
+public class WholeGenomeCache {
+
+    private static Logger log = Logger.getLogger(WholeGenomeCache.class);
+
+    private static final int VERSION = 1;
+    static final int CHECKSUM_SAMPLE_SIZE = 65536;
+
+    /**
+     * Maximum number of cache files kept.  The least recently used are removed first.
+     */
+    static final int MAX_FILES = 200;
+
+    private static final String EXTENSION = ".wg";
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Whole genome summary");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    });
+
+    static File cacheDirectory;
+
+    /**
+     * Run a task to build or load whole genome scores in the background
+     *
+     * @param runnable
+     * @return
+     */
+    public static Future<?> submit(Runnable runnable) {
+        return executor.submit(runnable);
+    }
+
+    /**
+     * Return the cache file for a data file, or null if the file is not local or the cache is disabled.  The
+     * file might not exist yet.
+     *
+     * @param path   path to the data file
+     * @param genome
+     * @param type   summary type, e.g. the window function
+     * @return
+     */
+    public static File getCacheFile(String path, Genome genome, String type) {
+
+        if (genome == null || FileUtils.isRemote(path) ||
+                !PreferenceManager.getInstance().getAsBoolean(PreferenceManager.WHOLE_GENOME_CACHE)) {
+            return null;
+        }
+        File file = new File(path);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                long length = raf.length();
+                byte[] buffer = new byte[(int) Math.min(length, CHECKSUM_SAMPLE_SIZE)];
+                raf.readFully(buffer);
+                md5.update(buffer);
+                raf.seek(Math.max(0, length - buffer.length));
+                raf.readFully(buffer);
+                md5.update(buffer);
+                md5.update(String.valueOf(length).getBytes());
+                md5.update(("\t" + file.lastModified()).getBytes());
+            } finally {
+                raf.close();
+            }
+            md5.update(("\t" + genome.getId() + "\t" + genome.getNominalLength() + "\t" + type).getBytes());
+
+            StringBuffer name = new StringBuffer();
+            for (byte b : md5.digest()) {
+                name.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+            }
+            name.append(EXTENSION);
+            return new File(getCacheDirectory(), name.toString());
+
+        } catch (IOException e) {
+            log.error("Error computing checksum for " + path, e);
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            log.error("MD5 not available", e);
+            return null;
+        }
+    }
+
+    private static synchronized File getCacheDirectory() {
+        if (cacheDirectory == null) {
+            cacheDirectory = DirectoryManager.getWholeGenomeCacheDirectory();
+        }
+        return cacheDirectory;
+    }
+
+    /**
+     * Read scores from a cache file.
+     *
+     * @param cacheFile
+     * @return map of name -> scores in file order, or null if the file does not exist or cannot be read
+     */
+    public static Map<String, Scores> read(File cacheFile) {
+
+        if (cacheFile == null || !cacheFile.exists()) {
+            return null;
+        }
+
+        DataInputStream is = null;
+        try {
+            is = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(cacheFile))));
+            if (is.readInt() != VERSION) {
+                return null;
+            }
+            int nEntries = is.readInt();
+            Map<String, Scores> scores = new LinkedHashMap<String, Scores>(nEntries);
+            for (int e = 0; e < nEntries; e++) {
+                String name = is.readUTF();
+                int n = is.readInt();
+                boolean hasDescriptions = is.readBoolean();
+                Scores s = new Scores(n, hasDescriptions);
+                for (int i = 0; i < n; i++) {
+                    s.starts[i] = is.readInt();
+                    s.ends[i] = is.readInt();
+                    s.values[i] = is.readFloat();
+                    if (hasDescriptions) {
+                        s.descriptions[i] = is.readBoolean() ? is.readUTF() : null;
+                    }
+                }
+                scores.put(name, s);
+            }
+            cacheFile.setLastModified(System.currentTimeMillis());
+            return scores;
+        } catch (IOException e) {
+            log.error("Error reading whole genome cache " + cacheFile, e);
+            cacheFile.delete();
+            return null;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // close quietly
+                }
+            }
+        }
+    }
+
+    /**
+     * Write scores to a cache file.  The file is written under a temporary name and renamed, so a partially
+     * written file is never read.
+     *
+     * @param cacheFile
+     * @param scores    map of name -> scores
+     */
+    public static void write(File cacheFile, Map<String, Scores> scores) {
+
+        if (cacheFile == null) return;
+
+        File tmpFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp");
+        DataOutputStream os = null;
+        try {
+            os = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmpFile))));
+            os.writeInt(VERSION);
+            os.writeInt(scores.size());
+            for (Map.Entry<String, Scores> entry : scores.entrySet()) {
+                Scores s = entry.getValue();
+                os.writeUTF(entry.getKey());
+                os.writeInt(s.size());
+                os.writeBoolean(s.descriptions != null);
+                for (int i = 0; i < s.size(); i++) {
+                    os.writeInt(s.starts[i]);
+                    os.writeInt(s.ends[i]);
+                    os.writeFloat(s.values[i]);
+                    if (s.descriptions != null) {
+                        os.writeBoolean(s.descriptions[i] != null);
+                        if (s.descriptions[i] != null) {
+                            os.writeUTF(s.descriptions[i]);
+                        }
+                    }
+                }
+            }
+            os.close();
+            os = null;
+            if (!tmpFile.renameTo(cacheFile)) {
+                tmpFile.delete();
+            }
+            prune();
+        } catch (IOException e) {
+            log.error("Error writing whole genome cache " + cacheFile, e);
+            tmpFile.delete();
+        } finally {
+            if (os != null) {
+                try {
+                    os.close();
+                } catch (IOException e) {
+                    // close quietly
+                }
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Remove the least recently used cache files if there are more than MAX_FILES
+     */
+    private static void prune() {
+        File[] files = getCacheDirectory().listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(EXTENSION);
+            }
+        });
+        if (files == null || files.length <= MAX_FILES) return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long t1 = f1.lastModified();
+                long t2 = f2.lastModified();
+                return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length - MAX_FILES; i++) {
+            files[i].delete();
+        }
+    }
+
+    /**
+     * Whole genome scores for one track or sample
+     */
+    public static class Scores {
+
+        public final int[] starts;
+        public final int[] ends;
+        public final float[] values;
+        public final String[] descriptions;
+
+        public Scores(int size, boolean hasDescriptions) {
+            starts = new int[size];
+            ends = new int[size];
+            values = new float[size];
+            descriptions = hasDescriptions ? new String[size] : null;
+        }
+
+        public int size() {
+            return starts.length;
+        }
+    }
+}
@@ -12,17 +12,17 @@ package org.broad.igv.data;
 
 import org.apache.commons.math.stat.StatUtils;
 import org.apache.log4j.Logger;
-import org.broad.igv.Globals;
 import org.broad.igv.exceptions.ParserException;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.track.TrackProperties;
 import org.broad.igv.track.TrackType;
+import org.broad.igv.util.ByteLineReader;
+import org.broad.igv.util.ByteTokenizer;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.collections.DownsampledDoubleArrayList;
 import org.broad.igv.util.collections.FloatArrayList;
 import org.broad.igv.util.collections.IntArrayList;
-import org.broad.tribble.readers.AsciiLineReader;
 
 import java.util.HashMap;
 import java.util.HashSet;
@@ -135,13 +135,12 @@ public class WiggleParser {
         initializeDataHolders();
         unsortedChromosomes = new HashSet();
 
-        AsciiLineReader reader = null;
-        String nextLine = null;
+        ByteLineReader reader = null;
         int lineNumber = 0;
         float[] dataArray = null;
 
         try {
-            reader = ParsingUtils.openAsciiReader(locator);
+            reader = new ByteLineReader(ParsingUtils.openInputStreamGZ(locator));
 
             if (type == Type.EXPR) {
                 reader.readLine(); // Skip header line
@@ -149,41 +148,43 @@ public class WiggleParser {
 
             int position = -1;
 
-            while ((nextLine = reader.readLine()) != null) {
+            // Data lines are tokenized in place, strings are only created for chromosome names when they change
+            ByteTokenizer tokenizer = new ByteTokenizer(true);
+
+            while (reader.nextLine()) {
                 lineNumber++;
 
-                if (nextLine.startsWith("#") || nextLine.startsWith("data") || nextLine.startsWith("browser") || nextLine.trim().length() == 0) {
+                if (reader.startsWith("#") || reader.startsWith("data") || reader.startsWith("browser") || reader.isBlank()) {
                     continue;
                     // Skip
                 }
 
 
-                if (nextLine.startsWith("track") && type != Type.CPG) {
+                if (reader.startsWith("track") && type != Type.CPG) {
                     type = Type.BED_GRAPH;
-                    ParsingUtils.parseTrackLine(nextLine, dataset.getTrackProperties());
+                    ParsingUtils.parseTrackLine(reader.getLine(), dataset.getTrackProperties());
                     if (dataset.getTrackProperties().getBaseCoord() == TrackProperties.BaseCoord.ZERO) {
                         this.startBase = 0;
                     }
 
-                } else if (nextLine.startsWith("fixedStep")) {
+                } else if (reader.startsWith("fixedStep")) {
                     type = Type.FIXED;
-                    parseStepLine(nextLine);
+                    parseStepLine(reader.getLine());
                     position = start;
                     if (start < lastPosition) {
                         unsortedChromosomes.add(chr);
                     }
 
-                } else if (nextLine.startsWith("variableStep")) {
+                } else if (reader.startsWith("variableStep")) {
                     type = Type.VARIABLE;
-                    parseStepLine(nextLine);
+                    parseStepLine(reader.getLine());
                     if (start < lastPosition) {
                         unsortedChromosomes.add(chr);
                     }
 
                 } else {
                     // Must be data
-                    String[] tokens = Globals.singleTabMultiSpacePattern.split(nextLine);
-                    int nTokens = tokens.length;
+                    int nTokens = tokenizer.tokenize(reader);
                     if (nTokens == 0) {
                         continue;
                     }
@@ -191,20 +192,22 @@ public class WiggleParser {
                         if (type.equals(Type.CPG)) {
 
                             if (nTokens > 3) {
-                                chr = tokens[1].trim();
-                                if (!chr.equals(lastChr)) {
-                                    changedChromosome(dataset, lastChr);
+                                if (!tokenizer.equals(1, lastChr)) {
+                                    chr = tokenizer.getString(1).trim();
+                                    if (!chr.equals(lastChr)) {
+                                        changedChromosome(dataset, lastChr);
+                                    }
+                                    lastChr = chr;
                                 }
-                                lastChr = chr;
 
                                 int endPosition = -1;
                                 try {
-                                    endPosition = Integer.parseInt(tokens[2].trim());
+                                    endPosition = tokenizer.getInt(2);
                                 } catch (NumberFormatException numberFormatException) {
                                     log.error("Column 2 is not a number");
 
-                                    throw new ParserException("Column 2 must be numeric." + " Found: " + tokens[1],
-                                            lineNumber, nextLine);
+                                    throw new ParserException("Column 2 must be numeric." + " Found: " + tokenizer.getString(1),
+                                            lineNumber, reader.getLine());
                                 }
                                 int startPosition = endPosition - 1;
 
@@ -213,8 +216,8 @@ public class WiggleParser {
                                 }
                                 lastPosition = startPosition;
 
-                                float value = Float.parseFloat(tokens[4].trim());
-                                if (tokens[3].trim().equals("R")) {
+                                float value = tokenizer.getFloat(4);
+                                if (tokenizer.equals(3, "R")) {
                                     value = -value;
                                 }
 
@@ -223,27 +226,29 @@ public class WiggleParser {
                         } else if (type.equals(Type.BED_GRAPH) || type.equals(Type.EXPR)) {
 
                             if (nTokens > 3) {
-                                chr = tokens[chrColumn].trim();
-                                if (!chr.equals(lastChr)) {
-                                    changedChromosome(dataset, lastChr);
-                                    //If we are seeing this chromosome again with something
-                                    //in-between, assume it's unsorted
-                                    if(dataset.containsChromosome(chr)){
-                                        unsortedChromosomes.add(chr);
-                                    }
+                                if (!tokenizer.equals(chrColumn, lastChr)) {
+                                    chr = tokenizer.getString(chrColumn).trim();
+                                    if (!chr.equals(lastChr)) {
+                                        changedChromosome(dataset, lastChr);
+                                        //If we are seeing this chromosome again with something
+                                        //in-between, assume it's unsorted
+                                        if (dataset.containsChromosome(chr)) {
+                                            unsortedChromosomes.add(chr);
+                                        }
 
+                                    }
+                                    lastChr = chr;
                                 }
-                                lastChr = chr;
 
                                 int startPosition = -1;
                                 try {
-                                    startPosition = Integer.parseInt(tokens[startColumn].trim());
+                                    startPosition = tokenizer.getInt(startColumn);
                                 } catch (NumberFormatException numberFormatException) {
                                     log.error("Column " + (startColumn + 1) + "  is not a number");
 
                                     throw new ParserException("Column (startColumn + 1) must be numeric." + " Found: " +
-                                            tokens[startColumn],
-                                            lineNumber, nextLine);
+                                            tokenizer.getString(startColumn),
+                                            lineNumber, reader.getLine());
                                 }
 
                                 if (startPosition < lastPosition) {
@@ -254,32 +259,32 @@ public class WiggleParser {
 
                                 int endPosition = -1;
                                 try {
-                                    endPosition = Integer.parseInt(tokens[endColumn].trim());
+                                    endPosition = tokenizer.getInt(endColumn);
                                     int length = endPosition - startPosition;
                                     updateLongestFeature(length);
                                 } catch (NumberFormatException numberFormatException) {
                                     log.error("Column " + (endColumn + 1) + " is not a number");
 
                                     throw new ParserException("Column " + (endColumn + 1) +
-                                            " must be numeric." + " Found: " + tokens[endColumn],
-                                            lineNumber, nextLine);
+                                            " must be numeric." + " Found: " + tokenizer.getString(endColumn),
+                                            lineNumber, reader.getLine());
                                 }
 
-                                addData(chr, startPosition, endPosition, Float.parseFloat(tokens[dataColumn].trim()));
+                                addData(chr, startPosition, endPosition, tokenizer.getFloat(dataColumn));
                             }
                         } else if (type.equals(Type.VARIABLE)) {
                             if (nTokens > 1) {
 
                                 // Per UCSC specification variable and fixed step coordinates are "1" based.
                                 // We need to subtract 1 to convert to the internal "zero" based coordinates.
-                                int startPosition = Integer.parseInt(tokens[0]) - 1;
+                                int startPosition = tokenizer.getInt(0) - 1;
                                 if (startPosition < lastPosition) {
                                     unsortedChromosomes.add(chr);
                                 }
                                 lastPosition = startPosition;
 
                                 int endPosition = startPosition + windowSpan;
-                                addData(chr, startPosition, endPosition, Float.parseFloat(tokens[1]));
+                                addData(chr, startPosition, endPosition, tokenizer.getFloat(1));
                             }
                         } else {    // Fixed step -- sorting is checked when step line is parsed
                             if (position >= 0) {
@@ -287,7 +292,7 @@ public class WiggleParser {
                                     dataArray = new float[nTokens];
                                 }
                                 for (int ii = 0; ii < dataArray.length; ii++) {
-                                    dataArray[ii] = Float.parseFloat(tokens[ii].trim());
+                                    dataArray[ii] = tokenizer.getFloat(ii);
                                 }
                                 int endPosition = position + windowSpan;
                                 addData(chr, position, endPosition, dataArray);
@@ -298,7 +303,7 @@ public class WiggleParser {
 
                     } catch (NumberFormatException e) {
                         log.error(e);
-                        throw new ParserException(e.getMessage(), lineNumber, nextLine);
+                        throw new ParserException(e.getMessage(), lineNumber, reader.getLine());
                     }
 
 
@@ -312,8 +317,8 @@ public class WiggleParser {
         } catch (ParserException pe) {
             throw (pe);
         } catch (Exception e) {
-            if (nextLine != null && lineNumber != 0) {
-                throw new ParserException(e.getMessage(), e, lineNumber, nextLine);
+            if (reader != null && lineNumber != 0) {
+                throw new ParserException(e.getMessage(), e, lineNumber, reader.getLine());
             } else {
                 throw new RuntimeException(e);
             }
@@ -39,14 +39,18 @@ import org.broad.igv.tools.StatusMonitor;
 import org.broad.igv.track.TrackType;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.util.MagetabSignalDialog;
+import org.broad.igv.util.ByteLineReader;
+import org.broad.igv.util.ByteTokenizer;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.tribble.readers.AsciiLineReader;
+import org.broad.tribble.readers.LineReader;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.*;
 
 /**
@@ -199,19 +203,20 @@ public class ExpressionFileParser {
 
         dataset.setType(TrackType.GENE_EXPRESSION);
 
-        BufferedReader reader = null;
-        String nextLine = null;
+        ByteLineReader reader = null;
         int lineCount = 0;
         //String[] columnHeadings = null;
         try {
 
-            reader = ParsingUtils.openBufferedReader(dataFileLocator);
+            // Decode as the BufferedReader used previously did, probe names and descriptions may not be ASCII
+            reader = new ByteLineReader(ParsingUtils.openInputStreamGZ(dataFileLocator), Charset.defaultCharset());
 
             // Parse the header(s) to determine the precise format.
             FormatDescriptor formatDescriptor = parseHeader(reader, type, dataset);
             final int probeColumn = formatDescriptor.probeColumn;
             final int descriptionColumn = formatDescriptor.descriptionColumn;
-            int nDataColumns = formatDescriptor.dataColumns.length;
+            final int[] dataColumns = formatDescriptor.dataColumns;
+            int nDataColumns = dataColumns.length;
 
             dataset.setColumnHeadings(formatDescriptor.dataHeaders);
 
@@ -220,40 +225,26 @@ public class ExpressionFileParser {
                 dataColumnIndexMap.put(formatDescriptor.dataHeaders[i], i);
             }
 
-            // Loop through the data rows
-
-            while ((nextLine = reader.readLine()) != null) {
+            // Loop through the data rows.  Lines are tokenized in place, only the probe and description
+            // fields are converted to strings.
+            ByteTokenizer tokenizer = new ByteTokenizer(false, Charset.defaultCharset());
+            while (reader.nextLine()) {
 
-                String[] tokens = Globals.tabPattern.split(nextLine, -1);
-                int nTokens = tokens.length;
-                String probeId = new String(tokens[probeColumn]);
+                tokenizer.tokenize(reader);
+                String probeId = tokenizer.getString(probeColumn);
                 float[] values = new float[nDataColumns];
 
-                String description = (descriptionColumn >= 0) ? tokens[descriptionColumn] : null;
+                String description = (descriptionColumn >= 0) ? tokenizer.getString(descriptionColumn) : null;
 
                 if (type == FileType.MAGE_TAB && probeId.startsWith("cg")) {
                     // TODO -- this is a very ugly and fragile method to determine data type! Change this!
                     dataset.setType(TrackType.DNA_METHYLATION);
                 }
 
+                // If we are out of value tokens, or the cell is blank or not a number, assign NAN to the cell.
+                // IGV uses NaN to indicate non numbers (missing data values)
                 for (int i = 0; i < nDataColumns; i++) {
-                    try {
-                        int dataIndex = formatDescriptor.dataColumns[i];
-
-                        // If we are out of value tokens, or the cell is blank, assign NAN to the cell.
-                        if ((dataIndex >= nTokens) || (tokens[dataIndex].length() == 0)) {
-                            values[i] = Float.NaN;
-                        } else {
-                            values[i] = Float.parseFloat(tokens[dataIndex]);
-                        }
-
-                    } catch (NumberFormatException numberFormatException) {
-
-                        // This s an expected condition.  IGV uses NaN to
-                        // indicate non numbers (missing data values)
-                        values[i] = Float.NaN;
-                    }
-
+                    values[i] = tokenizer.getFloat(dataColumns[i], Float.NaN);
                 }
                 addRow(probeId, description, values);
                 lineCount++;
@@ -293,18 +284,14 @@ public class ExpressionFileParser {
             throw new RuntimeException("Operation cancelled");
         } catch (Exception e) {
             e.printStackTrace();
-            if (nextLine != null && lineCount != 0) {
-                throw new ParserException(e.getMessage(), e, lineCount, nextLine);
+            if (reader != null && lineCount != 0) {
+                throw new ParserException(e.getMessage(), e, lineCount, reader.getLine());
             } else {
                 throw new RuntimeException(e);
             }
         } finally {
             if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-
-                }
+                reader.close();
             }
         }
 
@@ -446,7 +433,19 @@ public class ExpressionFileParser {
         Thread.sleep(1);    // <- check for interrupted thread
     }
 
-    public static FormatDescriptor parseHeader(BufferedReader reader, FileType type, ExpressionDataset dataset) throws IOException {
+    public static FormatDescriptor parseHeader(final BufferedReader reader, FileType type, ExpressionDataset dataset)
+            throws IOException {
+        return parseHeader(new LineReader() {
+            public String readLine() throws IOException {
+                return reader.readLine();
+            }
+
+            public void close() {
+            }
+        }, type, dataset);
+    }
+
+    public static FormatDescriptor parseHeader(LineReader reader, FileType type, ExpressionDataset dataset) throws IOException {
 
 
         int descriptionColumn = -1;    // Default - no description column
@@ -540,7 +539,7 @@ public class ExpressionFileParser {
         return new FormatDescriptor(probeColumn, descriptionColumn, dataColumns, dataHeaders, firstHeaderRowTokens.length);
     }
 
-    private static String findHeaderLine(BufferedReader reader, FileType type, ExpressionDataset dataset) throws IOException {
+    private static String findHeaderLine(LineReader reader, FileType type, ExpressionDataset dataset) throws IOException {
         String nextLine;
         String headerLine;
         if (type == FileType.GCT) {
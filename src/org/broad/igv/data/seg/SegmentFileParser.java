@@ -71,6 +71,17 @@ public class SegmentFileParser implements SegFileParser {
     public SegmentedAsciiDataSet loadSegments(ResourceLocator locator, Genome genome) {
 
         SegmentedAsciiDataSet dataset = new SegmentedAsciiDataSet(genome);
+        parse(dataset);
+        dataset.sortLists();
+        return dataset;
+    }
+
+    /**
+     * Parse the file, adding segments to the dataset in file order
+     *
+     * @param dataset
+     */
+    void parse(SegmentedAsciiDataSet dataset) {
 
         if (birdsuite) {
             dataset.setTrackType(TrackType.CNV);
@@ -134,9 +145,6 @@ public class SegmentFileParser implements SegFileParser {
                     }
 
                     String chr = tokens[chrColumn].trim();
-                    if (genome != null) {
-                        chr = genome.getChromosomeAlias(chr);
-                    }
 
 
                     String trackId = new String(tokens[sampleColumn].trim());
@@ -186,9 +194,6 @@ public class SegmentFileParser implements SegFileParser {
                 reader.close();
             }
         }
-
-        dataset.sortLists();
-        return dataset;
     }
 
 
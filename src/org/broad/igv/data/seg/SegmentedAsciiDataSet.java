@@ -18,6 +18,7 @@ package org.broad.igv.data.seg;
 
 //~--- non-JDK imports --------------------------------------------------------
 
+import org.broad.igv.data.WholeGenomeCache;
 import org.broad.igv.feature.FeatureUtils;
 import org.broad.igv.feature.LocusScore;
 import org.broad.igv.feature.genome.Genome;
@@ -25,6 +26,7 @@ import org.broad.igv.track.TrackProperties;
 import org.broad.igv.track.TrackType;
 import org.broad.igv.util.ResourceLocator;
 
+import java.io.File;
 import java.util.*;
 
 
@@ -182,7 +184,7 @@ public class SegmentedAsciiDataSet implements SegmentedDataSet {
      * @param heading
      * @return
      */
-    public List<LocusScore> getWholeGenomeScores(String heading) {
+    public synchronized List<LocusScore> getWholeGenomeScores(String heading) {
 
 
         List<LocusScore> wholeGenomeScores = wholeGenomeScoresCache.get(heading);
@@ -218,6 +220,53 @@ public class SegmentedAsciiDataSet implements SegmentedDataSet {
 
     }
 
+
+    /**
+     * Load the whole genome scores of all samples from the persistent cache, or compute and cache them, in the
+     * background.  Scores are still computed on demand by getWholeGenomeScores if requested first.
+     *
+     * @param path path of the segmented data file
+     */
+    public void initWholeGenomeScores(String path) {
+
+        final File cacheFile = WholeGenomeCache.getCacheFile(path, genome, "seg");
+        if (cacheFile == null) return;
+
+        WholeGenomeCache.submit(new Runnable() {
+            public void run() {
+                Map<String, WholeGenomeCache.Scores> cached = WholeGenomeCache.read(cacheFile);
+                if (cached != null) {
+                    synchronized (SegmentedAsciiDataSet.this) {
+                        for (Map.Entry<String, WholeGenomeCache.Scores> entry : cached.entrySet()) {
+                            WholeGenomeCache.Scores s = entry.getValue();
+                            List<LocusScore> scores = new ArrayList<LocusScore>(s.size());
+                            for (int i = 0; i < s.size(); i++) {
+                                scores.add(new Segment(s.starts[i], s.starts[i], s.ends[i], s.ends[i], s.values[i],
+                                        s.descriptions[i]));
+                            }
+                            wholeGenomeScoresCache.put(entry.getKey(), scores);
+                        }
+                    }
+                } else {
+                    Map<String, WholeGenomeCache.Scores> toCache = new LinkedHashMap<String, WholeGenomeCache.Scores>();
+                    for (String heading : getSampleNames()) {
+                        List<LocusScore> scores = getWholeGenomeScores(heading);
+                        WholeGenomeCache.Scores s = new WholeGenomeCache.Scores(scores.size(), true);
+                        for (int i = 0; i < scores.size(); i++) {
+                            Segment seg = (Segment) scores.get(i);
+                            s.starts[i] = seg.getStart();
+                            s.ends[i] = seg.getEnd();
+                            s.values[i] = seg.getScore();
+                            s.descriptions[i] = seg.getDescription();
+                        }
+                        toCache.put(heading, s);
+                    }
+                    WholeGenomeCache.write(cacheFile, toCache);
+                }
+            }
+        });
+    }
+
     /**
      * Method description
      *
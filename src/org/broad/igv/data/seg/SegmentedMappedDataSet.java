@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.data.seg;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.exceptions.DataLoadException;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.track.TrackType;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.StringUtils;
+import org.broad.igv.util.collections.LRUCache;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Segmented dataset backed by a memory-mapped file written by {@link SegmentedMappedWriter}.  Segment
+ * coordinates and values stay in the mapped columns, Segment objects are created only for the chromosomes
+ * being viewed and are not retained once the view moves on.
+ */
+public class SegmentedMappedDataSet implements SegmentedDataSet {
+
+    private static Logger log = Logger.getLogger(SegmentedMappedDataSet.class);
+
+    /**
+     * Number of chromosomes for which segment lists are cached
+     */
+    private static final int CHROMOSOME_CACHE_SIZE = 2;
+
+    /**
+     * Number of samples for which whole genome scores are cached.  Scores for samples beyond this are recomputed
+     * from the mapped file when drawn.
+     */
+    private static final int WHOLE_GENOME_CACHE_SIZE = 1000;
+
+    /**
+     * The whole genome view is drawn at no more than this many pixels, segments covering less than a pixel at
+     * this resolution are merged.
+     */
+    private static final int MAX_SCREEN_SIZE = 10000;
+
+    private String path;
+    private Genome genome;
+
+    private TrackType type;
+    private boolean logNormalized;
+    private float dataMin;
+    private float dataMax;
+    private List<String> sampleNames = new ArrayList<String>();
+    private Map<String, Integer> sampleIndex = new HashMap<String, Integer>();
+    private Map<String, Integer> chrIndex = new HashMap<String, Integer>();
+
+    // offsets[c][s] is the index of the first segment of sample s on chromosome c
+    private int[][] offsets;
+    private IntBuffer starts;
+    private IntBuffer ends;
+    private FloatBuffer values;
+
+    // chr -> sample -> segments
+    private LRUCache<String, Map<String, List<LocusScore>>> segmentCache =
+            new LRUCache<String, Map<String, List<LocusScore>>>(CHROMOSOME_CACHE_SIZE);
+    private LRUCache<String, List<LocusScore>> wholeGenomeCache =
+            new LRUCache<String, List<LocusScore>>(WHOLE_GENOME_CACHE_SIZE);
+
+    public static boolean isMappedSegFile(String typeString) {
+        return typeString.endsWith(SegmentedMappedWriter.EXTENSION);
+    }
+
+    public SegmentedMappedDataSet(ResourceLocator locator, Genome genome) {
+        this.path = locator.getPath();
+        this.genome = genome;
+        try {
+            open();
+        } catch (IOException e) {
+            log.error("Error loading file: " + path, e);
+            throw new DataLoadException("Error loading file: " + e.toString(), path);
+        }
+    }
+
+    private void open() throws IOException {
+
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = map(channel, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+
+            byte[] magic = new byte[4];
+            header.get(magic);
+            if (!Arrays.equals(magic, SegmentedMappedWriter.MAGIC)) {
+                throw new DataLoadException("Not a binary segmented data file", path);
+            }
+            int version = header.getInt();
+            if (version > SegmentedMappedWriter.VERSION) {
+                throw new DataLoadException("Unsupported binary segmented data version: " + version, path);
+            }
+
+            String typeString = StringUtils.readString(header);
+            try {
+                type = TrackType.valueOf(typeString);
+            } catch (IllegalArgumentException e) {
+                type = TrackType.COPY_NUMBER;
+            }
+            logNormalized = header.get() != 0;
+            dataMin = header.getFloat();
+            dataMax = header.getFloat();
+
+            int nSamples = header.getInt();
+            for (int s = 0; s < nSamples; s++) {
+                String sample = StringUtils.readString(header);
+                sampleIndex.put(sample, s);
+                sampleNames.add(sample);
+            }
+            int nChromosomes = header.getInt();
+            for (int c = 0; c < nChromosomes; c++) {
+                String chr = StringUtils.readString(header);
+                chrIndex.put(genome == null ? chr : genome.getChromosomeAlias(chr), c);
+            }
+
+            offsets = new int[nChromosomes][nSamples + 1];
+            for (int c = 0; c < nChromosomes; c++) {
+                for (int s = 0; s <= nSamples; s++) {
+                    offsets[c][s] = header.getInt();
+                }
+            }
+            int nSegments = header.getInt();
+
+            // Each column is mapped separately, so only a single column is limited to 2 GB
+            long position = header.position();
+            long columnSize = 4l * nSegments;
+            starts = map(channel, position, columnSize).asIntBuffer();
+            ends = map(channel, position + columnSize, columnSize).asIntBuffer();
+            values = map(channel, position + 2 * columnSize, columnSize).asFloatBuffer();
+        } finally {
+            // Mappings remain valid after the file is closed
+            file.close();
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    public double getDataMax(String chr) {
+        return dataMax;
+    }
+
+    public double getDataMin(String chr) {
+        return dataMin;
+    }
+
+    public List<String> getSampleNames() {
+        return sampleNames;
+    }
+
+    public TrackType getType() {
+        return type;
+    }
+
+    public boolean isLogNormalized() {
+        return logNormalized;
+    }
+
+    public Set<String> getChromosomes() {
+        return chrIndex.keySet();
+    }
+
+    /**
+     * Return the number of segments for a sample on a chromosome, without creating segment objects
+     */
+    public int getSegmentCount(String heading, String chr) {
+        Integer c = chrIndex.get(chr);
+        Integer s = sampleIndex.get(heading);
+        return c == null || s == null ? 0 : offsets[c][s + 1] - offsets[c][s];
+    }
+
+    public synchronized List<LocusScore> getSegments(String heading, String chr) {
+
+        Integer c = chrIndex.get(chr);
+        Integer s = sampleIndex.get(heading);
+        if (c == null || s == null) {
+            return null;
+        }
+
+        Map<String, List<LocusScore>> chrSegments = segmentCache.get(chr);
+        if (chrSegments == null) {
+            chrSegments = new HashMap<String, List<LocusScore>>();
+            segmentCache.put(chr, chrSegments);
+        }
+
+        List<LocusScore> segments = chrSegments.get(heading);
+        if (segments == null) {
+            int from = offsets[c][s];
+            int to = offsets[c][s + 1];
+            if (from == to) {
+                return null;
+            }
+            segments = new ArrayList<LocusScore>(to - from);
+            for (int i = from; i < to; i++) {
+                segments.add(new Segment(starts.get(i), ends.get(i), values.get(i)));
+            }
+            chrSegments.put(heading, segments);
+        }
+        return segments;
+    }
+
+    /**
+     * Return the segments of a sample in genome coordinates (kb).  Runs of adjacent segments smaller than a
+     * pixel on the largest screen are merged, with the length-weighted mean of their values.  Segments separated
+     * by a gap wider than a pixel are not merged, so gaps in the data remain empty.
+     *
+     * @param heading
+     * @return
+     */
+    public synchronized List<LocusScore> getWholeGenomeScores(String heading) {
+
+        List<LocusScore> wholeGenomeScores = wholeGenomeCache.get(heading);
+        Integer s = sampleIndex.get(heading);
+        if (wholeGenomeScores == null && s != null && genome != null) {
+
+            double minFeatureSize = ((double) genome.getNominalLength()) / (1000 * MAX_SCREEN_SIZE);
+
+            wholeGenomeScores = new ArrayList<LocusScore>();
+            for (String chr : genome.getLongChromosomeNames()) {
+                Integer c = chrIndex.get(chr);
+                if (c == null) continue;
+
+                int gStart = -1;
+                int gEnd = -1;
+                double weightedSum = 0;
+                double totalWeight = 0;
+                for (int i = offsets[c][s]; i < offsets[c][s + 1]; i++) {
+                    int start = genome.getGenomeCoordinate(chr, starts.get(i));
+                    int end = genome.getGenomeCoordinate(chr, ends.get(i));
+                    if (gStart >= 0 && start - gEnd > minFeatureSize) {
+                        wholeGenomeScores.add(new Segment(gStart, gStart, gEnd, gEnd, (float) (weightedSum / totalWeight), null));
+                        gStart = -1;
+                        gEnd = -1;
+                        weightedSum = 0;
+                        totalWeight = 0;
+                    }
+                    if (gStart < 0) {
+                        gStart = start;
+                    }
+                    gEnd = Math.max(gEnd, end);
+                    int weight = Math.max(1, end - start);
+                    weightedSum += (double) values.get(i) * weight;
+                    totalWeight += weight;
+
+                    if (gEnd - gStart >= minFeatureSize) {
+                        wholeGenomeScores.add(new Segment(gStart, gStart, gEnd, gEnd, (float) (weightedSum / totalWeight), null));
+                        gStart = -1;
+                        gEnd = -1;
+                        weightedSum = 0;
+                        totalWeight = 0;
+                    }
+                }
+                if (gStart >= 0) {
+                    wholeGenomeScores.add(new Segment(gStart, gStart, gEnd, gEnd, (float) (weightedSum / totalWeight), null));
+                }
+            }
+            wholeGenomeCache.put(heading, wholeGenomeScores);
+        }
+        return wholeGenomeScores;
+    }
+
+}
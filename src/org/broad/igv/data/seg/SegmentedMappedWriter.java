@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.data.seg;
+
+import org.broad.igv.tdf.BufferedByteWriter;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.collections.FloatArrayList;
+import org.broad.igv.util.collections.IntArrayList;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Converts a segmented data file to the columnar binary format read by {@link SegmentedMappedDataSet}.
+ * <p/>
+ * File layout, little endian:
+ * <pre>
+ * header:   magic "SEGM", version, track type, log normalized flag, data min, data max,
+ *           sample names, chromosome names
+ * offsets:  for each chromosome, nSamples + 1 segment offsets.  Segments of sample s on chromosome c are
+ *           [offsets[c][s], offsets[c][s + 1]) in the columns below.
+ * columns:  starts (int), ends (int), values (float) of all segments, ordered by chromosome, sample, and start
+ * </pre>
+ * Chromosome names are stored as they appear in the file, aliases are resolved when the file is read.
+ * Segment descriptions are not stored.
+ */
+public class SegmentedMappedWriter {
+
+    public static final String EXTENSION = ".seg.bin";
+
+    static final byte[] MAGIC = new byte[]{'S', 'E', 'G', 'M'};
+    static final int VERSION = 1;
+
+    /**
+     * Convert a segmented data file
+     *
+     * @param inputPath
+     * @param outputFile
+     * @throws IOException
+     */
+    public static void convert(String inputPath, File outputFile) throws IOException {
+
+        ResourceLocator locator = new ResourceLocator(inputPath);
+        SegmentCollector collector = new SegmentCollector();
+        (new SegmentFileParser(locator)).parse(collector);
+
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(outputFile));
+        boolean success = false;
+        try {
+            collector.write(os);
+            success = true;
+        } finally {
+            os.close();
+            if (!success) {
+                outputFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Collects segments as primitive columns rather than Segment objects.  Chromosome aliasing is deferred to
+     * the reader.
+     */
+    static class SegmentCollector extends SegmentedAsciiDataSet {
+
+        List<String> samples = new ArrayList<String>();
+        Map<String, Integer> sampleIndex = new HashMap<String, Integer>();
+        // chr -> sample index -> columns
+        Map<String, Map<Integer, Columns>> columns = new LinkedHashMap<String, Map<Integer, Columns>>();
+        float dataMin = Float.MAX_VALUE;
+        float dataMax = -Float.MAX_VALUE;
+        boolean logNormalized = false;
+        int segmentCount = 0;
+
+        SegmentCollector() {
+            super(null);
+        }
+
+        @Override
+        public void addSegment(String heading, String chr, int start, int end, float value, String desc) {
+
+            Integer s = sampleIndex.get(heading);
+            if (s == null) {
+                s = samples.size();
+                samples.add(heading);
+                sampleIndex.put(heading, s);
+            }
+
+            Map<Integer, Columns> chrColumns = columns.get(chr);
+            if (chrColumns == null) {
+                chrColumns = new HashMap<Integer, Columns>();
+                columns.put(chr, chrColumns);
+            }
+            Columns c = chrColumns.get(s);
+            if (c == null) {
+                c = new Columns();
+                chrColumns.put(s, c);
+            }
+            c.add(start, end, value);
+            segmentCount++;
+
+            dataMax = Math.max(dataMax, value);
+            dataMin = Math.min(dataMin, value);
+            if (value < 0) {
+                logNormalized = true;
+            }
+        }
+
+        void write(OutputStream os) throws IOException {
+
+            BufferedByteWriter buffer = new BufferedByteWriter();
+            buffer.put(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putNullTerminatedString(getType().name());
+            buffer.put((byte) (logNormalized ? 1 : 0));
+            buffer.putFloat(segmentCount == 0 ? 0 : dataMin);
+            buffer.putFloat(segmentCount == 0 ? 0 : dataMax);
+            buffer.putInt(samples.size());
+            for (String sample : samples) {
+                buffer.putNullTerminatedString(sample);
+            }
+            buffer.putInt(columns.size());
+            for (String chr : columns.keySet()) {
+                buffer.putNullTerminatedString(chr);
+            }
+
+            int offset = 0;
+            for (Map<Integer, Columns> chrColumns : columns.values()) {
+                for (int s = 0; s < samples.size(); s++) {
+                    buffer.putInt(offset);
+                    Columns c = chrColumns.get(s);
+                    if (c != null) {
+                        c.sort();
+                        offset += c.starts.size();
+                    }
+                }
+                buffer.putInt(offset);
+            }
+            buffer.putInt(segmentCount);
+            os.write(buffer.getBytes());
+
+            // Columns are written one at a time to avoid buffering the whole file
+            for (int column = 0; column < 3; column++) {
+                for (Map<Integer, Columns> chrColumns : columns.values()) {
+                    for (int s = 0; s < samples.size(); s++) {
+                        Columns c = chrColumns.get(s);
+                        if (c == null) continue;
+                        buffer = new BufferedByteWriter(c.starts.size() * 4);
+                        for (int i = 0; i < c.starts.size(); i++) {
+                            switch (column) {
+                                case 0:
+                                    buffer.putInt(c.starts.get(i));
+                                    break;
+                                case 1:
+                                    buffer.putInt(c.ends.get(i));
+                                    break;
+                                default:
+                                    buffer.putFloat(c.values.get(i));
+                            }
+                        }
+                        os.write(buffer.getBytes());
+                    }
+                }
+            }
+        }
+    }
+
+    static class Columns {
+        IntArrayList starts = new IntArrayList(100);
+        IntArrayList ends = new IntArrayList(100);
+        FloatArrayList values = new FloatArrayList(100);
+
+        void add(int start, int end, float value) {
+            starts.add(start);
+            ends.add(end);
+            values.add(value);
+        }
+
+        /**
+         * Sort by start position, segment files are usually sorted already
+         */
+        void sort() {
+            int n = starts.size();
+            boolean sorted = true;
+            for (int i = 1; i < n && sorted; i++) {
+                sorted = starts.get(i - 1) <= starts.get(i);
+            }
+            if (sorted) return;
+
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer i1, Integer i2) {
+                    int s1 = starts.get(i1);
+                    int s2 = starts.get(i2);
+                    return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+                }
+            });
+            IntArrayList sortedStarts = new IntArrayList(n);
+            IntArrayList sortedEnds = new IntArrayList(n);
+            FloatArrayList sortedValues = new FloatArrayList(n);
+            for (int i : order) {
+                sortedStarts.add(starts.get(i));
+                sortedEnds.add(ends.get(i));
+                sortedValues.add(values.get(i));
+            }
+            starts = sortedStarts;
+            ends = sortedEnds;
+            values = sortedValues;
+        }
+    }
+}
@@ -22,10 +22,14 @@ import java.awt.*;
 import java.io.File;
 import java.sql.*;
 import java.util.*;
+import java.util.List;
 
 /**
  * Class for database connections.  Manages connections based on
  * ResourceLocators, connects, loads drivers, and can perform limited data conversion (from ResultSet -> String, String[])
+ * <p/>
+ * Connections are pooled per url: they are borrowed with {@link #getConnection(ResourceLocator)} and
+ * released when the results have been read, and stay open for the next query.
  *
  * @author Jim Robinson
  * @date 10/31/11
@@ -34,8 +38,27 @@ public class DBManager {
 
     private static Logger log = Logger.getLogger(DBManager.class);
 
-    static Map<String, Connection> connectionPool =
-            Collections.synchronizedMap(new HashMap<String, Connection>());
+    /**
+     * Maximum number of idle connections kept open per database
+     */
+    static int maxIdleConnections = 4;
+
+    /**
+     * Idle connections are closed after this many milliseconds,
+     * servers drop them eventually anyway
+     */
+    static long maxIdleTime = 10 * 60 * 1000;
+
+    /**
+     * Idle connections by url, least recently released first
+     */
+    static Map<String, LinkedList<IdleConnection>> connectionPool = new HashMap<String, LinkedList<IdleConnection>>();
+
+    /**
+     * Url of each connection opened here, whether borrowed or idle.  Weak so that
+     * connections which are closed rather than released don't accumulate.
+     */
+    private static Map<Connection, String> connectionUrls = new WeakHashMap<Connection, String>();
 
     private static Map<String, String> driverMap;
 
@@ -47,47 +70,139 @@ public class DBManager {
         driverMap.put("oracle", "oracle.jdbc.driver.OracleDriver");
     }
 
+    /**
+     * Borrow a connection to the database at {@code locator}, reusing an idle one if possible.
+     * Connections should be returned with {@link #releaseConnection(java.sql.Connection)},
+     * or {@link #closeAll(java.sql.ResultSet)}, rather than closed.
+     *
+     * @param locator
+     * @return
+     */
     public static Connection getConnection(ResourceLocator locator) {
         String url = locator.getPath();
-        if (connectionPool.containsKey(url)) {
-            Connection conn = connectionPool.get(url);
-            try {
-                if (conn == null || conn.isClosed()) {
-                    connectionPool.remove(url);
-                } else {
-                    return conn;
+        List<Connection> expired = new ArrayList<Connection>();
+        Connection conn = null;
+        synchronized (connectionPool) {
+            LinkedList<IdleConnection> idle = connectionPool.get(url);
+            if (idle != null) {
+                long oldest = System.currentTimeMillis() - maxIdleTime;
+                while (!idle.isEmpty() && idle.getFirst().releaseTime < oldest) {
+                    expired.add(idle.removeFirst().connection);
+                }
+                while (conn == null && !idle.isEmpty()) {
+                    Connection candidate = idle.removeLast().connection;
+                    try {
+                        if (!candidate.isClosed()) {
+                            conn = candidate;
+                        }
+                    } catch (SQLException e) {
+                        log.error("Bad connection", e);
+                        expired.add(candidate);
+                    }
                 }
-            } catch (SQLException e) {
-                log.error("Bad connection", e);
-                connectionPool.remove(url);
             }
         }
+        for (Connection c : expired) {
+            closeConnection(c);
+        }
+        if (conn != null) {
+            return conn;
+        }
 
-        // No valid connections
-        Connection conn = connect(locator);
+        // No valid idle connections
+        conn = connect(locator);
         if (conn != null) {
-            connectionPool.put(url, conn);
-            log.info("Connection pool size: " + connectionPool.size());
+            synchronized (connectionPool) {
+                connectionUrls.put(conn, url);
+            }
         }
         return conn;
-
     }
 
-    public static void closeConnection(ResourceLocator locator) {
-        String url = locator.getPath();
-        if (connectionPool.containsKey(url)) {
-            Connection conn = connectionPool.get(url);
+    /**
+     * Return a connection to the pool, or close it if there
+     * are enough idle connections already
+     *
+     * @param conn
+     */
+    public static void releaseConnection(Connection conn) {
+        if (conn == null) return;
+        synchronized (connectionPool) {
+            String url = connectionUrls.get(conn);
             try {
-                if (conn != null && !conn.isClosed()) {
-                    conn.close();
-                    connectionPool.remove(url);
+                if (url != null && !conn.isClosed()) {
+                    LinkedList<IdleConnection> idle = connectionPool.get(url);
+                    if (idle == null) {
+                        idle = new LinkedList<IdleConnection>();
+                        connectionPool.put(url, idle);
+                    }
+                    for (IdleConnection ic : idle) {
+                        if (ic.connection == conn) return;
+                    }
+                    if (idle.size() < maxIdleConnections) {
+                        idle.addLast(new IdleConnection(conn));
+                        return;
+                    }
                 }
             } catch (SQLException e) {
-                log.error(e.getMessage(), e);
+                log.error("Bad connection", e);
+            }
+            connectionUrls.remove(conn);
+        }
+        closeConnection(conn);
+    }
+
+    /**
+     * Close a borrowed connection which failed, rather than returning it to the pool.  The idle
+     * connections to the same database were released before it, so if the server dropped it
+     * they are likely gone as well, and are closed too.
+     *
+     * @param conn
+     */
+    public static void discardConnection(Connection conn) {
+        if (conn == null) return;
+        LinkedList<IdleConnection> idle = null;
+        synchronized (connectionPool) {
+            String url = connectionUrls.remove(conn);
+            if (url != null) {
+                idle = connectionPool.remove(url);
+            }
+        }
+        closeConnection(conn);
+        if (idle != null) {
+            for (IdleConnection ic : idle) {
+                closeConnection(ic.connection);
+            }
+        }
+    }
+
+    /**
+     * Close the idle connections to the database at {@code locator}
+     *
+     * @param locator
+     */
+    public static void closeConnection(ResourceLocator locator) {
+        LinkedList<IdleConnection> idle;
+        synchronized (connectionPool) {
+            idle = connectionPool.remove(locator.getPath());
+        }
+        if (idle != null) {
+            for (IdleConnection ic : idle) {
+                closeConnection(ic.connection);
             }
         }
     }
 
+    private static void closeConnection(Connection conn) {
+        try {
+            if (!conn.isClosed()) {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            log.error("Error closing sql connection", e);
+        }
+    }
+
     private static String getSubprotocol(String url) {
         String[] tokens = url.split(":");
         return tokens[1];
@@ -122,16 +237,15 @@ public class DBManager {
     }
 
     public static void shutdown() {
-        for (Connection conn : connectionPool.values()) {
-            if (conn != null) {
-                try {
-                    conn.close();
-                } catch (SQLException e) {
-                    log.error("Error shutting down " + conn.toString(), e);
-                }
-            }
+        List<Connection> connections;
+        synchronized (connectionPool) {
+            connections = new ArrayList<Connection>(connectionUrls.keySet());
+            connectionUrls.clear();
+            connectionPool.clear();
+        }
+        for (Connection conn : connections) {
+            closeConnection(conn);
         }
-        connectionPool.clear();
     }
 
     public static java.lang.Class<?> createDriver(String subprotocol) {
@@ -184,8 +298,8 @@ public class DBManager {
     }
 
     /**
-     * Close all resources associated with the ResultSet,
-     * including the statement and connection
+     * Close all resources associated with the ResultSet, including the
+     * statement.  The connection is returned to the pool.
      * @param rs
      */
     public static void closeAll(ResultSet rs){
@@ -205,7 +319,7 @@ public class DBManager {
     }
 
     /**
-     * Close the specified resources
+     * Close the specified resources, returning the connection to the pool
      *
      * @param rs
      * @param st
@@ -226,31 +340,7 @@ public class DBManager {
                 log.error("Error closing statement", e);
             }
         }
-        if (conn != null) {
-            try {
-                conn.close();
-                pruneConnectionPool();
-            } catch (SQLException e) {
-                log.error("Error closing sql connection", e);
-            }
-        }
-
-    }
-
-    /**
-     * Remove all closed connection objects from the connection pool.
-     * @throws SQLException
-     */
-    private static void pruneConnectionPool() throws SQLException{
-        Set<String> toRemove = new HashSet<String>();
-        for(Map.Entry<String, Connection> entry: connectionPool.entrySet()){
-            if(entry.getValue().isClosed()){
-                toRemove.add(entry.getKey());
-            }
-        }
-        for(String url: toRemove){
-            connectionPool.remove(url);
-        }
+        releaseConnection(conn);
     }
 
     /**
@@ -316,9 +406,21 @@ public class DBManager {
      * @throws SQLException
      */
     private static String getStringFromResultSet(ResultSet rs, int sqlCol) throws SQLException {
-        String s;
-        int type = rs.getMetaData().getColumnType(sqlCol);
+        return getStringFromResultSet(rs, sqlCol, rs.getMetaData().getColumnType(sqlCol));
+    }
 
+    /**
+     * Get the value at column {@code sqlCol} in the current row as a string,
+     * where the column type has already been looked up.
+     *
+     * @param rs
+     * @param sqlCol 1-indexed column number
+     * @param type   column type, from {@link java.sql.Types}
+     * @return
+     * @throws SQLException
+     */
+    static String getStringFromResultSet(ResultSet rs, int sqlCol, int type) throws SQLException {
+        String s;
         if (blobTypes.contains(type)) {
             Blob b = rs.getBlob(sqlCol);
             s = new String(b.getBytes(1l, (int) b.length()));
@@ -338,4 +440,14 @@ public class DBManager {
         }
     }
 
+
+    private static class IdleConnection {
+        Connection connection;
+        long releaseTime;
+
+        IdleConnection(Connection connection) {
+            this.connection = connection;
+            this.releaseTime = System.currentTimeMillis();
+        }
+    }
 }
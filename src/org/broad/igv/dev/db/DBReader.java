@@ -33,6 +33,11 @@ public class DBReader {
 
     private static Logger log = Logger.getLogger(DBReader.class);
 
+    /**
+     * Number of rows fetched from the server at a time, for drivers which support it
+     */
+    protected static final int FETCH_SIZE = 1000;
+
     protected ResourceLocator locator;
     protected String baseQueryString;
     private String tableName;
@@ -73,6 +78,7 @@ public class DBReader {
         try {
             Connection conn = DBManager.getConnection(locator);
             Statement st = conn.createStatement();
+            setFetchSize(st);
             return st.executeQuery(queryString);
         } catch (SQLException e) {
             log.error("Database error", e);
@@ -80,6 +86,19 @@ public class DBReader {
         }
     }
 
+    /**
+     * Fetch rows in batches for server databases.  The sqlite driver
+     * treats the fetch size as a row limit, so it is left alone there.
+     *
+     * @param st
+     * @throws SQLException
+     */
+    protected void setFetchSize(Statement st) throws SQLException {
+        if (!locator.getPath().startsWith("jdbc:sqlite:")) {
+            st.setFetchSize(FETCH_SIZE);
+        }
+    }
+
     public String getTableName() {
         return tableName;
     }
@@ -13,10 +13,17 @@ package org.broad.igv.dev.db;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.broad.igv.feature.BasicFeature;
 import org.broad.igv.feature.LocusScore;
+import org.broad.igv.feature.Strand;
+import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.genome.GenomeManager;
 import org.broad.igv.feature.tribble.CodecFactory;
+import org.broad.igv.feature.tribble.IGVBEDCodec;
 import org.broad.igv.track.FeatureSource;
+import org.broad.igv.ui.color.ColorUtilities;
+import org.broad.igv.util.collections.IntArrayList;
+import org.broad.igv.util.collections.LRUCache;
 import org.broad.tribble.AsciiFeatureCodec;
 import org.broad.tribble.Feature;
 import org.broad.tribble.FeatureCodec;
@@ -27,6 +34,7 @@ import org.broad.tribble.readers.LineIteratorImpl;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -93,6 +101,36 @@ public class SQLCodecSource extends DBQueryReader<Feature> implements FeatureSou
 
     private static final int MAX_BINS = 20;
 
+    /**
+     * Size of the intervals queried and cached.  Queries spanning more than
+     * MAX_CACHED_QUERY_BINS intervals go straight to the database, unless
+     * all of them are cached already.
+     */
+    static int queryBinSize = 128 * 1024;
+    private static final int MAX_CACHED_QUERY_BINS = 16;
+    private static final int MAX_CACHED_BINS = 100;
+
+    private final LRUCache<String, QueryBin> binCache = new LRUCache<String, QueryBin>(MAX_CACHED_BINS);
+
+    /**
+     * Connection the range query statements were prepared on, and the statements, without and
+     * with the bin column.  A connection is borrowed for each query and released afterwards;
+     * the statements are reused as long as the pool hands back the same connection.
+     */
+    private Connection statementConnection;
+    private final PreparedStatement[] queryStatements = new PreparedStatement[2];
+
+    /**
+     * Column plan for the result set being read
+     */
+    private SQLRowReader rowReader;
+
+    /**
+     * Plain BED rows are mapped straight to features, rather than
+     * through a text line and the codec
+     */
+    private final boolean typedBED;
+
     SQLCodecSource(DBProfile.DBTable table, AsciiFeatureCodec codec) {
         super(table);
         this.codec = codec;
@@ -102,10 +140,20 @@ public class SQLCodecSource extends DBQueryReader<Feature> implements FeatureSou
         this.posEndColName = table.getPosEndColName();
         this.startColIndex = table.getStartColIndex();
         this.endColIndex = table.getEndColIndex();
+        this.typedBED = isTypedBED(codec);
 
         readHeader();
     }
 
+    /**
+     * The typed mapping covers plain BED; gff tags and splice junctions go through the codec
+     */
+    private static boolean isTypedBED(AsciiFeatureCodec<?> codec) {
+        if (codec.getClass() != IGVBEDCodec.class) return false;
+        IGVBEDCodec bedCodec = (IGVBEDCodec) codec;
+        return !bedCodec.isGffTags() && !bedCodec.isSpliceJunctions();
+    }
+
     /**
      * Read header information from file or database
      * Motivation is mostly for the VCF codec.
@@ -197,35 +245,113 @@ public class SQLCodecSource extends DBQueryReader<Feature> implements FeatureSou
         return source;
     }
 
-    private String rowToStringLine(ResultSet rs) throws SQLException {
-        String[] tokens = rowToStringArray(rs);
-        return StringUtils.join(tokens, "\t");
+    @Override
+    protected Feature processResult(ResultSet rs) throws SQLException {
+        if (rowReader == null || !rowReader.isFor(rs)) {
+            rowReader = new SQLRowReader(rs, table);
+        }
+        if (typedBED) {
+            return decodeBED(rowReader);
+        }
+        return codec.decode(rowReader.getLine());
     }
 
-    //TODO We already know how to parse strings, so just turn everything to strings
-    //TODO See IParser for better, type-safe way of handling different data sources
-    private String[] rowToStringArray(ResultSet rs) throws SQLException {
+    /**
+     * Create a feature from the BED columns of the current row, reading numeric columns directly.
+     * Follows {@link IGVBEDCodec#decode(String[])}
+     */
+    private BasicFeature decodeBED(SQLRowReader row) throws SQLException {
 
-        String[] tokens;
-        if (table.getColumnLabelMap() != null) {
-            tokens = DBManager.lineToArray(rs, table.getColumnLabelMap());
-        } else {
-            tokens = DBManager.lineToArray(rs, startColIndex, endColIndex, false);
+        int tokenCount = row.size();
+        if (tokenCount < 2) {
+            return null;
         }
-        return tokens;
-    }
 
-    @Override
-    protected Feature processResult(ResultSet rs) throws SQLException {
-        String line = rowToStringLine(rs);
-        return codec.decode(line);
+        String c = row.getString(0);
+        Genome genome = ((IGVBEDCodec) codec).getGenome();
+        String chr = genome == null ? c : genome.getChromosomeAlias(c);
+
+        int start = row.getInt(1);
+        int end = start + 1;
+        if (tokenCount > 2) {
+            end = row.getInt(2);
+        }
+
+        BasicFeature feature = new BasicFeature(chr, start, end);
+
+        // Name
+        if (tokenCount > 3) {
+            String name = row.getString(3);
+            if (name != null) {
+                name = name.replaceAll("\"", "");
+                if (name.equals(".")) name = "";
+                feature.setName(name);
+                feature.setIdentifier(name);
+            }
+        }
+
+        // Score. Stop at the first unexpected value, keeping the feature
+        if (tokenCount > 4) {
+            try {
+                feature.setScore(row.getFloat(4));
+            } catch (NumberFormatException e) {
+                return feature;
+            }
+        }
+
+        // Strand
+        if (tokenCount > 5) {
+            String strandString = row.getString(5);
+            strandString = strandString == null ? "" : strandString.trim();
+            char strand = (strandString.length() == 0) ? ' ' : strandString.charAt(0);
+            if (strand == '-') {
+                feature.setStrand(Strand.NEGATIVE);
+            } else if (strand == '+') {
+                feature.setStrand(Strand.POSITIVE);
+            } else {
+                feature.setStrand(Strand.NONE);
+            }
+        }
+
+        // Thick ends
+        int thickStart = start;
+        int thickEnd = end;
+        if (tokenCount > 7) {
+            try {
+                thickStart = row.getInt(6);
+                thickEnd = row.getInt(7);
+            } catch (NumberFormatException e) {
+                return feature;
+            }
+            if (thickStart < start || thickStart > end || thickEnd < start || thickEnd > end) {
+                return feature;
+            }
+            feature.setThickStart(thickStart);
+            feature.setThickEnd(thickEnd);
+        }
+
+        // Color
+        if (tokenCount > 8) {
+            String colorString = row.getString(8);
+            if (colorString != null && colorString.trim().length() > 0 && !colorString.equals(".")) {
+                feature.setColor(ColorUtilities.stringToColor(colorString));
+            }
+        }
+
+        // Exons
+        if (tokenCount > 11) {
+            IGVBEDCodec.createExons(feature, start, thickStart, thickEnd, row.getInt(9),
+                    row.getString(10), row.getString(11));
+        }
+
+        return feature;
     }
 
     /**
      * @param useBinning Whether to query using bin column, for efficiency
      * @throws IOException
      */
-    private PreparedStatement generateQueryStatement(boolean useBinning) throws IOException {
+    private PreparedStatement generateQueryStatement(Connection conn, boolean useBinning) throws IOException {
         PreparedStatement queryStatement;
 
         String prependWord = baseQueryString.contains("WHERE") ? " AND " : " WHERE ";
@@ -244,9 +370,9 @@ public class SQLCodecSource extends DBQueryReader<Feature> implements FeatureSou
                 String[] qs = new String[MAX_BINS];
                 Arrays.fill(qs, "?");
                 String binnedQueryString = queryString + String.format(" AND %s IN (%s) %s", binColName, StringUtils.join(qs, ','), orderClause);
-                queryStatement = DBManager.getConnection(locator).prepareStatement(binnedQueryString);
+                queryStatement = conn.prepareStatement(binnedQueryString);
             } else {
-                queryStatement = DBManager.getConnection(locator).prepareStatement(queryString + " " + orderClause);
+                queryStatement = conn.prepareStatement(queryString + " " + orderClause);
             }
             return queryStatement;
         } catch (SQLException e) {
@@ -256,7 +382,48 @@ public class SQLCodecSource extends DBQueryReader<Feature> implements FeatureSou
 
     }
 
-    private Iterator query(String chr, int start, int end) throws IOException {
+    /**
+     * Get the prepared range query statement on {@code conn}, preparing it if it
+     * was not prepared on that connection already
+     */
+    private PreparedStatement getQueryStatement(Connection conn, boolean useBinning) throws IOException {
+        if (conn != statementConnection) {
+            closeQueryStatements();
+            statementConnection = conn;
+        }
+        int index = useBinning ? 1 : 0;
+        PreparedStatement statement = queryStatements[index];
+        if (statement == null) {
+            statement = generateQueryStatement(conn, useBinning);
+            try {
+                setFetchSize(statement);
+            } catch (SQLException e) {
+                DBManager.closeResources(null, statement, null);
+                log.error("Error initializing query statement", e);
+                throw new IOException(e);
+            }
+            queryStatements[index] = statement;
+        }
+        return statement;
+    }
+
+    /**
+     * Close the query statements.  Connections are only borrowed for a query, so none are held.
+     */
+    public synchronized void dispose() {
+        closeQueryStatements();
+        binCache.clear();
+    }
+
+    private void closeQueryStatements() {
+        for (int i = 0; i < queryStatements.length; i++) {
+            DBManager.closeResources(null, queryStatements[i], null);
+            queryStatements[i] = null;
+        }
+        statementConnection = null;
+    }
+
+    private PreparedStatement setQueryParameters(Connection conn, String chr, int start, int end) throws IOException {
 
         Set<Integer> bins = null;
         boolean useBinning = false;
@@ -264,7 +431,7 @@ public class SQLCodecSource extends DBQueryReader<Feature> implements FeatureSou
             bins = calculateBins(start, end);
             useBinning = bins.size() < MAX_BINS;
         }
-        PreparedStatement statement = generateQueryStatement(useBinning);
+        PreparedStatement statement = getQueryStatement(conn, useBinning);
 
         try {
             statement.clearParameters();
@@ -296,10 +463,116 @@ public class SQLCodecSource extends DBQueryReader<Feature> implements FeatureSou
             log.error(e.getMessage(), e);
             throw new IOException(e);
         }
+        return statement;
+    }
+
+    /**
+     * Load the features overlapping the interval.  If the query fails, the connection
+     * may have been dropped by the server while idle, so it is retried once.
+     */
+    private QueryBin loadBin(String chr, int start, int end) throws IOException {
+        try {
+            return loadBinOnce(chr, start, end);
+        } catch (IOException e) {
+            if (!(e.getCause() instanceof SQLException)) throw e;
+            log.info("Retrying query on a new connection: " + e.getCause().getMessage());
+            return loadBinOnce(chr, start, end);
+        }
+    }
+
+    /**
+     * Load the features overlapping the interval on a connection borrowed for this query.
+     * The connection is returned to the pool if the query succeeds, and discarded otherwise.
+     */
+    private QueryBin loadBinOnce(String chr, int start, int end) throws IOException {
+
+        Connection conn = DBManager.getConnection(locator);
+        if (conn == null) {
+            throw new IOException("Unable to connect to " + locator.getPath());
+        }
+        boolean success = false;
+        ResultSet rs = null;
+        try {
+            PreparedStatement statement = setQueryParameters(conn, chr, start, end);
+            rs = statement.executeQuery();
+            QueryBin bin = new QueryBin();
+            int startCol = findColumn(rs, posStartColName);
+            int endCol = posEndColName == null ? -1 : findColumn(rs, posEndColName);
+            while (rs.next()) {
+                Feature feature = processResult(rs);
+                if (feature == null) continue;
+                int featStart = startCol > 0 ? rs.getInt(startCol) : feature.getStart();
+                int featEnd = endCol > 0 ? rs.getInt(endCol) : feature.getEnd();
+                bin.add(feature, featStart, featEnd);
+            }
+            success = true;
+            return bin;
+        } catch (SQLException e) {
+            log.error("Database error", e);
+            throw new IOException(e);
+        } finally {
+            // The statements are kept open for the next query, only the result set is closed
+            DBManager.closeResources(rs, null, null);
+            if (success) {
+                DBManager.releaseConnection(conn);
+            } else {
+                closeQueryStatements();
+                DBManager.discardConnection(conn);
+            }
+        }
+    }
+
+    private static int findColumn(ResultSet rs, String columnLabel) {
+        try {
+            return rs.findColumn(columnLabel);
+        } catch (SQLException e) {
+            // Queried on but not selected, fall back to feature coordinates
+            return -1;
+        }
+    }
+
+    /**
+     * Query in fixed size, aligned intervals, which are cached, so panning and zooming
+     * within an area doesn't hit the database again.
+     */
+    private synchronized Iterator<Feature> query(String chr, int start, int end) throws IOException {
+
+        start = Math.max(start, 0);
+        int firstBin = start / queryBinSize;
+        int lastBin = Math.max(firstBin, (end - 1) / queryBinSize);
+        if (lastBin - firstBin >= MAX_CACHED_QUERY_BINS && !isCached(chr, firstBin, lastBin)) {
+            return loadBin(chr, start, end).features.iterator();
+        }
 
-        return loadIterator(statement);
+        List<Feature> features = new ArrayList<Feature>();
+        for (int b = firstBin; b <= lastBin; b++) {
+            String key = chr + ":" + b;
+            QueryBin bin = binCache.get(key);
+            int binStart = b * queryBinSize;
+            if (bin == null) {
+                bin = loadBin(chr, binStart, binStart + queryBinSize);
+                binCache.put(key, bin);
+            }
+            for (int i = 0; i < bin.features.size(); i++) {
+                int featStart = bin.starts.get(i);
+                // Features starting before this interval are also in the previous one
+                if (b > firstBin && featStart < binStart) continue;
+                // Same condition as the query statement
+                if ((featStart >= start && featStart < end) ||
+                        (posEndColName != null && featStart < start && bin.ends.get(i) >= start)) {
+                    features.add(bin.features.get(i));
+                }
+            }
+        }
+        return features.iterator();
     }
 
+    private boolean isCached(String chr, int firstBin, int lastBin) {
+        for (int b = firstBin; b <= lastBin; b++) {
+            if (!binCache.containsKey(chr + ":" + b)) return false;
+        }
+        return true;
+    }
 
     private static final int SMALLEST_BIN_SIZE = 128 * 1024;
 
@@ -427,4 +700,20 @@ public class SQLCodecSource extends DBQueryReader<Feature> implements FeatureSou
     public void setFeatureWindowSize(int size) {
         this.featureWindowSize = size;
     }
+
+    /**
+     * Features from a range query, along with the start and end column
+     * values they were selected on.
+     */
+    private static class QueryBin {
+        List<Feature> features = new ArrayList<Feature>();
+        IntArrayList starts = new IntArrayList();
+        IntArrayList ends = new IntArrayList();
+
+        void add(Feature feature, int start, int end) {
+            features.add(feature);
+            starts.add(start);
+            ends.add(end);
+        }
+    }
 }
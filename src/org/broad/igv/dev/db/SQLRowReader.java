@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+package org.broad.igv.dev.db;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Map;
+
+/**
+ * Reads the feature columns of the current row of a {@code ResultSet}.
+ * Column indexes and types are looked up once per result set, rather than for every value,
+ * and numeric columns can be read directly without going through a string.
+ * <p/>
+ * Some drivers (sqlite) report the type of the value in the current row, so
+ * instances should be created after the first call to {@link ResultSet#next()}.
+ */
+class SQLRowReader {
+
+    private final ResultSet rs;
+
+    /**
+     * 1-based sql column of each token, 0 if the token is not mapped to a column
+     */
+    private final int[] sqlCols;
+    private final int[] types;
+
+    SQLRowReader(ResultSet rs, DBProfile.DBTable table) throws SQLException {
+        this.rs = rs;
+        ResultSetMetaData md = rs.getMetaData();
+        Map<Integer, String> columnLabelMap = table.getColumnLabelMap();
+        if (columnLabelMap != null) {
+            String[] colNames = DBProfile.DBTable.columnMapToArray(columnLabelMap);
+            sqlCols = new int[colNames.length];
+            for (int cc = 0; cc < colNames.length; cc++) {
+                if (colNames[cc] != null) {
+                    sqlCols[cc] = rs.findColumn(colNames[cc]);
+                }
+            }
+        } else {
+            int startColIndex = table.getStartColIndex();
+            int colCount = Math.min(md.getColumnCount(), table.getEndColIndex()) - startColIndex + 1;
+            sqlCols = new int[Math.max(colCount, 0)];
+            for (int cc = 0; cc < sqlCols.length; cc++) {
+                sqlCols[cc] = cc + startColIndex;
+            }
+        }
+
+        types = new int[sqlCols.length];
+        for (int cc = 0; cc < sqlCols.length; cc++) {
+            types[cc] = sqlCols[cc] > 0 ? md.getColumnType(sqlCols[cc]) : Types.NULL;
+        }
+    }
+
+    /**
+     * @param rs
+     * @return whether this reader was created for {@code rs}
+     */
+    boolean isFor(ResultSet rs) {
+        return this.rs == rs;
+    }
+
+    /**
+     * @return number of tokens in a row
+     */
+    int size() {
+        return sqlCols.length;
+    }
+
+    /**
+     * @param token 0-based token index
+     * @return the value as a string, or null if the value is null or the token is not mapped
+     * @throws SQLException
+     */
+    String getString(int token) throws SQLException {
+        if (sqlCols[token] == 0) return null;
+        return DBManager.getStringFromResultSet(rs, sqlCols[token], types[token]);
+    }
+
+    /**
+     * @param token 0-based token index
+     * @return the value as an int
+     * @throws SQLException
+     * @throws NumberFormatException if the value is null or not a number
+     */
+    int getInt(int token) throws SQLException, NumberFormatException {
+        if (isNumeric(token)) {
+            int value = rs.getInt(sqlCols[token]);
+            if (rs.wasNull()) throw new NumberFormatException("null");
+            return value;
+        }
+        return Integer.parseInt(getString(token));
+    }
+
+    /**
+     * @param token 0-based token index
+     * @return the value as a float
+     * @throws SQLException
+     * @throws NumberFormatException if the value is null or not a number
+     */
+    float getFloat(int token) throws SQLException, NumberFormatException {
+        if (isNumeric(token)) {
+            float value = rs.getFloat(sqlCols[token]);
+            if (rs.wasNull()) throw new NumberFormatException("null");
+            return value;
+        }
+        String s = getString(token);
+        if (s == null) throw new NumberFormatException("null");
+        return Float.parseFloat(s);
+    }
+
+    /**
+     * @return the current row as a tab delimited line, null values are empty
+     * @throws SQLException
+     */
+    String getLine() throws SQLException {
+        StringBuilder line = new StringBuilder();
+        for (int cc = 0; cc < sqlCols.length; cc++) {
+            if (cc > 0) line.append('\t');
+            String s = getString(cc);
+            if (s != null) line.append(s);
+        }
+        return line.toString();
+    }
+
+    private boolean isNumeric(int token) {
+        switch (types[token]) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return sqlCols[token] > 0;
+            default:
+                return false;
+        }
+    }
+}
@@ -59,6 +59,10 @@ public class Exon extends AbstractFeature implements IExon {
         this.mrnaBase = base;
     }
 
+    public int getMrnaBase() {
+        return mrnaBase;
+    }
+
     /**
      * Get amino acid number based on genomic coordinate.
      * Genome coordinate MUST be 0-based
@@ -248,6 +252,10 @@ public class Exon extends AbstractFeature implements IExon {
         this.number = number;
     }
 
+    public int getNumber() {
+        return number;
+    }
+
     public String getURL() {
         return null;  //To change body of implemented methods use File | Settings | File Templates.
     }
@@ -156,6 +156,18 @@ public class FeatureDB {
     private FeatureDB() {
     }
 
+    /**
+     * A name index entry which stands in for a feature that is not decoded yet, e.g. a gene in a memory mapped
+     * genome cache file.  Lookups return the feature it refers to.
+     */
+    public interface FeatureReference extends NamedFeature {
+        NamedFeature getFeature();
+    }
+
+    private static NamedFeature resolve(NamedFeature feature) {
+        return feature instanceof FeatureReference ? ((FeatureReference) feature).getFeature() : feature;
+    }
+
 
     public static void addFeatures(List<org.broad.tribble.Feature> features, Genome genome) {
         for (org.broad.tribble.Feature feature : features) {
@@ -169,6 +181,40 @@ public class FeatureDB {
         featureMap.clear();
     }
 
+    /**
+     * Return a copy of the name index, as map of upper case name -> features.  Entries can be
+     * {@link FeatureReference}s.
+     */
+    public static Map<String, List<NamedFeature>> getNameIndex() {
+        synchronized (featureMap) {
+            Map<String, List<NamedFeature>> index = new LinkedHashMap<String, List<NamedFeature>>(featureMap.size());
+            for (Map.Entry<String, List<NamedFeature>> entry : featureMap.entrySet()) {
+                index.put(entry.getKey(), new ArrayList<NamedFeature>(entry.getValue()));
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Add entries previously returned by {@link #getNameIndex()}.  Names are not checked against the genome.
+     *
+     * @param index map of upper case name -> features
+     */
+    public static void addNameIndex(Map<String, List<NamedFeature>> index) {
+        synchronized (featureMap) {
+            for (Map.Entry<String, List<NamedFeature>> entry : index.entrySet()) {
+                List<NamedFeature> list = featureMap.get(entry.getKey());
+                if (list == null) {
+                    list = new SortedList<NamedFeature>(new ArrayList<NamedFeature>(), FeatureComparator.get(true));
+                    featureMap.put(entry.getKey(), list);
+                }
+                for (NamedFeature feature : entry.getValue()) {
+                    list.add(feature);
+                }
+            }
+        }
+    }
+
     static int size() {
         return featureMap.size();
     }
@@ -181,7 +227,7 @@ public class FeatureDB {
         List<NamedFeature> features = featureMap.get(nm);
 
         if (features != null) {
-            return features.get(0);
+            return resolve(features.get(0));
         } else {
             return null;
         }
@@ -244,9 +290,11 @@ public class FeatureDB {
             while (nameIter.hasNext() && ii < limit) {
                 List<NamedFeature> subFeats = resultMap.get(nameIter.next());
                 if (longestOnly) {
-                    features.add(subFeats.get(0));
+                    features.add(resolve(subFeats.get(0)));
                 } else {
-                    features.addAll(subFeats);
+                    for (NamedFeature f : subFeats) {
+                        features.add(resolve(f));
+                    }
                 }
                 ii++;
             }
@@ -280,7 +328,8 @@ public class FeatureDB {
 
         if (possibles != null) {
             synchronized (featureMap) {
-                for (NamedFeature f : possibles) {
+                for (NamedFeature possible : possibles) {
+                    NamedFeature f = resolve(possible);
                     if (!(f instanceof BasicFeature)) {
                         continue;
                     }
@@ -331,7 +380,8 @@ public class FeatureDB {
 
         if (possibles != null) {
             synchronized (featureMap) {
-                for (NamedFeature f : possibles) {
+                for (NamedFeature possible : possibles) {
+                    NamedFeature f = resolve(possible);
                     if (!(f instanceof BasicFeature)) {
                         continue;
                     }
@@ -27,9 +27,11 @@ import org.broad.igv.feature.Chromosome;
 import org.broad.igv.feature.Cytoband;
 import org.broad.igv.track.FeatureTrack;
 import org.broad.igv.ui.util.MessageUtils;
+import org.broad.igv.util.StageTimer;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Simple model of a genome.  Keeps an ordered list of Chromosomes, an alias table, and genome position offsets
@@ -48,7 +50,7 @@ public class Genome {
     private long totalLength = -1;
     private long nominalLength = -1;
     private Map<String, Long> cumulativeOffsets = new HashMap();
-    private Map<String, String> chrAliasTable;
+    private ConcurrentHashMap<String, String> chrAliasTable;
     private Sequence sequence;
     private FeatureTrack geneTrack;
     private String species;
@@ -62,7 +64,7 @@ public class Genome {
     public Genome(String id, String displayName, Sequence sequence, boolean chromosOrdered) {
         this.id = id;
         this.displayName = displayName;
-        this.chrAliasTable = new HashMap<String, String>();
+        this.chrAliasTable = new ConcurrentHashMap<String, String>();
         this.sequence = sequence;
         chromosomeNames = sequence.getChromosomeNames();
 
@@ -100,7 +102,7 @@ public class Genome {
     public Genome(String id, List<Chromosome> chromosomes) {
         this.id = id;
         this.displayName = id;
-        this.chrAliasTable = new HashMap<String, String>();
+        this.chrAliasTable = new ConcurrentHashMap<String, String>();
         this.sequence = null;
 
         chromosomeNames = new ArrayList<String>(chromosomes.size());
@@ -119,11 +121,13 @@ public class Genome {
             return str;
         } else {
             //We intern strings used as chromosomes
-            //to prevent storing multiple times
-            if (!chrAliasTable.containsKey(str)) {
-                chrAliasTable.put(str, str);
+            //to prevent storing multiple times.  The table is concurrent, feature files are decoded in parallel
+            String alias = chrAliasTable.get(str);
+            if (alias == null) {
+                alias = chrAliasTable.putIfAbsent(str, str);
+                if (alias == null) alias = str;
             }
-            return chrAliasTable.get(str);
+            return alias;
         }
     }
 
@@ -140,7 +144,7 @@ public class Genome {
      */
     public void addChrAliases(Collection<Collection<String>> synonymsList) {
 
-        if(chrAliasTable == null) chrAliasTable = new HashMap<String, String>();
+        if(chrAliasTable == null) chrAliasTable = new ConcurrentHashMap<String, String>();
 
         // Convert names to a set for fast "contains" testing.
         Set<String> chrNameSet = new HashSet<String>(chromosomeNames);
@@ -405,7 +409,12 @@ public class Genome {
         if (end <= start) {
             return null;
         }
-        return sequence.getSequence(chr, start, end);
+        StageTimer.push(StageTimer.Stage.SEQUENCE);
+        try {
+            return sequence.getSequence(chr, start, end);
+        } finally {
+            StageTimer.pop();
+        }
     }
 
     public String getDisplayName() {
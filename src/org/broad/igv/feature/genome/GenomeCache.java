@@ -0,0 +1,531 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.genome;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.DirectoryManager;
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.feature.AbstractFeature;
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.Cytoband;
+import org.broad.igv.feature.Exon;
+import org.broad.igv.feature.NamedFeature;
+import org.broad.igv.feature.Strand;
+import org.broad.igv.track.FeatureCollectionSource;
+import org.broad.igv.track.PackedFeatures;
+import org.broad.igv.util.collections.MultiMap;
+import org.broad.tribble.Feature;
+
+import java.awt.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Compiled form of the parts of a .genome archive which are slow to parse: cytobands, the chromosome alias
+ * table, the gene annotations, and the feature name index built from them.  The cache file is written on the
+ * first load of an archive and memory mapped on later loads.
+ * <p/>
+ * Gene annotations are stored by chromosome, with the row each feature is packed into, and are read through a
+ * {@link MappedGeneSource}, which decodes a chromosome when it is first viewed.  Name index entries refer to the
+ * stored features, and are decoded when they are looked up.  Gene annotations are cached only if all features
+ * are plain {@link BasicFeature}s with plain {@link Exon}s and the file has no track line, otherwise they are
+ * parsed on each load.
+ * <p/>
+ * Cache files are named by a checksum of the archive path, length, and modification time, which is also stored
+ * in the file and compared on read, so a changed archive gets a new cache file without reading the archive.
+ */
+public class GenomeCache {
+
+    private static Logger log = Logger.getLogger(GenomeCache.class);
+
+    private static final int MAGIC = 0x49475647;   // "IGVG"
+    private static final int VERSION = 2;
+    private static final String EXTENSION = ".genome.bin";
+
+    static File cacheDirectory;
+
+    /**
+     * Contents of a cache file.  Null members were not present in the archive, or for genes, not cached.  Genes
+     * read from a cache file are a {@link MappedGeneSource}, and the name index holds references to its features.
+     */
+    public static class Entry {
+        LinkedHashMap<String, List<Cytoband>> cytobands;
+        Collection<Collection<String>> aliases;
+        FeatureCollectionSource genes;
+        Map<String, List<NamedFeature>> nameIndex;
+    }
+
+    /**
+     * Return the cache file for a genome archive, or null if the cache is disabled or the archive cannot be read.
+     * The file is named by a checksum of the archive path, length, and modification time, and might not exist yet.
+     *
+     * @param archiveFile the .genome file
+     * @return
+     */
+    static File getCacheFile(File archiveFile) {
+
+        if (!PreferenceManager.getInstance().getAsBoolean(PreferenceManager.GENOME_CACHE) || !archiveFile.isFile()) {
+            return null;
+        }
+
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            md5.update((archiveFile.getAbsolutePath() + "\t" + archiveFile.length() + "\t" +
+                    archiveFile.lastModified()).getBytes("UTF-8"));
+
+            StringBuffer name = new StringBuffer();
+            for (byte b : md5.digest()) {
+                name.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+            }
+            name.append(EXTENSION);
+            return new File(getCacheDirectory(), name.toString());
+
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new RuntimeException(e);
+        } catch (NoSuchAlgorithmException e) {
+            log.error("MD5 not available", e);
+            return null;
+        }
+    }
+
+    /**
+     * Return the archive checksum a cache file was written for
+     */
+    private static String getChecksum(File cacheFile) {
+        String name = cacheFile.getName();
+        return name.substring(0, name.length() - EXTENSION.length());
+    }
+
+    private static synchronized File getCacheDirectory() {
+        if (cacheDirectory == null) {
+            cacheDirectory = new File(DirectoryManager.getGenomeCacheDirectory(), "compiled");
+            if (!cacheDirectory.exists()) {
+                cacheDirectory.mkdir();
+            }
+        }
+        return cacheDirectory;
+    }
+
+    /**
+     * Return true if the gene features can be stored
+     */
+    static boolean canCache(List<Feature> genes) {
+        for (Feature f : genes) {
+            if (f.getClass() != BasicFeature.class) return false;
+            List<Exon> exons = ((BasicFeature) f).getExons();
+            if (exons != null) {
+                for (Exon exon : exons) {
+                    if (exon.getClass() != Exon.class) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read a cache file.
+     *
+     * @param cacheFile
+     * @return the cache contents, or null if the file does not exist or cannot be read
+     */
+    static Entry read(File cacheFile) {
+        if (cacheFile == null || !cacheFile.exists()) return null;
+
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(cacheFile);
+            FileChannel channel = fis.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION ||
+                    !getChecksum(cacheFile).equals(readString(buffer))) {
+                return null;
+            }
+
+            Entry entry = new Entry();
+            int nChrs = buffer.getInt();
+            if (nChrs >= 0) {
+                entry.cytobands = new LinkedHashMap<String, List<Cytoband>>(nChrs);
+                for (int i = 0; i < nChrs; i++) {
+                    String chr = readString(buffer);
+                    int nBands = buffer.getInt();
+                    List<Cytoband> bands = new ArrayList<Cytoband>(nBands);
+                    for (int b = 0; b < nBands; b++) {
+                        Cytoband band = new Cytoband(chr);
+                        band.setName(readString(buffer));
+                        band.setStart(buffer.getInt());
+                        band.setEnd(buffer.getInt());
+                        band.setType(buffer.getChar());
+                        band.setStain(buffer.getShort());
+                        bands.add(band);
+                    }
+                    entry.cytobands.put(chr, bands);
+                }
+            }
+
+            int nAliases = buffer.getInt();
+            if (nAliases >= 0) {
+                entry.aliases = new ArrayList<Collection<String>>(nAliases);
+                for (int i = 0; i < nAliases; i++) {
+                    entry.aliases.add(readStrings(buffer));
+                }
+            }
+
+            int nGeneChrs = buffer.getInt();
+            if (nGeneChrs >= 0) {
+                // Features are decoded by the gene source, record where each chromosome starts
+                List<String> chrs = new ArrayList<String>(nGeneChrs);
+                Map<String, Integer> positions = new LinkedHashMap<String, Integer>(nGeneChrs);
+                for (int i = 0; i < nGeneChrs; i++) {
+                    String chr = readString(buffer);
+                    int length = buffer.getInt();
+                    chrs.add(chr);
+                    positions.put(chr, buffer.position());
+                    buffer.position(buffer.position() + length);
+                }
+                MappedGeneSource geneSource = new MappedGeneSource(buffer, positions);
+                entry.genes = geneSource;
+
+                int nNames = buffer.getInt();
+                entry.nameIndex = new LinkedHashMap<String, List<NamedFeature>>(nNames);
+                for (int i = 0; i < nNames; i++) {
+                    String name = readString(buffer);
+                    int nFeatures = buffer.getInt();
+                    List<NamedFeature> features = new ArrayList<NamedFeature>(nFeatures);
+                    for (int j = 0; j < nFeatures; j++) {
+                        String chr = chrs.get(buffer.getInt());
+                        int featureIndex = buffer.getInt();
+                        int exonIndex = buffer.getInt();
+                        String featureName = readString(buffer);
+                        int start = buffer.getInt();
+                        int end = buffer.getInt();
+                        features.add(new MappedGeneSource.Reference(geneSource, chr, featureIndex, exonIndex,
+                                featureName, start, end));
+                    }
+                    entry.nameIndex.put(name, features);
+                }
+            }
+            return entry;
+
+        } catch (Exception e) {
+            // A corrupt or truncated file is rebuilt
+            log.error("Error reading genome cache file " + cacheFile.getAbsolutePath(), e);
+            return null;
+        } finally {
+            if (fis != null) {
+                try {
+                    fis.close();
+                } catch (IOException e) {
+                    log.error("Error closing " + cacheFile.getAbsolutePath(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write a cache file.  The file is written under a temporary name and renamed, so a concurrent or interrupted
+     * load never sees a partial file.
+     *
+     * @param cacheFile
+     * @param entry
+     */
+    static void write(File cacheFile, Entry entry) throws IOException {
+
+        File tmpFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp");
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        boolean success = false;
+        try {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            writeString(dos, getChecksum(cacheFile));
+
+            if (entry.cytobands == null) {
+                dos.writeInt(-1);
+            } else {
+                dos.writeInt(entry.cytobands.size());
+                for (Map.Entry<String, List<Cytoband>> e : entry.cytobands.entrySet()) {
+                    writeString(dos, e.getKey());
+                    dos.writeInt(e.getValue().size());
+                    for (Cytoband band : e.getValue()) {
+                        writeString(dos, band.getName());
+                        dos.writeInt(band.getStart());
+                        dos.writeInt(band.getEnd());
+                        dos.writeChar(band.getType());
+                        dos.writeShort(band.getStain());
+                    }
+                }
+            }
+
+            if (entry.aliases == null) {
+                dos.writeInt(-1);
+            } else {
+                dos.writeInt(entry.aliases.size());
+                for (Collection<String> synonyms : entry.aliases) {
+                    writeStrings(dos, synonyms);
+                }
+            }
+
+            if (entry.genes == null) {
+                dos.writeInt(-1);
+            } else {
+                List<String> chrs = new ArrayList<String>(entry.genes.getChrs());
+                dos.writeInt(chrs.size());
+                for (String chr : chrs) {
+                    writeString(dos, chr);
+                    writeFeatures(dos, entry.genes.getFeatures(chr));
+                }
+                writeNameIndex(dos, chrs, entry);
+            }
+            success = true;
+        } finally {
+            dos.close();
+            if (!success) tmpFile.delete();
+        }
+
+        if (!tmpFile.renameTo(cacheFile)) {
+            // Windows does not replace existing files
+            cacheFile.delete();
+            if (!tmpFile.renameTo(cacheFile)) {
+                tmpFile.delete();
+                throw new IOException("Error renaming " + tmpFile.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Write the features of a chromosome, sorted by start, each preceded by the row it is packed into.  The
+     * records are preceded by their length in bytes, so readers can skip chromosomes.
+     */
+    private static void writeFeatures(DataOutputStream dos, List<Feature> features) throws IOException {
+        int[] rows = PackedFeatures.packRows(features);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(bytes);
+        records.writeInt(features.size());
+        for (int i = 0; i < rows.length; i++) {
+            records.writeInt(rows[i]);
+            writeFeature(records, (BasicFeature) features.get(i));
+        }
+        records.close();
+        dos.writeInt(bytes.size());
+        bytes.writeTo(dos);
+    }
+
+    /**
+     * Write the name index entries which refer to the gene features.  Features are stored as the chromosome
+     * index, the gene index within the chromosome, and the exon index, or -1 for the gene itself, followed by the
+     * name and location of the feature, so entries can be searched without decoding the feature.
+     */
+    private static void writeNameIndex(DataOutputStream dos, List<String> chrs, Entry entry) throws IOException {
+
+        Map<NamedFeature, int[]> positions = new IdentityHashMap<NamedFeature, int[]>();
+        for (int c = 0; c < chrs.size(); c++) {
+            List<Feature> genes = entry.genes.getFeatures(chrs.get(c));
+            for (int i = 0; i < genes.size(); i++) {
+                BasicFeature gene = (BasicFeature) genes.get(i);
+                positions.put(gene, new int[]{c, i, -1});
+                List<Exon> exons = gene.getExons();
+                if (exons != null) {
+                    for (int e = 0; e < exons.size(); e++) {
+                        positions.put(exons.get(e), new int[]{c, i, e});
+                    }
+                }
+            }
+        }
+
+        Map<String, List<NamedFeature>> index = new LinkedHashMap<String, List<NamedFeature>>();
+        if (entry.nameIndex != null) {
+            for (Map.Entry<String, List<NamedFeature>> e : entry.nameIndex.entrySet()) {
+                List<NamedFeature> features = new ArrayList<NamedFeature>(e.getValue().size());
+                for (NamedFeature f : e.getValue()) {
+                    if (positions.containsKey(f)) features.add(f);
+                }
+                if (!features.isEmpty()) index.put(e.getKey(), features);
+            }
+        }
+
+        dos.writeInt(index.size());
+        for (Map.Entry<String, List<NamedFeature>> e : index.entrySet()) {
+            writeString(dos, e.getKey());
+            dos.writeInt(e.getValue().size());
+            for (NamedFeature f : e.getValue()) {
+                int[] position = positions.get(f);
+                dos.writeInt(position[0]);
+                dos.writeInt(position[1]);
+                dos.writeInt(position[2]);
+                writeString(dos, f.getName());
+                dos.writeInt(f.getStart());
+                dos.writeInt(f.getEnd());
+            }
+        }
+    }
+
+    private static void writeFeature(DataOutputStream dos, BasicFeature f) throws IOException {
+        writeFeatureFields(dos, f.getChr(), f.getStart(), f.getEnd(), f.getStrand(), f.getType(), f.getColor(),
+                f.getDescription(), f.getAttributes(), f.getName(), f.getReadingFrame());
+        writeString(dos, f.getIdentifier());
+        dos.writeFloat(f.getScore());
+        dos.writeInt(f.getThickStart());
+        dos.writeInt(f.getThickEnd());
+        writeString(dos, f.getURL());
+        String[] parentIds = f.getParentIds();
+        writeStrings(dos, parentIds == null ? null : Arrays.asList(parentIds));
+
+        List<Exon> exons = f.getExons();
+        if (exons == null) {
+            dos.writeInt(-1);
+        } else {
+            dos.writeInt(exons.size());
+            for (Exon exon : exons) {
+                writeFeatureFields(dos, exon.getChr(), exon.getStart(), exon.getEnd(), exon.getStrand(),
+                        exon.getType(), exon.getColor(), exon.getDescription(), exon.getAttributes(),
+                        exon.getName(), exon.getReadingFrame());
+                dos.writeInt(exon.getNumber());
+                dos.writeBoolean(exon.isNonCoding());
+                dos.writeInt(exon.getCdStart());
+                dos.writeInt(exon.getCdEnd());
+                dos.writeInt(exon.getMrnaBase());
+            }
+        }
+    }
+
+    static BasicFeature readFeature(ByteBuffer buffer) {
+        String chr = readString(buffer);
+        int start = buffer.getInt();
+        int end = buffer.getInt();
+        BasicFeature f = new BasicFeature(chr, start, end, Strand.values()[buffer.get()]);
+        readFeatureFields(buffer, f);
+        f.setIdentifier(readString(buffer));
+        f.setScore(buffer.getFloat());
+        int thickStart = buffer.getInt();
+        int thickEnd = buffer.getInt();
+        f.setURL(readString(buffer));
+        List<String> parentIds = readStrings(buffer);
+        if (parentIds != null) f.setParentIds(parentIds.toArray(new String[parentIds.size()]));
+
+        int nExons = buffer.getInt();
+        for (int i = 0; i < nExons; i++) {
+            String exonChr = readString(buffer);
+            int exonStart = buffer.getInt();
+            int exonEnd = buffer.getInt();
+            Exon exon = new Exon(exonChr, exonStart, exonEnd, Strand.values()[buffer.get()]);
+            readFeatureFields(buffer, exon);
+            exon.setNumber(buffer.getInt());
+            exon.setNonCoding(buffer.get() != 0);
+            exon.setCodingStart(buffer.getInt());
+            exon.setCodingEnd(buffer.getInt());
+            exon.setMrnaBase(buffer.getInt());
+            f.addExon(exon);
+        }
+
+        // Adding exons resets the thick region
+        f.setThickStart(thickStart);
+        f.setThickEnd(thickEnd);
+        return f;
+    }
+
+    private static void writeFeatureFields(DataOutputStream dos, String chr, int start, int end, Strand strand,
+                                           String type, Color color, String description,
+                                           MultiMap<String, String> attributes, String name, int readingFrame)
+            throws IOException {
+        writeString(dos, chr);
+        dos.writeInt(start);
+        dos.writeInt(end);
+        dos.writeByte(strand.ordinal());
+        writeString(dos, type);
+        dos.writeBoolean(color != null);
+        if (color != null) dos.writeInt(color.getRGB());
+        writeString(dos, description);
+        if (attributes == null) {
+            dos.writeInt(-1);
+        } else {
+            dos.writeInt(attributes.size());
+            for (String key : attributes.keys()) {
+                for (String value : attributes.getAll(key)) {
+                    writeString(dos, key);
+                    writeString(dos, value);
+                }
+            }
+        }
+        writeString(dos, name);
+        dos.writeInt(readingFrame);
+    }
+
+    /**
+     * Read the fields following chr, start, end, and strand
+     */
+    private static void readFeatureFields(ByteBuffer buffer, AbstractFeature f) {
+        f.setType(readString(buffer));
+        if (buffer.get() != 0) f.setColor(new Color(buffer.getInt(), true));
+        f.setDescription(readString(buffer));
+        int nAttributes = buffer.getInt();
+        if (nAttributes >= 0) {
+            MultiMap<String, String> attributes = new MultiMap<String, String>(nAttributes);
+            for (int i = 0; i < nAttributes; i++) {
+                attributes.put(readString(buffer), readString(buffer));
+            }
+            f.setAttributes(attributes);
+        }
+        f.setName(readString(buffer));
+        f.setReadingFrame(buffer.getInt());
+    }
+
+    private static void writeStrings(DataOutputStream dos, Collection<String> strings) throws IOException {
+        if (strings == null) {
+            dos.writeInt(-1);
+        } else {
+            dos.writeInt(strings.size());
+            for (String s : strings) {
+                writeString(dos, s);
+            }
+        }
+    }
+
+    private static List<String> readStrings(ByteBuffer buffer) {
+        int n = buffer.getInt();
+        if (n < 0) return null;
+        List<String> strings = new ArrayList<String>(n);
+        for (int i = 0; i < n; i++) {
+            strings.add(readString(buffer));
+        }
+        return strings;
+    }
+
+    private static void writeString(DataOutputStream dos, String s) throws IOException {
+        if (s == null) {
+            dos.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes("UTF-8");
+            dos.writeInt(bytes.length);
+            dos.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new RuntimeException(e);
+        }
+    }
+}
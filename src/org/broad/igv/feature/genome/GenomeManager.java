@@ -345,8 +345,14 @@ public class GenomeManager {
         boolean isFasta = genomeDescriptor.isFasta();
         String[] fastaFiles = genomeDescriptor.getFastaFileNames();
 
+        // Parsed cytobands, aliases and annotations from a previous load of the same archive
+        File cacheFile = GenomeCache.getCacheFile(archiveFile);
+        GenomeCache.Entry cached = GenomeCache.read(cacheFile);
+
         LinkedHashMap<String, List<Cytoband>> cytobandMap = null;
-        if (genomeDescriptor.hasCytobands()) {
+        if (cached != null) {
+            cytobandMap = cached.cytobands;
+        } else if (genomeDescriptor.hasCytobands()) {
             cytobandMap = loadCytobandFile(genomeDescriptor);
         }
 
@@ -378,23 +384,55 @@ public class GenomeManager {
             newGenome.setCytobands(cytobandMap);
         }
 
-        Collection<Collection<String>> aliases = loadChrAliases(genomeDescriptor);
+        Collection<Collection<String>> aliases = cached != null ? cached.aliases : loadChrAliases(genomeDescriptor);
         if (aliases != null) {
             newGenome.addChrAliases(aliases);
         }
 
-        InputStream geneStream = null;
-        if (genomeDescriptor.getGeneFileName() != null) {
-            try {
-                geneStream = genomeDescriptor.getGeneStream();
-                BufferedReader reader = new BufferedReader(new InputStreamReader(geneStream));
-                FeatureTrack geneFeatureTrack = createGeneTrack(newGenome, reader,
-                        genomeDescriptor.getGeneFileName(), genomeDescriptor.getGeneTrackName(),
-                        genomeDescriptor.getUrl());
+        String geneFileName = genomeDescriptor.getGeneFileName();
+        List<org.broad.tribble.Feature> genes = null;
+        FeatureCollectionSource geneSource = null;
+        TrackProperties geneTrackProperties = null;
+        if (geneFileName != null) {
+            FeatureDB.clearFeatures();
+            if (cached != null && cached.genes != null) {
+                geneSource = cached.genes;
+                FeatureDB.addNameIndex(cached.nameIndex);
+            } else {
+                InputStream geneStream = null;
+                try {
+                    geneStream = genomeDescriptor.getGeneStream();
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(geneStream));
+                    FeatureParser parser = getGeneParser(newGenome, geneFileName);
+                    if (parser != null) {
+                        genes = parser.loadFeatures(reader, newGenome);
+                        geneTrackProperties = parser.getTrackProperties();
+                    }
+                } finally {
+                    if (geneStream != null) geneStream.close();
+                }
+                if (genes != null) {
+                    geneSource = new FeatureCollectionSource(genes, newGenome);
+                }
+            }
+            if (geneSource != null) {
+                newGenome.setGeneTrack(createGeneTrack(newGenome, geneSource, genomeDescriptor.getGeneTrackName(),
+                        geneTrackProperties, genomeDescriptor.getUrl()));
+            }
+        }
 
-                newGenome.setGeneTrack(geneFeatureTrack);
-            } finally {
-                if (geneStream != null) geneStream.close();
+        if (cacheFile != null && cached == null) {
+            GenomeCache.Entry entry = new GenomeCache.Entry();
+            entry.cytobands = cytobandMap;
+            entry.aliases = aliases;
+            if (genes != null && geneTrackProperties == null && GenomeCache.canCache(genes)) {
+                entry.genes = geneSource;
+                entry.nameIndex = FeatureDB.getNameIndex();
+            }
+            try {
+                GenomeCache.write(cacheFile, entry);
+            } catch (IOException e) {
+                log.error("Error writing genome cache file " + cacheFile.getAbsolutePath(), e);
             }
         }
 
@@ -1498,38 +1536,59 @@ public class GenomeManager {
         FeatureTrack geneFeatureTrack = null;
 
         if (reader != null) {
-            FeatureParser parser;
-            if (geneFileName.endsWith(".embl")) {
-                parser = new EmblFeatureTableParser();
-            } else if (GFFFeatureSource.isGFF(geneFileName)) {
-                parser = new GFFParser();
-            } else {
-                parser = AbstractFeatureParser.getInstanceFor(new ResourceLocator(geneFileName), genome);
-            }
-            if (parser == null) {
-                MessageUtils.showMessage("ERROR: Unrecognized annotation file format: " + geneFileName +
-                        "<br>Annotations for genome: " + genome.getId() + " will not be loaded.");
-            } else {
+            FeatureParser parser = getGeneParser(genome, geneFileName);
+            if (parser != null) {
                 List<org.broad.tribble.Feature> genes = parser.loadFeatures(reader, genome);
-                String name = geneTrackName;
-                if (name == null) name = "Genes";
-
-                String id = genome.getId() + "_genes";
-                geneFeatureTrack = new FeatureTrack(id, name, new FeatureCollectionSource(genes, genome));
-                geneFeatureTrack.setMinimumHeight(5);
-                geneFeatureTrack.setHeight(35);
-                geneFeatureTrack.setTrackType(TrackType.GENE);
-                geneFeatureTrack.setColor(Color.BLUE.darker());
-                TrackProperties props = parser.getTrackProperties();
-                if (props != null) {
-                    geneFeatureTrack.setProperties(parser.getTrackProperties());
-                }
-                geneFeatureTrack.setUrl(annotationURL);
+                geneFeatureTrack = createGeneTrack(genome, genes, geneTrackName, parser.getTrackProperties(),
+                        annotationURL);
             }
         }
         return geneFeatureTrack;
     }
 
+    /**
+     * Return a parser for the gene (annotation) file, or null if the format is not recognized
+     */
+    private FeatureParser getGeneParser(Genome genome, String geneFileName) {
+        FeatureParser parser;
+        if (geneFileName.endsWith(".embl")) {
+            parser = new EmblFeatureTableParser();
+        } else if (GFFFeatureSource.isGFF(geneFileName)) {
+            parser = new GFFParser();
+        } else {
+            parser = AbstractFeatureParser.getInstanceFor(new ResourceLocator(geneFileName), genome);
+        }
+        if (parser == null) {
+            MessageUtils.showMessage("ERROR: Unrecognized annotation file format: " + geneFileName +
+                    "<br>Annotations for genome: " + genome.getId() + " will not be loaded.");
+        }
+        return parser;
+    }
+
+    private FeatureTrack createGeneTrack(Genome genome, List<org.broad.tribble.Feature> genes, String geneTrackName,
+                                         TrackProperties props, String annotationURL) {
+        return createGeneTrack(genome, new FeatureCollectionSource(genes, genome), geneTrackName, props,
+                annotationURL);
+    }
+
+    private FeatureTrack createGeneTrack(Genome genome, FeatureSource<?> geneSource, String geneTrackName,
+                                         TrackProperties props, String annotationURL) {
+        String name = geneTrackName;
+        if (name == null) name = "Genes";
+
+        String id = genome.getId() + "_genes";
+        FeatureTrack geneFeatureTrack = new FeatureTrack(id, name, geneSource);
+        geneFeatureTrack.setMinimumHeight(5);
+        geneFeatureTrack.setHeight(35);
+        geneFeatureTrack.setTrackType(TrackType.GENE);
+        geneFeatureTrack.setColor(Color.BLUE.darker());
+        if (props != null) {
+            geneFeatureTrack.setProperties(props);
+        }
+        geneFeatureTrack.setUrl(annotationURL);
+        return geneFeatureTrack;
+    }
+
     /**
      * Create an annotation track for the genome from a supplied list of features
      *
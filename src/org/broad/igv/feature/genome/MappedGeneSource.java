@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.genome;
+
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.FeatureDB;
+import org.broad.igv.feature.IGVFeature;
+import org.broad.igv.feature.NamedFeature;
+import org.broad.igv.track.FeatureCollectionSource;
+import org.broad.igv.track.PackedFeatureSource;
+import org.broad.igv.track.PackedFeatures;
+import org.broad.igv.util.collections.LRUCache;
+import org.broad.tribble.Feature;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Gene annotations stored in a memory mapped {@link GenomeCache} file.  Features of a chromosome are decoded when
+ * the chromosome is first queried, and are packed into the rows assigned when the file was written, so loading a
+ * cached genome neither decodes nor packs the annotations.  The most recently used chromosomes are kept decoded.
+ */
+public class MappedGeneSource extends FeatureCollectionSource implements PackedFeatureSource {
+
+    static final int DECODED_CHROMOSOME_COUNT = 10;
+
+    private ByteBuffer buffer;
+
+    /**
+     * Chromosome name -> buffer position of its records
+     */
+    private Map<String, Integer> positions;
+
+    private LRUCache<String, DecodedChromosome> decodedChromosomes =
+            new LRUCache<String, DecodedChromosome>(DECODED_CHROMOSOME_COUNT);
+
+    MappedGeneSource(ByteBuffer buffer, Map<String, Integer> positions) {
+        super(null);
+        this.buffer = buffer;
+        this.positions = positions;
+    }
+
+    @Override
+    public List<Feature> getFeatures(String chr) {
+        DecodedChromosome decodedChromosome = getDecodedChromosome(chr);
+        return decodedChromosome == null ? null : decodedChromosome.features;
+    }
+
+    @Override
+    public Set<String> getChrs() {
+        return positions.keySet();
+    }
+
+    public PackedFeatures<IGVFeature> getPackedFeatures(String chr, int start, int end, String trackName) {
+        List<IGVFeature> features = new ArrayList<IGVFeature>();
+        int[] rows = new int[0];
+        DecodedChromosome decodedChromosome = getDecodedChromosome(chr);
+        if (decodedChromosome != null) {
+            rows = new int[decodedChromosome.rows.length];
+            for (int i = 0; i < decodedChromosome.rows.length; i++) {
+                Feature f = decodedChromosome.features.get(i);
+                if (f.getStart() > end) break;
+                if (f.getEnd() > start) {
+                    rows[features.size()] = decodedChromosome.rows[i];
+                    features.add((IGVFeature) f);
+                }
+            }
+        }
+        return new PackedFeatures<IGVFeature>(chr, start, end, features, rows, trackName);
+    }
+
+    /**
+     * Return the features of the chromosome, sorted by start, or null if it has none
+     */
+    private synchronized DecodedChromosome getDecodedChromosome(String chr) {
+        DecodedChromosome decodedChromosome = decodedChromosomes.get(chr);
+        if (decodedChromosome == null) {
+            Integer position = positions.get(chr);
+            if (position == null) return null;
+
+            ByteBuffer records = buffer.duplicate();
+            records.position(position);
+            int nFeatures = records.getInt();
+            decodedChromosome = new DecodedChromosome(nFeatures);
+            for (int i = 0; i < nFeatures; i++) {
+                decodedChromosome.rows[i] = records.getInt();
+                decodedChromosome.features.add(GenomeCache.readFeature(records));
+            }
+            decodedChromosomes.put(chr, decodedChromosome);
+        }
+        return decodedChromosome;
+    }
+
+    private static class DecodedChromosome {
+        List<Feature> features;
+        int[] rows;
+
+        DecodedChromosome(int nFeatures) {
+            features = new ArrayList<Feature>(nFeatures);
+            rows = new int[nFeatures];
+        }
+    }
+
+    /**
+     * Name index entry for a gene, or an exon of a gene, which is decoded when it is looked up
+     */
+    static class Reference implements FeatureDB.FeatureReference {
+
+        MappedGeneSource source;
+        String chr;
+        int featureIndex;
+        int exonIndex;
+        String name;
+        int start;
+        int end;
+
+        /**
+         * @param featureIndex index of the gene in its chromosome
+         * @param exonIndex    index of the exon in the gene, or -1 for the gene
+         */
+        Reference(MappedGeneSource source, String chr, int featureIndex, int exonIndex, String name, int start,
+                  int end) {
+            this.source = source;
+            this.chr = chr;
+            this.featureIndex = featureIndex;
+            this.exonIndex = exonIndex;
+            this.name = name;
+            this.start = start;
+            this.end = end;
+        }
+
+        public NamedFeature getFeature() {
+            BasicFeature gene = (BasicFeature) source.getFeatures(chr).get(featureIndex);
+            return exonIndex < 0 ? gene : gene.getExons().get(exonIndex);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getChr() {
+            return chr;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+    }
+}
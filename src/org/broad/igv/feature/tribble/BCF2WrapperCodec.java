@@ -12,6 +12,7 @@
 package org.broad.igv.feature.tribble;
 
 import org.apache.log4j.Logger;
+import org.broad.igv.PreferenceManager;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.variant.vcf.VCFVariant;
 import org.broad.tribble.Feature;
@@ -21,6 +22,7 @@ import org.broad.tribble.readers.AsciiLineReader;
 import org.broad.tribble.readers.AsciiLineReaderIterator;
 import org.broad.tribble.readers.LocationAware;
 import org.broad.tribble.readers.PositionalBufferedStream;
+import org.broadinstitute.variant.variantcontext.LazyGenotypesContext;
 import org.broadinstitute.variant.variantcontext.VariantContext;
 
 import java.io.IOException;
@@ -37,22 +39,52 @@ public class BCF2WrapperCodec implements FeatureCodec<VCFVariant, PositionalBuff
     FeatureCodec<VariantContext, PositionalBufferedStream> wrappedCodec;
     Genome genome;
 
+    /**
+     * If true genotypes are decoded when first needed, rather than when a record is decoded
+     */
+    boolean lazyGenotypes;
+
     public BCF2WrapperCodec(FeatureCodec<VariantContext, PositionalBufferedStream> wrappedCodec, Genome genome) {
         this.wrappedCodec = wrappedCodec;
         this.genome = genome;
+        this.lazyGenotypes = PreferenceManager.getInstance().getAsBoolean(PreferenceManager.VCF_LAZY_GENOTYPES);
     }
 
     @Override
     public VCFVariant decode(PositionalBufferedStream stream) throws IOException {
-        VariantContext vc = wrappedCodec.decode(stream);
+        VariantContext vc;
+        boolean deferred = false;
+        synchronized (wrappedCodec) {
+            vc = wrappedCodec.decode(stream);
+            if (vc != null) {
+                if (lazyGenotypes && vc.getGenotypes() instanceof LazyGenotypesContext) {
+                    deferred = true;
+                } else {
+                    vc.getSampleNames();
+                }
+            }
+        }
         if (vc == null) {
             return null;
         }
         String chr = genome == null ? vc.getChr() : genome.getChromosomeAlias(vc.getChr());
-        return new VCFVariant(vc, chr);
+        return deferred ? new VCFVariant(vc, chr, genotypeDecoder) : new VCFVariant(vc, chr);
 
     }
 
+    /**
+     * Decodes genotypes deferred by {@link #decode(PositionalBufferedStream)}.  The lazy genotype decoder of the
+     * wrapped codec reuses its buffers, so decoding is synchronized on the codec.
+     */
+    private final VCFVariant.GenotypeDecoder genotypeDecoder = new VCFVariant.GenotypeDecoder() {
+        public VariantContext decodeGenotypes(VariantContext vc) {
+            synchronized (wrappedCodec) {
+                ((LazyGenotypesContext) vc.getGenotypes()).decode();
+            }
+            return vc;
+        }
+    };
+
     @Override
     public Feature decodeLoc(PositionalBufferedStream stream) throws IOException {
         return this.wrappedCodec.decodeLoc(stream);
@@ -58,6 +58,14 @@ public class IGVBEDCodec extends UCSCCodec<BasicFeature> implements LineFeatureE
         return this.gffTags;
     }
 
+    public boolean isSpliceJunctions() {
+        return this.spliceJunctions;
+    }
+
+    public Genome getGenome() {
+        return genome;
+    }
+
     //@Override
     public BasicFeature decode(String[] tokens) {
 
@@ -185,7 +193,7 @@ public class IGVBEDCodec extends UCSCCodec<BasicFeature> implements LineFeatureE
 
         // Exons
         if (tokenCount > 11) {
-            createExons(start, tokens, feature, chr, feature.getStrand());
+            createExons(start, tokens, feature);
             //todo: some refactoring that allows this hack to be removed
             if (spliceJunctions) {
                 SpliceJunctionFeature junctionFeature = (SpliceJunctionFeature) feature;
@@ -240,22 +248,40 @@ public class IGVBEDCodec extends UCSCCodec<BasicFeature> implements LineFeatureE
     }
 
 
-    private void createExons(int start, String[] tokens, BasicFeature gene, String chr,
-                             Strand strand) throws NumberFormatException {
+    private void createExons(int start, String[] tokens, BasicFeature gene) throws NumberFormatException {
 
         int cdStart = Integer.parseInt(tokens[6]);
         int cdEnd = Integer.parseInt(tokens[7]);
-
         int exonCount = Integer.parseInt(tokens[9]);
-        String[] exonSizes = Globals.commaPattern.split(tokens[10]);
-        String[] startsBuffer = Globals.commaPattern.split(tokens[11]);
+        createExons(gene, start, cdStart, cdEnd, exonCount, tokens[10], tokens[11]);
+    }
+
+    /**
+     * Add exons to {@code gene} from the BED block columns
+     *
+     * @param gene
+     * @param start       start of the feature, block starts are relative to it
+     * @param cdStart     thick start
+     * @param cdEnd       thick end
+     * @param exonCount   block count
+     * @param exonSizes   comma separated block sizes
+     * @param exonStarts  comma separated block starts
+     * @throws NumberFormatException
+     */
+    public static void createExons(BasicFeature gene, int start, int cdStart, int cdEnd, int exonCount,
+                                   String exonSizes, String exonStarts) throws NumberFormatException {
+
+        String chr = gene.getChr();
+        Strand strand = gene.getStrand();
+        String[] sizesBuffer = Globals.commaPattern.split(exonSizes);
+        String[] startsBuffer = Globals.commaPattern.split(exonStarts);
 
         int exonNumber = (strand == Strand.NEGATIVE ? exonCount : 1);
 
-        if (startsBuffer.length == exonSizes.length) {
+        if (startsBuffer.length == sizesBuffer.length) {
             for (int i = 0; i < startsBuffer.length; i++) {
                 int exonStart = start + Integer.parseInt(startsBuffer[i]);
-                int exonEnd = exonStart + Integer.parseInt(exonSizes[i]);
+                int exonEnd = exonStart + Integer.parseInt(sizesBuffer[i]);
                 Exon exon = new Exon(chr, exonStart, exonEnd, strand);
                 exon.setCodingStart(cdStart);
                 exon.setCodingEnd(cdEnd);
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.tribble;
+
+import org.broad.igv.feature.FeatureDB;
+import org.broad.igv.feature.FeatureUtils;
+import org.broad.igv.feature.NamedFeature;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.util.ByteLineReader;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.tribble.AsciiFeatureCodec;
+import org.broad.tribble.Feature;
+import org.broad.tribble.FeatureCodec;
+import org.broad.tribble.readers.LineIterator;
+import org.broad.tribble.readers.LocationAware;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Loads all features of a local, uncompressed feature file, decoding line aligned blocks of the file in parallel.
+ * Each block is decoded by its own codec, initialized from the file header, so codecs need not be thread safe.
+ * <p/>
+ * Features are returned by chromosome, sorted by start.  The order of features with equal starts is the
+ * file order, as when the file is read sequentially and sorted.
+ */
+public class ParallelFeatureLoader {
+
+    /**
+     * Size in bytes of the blocks decoded in parallel.  Package visible for tests.
+     */
+    static int blockSize = 4000000;
+
+    private static final int WINDOW_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService decodePool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "IGV feature decoder");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Return true if the file can be loaded in parallel, and is large enough to benefit from it.  VCF files are
+     * excluded, large VCF files require an index in any event.
+     *
+     * @param locator
+     * @param codec   codec for the file, as returned by {@link CodecFactory}
+     * @return
+     */
+    public static boolean canLoad(ResourceLocator locator, FeatureCodec<?, ?> codec) {
+        return locator.isLocal() &&
+                !locator.getPath().endsWith(".gz") &&
+                codec instanceof AsciiFeatureCodec &&
+                !(codec instanceof VCFWrapperCodec) &&
+                new File(locator.getPath()).length() > blockSize;
+    }
+
+    /**
+     * Load all features in the file.  Features are keyed by IGV chromosome name.  Named features are added to the
+     * {@link FeatureDB} on the calling thread in file order, as for a sequential load.
+     *
+     * @param locator
+     * @param genome  the genome, used for chromosome aliasing.  Can be null.
+     * @return map of chromosome -> features sorted by start
+     * @throws IOException
+     */
+    public static Map<String, List<Feature>> loadFeatures(ResourceLocator locator, Genome genome) throws IOException {
+
+        String path = locator.getPath();
+        long headerEnd = readHeader(createCodec(locator, genome), path);
+
+        Map<String, List<Feature>> featureMap = new HashMap<String, List<Feature>>(25);
+        Set<String> unsortedChrs = new HashSet<String>();
+        LinkedList<Future<DecodedBlock>> window = new LinkedList<Future<DecodedBlock>>();
+
+        FileInputStream is = new FileInputStream(path);
+        ByteLineReader reader = new ByteLineReader(is);
+        try {
+            is.getChannel().position(headerEnd);
+
+            // Keep a window of blocks decoding, merge results in file order
+            boolean moreBlocks = true;
+            while (true) {
+                while (moreBlocks && window.size() < WINDOW_SIZE) {
+                    ByteLineReader block = reader.readBlock(blockSize);
+                    if (block == null) {
+                        moreBlocks = false;
+                    } else {
+                        window.add(decodePool.submit(new DecodeTask(block, locator, genome)));
+                    }
+                }
+                if (window.isEmpty()) break;
+
+                DecodedBlock decodedBlock = getBlock(window.removeFirst());
+                for (NamedFeature f : decodedBlock.namedFeatures) {
+                    FeatureDB.addFeature(f, genome);
+                }
+                for (Map.Entry<String, List<Feature>> entry : decodedBlock.featureMap.entrySet()) {
+                    String chr = entry.getKey();
+                    List<Feature> features = entry.getValue();
+                    List<Feature> featureList = featureMap.get(chr);
+                    if (featureList == null) {
+                        featureMap.put(chr, features);
+                    } else {
+                        Feature last = featureList.get(featureList.size() - 1);
+                        if (FeatureUtils.FEATURE_START_COMPARATOR.compare(last, features.get(0)) > 0) {
+                            unsortedChrs.add(chr);
+                        }
+                        featureList.addAll(features);
+                    }
+                }
+            }
+        } finally {
+            for (Future<DecodedBlock> future : window) {
+                future.cancel(true);
+            }
+            reader.close();
+        }
+
+        // Each block is sorted, so these lists are runs of sorted features which the (stable) sort merges
+        for (String chr : unsortedChrs) {
+            FeatureUtils.sortFeatureList(featureMap.get(chr));
+        }
+        return featureMap;
+    }
+
+    private static AsciiFeatureCodec<?> createCodec(ResourceLocator locator, Genome genome) {
+        return (AsciiFeatureCodec<?>) CodecFactory.getCodec(locator, genome);
+    }
+
+    /**
+     * Read the file header with the codec, which initializes its state (track line, gffTags, column headings etc).
+     *
+     * @return the file position of the first line after the header
+     */
+    private static long readHeader(AsciiFeatureCodec<?> codec, String path) throws IOException {
+        InputStream is = new FileInputStream(path);
+        try {
+            LocationAware source = codec.makeIndexableSourceFromStream(is);
+            codec.readHeader((LineIterator) source);
+            return source.getPosition();
+        } finally {
+            is.close();
+        }
+    }
+
+    private static DecodedBlock getBlock(Future<DecodedBlock> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * Features of a block by chromosome sorted by start, and its named features in file order
+     */
+    static class DecodedBlock {
+        Map<String, List<Feature>> featureMap = new LinkedHashMap<String, List<Feature>>();
+        List<NamedFeature> namedFeatures = new ArrayList<NamedFeature>();
+    }
+
+    /**
+     * Decodes a block of lines
+     */
+    static class DecodeTask implements Callable<DecodedBlock> {
+
+        ByteLineReader block;
+        ResourceLocator locator;
+        Genome genome;
+
+        DecodeTask(ByteLineReader block, ResourceLocator locator, Genome genome) {
+            this.block = block;
+            this.locator = locator;
+            this.genome = genome;
+        }
+
+        public DecodedBlock call() throws Exception {
+
+            AsciiFeatureCodec<?> codec = createCodec(locator, genome);
+            readHeader(codec, locator.getPath());
+
+            DecodedBlock decodedBlock = new DecodedBlock();
+            Map<String, List<Feature>> featureMap = decodedBlock.featureMap;
+            while (block.nextLine()) {
+                Feature f = codec.decode(block.getLine());
+                if (f == null) continue;
+
+                String seqName = f.getChr();
+                String igvChr = genome == null ? seqName : genome.getChromosomeAlias(seqName);
+
+                List<Feature> featureList = featureMap.get(igvChr);
+                if (featureList == null) {
+                    featureList = new ArrayList<Feature>();
+                    featureMap.put(igvChr, featureList);
+                }
+                featureList.add(f);
+                if (f instanceof NamedFeature) decodedBlock.namedFeatures.add((NamedFeature) f);
+            }
+
+            for (List<Feature> featureList : featureMap.values()) {
+                FeatureUtils.sortFeatureList(featureList);
+            }
+            return decodedBlock;
+        }
+    }
+}
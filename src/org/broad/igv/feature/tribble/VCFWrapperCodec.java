@@ -12,12 +12,14 @@
 package org.broad.igv.feature.tribble;
 
 import org.apache.log4j.Logger;
+import org.broad.igv.PreferenceManager;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.variant.Variant;
 import org.broad.igv.variant.vcf.VCFVariant;
 import org.broad.tribble.AsciiFeatureCodec;
 import org.broad.tribble.Feature;
 import org.broad.tribble.readers.LineIterator;
+import org.broadinstitute.variant.variantcontext.LazyGenotypesContext;
 import org.broadinstitute.variant.variantcontext.VariantContext;
 
 import java.io.IOException;
@@ -33,10 +35,16 @@ public class VCFWrapperCodec extends AsciiFeatureCodec<VCFVariant> {
     AsciiFeatureCodec wrappedCodec;
     Genome genome;
 
+    /**
+     * If true genotypes are parsed when first needed, rather than when a line is decoded
+     */
+    boolean lazyGenotypes;
+
     public VCFWrapperCodec(AsciiFeatureCodec wrappedCodec, Genome genome) {
         super(VCFVariant.class);
         this.wrappedCodec = wrappedCodec;
         this.genome = genome;
+        this.lazyGenotypes = PreferenceManager.getInstance().getAsBoolean(PreferenceManager.VCF_LAZY_GENOTYPES);
     }
 
     @Override
@@ -51,17 +59,22 @@ public class VCFWrapperCodec extends AsciiFeatureCodec<VCFVariant> {
         // IGV is much more permissive.
 
         VariantContext vc = null;
-        try {
-            vc = (VariantContext) wrappedCodec.decode(line);
-            //The genotype fields are loaded lazily, we force parsing here to
-            //catch the exception if necessary
-            if (vc != null) vc.getSampleNames();
-        } catch (NumberFormatException e) {
-            String msg = String.format("NumberFormatException on line: %s \n Attempting to reformat by replacing ,., with ,0,", line);
-            log.warn(msg);
-            String refLine = line.replaceAll(",\\.", ",0");
-            refLine = refLine.replaceAll("\\.,", "0,");
-            vc = (VariantContext) wrappedCodec.decode(refLine);
+        boolean deferred = false;
+        synchronized (wrappedCodec) {
+            try {
+                vc = (VariantContext) wrappedCodec.decode(line);
+                //The genotype fields are loaded lazily, we force parsing here to
+                //catch the exception if necessary
+                if (vc != null) {
+                    if (lazyGenotypes && vc.getGenotypes() instanceof LazyGenotypesContext) {
+                        deferred = true;
+                    } else {
+                        vc.getSampleNames();
+                    }
+                }
+            } catch (NumberFormatException e) {
+                vc = decodeReformatted(line);
+            }
         }
 
 
@@ -69,8 +82,63 @@ public class VCFWrapperCodec extends AsciiFeatureCodec<VCFVariant> {
             return null;
         }
         String chr = genome == null ? vc.getChr() : genome.getChromosomeAlias(vc.getChr());
-        return new VCFVariant(vc, chr);
+        if (deferred) {
+            return new VCFVariant(vc, chr, new LazyGenotypeDecoder(getSiteFields(line)));
+        } else {
+            return new VCFVariant(vc, chr);
+        }
+
+    }
 
+    private VariantContext decodeReformatted(String line) {
+        String msg = String.format("NumberFormatException on line: %s \n Attempting to reformat by replacing ,., with ,0,", line);
+        log.warn(msg);
+        String refLine = line.replaceAll(",\\.", ",0");
+        refLine = refLine.replaceAll("\\.,", "0,");
+        return (VariantContext) wrappedCodec.decode(refLine);
+    }
+
+    /**
+     * Return the first 8 columns of a line, including the trailing tab
+     */
+    private static String getSiteFields(String line) {
+        int idx = -1;
+        for (int i = 0; i < 8; i++) {
+            idx = line.indexOf('\t', idx + 1);
+            if (idx < 0) return line;
+        }
+        return line.substring(0, idx + 1);
+    }
+
+    /**
+     * Parses genotypes deferred by {@link #decode(String)}.  The wrapped codec is not thread safe, its lazy genotype
+     * parser shares buffers with line decoding, so parsing is synchronized on the codec.
+     * <p/>
+     * Only the site columns of the line are kept.  If the genotypes cannot be parsed the line is reassembled from them
+     * and the unparsed genotype columns, and decoded again after reformatting, as for eager decoding.
+     */
+    private class LazyGenotypeDecoder implements VCFVariant.GenotypeDecoder {
+
+        String siteFields;
+
+        LazyGenotypeDecoder(String siteFields) {
+            this.siteFields = siteFields;
+        }
+
+        public VariantContext decodeGenotypes(VariantContext vc) {
+            synchronized (wrappedCodec) {
+                LazyGenotypesContext genotypes = (LazyGenotypesContext) vc.getGenotypes();
+                Object unparsed = genotypes.getUnparsedGenotypeData();
+                try {
+                    genotypes.decode();
+                    return vc;
+                } catch (NumberFormatException e) {
+                    VariantContext reformatted = decodeReformatted(siteFields + unparsed);
+                    reformatted.getSampleNames();
+                    return reformatted;
+                }
+            }
+        }
     }
 
     @Override
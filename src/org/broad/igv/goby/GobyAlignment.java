@@ -78,9 +78,24 @@ public class GobyAlignment implements Alignment {
      * @param entry    Alignement entry (from Goby protocol buffer Alignment.entries).
      */
     public GobyAlignment(final GobyAlignmentIterator iterator, final Alignments.AlignmentEntry entry) {
+        this(iterator, entry, true);
+    }
+
+    /**
+     * Construct the facade, optionally deferring the splice linking step.  Alignments built on a decoding thread
+     * are not linked; the consumer must call {@link #linkSpliceComponents()} on each of them, in file order.
+     *
+     * @param iterator Used to retrieve chromosome names from target indices, and to cache splice components.
+     * @param entry    Alignement entry (from Goby protocol buffer Alignment.entries).
+     * @param link     If true link this alignment with the splice components seen so far.
+     */
+    GobyAlignment(final GobyAlignmentIterator iterator, final Alignments.AlignmentEntry entry, boolean link) {
         this.iterator = iterator;
         this.entry = entry;
-        buildBlocks(entry);
+        computeBlocks(entry);
+        if (link) {
+            linkSpliceComponents();
+        }
     }
 
 
@@ -97,6 +112,17 @@ public class GobyAlignment implements Alignment {
      * @param alignmentEntry The Goby alignment entry to use
      */
     public void buildBlocks(Alignments.AlignmentEntry alignmentEntry) {
+        computeBlocks(alignmentEntry);
+        linkSpliceComponents();
+    }
+
+    /**
+     * Construct the alignment blocks of this entry alone.  This step has no side effects on the iterator, and
+     * may run on any thread.
+     *
+     * @param alignmentEntry The Goby alignment entry to use
+     */
+    private void computeBlocks(Alignments.AlignmentEntry alignmentEntry) {
 
         ObjectArrayList<AlignmentBlock> blocks = new ObjectArrayList<AlignmentBlock>();
         ObjectArrayList<AlignmentBlock> insertionBlocks = new ObjectArrayList<AlignmentBlock>();
@@ -204,9 +230,16 @@ public class GobyAlignment implements Alignment {
         Arrays.sort(block, blockComparator);
         insertionBlock = insertionBlocks.toArray(new AlignmentBlock[insertionBlocks.size()]);
         Arrays.sort(insertionBlock, blockComparator);
+    }
+
+    /**
+     * Merge the blocks of this alignment into the head of its splice chain, if the chain is complete.  Splice
+     * components are cached by the iterator, so alignments must be linked in file order.
+     */
+    void linkSpliceComponents() {
         ObjectArrayList<GobyAlignment> list = null;
 
-        if (alignmentEntry.hasSplicedForwardAlignmentLink() || alignmentEntry.hasSplicedBackwardAlignmentLink()) {
+        if (entry.hasSplicedForwardAlignmentLink() || entry.hasSplicedBackwardAlignmentLink()) {
             // if has a forward link, store a reference to this alignment in the reader (which represents the window scope)
             list = iterator.cacheSpliceComponent(this);
             if (list.size() > 1 && spliceListIsValid(list)) {
@@ -215,12 +248,12 @@ public class GobyAlignment implements Alignment {
 
                 ObjectArrayList<AlignmentBlock> splicedBlocks = new ObjectArrayList<AlignmentBlock>();
                 splicedBlocks.addAll(ObjectArrayList.wrap(spliceHeadAlignment.block));
-                splicedBlocks.addAll(blocks);
+                splicedBlocks.addAll(ObjectArrayList.wrap(block));
                 spliceHeadAlignment.block = splicedBlocks.toArray(new AlignmentBlock[splicedBlocks.size()]);
 
                 ObjectArrayList<AlignmentBlock> splicedInsertionBlocks = new ObjectArrayList<AlignmentBlock>();
                 splicedInsertionBlocks.addAll(ObjectArrayList.wrap(spliceHeadAlignment.insertionBlock));
-                splicedInsertionBlocks.addAll(insertionBlocks);
+                splicedInsertionBlocks.addAll(ObjectArrayList.wrap(insertionBlock));
                 spliceHeadAlignment.insertionBlock = splicedInsertionBlocks.toArray(new AlignmentBlock[splicedInsertionBlocks.size()]);
 
                 if (spliceHeadAlignment.gapTypes == null) {
@@ -131,6 +131,27 @@ public class GobyAlignmentIterator implements CloseableIterator<Alignment> {
 
     }
 
+    /**
+     * Construct a window iterator that does not read through a shared reader.  Used by subclasses that read
+     * entries themselves.
+     *
+     * @param targetIdentifiers Bidirectional map from target index to target identifier/chromosome names.
+     * @param referenceIndex    Index of the reference sequence/chromosome.
+     * @param start             Minimum genomic location of returned entries.
+     * @param end               Maximum genomic location of returned entries.
+     */
+    protected GobyAlignmentIterator(final DoubleIndexedIdentifier targetIdentifiers, int referenceIndex, String chr,
+                                    int start, int end) {
+        this.reader = null;
+        this.indexToReferenceId = targetIdentifiers;
+        this.useWindow = true;
+        this.targetIndex = referenceIndex;
+        this.reference = chr;
+        this.startReferencePosition = start;
+        this.endReferencePosition = end;
+        this.previousReferenceIndex = referenceIndex;
+    }
+
     /**
      * A constructor useful only for testing. Do not use for production.
      *
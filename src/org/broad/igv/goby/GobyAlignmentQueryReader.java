@@ -26,6 +26,7 @@ import it.unimi.dsi.lang.MutableString;
 import net.sf.samtools.SAMFileHeader;
 import net.sf.samtools.util.CloseableIterator;
 import org.apache.log4j.Logger;
+import org.broad.igv.PreferenceManager;
 import org.broad.igv.sam.Alignment;
 import org.broad.igv.sam.reader.AlignmentReader;
 
@@ -48,6 +49,11 @@ import java.util.Set;
 public class GobyAlignmentQueryReader implements AlignmentReader {
     private static final Logger LOG = Logger.getLogger(GobyAlignmentQueryReader.class);
 
+    /**
+     * Query windows are decoded in parallel in sub-windows of at least this many bases, one per processor at most.
+     */
+    static final int MIN_PARALLEL_WINDOW = 100000;
+
     private AlignmentReaderImpl reader = null;
     private final String basename;
     private DoubleIndexedIdentifier targetIdentifiers;
@@ -150,6 +156,16 @@ public class GobyAlignmentQueryReader implements AlignmentReader {
      */
     public final CloseableIterator<Alignment> query(String sequence, int start, int end, boolean contained) {
         LOG.debug(String.format("query %s %d %d %b%n", sequence, start, end, contained));
+        return query(sequence, start, end, getWorkerCount(start, end));
+    }
+
+    /**
+     * Obtain an iterator over a genomic window, decoded by the given number of worker threads.
+     *
+     * @param workerCount Number of sub-windows decoded in parallel, 1 to decode on the calling thread.
+     * @return An alignment iterator restricted to the sequence [start end] interval.
+     */
+    CloseableIterator<Alignment> query(String sequence, int start, int end, int workerCount) {
 
         final MutableString id = new MutableString(sequence);
         int referenceIndex = targetIdentifiers.getIndex(id);
@@ -163,6 +179,10 @@ public class GobyAlignmentQueryReader implements AlignmentReader {
                 // to inform the end user, but we send no results here:
                 return EMPTY_ITERATOR;
             }
+            if (workerCount > 1) {
+                return new GobyParallelAlignmentIterator(basename, targetIdentifiers, referenceIndex, sequence,
+                        start, end, workerCount);
+            }
             return new GobyAlignmentIterator(getNewLocalReader(), targetIdentifiers, referenceIndex, sequence, start, end);
         } catch (IOException e) {
             LOG.error(e);
@@ -172,6 +192,17 @@ public class GobyAlignmentQueryReader implements AlignmentReader {
 
     }
 
+    /**
+     * Return the number of sub-windows to decode a query window with, 1 to decode it on the calling thread.
+     */
+    static int getWorkerCount(int start, int end) {
+        if (!PreferenceManager.getInstance().getAsBoolean(PreferenceManager.SAM_PARALLEL_INFLATE)) {
+            return 1;
+        }
+        long length = (long) end - start + 1;
+        return (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), length / MIN_PARALLEL_WINDOW));
+    }
+
     /**
      * Determines whether the file is indexed.
      *
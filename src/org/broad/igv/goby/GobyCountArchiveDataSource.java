@@ -23,6 +23,7 @@ import edu.cornell.med.icb.goby.counts.CachingCountsArchiveReader;
 import edu.cornell.med.icb.goby.counts.CountBinningAdapterI;
 import edu.cornell.med.icb.goby.counts.CountBinningAdaptor;
 import edu.cornell.med.icb.goby.counts.CountsReader;
+import edu.cornell.med.icb.goby.counts.CountsReaderI;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectSet;
 import org.apache.commons.io.FilenameUtils;
@@ -66,6 +67,7 @@ public class GobyCountArchiveDataSource implements CoverageDataSource {
     private boolean hasPrecomputedStats;
     private boolean doNormalize;
     private double normalizationFactor;
+    private GobyCountSummaryCache summaryCache;
 
     public GobyCountArchiveDataSource(ResourceLocator locator) {
         init(locator.getPath());
@@ -92,6 +94,15 @@ public class GobyCountArchiveDataSource implements CoverageDataSource {
             }
             boolean normalizeCounts = PreferenceManager.getInstance().getAsBoolean(PreferenceManager.NORMALIZE_COVERAGE);
             setNormalize(normalizeCounts);
+            summaryCache = new GobyCountSummaryCache(new GobyCountSummaryCache.ReaderSource() {
+                public CountsReaderI getCountsReader(String chr) throws IOException {
+                    return GobyCountArchiveDataSource.this.getCountsReader(chr);
+                }
+
+                public boolean hasIndex() {
+                    return counts.hasIndex();
+                }
+            });
         } catch (IOException ex) {
             LOG.error("Error loading file: " + filename, ex);
             throw new DataLoadException("Error loading goby counts archive file: " + ex.toString(), filename);
@@ -130,6 +141,18 @@ public class GobyCountArchiveDataSource implements CoverageDataSource {
                 return null;
             }
             updateNormalizationFactor();
+
+            // Zoomed out views are served from the summary tiles
+            int zoomBinSize = GobyCountSummaryCache.getZoomBinSize(binSize);
+            if (zoomBinSize > 0) {
+                List<LocusScore> scores = summaryCache.getSummaryScores(chr, startLocation, endLocation, zoomBinSize,
+                        selectedWindowFunction == WindowFunction.max, normalizationFactor);
+                for (LocusScore score : scores) {
+                    currentMax = Math.max(currentMax, score.getScore());
+                }
+                return scores;
+            }
+
             CountBinningAdapterI binAdaptor = new CountBinningAdaptor(reader, binSize);
             if (counts.hasIndex()) {
                 // we can only reposition if the countsreader has an index. Otherwise, we trust the
@@ -182,12 +205,19 @@ public class GobyCountArchiveDataSource implements CoverageDataSource {
     }
 
     private void updateNormalizationFactor() {
-        if (numSitesSeen == 0) {
+        long basesSeen = numBasesSeen;
+        long sitesSeen = numSitesSeen;
+        if (!hasPrecomputedStats) {
+            // include the counts summarized into zoomed out tiles
+            basesSeen += summaryCache.getBasesSeen();
+            sitesSeen += summaryCache.getSitesSeen();
+        }
+        if (sitesSeen == 0) {
             normalizationFactor = 1.0;
         } else {
             // normalization factor is estimated such that the average value will be ~2 for autosomes, corresponding
             // to two copies.
-            normalizationFactor = doNormalize ?  ((double)numBasesSeen / (double) numSitesSeen) /2.0:
+            normalizationFactor = doNormalize ?  ((double)basesSeen / (double) sitesSeen) /2.0:
                     1.0;
         }
         //  System.out.printf("normalization factor=%g%n", normalizationFactor);
@@ -236,6 +266,7 @@ public class GobyCountArchiveDataSource implements CoverageDataSource {
 
     @Override
     public void dispose() {
+        summaryCache.clear();
 
     }
 
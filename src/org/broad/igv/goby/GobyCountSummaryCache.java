@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.goby;
+
+import edu.cornell.med.icb.goby.counts.CountsReaderI;
+import org.apache.log4j.Logger;
+import org.broad.igv.data.BasicScore;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.util.collections.LRUCache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Multi-resolution summary of a <a href="http://goby.campagnelab.org">Goby</a> counts archive.  Counts are
+ * aggregated into fixed size bins, in tiles of {@code TILE_BIN_COUNT} bins, holding the sum and maximum of the count
+ * over each bin.  Bins at zoom level z are {@code BASE_BIN_SIZE * 4^z} bp.  Each tile is computed with a single pass
+ * over the count transitions and cached, so panning and re-zooming reuse summaries instead of re-reading the archive.
+ */
+public class GobyCountSummaryCache {
+
+    private static Logger log = Logger.getLogger(GobyCountSummaryCache.class);
+
+    /**
+     * Bin size of the finest zoom level.  Finer views are read directly from the archive.
+     */
+    public static final int BASE_BIN_SIZE = 16;
+    static final int ZOOM_FACTOR = 4;
+    static final int ZOOM_LEVELS = 9;
+    static final int TILE_BIN_COUNT = 1000;
+    private static final int DEFAULT_TILE_COUNT = 40;
+
+    /**
+     * Source of count readers, positioned by the cache.
+     */
+    interface ReaderSource {
+        CountsReaderI getCountsReader(String chr) throws IOException;
+
+        boolean hasIndex();
+    }
+
+    private ReaderSource source;
+    private LRUCache<String, SummaryTile> cache;
+    private long basesSeen;
+    private long sitesSeen;
+
+    public GobyCountSummaryCache(ReaderSource source) {
+        this(source, DEFAULT_TILE_COUNT);
+    }
+
+    public GobyCountSummaryCache(ReaderSource source, int tileCount) {
+        this.source = source;
+        this.cache = new LRUCache<String, SummaryTile>(tileCount);
+    }
+
+    /**
+     * Return the bin size of the coarsest zoom level no coarser than the requested bin size, or -1 if the requested
+     * bin size is finer than {@link #BASE_BIN_SIZE}.
+     *
+     * @param binSize bp per bin requested by the view
+     * @return
+     */
+    public static int getZoomBinSize(int binSize) {
+        if (binSize < BASE_BIN_SIZE) {
+            return -1;
+        }
+        int zoomBinSize = BASE_BIN_SIZE;
+        for (int z = 1; z < ZOOM_LEVELS && zoomBinSize * ZOOM_FACTOR <= binSize; z++) {
+            zoomBinSize *= ZOOM_FACTOR;
+        }
+        return zoomBinSize;
+    }
+
+    /**
+     * Return one score per non-empty bin overlapping the interval, the mean or maximum count of the bin divided by
+     * the normalization factor.
+     *
+     * @param chr
+     * @param start
+     * @param end
+     * @param binSize             bin size, as returned by {@link #getZoomBinSize(int)}
+     * @param useMax              if true score bins by their maximum count, otherwise by their mean count
+     * @param normalizationFactor
+     * @return
+     */
+    public List<LocusScore> getSummaryScores(String chr, int start, int end, int binSize, boolean useMax,
+                                             double normalizationFactor) throws IOException {
+
+        int tileSize = binSize * TILE_BIN_COUNT;
+        int startTile = Math.max(0, start) / tileSize;
+        int endTile = end / tileSize;
+
+        List<LocusScore> scores = new ArrayList<LocusScore>();
+        for (int t = startTile; t <= endTile; t++) {
+            SummaryTile tile = getTile(chr, binSize, t);
+            if (tile != null) {
+                tile.addScores(start, end, useMax, normalizationFactor, scores);
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Return the number of bases and of covered sites counted in the tiles loaded so far, for estimating the
+     * normalization factor when the archive has no precomputed statistics.
+     */
+    public synchronized long getBasesSeen() {
+        return basesSeen;
+    }
+
+    public synchronized long getSitesSeen() {
+        return sitesSeen;
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private SummaryTile getTile(String chr, int binSize, int tileNumber) throws IOException {
+        String key = chr + "_" + binSize + "_" + tileNumber;
+        SummaryTile tile;
+        synchronized (cache) {
+            tile = cache.get(key);
+        }
+        if (tile == null) {
+            tile = loadTile(chr, binSize, tileNumber);
+            if (tile != null) {
+                synchronized (cache) {
+                    cache.put(key, tile);
+                }
+            }
+        }
+        return tile;
+    }
+
+    private SummaryTile loadTile(String chr, int binSize, int tileNumber) throws IOException {
+
+        int tileStart = tileNumber * binSize * TILE_BIN_COUNT;
+        int tileEnd = tileStart + binSize * TILE_BIN_COUNT;
+
+        long t0 = System.currentTimeMillis();
+        int transitionCount = 0;
+        long tileBases = 0;
+        long tileSites = 0;
+
+        SummaryTile tile = new SummaryTile(tileStart, binSize);
+
+        // The archive reader is shared, so tiles of an archive are loaded one at a time
+        synchronized (source) {
+            CountsReaderI reader = source.getCountsReader(chr);
+            if (reader == null) {
+                return null;
+            }
+            if (source.hasIndex()) {
+                reader.reposition(tileStart);
+            }
+            reader.skipTo(tileStart);
+
+            while (reader.hasNextTransition()) {
+                reader.nextTransition();
+                // The count applies to the length bases following position
+                int position = reader.getPosition();
+                if (position >= tileEnd) {
+                    break;
+                }
+                int length = reader.getLength();
+                int count = reader.getCount();
+                transitionCount++;
+                if (count == 0) {
+                    continue;
+                }
+                int runStart = Math.max(position, tileStart);
+                int runEnd = Math.min(position + length, tileEnd);
+                if (runEnd > runStart) {
+                    tile.add(runStart, runEnd, count);
+                    tileBases += (long) (runEnd - runStart) * count;
+                    tileSites += runEnd - runStart;
+                }
+            }
+        }
+
+        synchronized (this) {
+            basesSeen += tileBases;
+            sitesSeen += tileSites;
+        }
+
+        if (log.isDebugEnabled()) {
+            long dt = System.currentTimeMillis() - t0;
+            log.debug("Summarized " + transitionCount + " count transitions into " + binSize + " bp bins in " + dt + "ms");
+        }
+        return tile;
+    }
+
+    static class SummaryTile {
+
+        int start;
+        int binSize;
+        long[] sum;
+        int[] max;
+
+        SummaryTile(int start, int binSize) {
+            this.start = start;
+            this.binSize = binSize;
+            sum = new long[TILE_BIN_COUNT];
+            max = new int[TILE_BIN_COUNT];
+        }
+
+        /**
+         * Add a run of constant count covering runStart (inclusive) to runEnd (exclusive)
+         */
+        void add(int runStart, int runEnd, int count) {
+            int firstBin = (runStart - start) / binSize;
+            int lastBin = (runEnd - 1 - start) / binSize;
+            for (int bin = firstBin; bin <= lastBin; bin++) {
+                int binStart = start + bin * binSize;
+                int overlap = Math.min(runEnd, binStart + binSize) - Math.max(runStart, binStart);
+                sum[bin] += (long) overlap * count;
+                max[bin] = Math.max(max[bin], count);
+            }
+        }
+
+        void addScores(int start, int end, boolean useMax, double normalizationFactor, List<LocusScore> scores) {
+            int firstBin = Math.max(0, (start - this.start) / binSize);
+            int lastBin = Math.min(TILE_BIN_COUNT - 1, (end - this.start) / binSize);
+            for (int bin = firstBin; bin <= lastBin; bin++) {
+                if (max[bin] > 0) {
+                    int binStart = this.start + bin * binSize;
+                    double count = useMax ? max[bin] : ((double) sum[bin]) / binSize;
+                    scores.add(new BasicScore(binStart, binStart + binSize, (float) (count / normalizationFactor)));
+                }
+            }
+        }
+    }
+}
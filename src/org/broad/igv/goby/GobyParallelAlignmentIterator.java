@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.goby;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import edu.cornell.med.icb.goby.alignments.AlignmentReaderImpl;
+import edu.cornell.med.icb.goby.alignments.Alignments;
+import edu.cornell.med.icb.identifier.DoubleIndexedIdentifier;
+import org.apache.log4j.Logger;
+import org.broad.igv.sam.Alignment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+
+/**
+ * Iterator over a window of a <a href="http://goby.campagnelab.org">Goby</a> alignment that decodes entries on
+ * worker threads.  The window is split into consecutive sub-windows, each read through its own Goby reader.  Workers
+ * decompress the entry chunks and build the alignment blocks, and hand finished alignments to this iterator in
+ * batches through bounded queues.  Sub-windows are drained in order and splice components are linked on the calling
+ * thread, so alignments are returned in the same order, and with the same blocks, as {@link GobyAlignmentIterator}.
+ * As with {@link GobyAlignmentIterator}, each reader stops at the first entry past its window, so the alignment
+ * must be sorted by position.  If the calling thread is interrupted while waiting for a batch the workers are
+ * stopped and a {@link CancellationException} is thrown.
+ */
+public class GobyParallelAlignmentIterator extends GobyAlignmentIterator {
+
+    private static final Logger LOG = Logger.getLogger(GobyParallelAlignmentIterator.class);
+
+    static final int BATCH_SIZE = 500;
+    static final int QUEUE_CAPACITY = 4;
+
+    private static final List<GobyAlignment> END_OF_WINDOW = Collections.emptyList();
+
+    /**
+     * Workers block on their queues while earlier sub-windows are drained, so the pool must not be bounded below
+     * the number of workers of all open iterators.
+     */
+    private static final ExecutorService decoderPool = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Goby alignment decoder");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final String basename;
+    private final List<Worker> workers = new ArrayList<Worker>();
+    private int workerIndex;
+    private GobyAlignment nextAlignment;
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param basename          Goby alignment basename
+     * @param targetIdentifiers Bidirectional map from target index to target identifier/chromosome names.
+     * @param referenceIndex    Index of the reference sequence/chromosome.
+     * @param chr               Chromosome name of the query
+     * @param start             Minimum genomic location of returned entries.
+     * @param end               Maximum genomic location of returned entries.
+     * @param workerCount       Number of sub-windows, and therefore of concurrent readers
+     */
+    public GobyParallelAlignmentIterator(String basename, DoubleIndexedIdentifier targetIdentifiers, int referenceIndex,
+                                         String chr, int start, int end, int workerCount) {
+        super(targetIdentifiers, referenceIndex, chr, start, end);
+        this.basename = basename;
+
+        long length = (long) end - start + 1;
+        int windowStart = start;
+        for (int i = 0; i < workerCount; i++) {
+            int windowEnd = (i == workerCount - 1) ? end : (int) (start + (length * (i + 1)) / workerCount - 1);
+            if (windowEnd >= windowStart) {
+                Worker worker = new Worker(referenceIndex, windowStart, windowEnd);
+                workers.add(worker);
+                worker.future = decoderPool.submit(worker);
+            }
+            windowStart = windowEnd + 1;
+        }
+    }
+
+    public boolean hasNext() {
+        if (nextAlignment != null) return true;
+        while (workerIndex < workers.size()) {
+            GobyAlignment alignment = workers.get(workerIndex).take();
+            if (alignment != null) {
+                alignment.linkSpliceComponents();
+                nextAlignment = alignment;
+                return true;
+            }
+            workerIndex++;
+        }
+        return false;
+    }
+
+    public Alignment next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        GobyAlignment alignment = nextAlignment;
+        nextAlignment = null;
+        return alignment;
+    }
+
+    /**
+     * Stop the workers and wait for them to close their readers.
+     */
+    public void close() {
+        cancelled = true;
+        for (Worker worker : workers) {
+            worker.await();
+        }
+        workerIndex = workers.size();
+        nextAlignment = null;
+    }
+
+    /**
+     * Decodes the entries of one sub-window with its own reader.
+     */
+    class Worker implements Runnable {
+
+        final int referenceIndex;
+        final int start;
+        final int end;
+        final BlockingQueue<List<GobyAlignment>> queue = new ArrayBlockingQueue<List<GobyAlignment>>(QUEUE_CAPACITY);
+        List<GobyAlignment> batch;
+        int batchIndex;
+        volatile Throwable error;
+        Future<?> future;
+
+        Worker(int referenceIndex, int start, int end) {
+            this.referenceIndex = referenceIndex;
+            this.start = start;
+            this.end = end;
+        }
+
+        public void run() {
+            AlignmentReaderImpl reader = null;
+            try {
+                reader = new AlignmentReaderImpl(basename);
+                reader.readHeader();
+                reader.reposition(referenceIndex, start);
+
+                List<GobyAlignment> nextBatch = new ArrayList<GobyAlignment>(BATCH_SIZE);
+                while (!cancelled) {
+                    Alignments.AlignmentEntry entry = reader.skipTo(referenceIndex, start);
+                    if (entry == null || entry.getTargetIndex() != referenceIndex || entry.getPosition() > end) {
+                        break;
+                    }
+                    if (entry.getPosition() < start) {
+                        continue;
+                    }
+                    nextBatch.add(new GobyAlignment(GobyParallelAlignmentIterator.this, entry, false));
+                    if (nextBatch.size() == BATCH_SIZE) {
+                        if (!put(nextBatch)) return;
+                        nextBatch = new ArrayList<GobyAlignment>(BATCH_SIZE);
+                    }
+                }
+                if (nextBatch.size() > 0) {
+                    put(nextBatch);
+                }
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                if (reader != null) {
+                    reader.close();
+                }
+                put(END_OF_WINDOW);
+            }
+        }
+
+        /**
+         * Put a batch on the queue, waiting for space.
+         *
+         * @return false if the iterator was closed while waiting
+         */
+        private boolean put(List<GobyAlignment> alignments) {
+            try {
+                while (!cancelled) {
+                    if (queue.offer(alignments, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        /**
+         * @return the next alignment of this sub-window, or null if there are no more
+         */
+        GobyAlignment take() {
+            if (batch == END_OF_WINDOW) {
+                return null;
+            }
+            if (batch == null || batchIndex >= batch.size()) {
+                try {
+                    batch = queue.take();
+                } catch (InterruptedException e) {
+                    // Loading was cancelled.  Stop the workers, and report the cancellation so a partial
+                    // result is not mistaken for a complete one
+                    cancelled = true;
+                    Thread.currentThread().interrupt();
+                    batch = END_OF_WINDOW;
+                    throw new CancellationException("Alignment loading interrupted");
+                }
+                batchIndex = 0;
+                if (batch == END_OF_WINDOW) {
+                    if (error != null) {
+                        LOG.error("Error reading Goby alignment entries", error);
+                    }
+                    return null;
+                }
+            }
+            return batch.get(batchIndex++);
+        }
+
+        /**
+         * Wait for the worker to close its reader.  The wait is uninterruptible, close is typically called after
+         * a cancellation and the reader must not be left open.  Any interrupt is restored afterwards.
+         */
+        void await() {
+            if (future != null) {
+                try {
+                    Uninterruptibles.getUninterruptibly(future);
+                } catch (ExecutionException e) {
+                    LOG.error("Error reading Goby alignment entries", e);
+                }
+            }
+        }
+    }
+}
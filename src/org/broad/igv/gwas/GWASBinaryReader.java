@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.gwas;
+
+import net.sf.samtools.seekablestream.SeekableStream;
+import org.apache.log4j.Logger;
+import org.broad.igv.exceptions.DataLoadException;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.util.CompressionUtils;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.StringUtils;
+import org.broad.igv.util.collections.DoubleArrayList;
+import org.broad.igv.util.collections.IntArrayList;
+import org.broad.igv.util.collections.LRUCache;
+import org.broad.igv.util.stream.IGVSeekableStreamFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+import static org.broad.igv.gwas.GWASBinaryWriter.*;
+
+/**
+ * Reader for the indexed binary GWAS format written by {@link GWASBinaryWriter}.  Only the index is read when the
+ * file is opened.  Data blocks and summaries are read on demand and cached.
+ */
+public class GWASBinaryReader {
+
+    private static final Logger log = Logger.getLogger(GWASBinaryReader.class);
+
+    private ResourceLocator locator;
+    private SeekableStream stream;
+    private CompressionUtils compressionUtils = new CompressionUtils();
+
+    private String headerLine;
+    private double maxValue;
+    private Map<String, ChromosomeIndex> chromosomes = new LinkedHashMap<String, ChromosomeIndex>();
+
+    private LRUCache<String, Points> blockCache = new LRUCache<String, Points>(50);
+    private LRUCache<String, String[]> descriptionCache = new LRUCache<String, String[]>(5);
+    private LRUCache<String, Points> summaryCache = new LRUCache<String, Points>(50);
+
+    public static boolean isBinaryGWASFile(String typeString) {
+        return typeString.endsWith(GWASBinaryWriter.EXTENSION);
+    }
+
+    public GWASBinaryReader(ResourceLocator locator, Genome genome) {
+        this.locator = locator;
+        try {
+            stream = IGVSeekableStreamFactory.getInstance().getStreamFor(locator.getPath());
+            readIndex(genome);
+        } catch (IOException e) {
+            log.error("Error loading file: " + locator.getPath(), e);
+            throw new DataLoadException("Error loading file: " + e.toString(), locator.getPath());
+        }
+    }
+
+    private void readIndex(Genome genome) throws IOException {
+
+        ByteBuffer buffer = getBuffer(0, 20);
+        byte[] magic = new byte[4];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new DataLoadException("Not a binary GWAS file", locator.getPath());
+        }
+        int version = buffer.getInt();
+        if (version > VERSION) {
+            throw new DataLoadException("Unsupported binary GWAS version: " + version, locator.getPath());
+        }
+        long indexPosition = buffer.getLong();
+        int indexSize = buffer.getInt();
+
+        buffer = getBuffer(indexPosition, indexSize);
+        headerLine = StringUtils.readString(buffer);
+        maxValue = buffer.getDouble();
+        int nChromosomes = buffer.getInt();
+        for (int i = 0; i < nChromosomes; i++) {
+            ChromosomeIndex chr = new ChromosomeIndex(StringUtils.readString(buffer));
+            chr.count = buffer.getInt();
+            int nBlocks = buffer.getInt();
+            for (int b = 0; b < nBlocks; b++) {
+                BlockIndex block = new BlockIndex();
+                block.firstPosition = buffer.getInt();
+                block.lastPosition = buffer.getInt();
+                block.count = buffer.getInt();
+                block.dataPosition = buffer.getLong();
+                block.dataSize = buffer.getInt();
+                block.descriptionPosition = buffer.getLong();
+                block.descriptionSize = buffer.getInt();
+                chr.blocks.add(block);
+            }
+            int nLevels = buffer.getInt();
+            for (int z = 0; z < nLevels; z++) {
+                LevelIndex level = new LevelIndex();
+                level.binSize = buffer.getInt();
+                level.position = buffer.getLong();
+                level.size = buffer.getInt();
+                chr.levels.add(level);
+            }
+
+            String chrName = genome == null ? chr.name : genome.getChromosomeAlias(chr.name);
+            chromosomes.put(chrName, chr);
+        }
+    }
+
+    public String getPath() {
+        return locator.getPath();
+    }
+
+    public String getHeaderLine() {
+        return headerLine;
+    }
+
+    public double getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * @return the chromosomes in the file, in file order
+     */
+    public Collection<String> getChromosomes() {
+        return Collections.unmodifiableCollection(chromosomes.keySet());
+    }
+
+    /**
+     * Return summary points for the chromosome, using the coarsest summary with bins no larger than a pixel.  Each
+     * summary bin contributes its maximum value and a point for each value range containing data, all at the
+     * location of the maximum.  Returns null if zoomed in below the finest summary, detail data should be used.
+     *
+     * @param chr
+     * @param bpPerPixel
+     * @return
+     * @throws IOException
+     */
+    public Points getSummary(String chr, double bpPerPixel) throws IOException {
+
+        ChromosomeIndex chrIndex = chromosomes.get(chr);
+        if (chrIndex == null) return null;
+
+        LevelIndex level = null;
+        for (LevelIndex l : chrIndex.levels) {
+            if (l.binSize <= bpPerPixel) {
+                level = l;
+            }
+        }
+        if (level == null) return null;
+
+        String key = chr + "_" + level.binSize;
+        Points points = summaryCache.get(key);
+        if (points == null) {
+            ByteBuffer buffer = getBuffer(level.position, level.size);
+            int nBins = buffer.getInt();
+            points = new Points(nBins * 2);
+            for (int i = 0; i < nBins; i++) {
+                buffer.getInt();   // bin index
+                int maxPosition = buffer.getInt();
+                double binMax = buffer.getDouble();
+                long occupancy = buffer.getLong();
+                int maxBucket = getValueBucket(binMax);
+                for (int bucket = 0; bucket < maxBucket; bucket++) {
+                    if ((occupancy & (1l << bucket)) != 0) {
+                        points.add(maxPosition, (bucket + 0.5) * VALUE_BUCKET_WIDTH);
+                    }
+                }
+                points.add(maxPosition, binMax);
+            }
+            summaryCache.put(key, points);
+        }
+        return points;
+    }
+
+    /**
+     * Return the data points with start >= start and <= end, in order.
+     *
+     * @param chr
+     * @param start
+     * @param end
+     * @return
+     * @throws IOException
+     */
+    public Points getPoints(String chr, int start, int end) throws IOException {
+
+        Points points = new Points(1000);
+        ChromosomeIndex chrIndex = chromosomes.get(chr);
+        if (chrIndex == null) return points;
+
+        for (int b = getFirstBlock(chrIndex, start); b < chrIndex.blocks.size(); b++) {
+            BlockIndex block = chrIndex.blocks.get(b);
+            if (block.firstPosition > end) break;
+
+            Points blockPoints = getBlock(chr, chrIndex, b);
+            for (int i = 0; i < blockPoints.size(); i++) {
+                int position = blockPoints.locations.get(i);
+                if (position >= start && position <= end) {
+                    points.add(position, blockPoints.values.get(i));
+                }
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Return the original row for a data point, or null if there is no point with the given location and value.
+     *
+     * @param chr
+     * @param location
+     * @param value
+     * @return
+     * @throws IOException
+     */
+    public String getDescription(String chr, int location, double value) throws IOException {
+
+        ChromosomeIndex chrIndex = chromosomes.get(chr);
+        if (chrIndex == null) return null;
+
+        for (int b = getFirstBlock(chrIndex, location); b < chrIndex.blocks.size(); b++) {
+            BlockIndex block = chrIndex.blocks.get(b);
+            if (block.firstPosition > location) break;
+
+            Points blockPoints = getBlock(chr, chrIndex, b);
+            for (int i = 0; i < blockPoints.size(); i++) {
+                if (blockPoints.locations.get(i) == location && blockPoints.values.get(i) == value) {
+                    return getDescriptions(chr, block, b)[i];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Binary search for the first block which could contain the position
+     */
+    private int getFirstBlock(ChromosomeIndex chrIndex, int position) {
+        List<BlockIndex> blocks = chrIndex.blocks;
+        int low = 0;
+        int high = blocks.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blocks.get(mid).lastPosition < position)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private Points getBlock(String chr, ChromosomeIndex chrIndex, int blockNumber) throws IOException {
+        String key = chr + "_" + blockNumber;
+        Points points = blockCache.get(key);
+        if (points == null) {
+            BlockIndex block = chrIndex.blocks.get(blockNumber);
+            ByteBuffer buffer = getBuffer(block.dataPosition, block.dataSize);
+            int[] locations = new int[block.count];
+            double[] values = new double[block.count];
+            for (int i = 0; i < block.count; i++) {
+                locations[i] = buffer.getInt();
+            }
+            for (int i = 0; i < block.count; i++) {
+                values[i] = buffer.getDouble();
+            }
+            points = new Points(new IntArrayList(locations), new DoubleArrayList(values));
+            blockCache.put(key, points);
+        }
+        return points;
+    }
+
+    private String[] getDescriptions(String chr, BlockIndex block, int blockNumber) throws IOException {
+        String key = chr + "_" + blockNumber;
+        String[] descriptions = descriptionCache.get(key);
+        if (descriptions == null) {
+            byte[] bytes = compressionUtils.decompress(readBytes(block.descriptionPosition, block.descriptionSize));
+            descriptions = new String(bytes, "UTF-8").split("\n", -1);
+            descriptionCache.put(key, descriptions);
+        }
+        return descriptions;
+    }
+
+    private ByteBuffer getBuffer(long position, int nBytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(readBytes(position, nBytes));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private synchronized byte[] readBytes(long position, int nBytes) throws IOException {
+        stream.seek(position);
+        byte[] buffer = new byte[nBytes];
+        int n = 0;
+        while (n < nBytes) {
+            int count = stream.read(buffer, n, nBytes - n);
+            if (count < 0) {
+                throw new IOException("Unexpected end of file: " + locator.getPath());
+            }
+            n += count;
+        }
+        return buffer;
+    }
+
+    public void close() {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            log.error("Error closing reader for: " + getPath(), e);
+        }
+    }
+
+    /**
+     * Data point locations and values, sorted by location
+     */
+    public static class Points {
+
+        final IntArrayList locations;
+        final DoubleArrayList values;
+
+        Points(int capacity) {
+            this(new IntArrayList(capacity), new DoubleArrayList(capacity));
+        }
+
+        Points(IntArrayList locations, DoubleArrayList values) {
+            this.locations = locations;
+            this.values = values;
+        }
+
+        void add(int location, double value) {
+            locations.add(location);
+            values.add(value);
+        }
+
+        public int size() {
+            return locations.size();
+        }
+
+        public IntArrayList getLocations() {
+            return locations;
+        }
+
+        public DoubleArrayList getValues() {
+            return values;
+        }
+    }
+}
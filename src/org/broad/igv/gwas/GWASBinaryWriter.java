@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.gwas;
+
+import org.broad.igv.tdf.BufferedByteWriter;
+import org.broad.igv.util.CompressionUtils;
+import org.broad.igv.util.ResourceLocator;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts a sorted GWAS result file to the indexed binary GWAS format read by {@link GWASBinaryReader}.
+ * <p/>
+ * File layout, little endian:
+ * <pre>
+ * header:   magic "BGWS", version, index position (long), index size
+ * blocks:   for each chromosome, blocks of BLOCK_SIZE records.  Positions and values are stored uncompressed, the
+ *           original rows (descriptions) are compressed separately so they are only read for popup text.
+ * levels:   for each chromosome, max -log10(p) summaries for bin sizes ZOOM_BIN_SIZES
+ * index:    column header line, max value, and for each chromosome the block and summary positions
+ * </pre>
+ * Chromosome names are stored as they appear in the file, aliases are resolved when the file is read.
+ */
+public class GWASBinaryWriter {
+
+    public static final String EXTENSION = ".bgwas";
+
+    static final byte[] MAGIC = new byte[]{'B', 'G', 'W', 'S'};
+    static final int VERSION = 1;
+
+    static final int BLOCK_SIZE = 4096;
+
+    /**
+     * Summary bin sizes in bp, finest first.  Detail data is used when zoomed in below the finest.
+     */
+    static final int[] ZOOM_BIN_SIZES = {4096, 16384, 65536, 262144, 1048576, 4194304};
+
+    /**
+     * Summaries record which value ranges of width VALUE_BUCKET_WIDTH contain points, as bits of a long.  Values
+     * above the top bucket are recorded in it, the maximum of each bin is recorded exactly.
+     */
+    static final double VALUE_BUCKET_WIDTH = 0.25;
+    static final int VALUE_BUCKETS = 64;
+
+    private File outputFile;
+    private OutputStream os;
+    private long bytesWritten = 0;
+    private CompressionUtils compressionUtils = new CompressionUtils();
+
+    private String headerLine;
+    private double maxValue = 0;
+    private Map<String, ChromosomeIndex> chromosomes = new LinkedHashMap<String, ChromosomeIndex>();
+
+    // Current chromosome and block
+    private ChromosomeIndex currentChr;
+    private int[] blockPositions = new int[BLOCK_SIZE];
+    private double[] blockValues = new double[BLOCK_SIZE];
+    private List<String> blockDescriptions = new ArrayList<String>(BLOCK_SIZE);
+    private int blockCount = 0;
+    private Map<Integer, Bin> finestBins;
+
+    /**
+     * Convert a GWAS file.  The input must be sorted, as for loading the text file directly.
+     *
+     * @param inputPath
+     * @param outputFile
+     * @throws IOException
+     */
+    public static void convert(String inputPath, File outputFile) throws IOException {
+        final GWASBinaryWriter writer = new GWASBinaryWriter(outputFile);
+        boolean success = false;
+        try {
+            GWASParser parser = new GWASParser(new ResourceLocator(inputPath), null);
+            parser.parse(new GWASParser.EntryHandler() {
+                @Override
+                void header(String headerLine) {
+                    writer.headerLine = headerLine.trim();
+                }
+
+                @Override
+                void handle(GWASParser.GWASEntry entry, long position) throws IOException {
+                    writer.add(entry.chr, entry.start, entry.p, entry.description);
+                }
+            });
+            writer.close();
+            success = true;
+        } finally {
+            if (!success) {
+                writer.os.close();
+                outputFile.delete();
+            }
+        }
+    }
+
+    GWASBinaryWriter(File outputFile) throws IOException {
+        this.outputFile = outputFile;
+        os = new BufferedOutputStream(new FileOutputStream(outputFile));
+
+        BufferedByteWriter buffer = new BufferedByteWriter(24);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        // Reserve space for the index position and size, written on close
+        buffer.putLong(0l);
+        buffer.putInt(0);
+        write(buffer.getBytes());
+    }
+
+    void add(String chr, int position, double value, String description) throws IOException {
+
+        if (currentChr == null || !currentChr.name.equals(chr)) {
+            finishChromosome();
+            currentChr = new ChromosomeIndex(chr);
+            chromosomes.put(chr, currentChr);
+            finestBins = new LinkedHashMap<Integer, Bin>();
+        }
+
+        blockPositions[blockCount] = position;
+        blockValues[blockCount] = value;
+        blockDescriptions.add(description);
+        blockCount++;
+        currentChr.count++;
+        if (blockCount == BLOCK_SIZE) {
+            writeBlock();
+        }
+
+        int binIndex = position / ZOOM_BIN_SIZES[0];
+        Bin bin = finestBins.get(binIndex);
+        if (bin == null) {
+            bin = new Bin(binIndex);
+            finestBins.put(binIndex, bin);
+        }
+        bin.add(position, value);
+
+        if (value > maxValue) {
+            maxValue = value;
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockCount == 0) return;
+
+        BlockIndex block = new BlockIndex();
+        block.firstPosition = blockPositions[0];
+        block.lastPosition = blockPositions[blockCount - 1];
+        block.count = blockCount;
+
+        BufferedByteWriter buffer = new BufferedByteWriter(blockCount * 12);
+        for (int i = 0; i < blockCount; i++) {
+            buffer.putInt(blockPositions[i]);
+        }
+        for (int i = 0; i < blockCount; i++) {
+            buffer.putDouble(blockValues[i]);
+        }
+        block.dataPosition = bytesWritten;
+        block.dataSize = buffer.bytesWritten();
+        write(buffer.getBytes());
+
+        ByteArrayOutputStream descriptions = new ByteArrayOutputStream();
+        for (String description : blockDescriptions) {
+            descriptions.write(description.getBytes("UTF-8"));
+            descriptions.write('\n');
+        }
+        byte[] compressed = compressionUtils.compress(descriptions.toByteArray());
+        block.descriptionPosition = bytesWritten;
+        block.descriptionSize = compressed.length;
+        write(compressed);
+
+        currentChr.blocks.add(block);
+        blockCount = 0;
+        blockDescriptions.clear();
+    }
+
+    /**
+     * Write the last block and the summaries of the current chromosome.  Each summary level is computed from the
+     * one below it.
+     */
+    private void finishChromosome() throws IOException {
+        if (currentChr == null) return;
+
+        writeBlock();
+
+        Map<Integer, Bin> bins = finestBins;
+        for (int z = 0; z < ZOOM_BIN_SIZES.length; z++) {
+            if (z > 0) {
+                int factor = ZOOM_BIN_SIZES[z] / ZOOM_BIN_SIZES[z - 1];
+                Map<Integer, Bin> coarser = new LinkedHashMap<Integer, Bin>();
+                for (Bin bin : bins.values()) {
+                    int binIndex = bin.index / factor;
+                    Bin parent = coarser.get(binIndex);
+                    if (parent == null) {
+                        parent = new Bin(binIndex);
+                        coarser.put(binIndex, parent);
+                    }
+                    parent.merge(bin);
+                }
+                bins = coarser;
+            }
+
+            BufferedByteWriter buffer = new BufferedByteWriter(4 + bins.size() * 20);
+            buffer.putInt(bins.size());
+            for (Bin bin : bins.values()) {
+                buffer.putInt(bin.index);
+                buffer.putInt(bin.maxPosition);
+                buffer.putDouble(bin.maxValue);
+                buffer.putLong(bin.occupancy);
+            }
+            LevelIndex level = new LevelIndex();
+            level.binSize = ZOOM_BIN_SIZES[z];
+            level.position = bytesWritten;
+            level.size = buffer.bytesWritten();
+            write(buffer.getBytes());
+            currentChr.levels.add(level);
+        }
+        finestBins = null;
+    }
+
+    void close() throws IOException {
+
+        finishChromosome();
+
+        BufferedByteWriter buffer = new BufferedByteWriter();
+        buffer.putNullTerminatedString(headerLine == null ? "" : headerLine);
+        buffer.putDouble(maxValue);
+        buffer.putInt(chromosomes.size());
+        for (ChromosomeIndex chr : chromosomes.values()) {
+            buffer.putNullTerminatedString(chr.name);
+            buffer.putInt(chr.count);
+            buffer.putInt(chr.blocks.size());
+            for (BlockIndex block : chr.blocks) {
+                buffer.putInt(block.firstPosition);
+                buffer.putInt(block.lastPosition);
+                buffer.putInt(block.count);
+                buffer.putLong(block.dataPosition);
+                buffer.putInt(block.dataSize);
+                buffer.putLong(block.descriptionPosition);
+                buffer.putInt(block.descriptionSize);
+            }
+            buffer.putInt(chr.levels.size());
+            for (LevelIndex level : chr.levels) {
+                buffer.putInt(level.binSize);
+                buffer.putLong(level.position);
+                buffer.putInt(level.size);
+            }
+        }
+
+        long indexPosition = bytesWritten;
+        int indexSize = buffer.bytesWritten();
+        write(buffer.getBytes());
+        os.close();
+
+        RandomAccessFile raf = new RandomAccessFile(outputFile, "rw");
+        try {
+            raf.seek(8);
+            buffer = new BufferedByteWriter(12);
+            buffer.putLong(indexPosition);
+            buffer.putInt(indexSize);
+            raf.write(buffer.getBytes());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        os.write(bytes);
+        bytesWritten += bytes.length;
+    }
+
+    static int getValueBucket(double value) {
+        return Math.max(0, Math.min(VALUE_BUCKETS - 1, (int) (value / VALUE_BUCKET_WIDTH)));
+    }
+
+    private static class Bin {
+        int index;
+        int maxPosition;
+        double maxValue = -1;
+        long occupancy = 0;
+
+        Bin(int index) {
+            this.index = index;
+        }
+
+        void add(int position, double value) {
+            if (value > maxValue) {
+                maxValue = value;
+                maxPosition = position;
+            }
+            occupancy |= 1l << getValueBucket(value);
+        }
+
+        void merge(Bin bin) {
+            if (bin.maxValue > maxValue) {
+                maxValue = bin.maxValue;
+                maxPosition = bin.maxPosition;
+            }
+            occupancy |= bin.occupancy;
+        }
+    }
+
+    static class ChromosomeIndex {
+        String name;
+        int count;
+        List<BlockIndex> blocks = new ArrayList<BlockIndex>();
+        List<LevelIndex> levels = new ArrayList<LevelIndex>();
+
+        ChromosomeIndex(String name) {
+            this.name = name;
+        }
+    }
+
+    static class BlockIndex {
+        int firstPosition;
+        int lastPosition;
+        int count;
+        long dataPosition;
+        int dataSize;
+        long descriptionPosition;
+        int descriptionSize;
+    }
+
+    static class LevelIndex {
+        int binSize;
+        long position;
+        int size;
+    }
+}
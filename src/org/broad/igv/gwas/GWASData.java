@@ -96,62 +96,64 @@ public class GWASData {
      */
     public int getNearestIndexByLocation(String chr, int location, double minValue, double maxValue, int maxDistance) {
 
-        int index = -1;
-        int iBefore = -1;
-        int iAfter = -1;
-
         // Check if the location chr exists in data set
         if (this.locations.containsKey(chr)) {
-            int[] locList = this.locations.get(chr).toArray();
-            double[] valueList = this.values.get(chr).toArray();
-            int indexCounter = 0;
-
-            // Find index of the closest value before the location
-            while ((indexCounter < locList.length) && locList[indexCounter] < location) {
-                if (valueList[indexCounter] > minValue && valueList[indexCounter] < maxValue)
-                    iBefore = indexCounter;
-                indexCounter++;
-            }
-
-            // Find index of the closest value after the location
-            while (indexCounter < valueList.length) {
-                if (valueList[indexCounter] > minValue && valueList[indexCounter] < maxValue) {
-                    iAfter = indexCounter;
-                    break;
+            return getNearestIndex(this.locations.get(chr), this.values.get(chr), location, minValue, maxValue, maxDistance);
+        }
+        return -1;
+    }
 
-                }
-                indexCounter++;
+    /**
+     * Get index of the data point nearest to the location with a value in the range (minValue, maxValue), or -1 if
+     * there is none within maxDistance.  Locations must be sorted.  Ties are resolved in favor of the later point.
+     *
+     * @param locations
+     * @param values
+     * @param location
+     * @param minValue
+     * @param maxValue
+     * @param maxDistance
+     * @return
+     */
+    static int getNearestIndex(IntArrayList locations, DoubleArrayList values, int location,
+                               double minValue, double maxValue, int maxDistance) {
+
+        // Binary search for the first data point at or after the location
+        int low = 0;
+        int high = locations.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (locations.get(mid) < location)
+                low = mid + 1;
+            else
+                high = mid;
+        }
 
+        // Find index of the closest value before the location
+        int iBefore = -1;
+        for (int i = low - 1; i >= 0 && (long) location - locations.get(i) <= maxDistance; i--) {
+            double value = values.get(i);
+            if (value > minValue && value < maxValue) {
+                iBefore = i;
+                break;
             }
+        }
 
-            // Choose index of closer location
-            if (iBefore >= 0 && iAfter >= 0) {
-
-                // Location of nearest data point before the location
-                int before = locList[iBefore];
-                // Location of nearest data point after the location
-                int after = locList[iAfter];
-
-                // Compare which one is closer and use it as index
-                if (Math.abs(location - before) < Math.abs(location - after))
-                    index = iBefore;
-                else
-                    index = iAfter;
-
-            } else {
-                if (iBefore >= 0)
-                    index = iBefore;
-                if (iAfter >= 0)
-                    index = iAfter;
+        // Find index of the closest value after the location
+        int iAfter = -1;
+        for (int i = low; i < locations.size() && (long) locations.get(i) - location <= maxDistance; i++) {
+            double value = values.get(i);
+            if (value > minValue && value < maxValue) {
+                iAfter = i;
+                break;
             }
+        }
 
-            if (index >= 0) {
-                int distance = Math.abs(location - locList[index]);
-                if (distance > maxDistance)
-                    index = -1;
-            }
+        // Choose index of closer location
+        if (iBefore >= 0 && iAfter >= 0) {
+            return (location - locations.get(iBefore) < locations.get(iAfter) - location) ? iBefore : iAfter;
         }
-        return index;
+        return iBefore >= 0 ? iBefore : iAfter;
     }
 
 
@@ -129,6 +129,37 @@ public class GWASParser {
 
     public GWASData parse() throws IOException {
 
+        final GWASData gData = new GWASData();
+
+        parse(new EntryHandler() {
+            int indexCounter = 0;
+
+            void handle(GWASEntry entry, long position) {
+                gData.addLocation(entry.chr, entry.start);
+                gData.addValue(entry.chr, entry.p);
+
+                indexCounter++;
+
+                int indexSize = 10000;
+                if (indexCounter == indexSize) {
+                    gData.getFileIndex().add((int) position);
+                    indexCounter = 0;
+                }
+            }
+        });
+
+        return gData;
+    }
+
+    /**
+     * Parse the file, passing each entry with a p-value to the handler.  The file must be sorted by chromosome
+     * and position.
+     *
+     * @param handler
+     * @throws IOException
+     */
+    void parse(EntryHandler handler) throws IOException {
+
         AsciiLineReader reader = null;
         String nextLine = null;
         int rowCounter = 0;
@@ -143,9 +174,7 @@ public class GWASParser {
             if (!this.columns.parseHeader(headerLine))
                 throw new ParserException("Error while parsing columns line.", 0, nextLine);
 
-            GWASData gData = new GWASData();
-
-            int indexCounter = 0;
+            handler.header(headerLine);
 
             while ((nextLine = reader.readLine()) != null && (nextLine.trim().length() > 0)) {
 
@@ -155,9 +184,6 @@ public class GWASParser {
                 GWASEntry entry = parseLine(nextLine, rowCounter);
                 if (entry == null) continue;
 
-                gData.addLocation(entry.chr, entry.start);
-                gData.addValue(entry.chr, entry.p);
-
                 //Check that file is sorted
                 if(lastEntry != null){
                     if(entry.chr.equals(lastEntry.chr)){
@@ -172,17 +198,10 @@ public class GWASParser {
                     }
                 }
 
-                indexCounter++;
-
-                int indexSize = 10000;
-                if (indexCounter == indexSize) {
-                    gData.getFileIndex().add((int) reader.getPosition());
-                    indexCounter = 0;
-                }
+                handler.handle(entry, reader.getPosition());
 
                 lastEntry = entry;
             }
-            return gData;
 
         } catch (Exception e) {
             if (nextLine != null && rowCounter != 0) {
@@ -208,7 +227,10 @@ public class GWASParser {
         if (tokens.length > 1) {
 
             //String chr = ParsingUtils.convertChrString(tokens[chrCol].trim());
-            String chr = genome.getChromosomeAlias(tokens[this.columns.chrCol].trim());
+            String chr = tokens[this.columns.chrCol].trim();
+            if (genome != null) {
+                chr = genome.getChromosomeAlias(chr);
+            }
 
             int start;
 
@@ -240,12 +262,12 @@ public class GWASParser {
         return null;
     }
 
-    private static class GWASEntry{
+    static class GWASEntry{
 
-        private final String chr;
-        private final int start;
-        private final double p;
-        private final String description;
+        final String chr;
+        final int start;
+        final double p;
+        final String description;
 
     private GWASEntry(String chr, int start, double p, String description){
         this.chr = chr;
@@ -255,6 +277,21 @@ public class GWASParser {
     }
 }
 
+    /**
+     * Receives the entries of a file, in order, from {@link #parse(EntryHandler)}
+     */
+    static abstract class EntryHandler {
+
+        void header(String headerLine) throws IOException {
+        }
+
+        /**
+         * @param entry
+         * @param position file position following the entry
+         */
+        abstract void handle(GWASEntry entry, long position) throws IOException;
+    }
+
     /**
      * Stores numerical indexes of relevant columns
      */
@@ -66,6 +66,9 @@ public class GWASTrack extends AbstractTrack {
     @XmlAttribute private Color secondaryColor;
 
     private GWASData gData;
+    // Indexed binary data, used instead of gData and parser for .bgwas files
+    private GWASBinaryReader reader;
+    private DescriptionCache binaryDescriptions;
     private static final Logger log = Logger.getLogger(GWASTrack.class);
 
     private static final int AXIS_AREA_WIDTH = 60;
@@ -99,13 +102,37 @@ public class GWASTrack extends AbstractTrack {
      */
     public GWASTrack(ResourceLocator locator, String id, String name, GWASData gData, GWASParser parser) {
 
+        this(locator, id, name, gData.getMaxValue());
+
+        this.gData = gData;
+        this.parser = parser;
+    }
+
+    /**
+     * Constructor for a track backed by an indexed binary GWAS file.  Data is loaded as needed for the view.
+     *
+     * @param locator
+     * @param id
+     * @param name
+     * @param reader
+     */
+    public GWASTrack(ResourceLocator locator, String id, String name, GWASBinaryReader reader) {
+
+        this(locator, id, name, reader.getMaxValue());
+
+        this.reader = reader;
+        this.binaryDescriptions = new DescriptionCache();
+        this.binaryDescriptions.setHeaderTokens(reader.getHeaderLine());
+    }
+
+    private GWASTrack(ResourceLocator locator, String id, String name, double dataMaxValue) {
 
         super(locator, id, name);
 
         PreferenceManager prefs = PreferenceManager.getInstance();
 
         // Set range from 0 to highest value rounded to greater integer
-        int maxValue = (int) Math.ceil(gData.getMaxValue());
+        int maxValue = (int) Math.ceil(dataMaxValue);
         super.setDataRange(new DataRange(0, (maxValue / 2), maxValue));
 
 
@@ -121,11 +148,49 @@ public class GWASTrack extends AbstractTrack {
         this.alternatingColors = prefs.getAsBoolean(PreferenceManager.GWAS_ALTERNATING_COLORS);
         this.useChrColors = prefs.getAsBoolean(PreferenceManager.GWAS_USE_CHR_COLORS);
         this.showAxis = prefs.getAsBoolean(PreferenceManager.GWAS_SHOW_AXIS);
+    }
 
-        this.gData = gData;
-        this.parser = parser;
+    private Collection<String> getChromosomes() {
+        return reader != null ? reader.getChromosomes() : gData.getLocations().keySet();
+    }
+
+    private double getDataMaxValue() {
+        return reader != null ? reader.getMaxValue() : gData.getMaxValue();
+    }
+
+    /**
+     * Return the data points of a chromosome to draw.  Binary files are read for the visible range, or from the
+     * precomputed summaries when a pixel covers more than the finest summary bin.
+     *
+     * @param chr
+     * @param wholeGenome true for the "All" view, where the scale is in kb per pixel
+     * @param origin
+     * @param locScale
+     * @param width
+     * @return the points, or null if there is no data for the chromosome
+     */
+    private GWASBinaryReader.Points getPoints(String chr, boolean wholeGenome, double origin, double locScale,
+                                              double width) throws IOException {
 
+        if (reader == null) {
+            IntArrayList locations = this.gData.getLocations().get(chr);
+            DoubleArrayList values = this.gData.getValues().get(chr);
+            return locations == null || values == null ? null : new GWASBinaryReader.Points(locations, values);
+        }
 
+        double bpPerPixel = wholeGenome ? locScale * 1000 : locScale;
+        GWASBinaryReader.Points points = reader.getSummary(chr, bpPerPixel);
+        if (points == null) {
+            if (wholeGenome) {
+                points = reader.getPoints(chr, 0, Integer.MAX_VALUE);
+            } else {
+                double dx = Math.ceil(1 / locScale) + 1;
+                int start = (int) Math.max(0, origin - dx * locScale - 1);
+                int end = (int) Math.min(Integer.MAX_VALUE, origin + width * locScale + 1);
+                points = reader.getPoints(chr, start, end);
+            }
+        }
+        return points;
     }
 
 
@@ -159,7 +224,7 @@ public class GWASTrack extends AbstractTrack {
         String chrName = context.getChr();
         ArrayList<String> chrList = new ArrayList();
         if (chrName.equals("All")) {
-            for (String key : gData.getLocations().keySet()) {
+            for (String key : getChromosomes()) {
                 chrList.add(key);
             }
 
@@ -168,19 +233,26 @@ public class GWASTrack extends AbstractTrack {
 
         }
         double dx = Math.ceil(1 / locScale) + 1;
-        double rangeMaxValue = Math.ceil(gData.getMaxValue());
+        double rangeMaxValue = Math.ceil(getDataMaxValue());
 
         double pointSizeScale = rangeMaxValue / maxPointSize;
 
         Color drawColor = this.primaryColor;
-        Object[] chrs = this.gData.getLocations().keySet().toArray();
+        Object[] chrs = getChromosomes().toArray();
 
         int xMinPointSize = (int) (1 / locScale);
 
         // Loop through data points, chromosome by chromosome
 
         for (String chr : chrList) {
-            if (this.gData.getLocations().containsKey(chr) && this.gData.getValues().containsKey(chr)) {
+            GWASBinaryReader.Points points;
+            try {
+                points = getPoints(chr, chrName.equals("All"), origin, locScale, adjustedRectMaxX);
+            } catch (IOException e) {
+                log.error("Error loading GWAS data for " + chr, e);
+                points = null;
+            }
+            if (points != null) {
 
 
                 // Choose a color for the chromosome
@@ -202,8 +274,8 @@ public class GWASTrack extends AbstractTrack {
 
                 }
 
-                IntArrayList locations = this.gData.getLocations().get(chr);
-                DoubleArrayList values = this.gData.getValues().get(chr);
+                IntArrayList locations = points.getLocations();
+                DoubleArrayList values = points.getValues();
 
                 int size = locations.size();
 
@@ -401,6 +473,20 @@ public class GWASTrack extends AbstractTrack {
      */
     int findIndex(String chr, int y, int location, int maxDistance) {
 
+        double[] valueRange = getValueSearchRange(y);
+
+        // Find data point based on the given coordinates and search parameters
+        return this.gData.getNearestIndexByLocation(chr, location, valueRange[0], valueRange[1], maxDistance);
+
+    }
+
+    /**
+     * Return the range of values, {bottom, top}, to search for data points near the y-coordinate
+     *
+     * @param y
+     * @return
+     */
+    private double[] getValueSearchRange(int y) {
 
         // Calculate offset from track location by other tracks
         y = y - (int) this.trackMinY;
@@ -418,10 +504,53 @@ public class GWASTrack extends AbstractTrack {
         if (bottomValue < 0)
             bottomValue = 0;
 
+        return new double[]{bottomValue, topValue};
+    }
 
-        // Find data point based on the given coordinates and search parameters
-        return this.gData.getNearestIndexByLocation(chr, location, bottomValue, topValue, maxDistance);
+    /**
+     * Get description for the data point closest to given chromosomal location and y-coordinate in a binary file.
+     *
+     * @param chr
+     * @param y
+     * @param location
+     * @param maxDistance
+     * @return the description, or null if there is no data point near the location
+     */
+    String getBinaryDescription(String chr, int y, int location, int maxDistance) {
+
+        double[] valueRange = getValueSearchRange(y);
+
+        try {
+            GWASBinaryReader.Points points = reader.getPoints(chr, location - maxDistance, location + maxDistance);
+            int index = GWASData.getNearestIndex(points.getLocations(), points.getValues(), location,
+                    valueRange[0], valueRange[1], maxDistance);
+            if (index < 0) return null;
+
+            double value = points.getValues().get(index);
+            int hitLocation = points.getLocations().get(index);
+
+            String textValue = "";
+            textValue += chr + ": " + hitLocation + "<br>";
+            textValue += "Value: " + value + "<br>";
+            textValue += "-----<br>";
+
+            String tmpDescription = binaryDescriptions.getDescriptionString(chr, hitLocation, value);
+            if (tmpDescription == null) {
+                String description = reader.getDescription(chr, hitLocation, value);
+                if (description != null) {
+                    binaryDescriptions.add(chr, hitLocation, value, description);
+                    tmpDescription = binaryDescriptions.getDescriptionString(chr, hitLocation, value);
+                }
+            }
+            if (tmpDescription != null) {
+                textValue += tmpDescription;
+            }
+            return textValue;
 
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            return null;
+        }
     }
 
     /**
@@ -491,6 +620,10 @@ public class GWASTrack extends AbstractTrack {
             maxDistance = maxDistance * 1000;
         }
 
+        if (reader != null) {
+            return getBinaryDescription(chr, y, location, maxDistance);
+        }
+
         int index = findIndex(chr, y, location, maxDistance);
 
         // If there is a data point at the given location, fetch description
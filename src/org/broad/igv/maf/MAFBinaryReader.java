@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.maf;
+
+import net.sf.samtools.seekablestream.SeekableStream;
+import org.apache.log4j.Logger;
+import org.broad.igv.exceptions.DataLoadException;
+import org.broad.igv.util.CompressionUtils;
+import org.broad.igv.util.StringUtils;
+import org.broad.igv.util.stream.IGVSeekableStreamFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+import static org.broad.igv.maf.MAFBinaryWriter.MAGIC;
+import static org.broad.igv.maf.MAFBinaryWriter.VERSION;
+
+/**
+ * Reader for the block compressed MAF format written by {@link MAFBinaryWriter}.  Only the index is read when the
+ * file is opened.  Alignment rows are decompressed only for the species requested.
+ */
+public class MAFBinaryReader implements MAFReader {
+
+    private static final Logger log = Logger.getLogger(MAFBinaryReader.class);
+
+    private String path;
+    private SeekableStream stream;
+    private CompressionUtils compressionUtils = new CompressionUtils();
+
+    private String trackName;
+    private String refId;
+    private List<String> species;
+    private int displaySpeciesCount;
+    private Map<String, Integer> speciesIndex = new HashMap<String, Integer>();
+    private Map<String, ChromosomeIndex> chromosomes = new LinkedHashMap<String, ChromosomeIndex>();
+
+    public static boolean isBinaryMAFFile(String typeString) {
+        return typeString.endsWith(MAFBinaryWriter.EXTENSION);
+    }
+
+    public MAFBinaryReader(String path) {
+        this.path = path;
+        try {
+            stream = IGVSeekableStreamFactory.getInstance().getStreamFor(path);
+            readIndex();
+        } catch (IOException e) {
+            log.error("Error loading file: " + path, e);
+            throw new DataLoadException("Error loading file: " + e.toString(), path);
+        }
+    }
+
+    private void readIndex() throws IOException {
+
+        ByteBuffer buffer = getBuffer(0, 20);
+        byte[] magic = new byte[4];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new DataLoadException("Not a binary MAF file", path);
+        }
+        int version = buffer.getInt();
+        if (version > VERSION) {
+            throw new DataLoadException("Unsupported binary MAF version: " + version, path);
+        }
+        long indexPosition = buffer.getLong();
+        int indexSize = buffer.getInt();
+
+        buffer = getBuffer(indexPosition, indexSize);
+        trackName = StringUtils.readString(buffer);
+        if (trackName.length() == 0) {
+            trackName = null;
+        }
+        refId = StringUtils.readString(buffer);
+        if (refId.length() == 0) {
+            refId = null;
+        }
+        displaySpeciesCount = buffer.getInt();
+        int nSpecies = buffer.getInt();
+        species = new ArrayList<String>(nSpecies);
+        for (int i = 0; i < nSpecies; i++) {
+            String sp = StringUtils.readString(buffer);
+            species.add(sp);
+            speciesIndex.put(sp, i);
+        }
+        int nChromosomes = buffer.getInt();
+        for (int c = 0; c < nChromosomes; c++) {
+            String chr = StringUtils.readString(buffer);
+            int nChunks = buffer.getInt();
+            ChromosomeIndex chrIndex = new ChromosomeIndex(nChunks);
+            for (int i = 0; i < nChunks; i++) {
+                chrIndex.starts[i] = buffer.getInt();
+                chrIndex.ends[i] = buffer.getInt();
+                chrIndex.positions[i] = buffer.getLong();
+                chrIndex.sizes[i] = buffer.getInt();
+            }
+            chromosomes.put(chr, chrIndex);
+        }
+    }
+
+    public String getTrackName() {
+        return trackName;
+    }
+
+    @Override
+    public List<MultipleAlignmentBlock> loadAlignments(String chr, int start, int end) throws IOException {
+        return loadAlignments(chr, start, end, null);
+    }
+
+    /**
+     * Load alignment blocks overlapping the interval, with rows for the reference and the given species only.
+     *
+     * @param chr
+     * @param start
+     * @param end
+     * @param selectedSpecies species to load, or null for all species
+     * @return the alignment blocks, or null if there are none
+     * @throws IOException
+     */
+    public List<MultipleAlignmentBlock> loadAlignments(String chr, int start, int end,
+                                                       Collection<String> selectedSpecies) throws IOException {
+
+        ChromosomeIndex chrIndex = chromosomes.get(chr);
+        if (chrIndex == null) return null;
+
+        boolean[] selected = new boolean[species.size()];
+        if (selectedSpecies == null) {
+            Arrays.fill(selected, true);
+        } else {
+            for (String sp : selectedSpecies) {
+                Integer idx = speciesIndex.get(sp);
+                if (idx != null) selected[idx] = true;
+            }
+        }
+
+        List<MultipleAlignmentBlock> alignments = new ArrayList<MultipleAlignmentBlock>();
+        for (int i = chrIndex.getFirstChunk(start); i < chrIndex.starts.length && chrIndex.starts[i] <= end; i++) {
+            for (MultipleAlignmentBlock block : readChunk(chrIndex, i, selected)) {
+                if (block.getEnd() >= start && block.getStart() <= end) {
+                    alignments.add(block);
+                }
+            }
+        }
+        return alignments.isEmpty() ? null : alignments;
+    }
+
+    /**
+     * Read a chunk of alignment blocks.  Only the part of the chunk up to the last selected species section is
+     * read, and only the selected sections are decompressed.
+     */
+    private List<MultipleAlignmentBlock> readChunk(ChromosomeIndex chrIndex, int chunk, boolean[] selected)
+            throws IOException {
+
+        long position = chrIndex.positions[chunk];
+        int nSections = getBuffer(position, 4).getInt();
+        int headerSize = 4 * (nSections + 2);
+        ByteBuffer header = getBuffer(position, headerSize);
+        header.getInt();
+
+        int refSize = header.getInt();
+        int[] sectionSizes = new int[nSections];
+        int[] sectionOffsets = new int[nSections];
+        int offset = headerSize + refSize;
+        int readSize = offset;
+        for (int sp = 0; sp < nSections; sp++) {
+            sectionSizes[sp] = header.getInt();
+            sectionOffsets[sp] = offset;
+            offset += sectionSizes[sp];
+            if (sp < selected.length && selected[sp] && sectionSizes[sp] > 0) {
+                readSize = offset;
+            }
+        }
+
+        byte[] bytes = readBytes(position, readSize);
+
+        ByteBuffer refSection = decompress(bytes, headerSize, refSize);
+        int nBlocks = refSection.getInt();
+        List<MultipleAlignmentBlock> blocks = new ArrayList<MultipleAlignmentBlock>(nBlocks);
+        for (int b = 0; b < nBlocks; b++) {
+            String sp = species.get(refSection.getInt());
+            MultipleAlignmentBlock block = new MultipleAlignmentBlock();
+            block.addSequence(getSequence(refSection, sp));
+            blocks.add(block);
+        }
+
+        for (int sp = 0; sp < nSections && sp < selected.length; sp++) {
+            if (!selected[sp] || sectionSizes[sp] == 0) continue;
+            ByteBuffer section = decompress(bytes, sectionOffsets[sp], sectionSizes[sp]);
+            String spName = species.get(sp);
+            for (MultipleAlignmentBlock block : blocks) {
+                int nRows = section.getInt();
+                for (int r = 0; r < nRows; r++) {
+                    block.addSequence(getSequence(section, spName));
+                }
+            }
+        }
+        return blocks;
+    }
+
+    private static MultipleAlignmentBlock.Sequence getSequence(ByteBuffer buffer, String species) throws IOException {
+        String chr = StringUtils.readString(buffer);
+        int start = buffer.getInt();
+        int size = buffer.getInt();
+        char strand = (char) buffer.get();
+        int srcSize = buffer.getInt();
+        String text = StringUtils.readString(buffer);
+        return new MultipleAlignmentBlock.Sequence(species, chr, start, size, strand, srcSize, text);
+    }
+
+    private ByteBuffer decompress(byte[] bytes, int offset, int length) {
+        byte[] compressed = new byte[length];
+        System.arraycopy(bytes, offset, compressed, 0, length);
+        ByteBuffer buffer = ByteBuffer.wrap(compressionUtils.decompress(compressed));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    @Override
+    public Collection<String> getChrNames() {
+        return chromosomes.keySet();
+    }
+
+    @Override
+    public Collection<String> getSpecies() {
+        return species.subList(0, displaySpeciesCount);
+    }
+
+    @Override
+    public String getSpeciesName(String speciesId) {
+        return speciesId;
+    }
+
+    @Override
+    public String getRefId() {
+        return refId;
+    }
+
+    private ByteBuffer getBuffer(long position, int nBytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(readBytes(position, nBytes));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private synchronized byte[] readBytes(long position, int nBytes) throws IOException {
+        stream.seek(position);
+        byte[] buffer = new byte[nBytes];
+        int n = 0;
+        while (n < nBytes) {
+            int count = stream.read(buffer, n, nBytes - n);
+            if (count < 0) {
+                throw new IOException("Unexpected end of file: " + path);
+            }
+            n += count;
+        }
+        return buffer;
+    }
+
+    public void close() {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            log.error("Error closing " + path, e);
+        }
+    }
+
+    /**
+     * Chunk index of a reference chromosome.  Chunks are sorted by start, and since alignment blocks do not overlap
+     * their ends are sorted too.
+     */
+    static class ChromosomeIndex {
+        int[] starts;
+        int[] ends;
+        long[] positions;
+        int[] sizes;
+
+        ChromosomeIndex(int nChunks) {
+            starts = new int[nChunks];
+            ends = new int[nChunks];
+            positions = new long[nChunks];
+            sizes = new int[nChunks];
+        }
+
+        /**
+         * Return the first chunk ending at or after the position
+         */
+        int getFirstChunk(int position) {
+            int low = 0;
+            int high = ends.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ends[mid] < position) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
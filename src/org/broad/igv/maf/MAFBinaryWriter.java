@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.maf;
+
+import org.broad.igv.tdf.BufferedByteWriter;
+import org.broad.igv.util.CompressionUtils;
+import org.broad.igv.util.ParsingUtils;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Converts a MAF file to the block compressed binary format read by {@link MAFBinaryReader}.
+ * <p/>
+ * File layout, little endian:
+ * <pre>
+ * header:   magic "BMAF", version, index position (long), index size
+ * chunks:   runs of up to BLOCK_SIZE alignment blocks on one reference chromosome.  Each chunk starts with the
+ *           number of species sections and the compressed size of the reference section and of each species
+ *           section, followed by the sections.
+ *           The reference section holds the reference rows, each species section holds the rows of that species
+ *           for all blocks of the chunk, so only the species being viewed need to be decompressed.
+ * index:    track name, reference species, species, and for each reference chromosome the start, end, position and size of its
+ *           chunks
+ * </pre>
+ * Quality ("q"), information ("i") and empty region ("e") lines are not stored.
+ */
+public class MAFBinaryWriter {
+
+    public static final String EXTENSION = ".maf.bin";
+
+    static final byte[] MAGIC = new byte[]{'B', 'M', 'A', 'F'};
+    static final int VERSION = 1;
+
+    /**
+     * Maximum number of alignment blocks per chunk
+     */
+    static final int BLOCK_SIZE = 100;
+
+    private File outputFile;
+    private OutputStream os;
+    private long bytesWritten = 0;
+    private CompressionUtils compressionUtils = new CompressionUtils();
+
+    private String trackName;
+    private String refId;
+    private List<String> displaySpecies;
+    private List<String> species;
+    private Map<String, Integer> speciesIndex = new HashMap<String, Integer>();
+    private Map<String, List<ChunkIndex>> chromosomes = new LinkedHashMap<String, List<ChunkIndex>>();
+
+    // Current chunk
+    private List<MultipleAlignmentBlock> blocks = new ArrayList<MultipleAlignmentBlock>(BLOCK_SIZE);
+
+    /**
+     * Convert a MAF file.  Blocks are expected in reference order, as for loading the text file directly.
+     *
+     * @param inputPath
+     * @param outputFile
+     * @throws IOException
+     */
+    public static void convert(String inputPath, File outputFile) throws IOException {
+
+        MAFIndex index = MAFIndex.createIndex(inputPath);
+        MAFParser parser = new MAFParser(inputPath, index);
+
+        MAFBinaryWriter writer = new MAFBinaryWriter(outputFile, parser.getTrackName(), parser.getRefId(),
+                new ArrayList<String>(parser.getSpecies()), index.getSpecies());
+        boolean success = false;
+        BufferedReader reader = null;
+        try {
+            reader = ParsingUtils.openBufferedReader(inputPath);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("a ")) {
+                    MultipleAlignmentBlock block = MAFParser.parseBlock(reader);
+                    if (!block.getSequences().isEmpty()) {
+                        writer.add(block);
+                    }
+                }
+            }
+            writer.close();
+            success = true;
+        } finally {
+            if (reader != null) reader.close();
+            if (!success) {
+                writer.os.close();
+                outputFile.delete();
+            }
+        }
+    }
+
+    MAFBinaryWriter(File outputFile, String trackName, String refId, List<String> displaySpecies,
+                    List<String> allSpecies) throws IOException {
+        this.outputFile = outputFile;
+        this.trackName = trackName;
+        this.refId = refId;
+        this.displaySpecies = displaySpecies;
+
+        // Species sections are ordered as displayed, followed by species not in the display order, so the
+        // sections read for the default display are contiguous
+        species = new ArrayList<String>(displaySpecies);
+        for (String sp : allSpecies) {
+            if (!species.contains(sp)) {
+                species.add(sp);
+            }
+        }
+        for (int i = 0; i < species.size(); i++) {
+            speciesIndex.put(species.get(i), i);
+        }
+
+        os = new BufferedOutputStream(new FileOutputStream(outputFile));
+        BufferedByteWriter buffer = new BufferedByteWriter(24);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        // Reserve space for the index position and size, written on close
+        buffer.putLong(0l);
+        buffer.putInt(0);
+        write(buffer.getBytes());
+    }
+
+    void add(MultipleAlignmentBlock block) throws IOException {
+        if (!blocks.isEmpty() &&
+                (blocks.size() == BLOCK_SIZE || !blocks.get(0).getChr().equals(block.getChr()))) {
+            writeChunk();
+        }
+        blocks.add(block);
+    }
+
+    private void writeChunk() throws IOException {
+        if (blocks.isEmpty()) return;
+
+        BufferedByteWriter refSection = new BufferedByteWriter();
+        refSection.putInt(blocks.size());
+        BufferedByteWriter[] speciesSections = new BufferedByteWriter[species.size()];
+
+        for (int b = 0; b < blocks.size(); b++) {
+            List<MultipleAlignmentBlock.Sequence> sequences = blocks.get(b).getSequences();
+            MultipleAlignmentBlock.Sequence ref = sequences.get(0);
+            refSection.putInt(getSpeciesIndex(ref.getSpecies()));
+            putSequence(refSection, ref);
+
+            // Rows per species in this block, a species can have more than one row
+            Map<Integer, List<MultipleAlignmentBlock.Sequence>> rows =
+                    new HashMap<Integer, List<MultipleAlignmentBlock.Sequence>>();
+            for (int i = 1; i < sequences.size(); i++) {
+                MultipleAlignmentBlock.Sequence seq = sequences.get(i);
+                int sp = getSpeciesIndex(seq.getSpecies());
+                List<MultipleAlignmentBlock.Sequence> spRows = rows.get(sp);
+                if (spRows == null) {
+                    spRows = new ArrayList<MultipleAlignmentBlock.Sequence>(1);
+                    rows.put(sp, spRows);
+                }
+                spRows.add(seq);
+            }
+
+            for (Map.Entry<Integer, List<MultipleAlignmentBlock.Sequence>> entry : rows.entrySet()) {
+                int sp = entry.getKey();
+                if (speciesSections[sp] == null) {
+                    // Earlier blocks of the chunk have no rows for this species
+                    speciesSections[sp] = new BufferedByteWriter();
+                    for (int i = 0; i < b; i++) {
+                        speciesSections[sp].putInt(0);
+                    }
+                }
+            }
+            for (int sp = 0; sp < speciesSections.length; sp++) {
+                if (speciesSections[sp] == null) continue;
+                List<MultipleAlignmentBlock.Sequence> spRows = rows.get(sp);
+                if (spRows == null) {
+                    speciesSections[sp].putInt(0);
+                } else {
+                    speciesSections[sp].putInt(spRows.size());
+                    for (MultipleAlignmentBlock.Sequence seq : spRows) {
+                        putSequence(speciesSections[sp], seq);
+                    }
+                }
+            }
+        }
+
+        byte[] refBytes = compressionUtils.compress(refSection.getBytes());
+        byte[][] speciesBytes = new byte[species.size()][];
+        BufferedByteWriter header = new BufferedByteWriter(4 * (species.size() + 2));
+        header.putInt(species.size());
+        header.putInt(refBytes.length);
+        int size = refBytes.length;
+        for (int sp = 0; sp < species.size(); sp++) {
+            speciesBytes[sp] = speciesSections[sp] == null ? new byte[0] :
+                    compressionUtils.compress(speciesSections[sp].getBytes());
+            header.putInt(speciesBytes[sp].length);
+            size += speciesBytes[sp].length;
+        }
+
+        ChunkIndex chunk = new ChunkIndex();
+        chunk.start = blocks.get(0).getStart();
+        chunk.end = blocks.get(blocks.size() - 1).getEnd();
+        chunk.position = bytesWritten;
+        chunk.size = header.bytesWritten() + size;
+
+        write(header.getBytes());
+        write(refBytes);
+        for (byte[] bytes : speciesBytes) {
+            write(bytes);
+        }
+
+        String chr = blocks.get(0).getChr();
+        List<ChunkIndex> chunks = chromosomes.get(chr);
+        if (chunks == null) {
+            chunks = new ArrayList<ChunkIndex>();
+            chromosomes.put(chr, chunks);
+        }
+        chunks.add(chunk);
+        blocks.clear();
+    }
+
+    private int getSpeciesIndex(String sp) throws IOException {
+        Integer index = speciesIndex.get(sp);
+        if (index == null) {
+            // Not expected, the species list is collected from the same file
+            throw new IOException("Species not found in index: " + sp);
+        }
+        return index;
+    }
+
+    private static void putSequence(BufferedByteWriter buffer, MultipleAlignmentBlock.Sequence seq) throws IOException {
+        buffer.putNullTerminatedString(seq.getChr());
+        buffer.putInt(seq.getStart());
+        buffer.putInt(seq.getSize());
+        buffer.put((byte) seq.getStrand());
+        buffer.putInt(seq.getSrcSize());
+        buffer.putNullTerminatedString(seq.getText());
+    }
+
+    void close() throws IOException {
+
+        writeChunk();
+
+        BufferedByteWriter buffer = new BufferedByteWriter();
+        buffer.putNullTerminatedString(trackName == null ? "" : trackName);
+        buffer.putNullTerminatedString(refId == null ? "" : refId);
+        buffer.putInt(displaySpecies.size());
+        buffer.putInt(species.size());
+        for (String sp : species) {
+            buffer.putNullTerminatedString(sp);
+        }
+        buffer.putInt(chromosomes.size());
+        for (Map.Entry<String, List<ChunkIndex>> entry : chromosomes.entrySet()) {
+            List<ChunkIndex> chunks = entry.getValue();
+            Collections.sort(chunks, new Comparator<ChunkIndex>() {
+                public int compare(ChunkIndex c1, ChunkIndex c2) {
+                    return c1.start < c2.start ? -1 : (c1.start == c2.start ? 0 : 1);
+                }
+            });
+            buffer.putNullTerminatedString(entry.getKey());
+            buffer.putInt(chunks.size());
+            for (ChunkIndex chunk : chunks) {
+                buffer.putInt(chunk.start);
+                buffer.putInt(chunk.end);
+                buffer.putLong(chunk.position);
+                buffer.putInt(chunk.size);
+            }
+        }
+
+        long indexPosition = bytesWritten;
+        int indexSize = buffer.bytesWritten();
+        write(buffer.getBytes());
+        os.close();
+
+        RandomAccessFile raf = new RandomAccessFile(outputFile, "rw");
+        try {
+            raf.seek(8);
+            buffer = new BufferedByteWriter(12);
+            buffer.putLong(indexPosition);
+            buffer.putInt(indexSize);
+            raf.write(buffer.getBytes());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        os.write(bytes);
+        bytesWritten += bytes.length;
+    }
+
+    static class ChunkIndex {
+        int start;
+        int end;
+        long position;
+        int size;
+    }
+}
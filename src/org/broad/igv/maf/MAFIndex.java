@@ -18,29 +18,86 @@
  */
 package org.broad.igv.maf;
 
+import net.sf.samtools.seekablestream.SeekableStream;
+import net.sf.samtools.util.BlockCompressedInputStream;
 import org.broad.igv.Globals;
+import org.broad.igv.tdf.BufferedByteWriter;
+import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
-import org.broad.igv.util.index.Interval;
-import org.broad.igv.util.index.IntervalTree;
+import org.broad.igv.util.StringUtils;
+import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 import org.broad.tribble.readers.AsciiLineReader;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
+ * Index of a MAF file.  For each reference chromosome the index holds the reference interval and the file offset
+ * of runs of alignment blocks, in sorted arrays.  For bgzipped files offsets are BGZF virtual file pointers.
+ * <p/>
+ * Indexes are stored as text, or in a binary format (BINARY_EXTENSION) whose arrays are read for a chromosome
+ * the first time it is queried:
+ * <pre>
+ * header:  magic "MAFI", version, header size, flags (version 2), species, and for each chromosome the name,
+ *          interval count, and position of its arrays
+ * arrays:  for each chromosome interval starts (int), ends (int), and file offsets (long)
+ * </pre>
+ *
  * @author jrobinso
  *         Date: 2/8/13
  *         Time: 7:23 AM
  */
 public class MAFIndex {
 
+    public static final String BINARY_EXTENSION = ".index.bin";
+
+    static final byte[] MAGIC = new byte[]{'M', 'A', 'F', 'I'};
+    static final int VERSION = 2;
+
+    /**
+     * Binary index flag set if offsets are BGZF virtual file pointers
+     */
+    static final int FLAG_BGZF = 1;
+
+    private static final int BGZF_HEADER_SIZE = 18;
+    private static final int BGZF_FOOTER_SIZE = 8;
+
+    /**
+     * Maximum number of BGZF blocks being inflated or waiting to be scanned when indexing
+     */
+    private static final int WINDOW_SIZE = 4 * Runtime.getRuntime().availableProcessors() + 4;
+
+    private static final ExecutorService inflaterPool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "MAF index inflater");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
     private List<String> species;
 
     /**
-     * Map of chromosome name -> interval tree
+     * Map of chromosome name -> interval arrays
      */
-    private Map<String, IntervalTree> intervalTrees;
+    private Map<String, ChromosomeIndex> chromosomes;
+
+    /**
+     * Binary index file from which chromosome arrays are loaded on first access, null if the index is in memory
+     */
+    private String binaryIndexPath;
+
+    /**
+     * True if offsets are BGZF virtual file pointers, null if not recorded by the index
+     */
+    private Boolean bgzf;
 
     /**
      * The # of alignments represented by an interval in the tree.
@@ -49,7 +106,7 @@ public class MAFIndex {
     public static int blockSize = 50;
 
     public MAFIndex() {
-        intervalTrees = new HashMap<String, IntervalTree>();
+        chromosomes = new LinkedHashMap<String, ChromosomeIndex>();
     }
 
     /**
@@ -63,6 +120,14 @@ public class MAFIndex {
         this.species = species;
     }
 
+    /**
+     * @return true if the offsets are BGZF virtual file pointers, false if they are plain file offsets, or null if
+     *         the index does not record it (text indexes, and binary indexes before version 2)
+     */
+    public Boolean isBGZF() {
+        return bgzf;
+    }
+
     /**
      * The reference species.
      */
@@ -71,31 +136,50 @@ public class MAFIndex {
     }
 
     public Collection<String> getChromosomes() {
-        return intervalTrees.keySet();
+        return chromosomes.keySet();
     }
 
-    public IntervalTree getIntervalTree(String chr) {
-
-        IntervalTree iv = intervalTrees.get(chr);
-        if(iv == null) {
-            iv = intervalTrees.get("*"); // To support legacy MAF indeces, files are split by chromosome
-        }
-        return iv;
+    /**
+     * Return the file offset from which to read alignment blocks overlapping the interval, or -1 if there
+     * are none.  Alignment blocks do not overlap, so reading can proceed from this offset until past the end
+     * of the interval.
+     *
+     * @param chr
+     * @param start
+     * @param end
+     * @return
+     * @throws IOException
+     */
+    public long getStartPosition(String chr, int start, int end) throws IOException {
+        ChromosomeIndex chrIndex = getChromosomeIndex(chr);
+        return chrIndex == null ? -1 : chrIndex.getStartPosition(start, end);
     }
 
+    synchronized ChromosomeIndex getChromosomeIndex(String chr) throws IOException {
 
-    public void putIntervalTree(String s, IntervalTree iv) {
+        ChromosomeIndex chrIndex = chromosomes.get(chr);
+        if (chrIndex == null) {
+            chrIndex = chromosomes.get("*"); // To support legacy MAF indeces, files are split by chromosome
+        }
+        if (chrIndex != null && !chrIndex.loaded) {
+            loadChromosome(chrIndex);
+        }
+        return chrIndex;
+    }
 
-        intervalTrees.put(s, iv);
+    public void insertInterval(String chr, int intervalStart, int intervalEnd, long value) {
+        ChromosomeIndex chrIndex = chromosomes.get(chr);
+        if (chrIndex == null) {
+            chrIndex = new ChromosomeIndex();
+            chromosomes.put(chr, chrIndex);
+        }
+        chrIndex.add(intervalStart, intervalEnd, value);
     }
 
-    public void insertInterval(String lastChr, int intervalStart, int intervalEnd, long value) {
-        IntervalTree iv = intervalTrees.get(lastChr);
-        if (iv == null) {
-            iv = new IntervalTree();
-            intervalTrees.put(lastChr, iv);
+    private void finish() {
+        for (ChromosomeIndex chrIndex : chromosomes.values()) {
+            chrIndex.finish();
         }
-        iv.insert(new Interval(intervalStart, intervalEnd, value));
     }
 
 
@@ -108,7 +192,6 @@ public class MAFIndex {
         MAFIndex index = new MAFIndex();
         index.species = new ArrayList<String>();
 
-        //index = new IntervalTree<Long>();
         BufferedReader br = null;
         try {
             br = ParsingUtils.openBufferedReader(idxFile);
@@ -124,19 +207,18 @@ public class MAFIndex {
                     index.species.add(line.trim());
                 }
 
-                IntervalTree iv = null;
+                String chr = null;
                 while ((line = br.readLine()) != null) {
                     if (line.trim().length() == 0) continue;
                     if (line.startsWith("#chr=")) {
-                        String chr = ParsingUtils.EQ_PATTERN.split(line)[1];
-                        iv = new IntervalTree();
-                        index.putIntervalTree(chr, iv);
-                    } else if (iv != null) {
+                        chr = ParsingUtils.EQ_PATTERN.split(line)[1];
+                        index.chromosomes.put(chr, new ChromosomeIndex());
+                    } else if (chr != null) {
                         String[] info = Globals.tabPattern.split(line);
                         int start = Integer.parseInt(info[0]);
                         int end = Integer.parseInt(info[1]) + start;
                         long offset = Long.parseLong(info[2]);
-                        iv.insert(new Interval(start, end, offset));
+                        index.insertInterval(chr, start, end, offset);
                     } else {
                         // log.info("Skipping line " + line);
                     }
@@ -145,7 +227,6 @@ public class MAFIndex {
             } else {
                 // A "legacy" index, created for Broad hosted files that are separated by chromosome.
                 // Every alignment is indexed, which is overkill.  Below we lump them into blocks of 50.
-                IntervalTree iv = new IntervalTree();
                 int l = 0;
                 int intervalStart = 0;
                 int intervalEnd = 0;
@@ -155,28 +236,115 @@ public class MAFIndex {
                     int start = Integer.parseInt(info[0]);
                     intervalEnd = Integer.parseInt(info[1]) + start;
                     if (l % 50 == 0) {
-                        iv.insert(new Interval(intervalStart, intervalEnd, lastOffset));
+                        index.insertInterval("*", intervalStart, intervalEnd, lastOffset);
                         intervalStart = intervalEnd;
                         lastOffset = Long.parseLong(info[2]);
                     }
                     l++;
                 }
 
-                if(intervalEnd > intervalStart) {
-                    iv.insert(new Interval(intervalStart, intervalEnd, lastOffset));
+                if (intervalEnd > intervalStart) {
+                    index.insertInterval("*", intervalStart, intervalEnd, lastOffset);
                 }
-
-                index.putIntervalTree("*", iv);
             }
         } finally {
             if (br != null) br.close();
         }
+        index.finish();
         return index;
     }
 
+    /**
+     * Load a binary index.  Only the species and chromosome names are read, the interval arrays of a chromosome
+     * are read when it is first queried.
+     *
+     * @param idxFile
+     * @return
+     * @throws IOException
+     */
+    public static MAFIndex loadBinaryIndex(String idxFile) throws IOException {
+
+        SeekableStream stream = IGVSeekableStreamFactory.getInstance().getStreamFor(idxFile);
+        try {
+            ByteBuffer buffer = readBuffer(stream, 0, 12);
+            byte[] magic = new byte[4];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a binary MAF index: " + idxFile);
+            }
+            int version = buffer.getInt();
+            if (version > VERSION) {
+                throw new IOException("Unsupported binary MAF index version: " + version);
+            }
+            int headerSize = buffer.getInt();
+
+            buffer = readBuffer(stream, 12, headerSize - 12);
+            MAFIndex index = new MAFIndex();
+            index.binaryIndexPath = idxFile;
+            if (version >= 2) {
+                int flags = buffer.getInt();
+                index.bgzf = (flags & FLAG_BGZF) != 0;
+            }
+            int nSpecies = buffer.getInt();
+            index.species = new ArrayList<String>(nSpecies);
+            for (int i = 0; i < nSpecies; i++) {
+                index.species.add(StringUtils.readString(buffer));
+            }
+            int nChromosomes = buffer.getInt();
+            for (int i = 0; i < nChromosomes; i++) {
+                String chr = StringUtils.readString(buffer);
+                ChromosomeIndex chrIndex = new ChromosomeIndex();
+                chrIndex.size = buffer.getInt();
+                chrIndex.position = buffer.getLong();
+                chrIndex.loaded = false;
+                index.chromosomes.put(chr, chrIndex);
+            }
+            return index;
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void loadChromosome(ChromosomeIndex chrIndex) throws IOException {
+        SeekableStream stream = IGVSeekableStreamFactory.getInstance().getStreamFor(binaryIndexPath);
+        try {
+            int n = chrIndex.size;
+            ByteBuffer buffer = readBuffer(stream, chrIndex.position, 16 * n);
+            chrIndex.starts = new int[n];
+            chrIndex.ends = new int[n];
+            chrIndex.offsets = new long[n];
+            buffer.asIntBuffer().get(chrIndex.starts);
+            buffer.position(4 * n);
+            buffer.asIntBuffer().get(chrIndex.ends);
+            buffer.position(8 * n);
+            buffer.asLongBuffer().get(chrIndex.offsets);
+            chrIndex.loaded = true;
+            chrIndex.finish();
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static ByteBuffer readBuffer(SeekableStream stream, long position, int nBytes) throws IOException {
+        stream.seek(position);
+        byte[] bytes = new byte[nBytes];
+        int n = 0;
+        while (n < nBytes) {
+            int count = stream.read(bytes, n, nBytes - n);
+            if (count < 0) {
+                throw new EOFException("Unexpected end of MAF index");
+            }
+            n += count;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
 
     /**
-     * Create an index for the MAF file.
+     * Create an index for the MAF file.  Bgzipped local files are decompressed on a thread pool, and indexed
+     * with virtual file pointers.
      * <p/>
      * Example MAF lines:
      * a score=34237.000000
@@ -188,101 +356,281 @@ public class MAFIndex {
      */
     public static MAFIndex createIndex(String alignmentFile) throws IOException {
 
-        MAFIndex index = new MAFIndex();
+        if (isBGZF(alignmentFile)) {
+            return FileUtils.isRemote(alignmentFile) ?
+                    createStreamedBGZFIndex(alignmentFile) :
+                    createBGZFIndex(alignmentFile);
+        }
+
+        IndexBuilder builder = new IndexBuilder();
         AsciiLineReader reader = ParsingUtils.openAsciiReader(new ResourceLocator(alignmentFile));
+        try {
+            long position = reader.getPosition();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                builder.addLine(line, position);
+                position = reader.getPosition();
+            }
+        } finally {
+            reader.close();
+        }
+        MAFIndex index = builder.finish();
+        index.bgzf = false;
+        return index;
+    }
 
+    /**
+     * Return true if the file, local or remote, is bgzipped.  The first bytes are read, the file name is not used.
+     */
+    static boolean isBGZF(String path) {
+        InputStream is = null;
+        try {
+            is = new BufferedInputStream(IGVSeekableStreamFactory.getInstance().getStreamFor(path));
+            return BlockCompressedInputStream.isValidFile(is);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // close quietly
+                }
+            }
+        }
+    }
+
+    /**
+     * Index a bgzipped MAF file.  Compressed blocks are read sequentially and inflated on a thread pool, up to
+     * WINDOW_SIZE blocks ahead of the block being scanned.  Lines are scanned in file order.
+     */
+    private static MAFIndex createBGZFIndex(String alignmentFile) throws IOException {
 
+        IndexBuilder builder = new IndexBuilder();
+        RandomAccessFile file = new RandomAccessFile(alignmentFile, "r");
+        LinkedList<Future<byte[]>> window = new LinkedList<Future<byte[]>>();
+        LinkedList<Long> windowAddresses = new LinkedList<Long>();
         try {
+            long length = file.length();
+            long nextBlockAddress = 0;
+
+            // Bytes of the current line, only the beginning is kept.  Indexing needs the first four fields.
+            byte[] lineBytes = new byte[256];
+            int lineLength = 0;
+            long linePosition = -1;
+
+            while (true) {
+                while (window.size() < WINDOW_SIZE && nextBlockAddress < length) {
+                    byte[] compressed = readBGZFBlock(file, nextBlockAddress);
+                    window.add(inflaterPool.submit(new InflateTask(compressed)));
+                    windowAddresses.add(nextBlockAddress);
+                    nextBlockAddress += compressed.length;
+                }
+                if (window.isEmpty()) {
+                    break;
+                }
 
-            String lastChr = null;
-            int intervalStart = 0;
-            int intervalEnd = 0;
-            int blockCount = 0;
+                long blockAddress = windowAddresses.removeFirst();
+                byte[] bytes = getInflated(window.removeFirst(), alignmentFile);
+                for (int i = 0; i < bytes.length; i++) {
+                    byte b = bytes[i];
+                    if (linePosition < 0) {
+                        linePosition = (blockAddress << 16) | i;
+                    }
+                    if (b == '\n') {
+                        builder.addLine(getLine(lineBytes, lineLength), linePosition);
+                        lineLength = 0;
+                        linePosition = -1;
+                    } else if (lineLength < lineBytes.length) {
+                        lineBytes[lineLength++] = b;
+                    }
+                }
+            }
+            if (linePosition >= 0) {
+                builder.addLine(getLine(lineBytes, lineLength), linePosition);
+            }
+        } finally {
+            for (Future<byte[]> future : window) {
+                future.cancel(false);
+            }
+            file.close();
+        }
+        MAFIndex index = builder.finish();
+        index.bgzf = true;
+        return index;
+    }
+
+    /**
+     * Index a remote bgzipped MAF file, reading it sequentially.
+     */
+    private static MAFIndex createStreamedBGZFIndex(String alignmentFile) throws IOException {
+
+        IndexBuilder builder = new IndexBuilder();
+        BlockCompressedInputStream bis =
+                new BlockCompressedInputStream(IGVSeekableStreamFactory.getInstance().getStreamFor(alignmentFile));
+        try {
+            long position = bis.getFilePointer();
             String line;
-            long lastOffset = 0;
-            boolean newBlock = false;
+            while ((line = bis.readLine()) != null) {
+                builder.addLine(line, position);
+                position = bis.getFilePointer();
+            }
+        } finally {
+            bis.close();
+        }
+        MAFIndex index = builder.finish();
+        index.bgzf = true;
+        return index;
+    }
 
-            Set<String> allSpecies = new HashSet<String>();
-            List<String> blockSpecies = new ArrayList<String>();
-            Map<String, RunningAverage> speciesRanks = new HashMap<String, RunningAverage>();
+    private static String getLine(byte[] bytes, int length) {
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length);
+    }
 
-            while ((line = reader.readLine()) != null) {
-                //Ignore all comment lines
-                if (line.startsWith("#") || line.trim().length() == 0) {
-                    continue;
+    private static byte[] getInflated(Future<byte[]> future, String path) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted indexing " + path);
+        } catch (ExecutionException e) {
+            throw new IOException("Error indexing " + path, e.getCause());
+        }
+    }
+
+    private static byte[] readBGZFBlock(RandomAccessFile file, long blockAddress) throws IOException {
+        byte[] header = new byte[BGZF_HEADER_SIZE];
+        file.seek(blockAddress);
+        file.readFully(header);
+        if ((header[0] & 0xFF) != 31 || (header[1] & 0xFF) != 139 || header[12] != 'B' || header[13] != 'C') {
+            throw new IOException("Invalid BGZF block at " + blockAddress);
+        }
+        int blockSize = ((header[16] & 0xFF) | ((header[17] & 0xFF) << 8)) + 1;
+        byte[] block = new byte[blockSize];
+        System.arraycopy(header, 0, block, 0, BGZF_HEADER_SIZE);
+        file.readFully(block, BGZF_HEADER_SIZE, blockSize - BGZF_HEADER_SIZE);
+        return block;
+    }
+
+    private static class InflateTask implements Callable<byte[]> {
+
+        byte[] compressed;
+
+        InflateTask(byte[] compressed) {
+            this.compressed = compressed;
+        }
+
+        public byte[] call() throws Exception {
+            int n = compressed.length;
+            int uncompressedSize = (compressed[n - 4] & 0xFF) | ((compressed[n - 3] & 0xFF) << 8) |
+                    ((compressed[n - 2] & 0xFF) << 16) | ((compressed[n - 1] & 0xFF) << 24);
+            byte[] uncompressed = new byte[uncompressedSize];
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compressed, BGZF_HEADER_SIZE, n - BGZF_HEADER_SIZE - BGZF_FOOTER_SIZE);
+                if (inflater.inflate(uncompressed, 0, uncompressedSize) != uncompressedSize) {
+                    throw new IOException("Did not inflate expected number of bytes");
                 }
+            } catch (DataFormatException e) {
+                throw new IOException("Error inflating BGZF block", e);
+            } finally {
+                inflater.end();
+            }
+            return uncompressed;
+        }
+    }
 
-                if (line.startsWith("a ")) {
-                    newBlock = true;
-                    blockCount++;
+    /**
+     * Builds an index from the lines of a MAF file.  An interval is started every blockSize alignment blocks,
+     * and at each change of reference chromosome, at the offset of the "a" line of its first block.
+     */
+    private static class IndexBuilder {
 
-                    // Merge species list, if any, from previous block and start new one
-                    mergeSpecies(blockSpecies, allSpecies, speciesRanks);
-                    blockSpecies.clear();
+        MAFIndex index = new MAFIndex();
 
-                } else if (line.startsWith("s ")) {
+        String lastChr = null;
+        int intervalStart = 0;
+        int intervalEnd = 0;
+        int blockCount = 0;
+        long lastOffset = 0;
+        long blockOffset = 0;
+        boolean newBlock = false;
 
-                    String[] tokens = Globals.whitespacePattern.split(line);
+        Set<String> allSpecies = new HashSet<String>();
+        List<String> blockSpecies = new ArrayList<String>();
+        Map<String, RunningAverage> speciesRanks = new HashMap<String, RunningAverage>();
 
-                    String src = tokens[1];
-                    String species = src;
-                    String chr = src;
-                    if (src.contains(".")) {
-                        String[] srcTokens = ParsingUtils.PERIOD_PATTERN.split(src);
-                        species = srcTokens[0];
-                        chr = srcTokens[1];
-                    }
-                    if (lastChr == null) lastChr = chr;
+        void addLine(String line, long position) {
+
+            //Ignore all comment lines
+            if (line.startsWith("#") || line.trim().length() == 0) {
+                return;
+            }
+
+            if (line.startsWith("a ")) {
+                newBlock = true;
+                blockCount++;
+                blockOffset = position;
+
+                // Merge species list, if any, from previous block and start new one
+                mergeSpecies(blockSpecies, allSpecies, speciesRanks);
+                blockSpecies.clear();
 
-                    blockSpecies.add(species);
+            } else if (line.startsWith("s ")) {
+
+                String[] tokens = Globals.whitespacePattern.split(line);
+
+                String src = tokens[1];
+                String species = src;
+                String chr = src;
+                if (src.contains(".")) {
+                    String[] srcTokens = ParsingUtils.PERIOD_PATTERN.split(src);
+                    species = srcTokens[0];
+                    chr = srcTokens[1];
+                }
 
-                    if (newBlock) {
-                        // This will be the reference sequence line (its always first after the "a")
-                        int start = Integer.parseInt(tokens[2]);
-                        int end = Integer.parseInt(tokens[3]) + start;
+                blockSpecies.add(species);
 
-                        if ((!chr.equals(lastChr) && blockCount > 0) ||
-                                blockCount > blockSize) {
+                if (newBlock) {
+                    // This will be the reference sequence line (its always first after the "a")
+                    int start = Integer.parseInt(tokens[2]);
+                    int end = Integer.parseInt(tokens[3]) + start;
 
-                            // Record previous interval and start a new one.
-                            index.insertInterval(lastChr, intervalStart, intervalEnd, lastOffset);
+                    if (lastChr == null) {
+                        lastOffset = blockOffset;
+                        intervalStart = start;
+                    } else if (!chr.equals(lastChr) || blockCount > blockSize) {
 
-                            blockCount = 1;
-                            lastOffset = reader.getPosition();
-                            intervalStart = start;
-                        }
+                        // Record previous interval and start a new one.
+                        index.insertInterval(lastChr, intervalStart, intervalEnd, lastOffset);
 
-                        lastChr = chr;
-                        intervalEnd = end;
-                        newBlock = false;
+                        blockCount = 1;
+                        lastOffset = blockOffset;
+                        intervalStart = start;
                     }
 
-                } else if (line.startsWith("i ")) {
-                    //We do not handle information lines yet.
-                    continue;
-                } else if (line.startsWith("q ")) {
-                    //We do not handle quality lines yet.
-                    continue;
+                    lastChr = chr;
+                    intervalEnd = end;
+                    newBlock = false;
                 }
             }
+            // Information ("i") and quality ("q") lines are not handled yet.
+        }
 
-
-            if (blockCount > 0) {
+        MAFIndex finish() {
+            if (lastChr != null) {
                 index.insertInterval(lastChr, intervalStart, intervalEnd, lastOffset);
             }
 
             // Merge species list, if any, from previous block and start new one
             mergeSpecies(blockSpecies, allSpecies, speciesRanks);
             index.setSpecies(sortSpecies(allSpecies, speciesRanks));
-
+            index.finish();
             return index;
-
-
-        } finally {
-            reader.close();
-
         }
-
     }
 
     private static class RunningAverage {
@@ -338,14 +686,13 @@ public class MAFIndex {
             Collection<String> chrList = index.getChromosomes();
             for (String chr : chrList) {
                 pw.println("#chr=" + chr);
-                IntervalTree tree = index.getIntervalTree(chr);
-                Collection<Interval> intervals = tree.getIntervals();
-                for (Interval node : intervals) {
-                    pw.print(String.valueOf(node.getLow()));
+                ChromosomeIndex chrIndex = index.getChromosomeIndex(chr);
+                for (int i = 0; i < chrIndex.size; i++) {
+                    pw.print(String.valueOf(chrIndex.starts[i]));
                     pw.print("\t");
-                    pw.print(String.valueOf(node.getHigh() - node.getLow()));
+                    pw.print(String.valueOf(chrIndex.ends[i] - chrIndex.starts[i]));
                     pw.print("\t");
-                    pw.println(String.valueOf(node.getValue()));
+                    pw.println(String.valueOf(chrIndex.offsets[i]));
                 }
             }
 
@@ -354,4 +701,154 @@ public class MAFIndex {
         }
     }
 
+    /**
+     * Write the index in the binary format read by loadBinaryIndex.
+     *
+     * @param index
+     * @param indexFileName
+     * @throws IOException
+     */
+    public static void writeBinaryIndex(MAFIndex index, String indexFileName) throws IOException {
+
+        List<String> chrList = new ArrayList<String>(index.getChromosomes());
+        List<ChromosomeIndex> chrIndexes = new ArrayList<ChromosomeIndex>(chrList.size());
+        for (String chr : chrList) {
+            chrIndexes.add(index.getChromosomeIndex(chr));
+        }
+
+        // The header is written twice, first to compute its size and then with the array positions
+        byte[] header = null;
+        long position = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            BufferedByteWriter buffer = new BufferedByteWriter();
+            buffer.put(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(header == null ? 0 : header.length);
+            buffer.putInt(Boolean.TRUE.equals(index.bgzf) ? FLAG_BGZF : 0);
+            buffer.putInt(index.species.size());
+            for (String sp : index.species) {
+                buffer.putNullTerminatedString(sp);
+            }
+            buffer.putInt(chrList.size());
+            position = header == null ? 0 : header.length;
+            for (int c = 0; c < chrList.size(); c++) {
+                buffer.putNullTerminatedString(chrList.get(c));
+                buffer.putInt(chrIndexes.get(c).size);
+                buffer.putLong(position);
+                position += 16l * chrIndexes.get(c).size;
+            }
+            header = buffer.getBytes();
+        }
+
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(indexFileName));
+        try {
+            os.write(header);
+            for (ChromosomeIndex chrIndex : chrIndexes) {
+                BufferedByteWriter buffer = new BufferedByteWriter(16 * chrIndex.size);
+                for (int i = 0; i < chrIndex.size; i++) {
+                    buffer.putInt(chrIndex.starts[i]);
+                }
+                for (int i = 0; i < chrIndex.size; i++) {
+                    buffer.putInt(chrIndex.ends[i]);
+                }
+                for (int i = 0; i < chrIndex.size; i++) {
+                    buffer.putLong(chrIndex.offsets[i]);
+                }
+                os.write(buffer.getBytes());
+            }
+        } finally {
+            os.close();
+        }
+    }
+
+    /**
+     * Intervals of a chromosome sorted by start.  maxEnds[i] is the maximum end of intervals 0 - i, so the
+     * intervals overlapping a position can be found by binary search even if intervals overlap.
+     */
+    static class ChromosomeIndex {
+
+        int size = 0;
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        long[] offsets = new long[16];
+        int[] maxEnds;
+
+        // Position of the arrays in a binary index, when not yet loaded
+        long position;
+        boolean loaded = true;
+
+        void add(int start, int end, long offset) {
+            if (size == starts.length) {
+                int capacity = 2 * size;
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            offsets[size] = offset;
+            size++;
+        }
+
+        void finish() {
+            starts = Arrays.copyOf(starts, size);
+            ends = Arrays.copyOf(ends, size);
+            offsets = Arrays.copyOf(offsets, size);
+
+            boolean sorted = true;
+            for (int i = 1; i < size && sorted; i++) {
+                sorted = starts[i - 1] <= starts[i];
+            }
+            if (!sorted) {
+                Integer[] order = new Integer[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, new Comparator<Integer>() {
+                    public int compare(Integer i1, Integer i2) {
+                        return starts[i1] < starts[i2] ? -1 : (starts[i1] == starts[i2] ? 0 : 1);
+                    }
+                });
+                int[] sortedStarts = new int[size];
+                int[] sortedEnds = new int[size];
+                long[] sortedOffsets = new long[size];
+                for (int i = 0; i < size; i++) {
+                    sortedStarts[i] = starts[order[i]];
+                    sortedEnds[i] = ends[order[i]];
+                    sortedOffsets[i] = offsets[order[i]];
+                }
+                starts = sortedStarts;
+                ends = sortedEnds;
+                offsets = sortedOffsets;
+            }
+
+            maxEnds = new int[size];
+            for (int i = 0; i < size; i++) {
+                maxEnds[i] = i == 0 ? ends[i] : Math.max(maxEnds[i - 1], ends[i]);
+            }
+        }
+
+        /**
+         * Return the minimum offset of intervals overlapping [start, end], or -1 if there are none
+         */
+        long getStartPosition(int start, int end) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (maxEnds[mid] < start) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            long position = -1;
+            for (int i = low; i < size && starts[i] <= end; i++) {
+                if (ends[i] >= start && (position < 0 || offsets[i] < position)) {
+                    position = offsets[i];
+                }
+            }
+            return position;
+        }
+    }
 }
@@ -12,10 +12,9 @@
 package org.broad.igv.maf;
 
 import net.sf.samtools.seekablestream.SeekableStream;
+import net.sf.samtools.util.BlockCompressedInputStream;
 import org.broad.igv.Globals;
 import org.broad.igv.util.ParsingUtils;
-import org.broad.igv.util.index.Interval;
-import org.broad.igv.util.index.IntervalTree;
 import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 
 import java.io.BufferedReader;
@@ -40,6 +39,7 @@ public class MAFParser implements MAFReader {
     MAFIndex index;
     List<String> species;
     String trackName;
+    Boolean bgzf;
 
     public MAFParser(String path) {
         this.path = path;
@@ -49,12 +49,15 @@ public class MAFParser implements MAFReader {
             e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
         }
         String indexPath = path + ".index";
+        String binaryIndexPath = path + MAFIndex.BINARY_EXTENSION;
         try {
-            if (ParsingUtils.pathExists(indexPath)) {
+            if (ParsingUtils.pathExists(binaryIndexPath)) {
+                index = MAFIndex.loadBinaryIndex(binaryIndexPath);
+            } else if (ParsingUtils.pathExists(indexPath)) {
                 index = MAFIndex.loadIndex(indexPath);
             } else {
                 index = MAFIndex.createIndex(path);
-                MAFIndex.writeIndex(index, indexPath);
+                MAFIndex.writeBinaryIndex(index, binaryIndexPath);
             }
         } catch (IOException e) {
             e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
@@ -62,6 +65,18 @@ public class MAFParser implements MAFReader {
     }
 
 
+    /**
+     * Create a parser with an index that has already been built
+     *
+     * @param path
+     * @param index
+     */
+    MAFParser(String path, MAFIndex index) throws IOException {
+        this.path = path;
+        this.index = index;
+        parseHeader();
+    }
+
     public String getTrackName() {
         return trackName;
     }
@@ -69,51 +84,64 @@ public class MAFParser implements MAFReader {
     @Override
     public List<MultipleAlignmentBlock> loadAlignments(String chr, int start, int end) throws IOException {
 
-        IntervalTree ivTree = index.getIntervalTree(chr);
-        if (ivTree == null) return null;
-
-        List<Interval> intervals = ivTree.findOverlapping(start, end);
-        if (intervals.isEmpty()) {
+        // Alignment blocks do not overlap, so we can start at the minimum file offset of overlapping intervals
+        // and just proceed until the end of the interval.
+        long startPosition = index.getStartPosition(chr, start, end);
+        if (startPosition < 0) {
             return null;
         }
 
-
-        // Find the starting (left most) interval.  Alignment blocks do not overlap, so we can start at the
-        // minimum file offset and just proceed until the end of the interval.
-        long startPosition = Long.MAX_VALUE;
-        for (Interval iv : intervals) {
-            startPosition = Math.min(startPosition, iv.getValue());
+        SeekableStream ss = IGVSeekableStreamFactory.getInstance().getStreamFor(path);
+        InputStream is;
+        if (isBGZF()) {
+            BlockCompressedInputStream bis = new BlockCompressedInputStream(ss);
+            bis.seek(startPosition);
+            is = bis;
+        } else {
+            ss.seek(startPosition);
+            is = ss;
         }
 
-
-        SeekableStream is = null;
-
-
-        is = IGVSeekableStreamFactory.getInstance().getStreamFor(path);
-        is.seek(startPosition);
-
         BufferedReader reader = new BufferedReader(new InputStreamReader(is), 256000);
 
         List<MultipleAlignmentBlock> alignments = new ArrayList<MultipleAlignmentBlock>();
 
-        String line;
-        while ((line = reader.readLine()) != null) {
-            if (line.startsWith("a ")) {
-                // TODO -- parse score (optional)
-                MultipleAlignmentBlock block = parseBlock(reader);
-                if(block.getEnd() < start) {
-                    continue;
-                }
-                if (block.getStart() > end || !block.getChr().equals(chr)) {
-                    break;
-                } else {
-                    alignments.add(block);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("a ")) {
+                    // TODO -- parse score (optional)
+                    MultipleAlignmentBlock block = parseBlock(reader);
+                    if (block.getEnd() < start) {
+                        continue;
+                    }
+                    if (block.getStart() > end || !block.getChr().equals(chr)) {
+                        break;
+                    } else {
+                        alignments.add(block);
+                    }
                 }
             }
+        } finally {
+            reader.close();
         }
         return alignments;
     }
 
+    /**
+     * Bgzipped files are indexed with virtual file pointers, see {@link MAFIndex#createIndex(String)}.  Use the
+     * index's record of its offsets, or, for indexes which do not record it, detect compression from the file.
+     */
+    private boolean isBGZF() {
+        if (bgzf == null) {
+            bgzf = index.isBGZF();
+            if (bgzf == null) {
+                bgzf = MAFIndex.isBGZF(path);
+            }
+        }
+        return bgzf;
+    }
+
 
     @Override
     public Collection<String> getChrNames() {
@@ -141,8 +169,7 @@ public class MAFParser implements MAFReader {
         BufferedReader reader = null;
 
         try {
-            InputStream is = IGVSeekableStreamFactory.getInstance().getStreamFor(path);
-            reader = new BufferedReader(new InputStreamReader(is));
+            reader = ParsingUtils.openBufferedReader(path);
 
             String line;
             while ((line = reader.readLine()) != null) {
@@ -208,7 +235,7 @@ public class MAFParser implements MAFReader {
      *
      * @param reader
      */
-    private MultipleAlignmentBlock parseBlock(BufferedReader reader) throws IOException {
+    static MultipleAlignmentBlock parseBlock(BufferedReader reader) throws IOException {
 
         String line;
         MultipleAlignmentBlock ma = new MultipleAlignmentBlock();
@@ -76,6 +76,13 @@ public class MultipleAlignmentTrack extends AbstractTrack {
             reader = new MAFListReader(locator.getPath());
             //        speciesNames.put(genome.getId(), genome.getDisplayName());
 
+        } else if (MAFBinaryReader.isBinaryMAFFile(locator.getPath())) {
+            MAFBinaryReader binaryReader = new MAFBinaryReader(locator.getPath());
+            String trackName = binaryReader.getTrackName();
+            if (trackName != null) {
+                setName(trackName);
+            }
+            reader = binaryReader;
         } else {
 
             MAFParser parser = new MAFParser(locator.getPath()); //  new MAFLocalReader(locator.getPath());
@@ -110,6 +117,10 @@ public class MultipleAlignmentTrack extends AbstractTrack {
      */
     public void setSelectedSpecies(List<String> selectedSpecies) {
         this.selectedSpecies = selectedSpecies;
+        // Binary files load rows for the selected species only
+        if (reader instanceof MAFBinaryReader) {
+            loadedAlignments = null;
+        }
     }
 
     public String getSpeciesName(String speciesId) {
@@ -202,7 +213,9 @@ public class MultipleAlignmentTrack extends AbstractTrack {
                 alignments = loadedAlignments.getAlignments();
             } else {
                 String mafChr = chrMappings == null ? chr : chrMappings.get(chr);
-                alignments = reader.loadAlignments(mafChr, start, end);
+                alignments = reader instanceof MAFBinaryReader ?
+                        ((MAFBinaryReader) reader).loadAlignments(mafChr, start, end, getSelectedSpecies()) :
+                        reader.loadAlignments(mafChr, start, end);
                 loadedAlignments = new MAFCache(chr, start, end, alignments);
             }
 
@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.methyl;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.data.WholeGenomeCache;
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.feature.Strand;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.util.collections.IntArrayList;
+import org.broad.igv.util.collections.LRUCache;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Multi-resolution summary of a methylation data source.  Methylated and total read counts are aggregated into
+ * fixed size bins and stored in primitive arrays, in tiles of {@code TILE_BIN_COUNT} bins.  Bins at zoom level z are
+ * {@code BASE_BIN_SIZE * 4^z} bp.  Tiles are cached, so zoomed out views return one score per bin rather than one
+ * per CpG.  A tile is summed from the four tiles of the next finer zoom level if they are cached, so zooming out
+ * does not query the source again, otherwise it is computed with a single query of the source.
+ * <p/>
+ * Zoom levels with bins of {@code CHROMOSOME_BIN_SIZE} and larger are summed from a summary of the whole chromosome
+ * at that bin size instead, so views of any span on a chromosome are served without a large query.  The chromosome
+ * summary is computed with one pass over the chromosome the first time it is needed, and persisted in the
+ * {@link WholeGenomeCache} directory for local files, so later sessions do not query the source at these levels.
+ */
+public class MethylSummarySource {
+
+    private static Logger log = Logger.getLogger(MethylSummarySource.class);
+
+    /**
+     * Bin size of the finest zoom level.  Views with fewer bp per pixel show individual CpGs.
+     */
+    public static final int BASE_BIN_SIZE = 32;
+    static final int ZOOM_FACTOR = 4;
+    static final int ZOOM_LEVELS = 9;
+    static final int TILE_BIN_COUNT = 700;
+    private static final int DEFAULT_TILE_COUNT = 200;
+
+    /**
+     * Bin size of the finest zoom level summarized from a whole chromosome, zoom level 4
+     */
+    static final int CHROMOSOME_BIN_SIZE = BASE_BIN_SIZE * ZOOM_FACTOR * ZOOM_FACTOR * ZOOM_FACTOR * ZOOM_FACTOR;
+    private static final int CHROMOSOME_CACHE_SIZE = 4;
+
+    private MethylDataSource source;
+    private String path;
+    private Genome genome;
+    private LRUCache<String, SummaryTile> cache;
+    private LRUCache<String, ChromosomeSummary> chromosomeCache;
+
+    public MethylSummarySource(MethylDataSource source) {
+        this(source, null, null);
+    }
+
+    /**
+     * @param source
+     * @param path   path of the data file, used to persist chromosome summaries.  May be null.
+     * @param genome
+     */
+    public MethylSummarySource(MethylDataSource source, String path, Genome genome) {
+        this.source = source;
+        this.path = path;
+        this.genome = genome;
+        this.cache = new LRUCache<String, SummaryTile>(DEFAULT_TILE_COUNT);
+        this.chromosomeCache = new LRUCache<String, ChromosomeSummary>(CHROMOSOME_CACHE_SIZE);
+    }
+
+    /**
+     * Return the bin size of the zoom level for the given scale, the smallest bin size that is at least one pixel.
+     *
+     * @param scale bp per pixel
+     * @return
+     */
+    public static int getBinSize(double scale) {
+        int binSize = BASE_BIN_SIZE;
+        for (int z = 1; z < ZOOM_LEVELS && binSize < scale; z++) {
+            binSize *= ZOOM_FACTOR;
+        }
+        return binSize;
+    }
+
+    /**
+     * Return one score per non-empty bin overlapping the interval.  The score of a bin is the percentage of
+     * methylated reads over all CpGs starting in the bin, its count the total number of reads.
+     *
+     * @param chr
+     * @param start
+     * @param end
+     * @param binSize bin size, as returned by {@link #getBinSize(double)}
+     * @return
+     */
+    public List<MethylScore> getSummaryScores(String chr, int start, int end, int binSize) {
+
+        if (binSize >= CHROMOSOME_BIN_SIZE) {
+            List<MethylScore> scores = new ArrayList<MethylScore>();
+            getChromosomeSummary(chr).addScores(chr, start, end, binSize, scores);
+            return scores;
+        }
+
+        int tileSize = binSize * TILE_BIN_COUNT;
+        int startTile = Math.max(0, start) / tileSize;
+        int endTile = end / tileSize;
+
+        List<MethylScore> scores = new ArrayList<MethylScore>();
+        for (int t = startTile; t <= endTile; t++) {
+            getTile(chr, binSize, t).addScores(chr, start, end, scores);
+        }
+        return scores;
+    }
+
+    private SummaryTile getTile(String chr, int binSize, int tileNumber) {
+        String key = getKey(chr, binSize, tileNumber);
+        SummaryTile tile;
+        synchronized (cache) {
+            tile = cache.get(key);
+        }
+        if (tile == null) {
+            if (binSize > BASE_BIN_SIZE) {
+                tile = sumTiles(chr, binSize, tileNumber);
+            }
+            if (tile == null) {
+                tile = loadTile(chr, binSize, tileNumber);
+            }
+            synchronized (cache) {
+                cache.put(key, tile);
+            }
+        }
+        return tile;
+    }
+
+    private static String getKey(String chr, int binSize, int tileNumber) {
+        return chr + "_" + binSize + "_" + tileNumber;
+    }
+
+    /**
+     * Sum the four tiles of the next finer zoom level covering a tile.
+     *
+     * @return the tile, or null if the finer tiles are not all cached
+     */
+    private SummaryTile sumTiles(String chr, int binSize, int tileNumber) {
+
+        int fineBinSize = binSize / ZOOM_FACTOR;
+        SummaryTile[] fineTiles = new SummaryTile[ZOOM_FACTOR];
+        synchronized (cache) {
+            for (int i = 0; i < ZOOM_FACTOR; i++) {
+                fineTiles[i] = cache.get(getKey(chr, fineBinSize, tileNumber * ZOOM_FACTOR + i));
+                if (fineTiles[i] == null) {
+                    return null;
+                }
+            }
+        }
+
+        // Fine tile i covers bins [i * TILE_BIN_COUNT / ZOOM_FACTOR, (i + 1) * TILE_BIN_COUNT / ZOOM_FACTOR)
+        SummaryTile tile = new SummaryTile(tileNumber * binSize * TILE_BIN_COUNT, binSize);
+        for (int i = 0; i < ZOOM_FACTOR; i++) {
+            SummaryTile fineTile = fineTiles[i];
+            for (int fineBin = 0; fineBin < TILE_BIN_COUNT; fineBin++) {
+                int bin = (i * TILE_BIN_COUNT + fineBin) / ZOOM_FACTOR;
+                tile.methylated[bin] += fineTile.methylated[fineBin];
+                tile.total[bin] += fineTile.total[fineBin];
+            }
+        }
+        return tile;
+    }
+
+    private SummaryTile loadTile(String chr, int binSize, int tileNumber) {
+
+        int tileStart = tileNumber * binSize * TILE_BIN_COUNT;
+        int tileEnd = tileStart + binSize * TILE_BIN_COUNT;
+        SummaryTile tile = new SummaryTile(tileStart, binSize);
+
+        long t0 = System.currentTimeMillis();
+        int count = 0;
+
+        // Query with a 1-based start, as CachingMethylSource does
+        Iterator<MethylScore> iter = source.query(chr, tileStart + 1, tileEnd);
+        while (iter != null && iter.hasNext()) {
+            MethylScore score = iter.next();
+            if (score == null) continue;
+            int bin = (score.getStart() - tileStart) / binSize;
+            if (bin >= 0 && bin < TILE_BIN_COUNT) {
+                tile.add(bin, score);
+                count++;
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            long dt = System.currentTimeMillis() - t0;
+            log.debug("Summarized " + count + " CpGs into " + binSize + " bp bins in " + dt + "ms");
+        }
+        return tile;
+    }
+
+    /**
+     * Return the summary of a chromosome at CHROMOSOME_BIN_SIZE, from memory, the persisted cache, or the source
+     */
+    private synchronized ChromosomeSummary getChromosomeSummary(String chr) {
+
+        ChromosomeSummary summary = chromosomeCache.get(chr);
+        if (summary != null) {
+            return summary;
+        }
+
+        File cacheFile = path == null ? null : WholeGenomeCache.getCacheFile(path, genome, "methylation\t" + chr);
+        Map<String, WholeGenomeCache.Scores> cached = WholeGenomeCache.read(cacheFile);
+        if (cached != null && cached.containsKey("methylated") && cached.containsKey("total")) {
+            summary = new ChromosomeSummary(cached.get("methylated"), cached.get("total"));
+        } else {
+            summary = loadChromosomeSummary(chr);
+            if (cacheFile != null) {
+                Map<String, WholeGenomeCache.Scores> scores = new LinkedHashMap<String, WholeGenomeCache.Scores>();
+                scores.put("methylated", summary.toScores(summary.methylated));
+                scores.put("total", summary.toScores(summary.total));
+                WholeGenomeCache.write(cacheFile, scores);
+            }
+        }
+        chromosomeCache.put(chr, summary);
+        return summary;
+    }
+
+    /**
+     * Summarize a chromosome with a single query of the source.  CpGs are returned in position order, so bins
+     * are appended in order.
+     */
+    private ChromosomeSummary loadChromosomeSummary(String chr) {
+
+        Chromosome chromosome = genome == null ? null : genome.getChromosome(chr);
+        int end = chromosome == null ? Integer.MAX_VALUE : chromosome.getLength();
+
+        long t0 = System.currentTimeMillis();
+        IntArrayList bins = new IntArrayList();
+        IntArrayList methylated = new IntArrayList();
+        IntArrayList total = new IntArrayList();
+        Iterator<MethylScore> iter = source.query(chr, 1, end);
+        while (iter != null && iter.hasNext()) {
+            MethylScore score = iter.next();
+            if (score == null) continue;
+            int bin = score.getStart() / CHROMOSOME_BIN_SIZE;
+            int count = score.getCount();
+            int last = bins.size() - 1;
+            if (last < 0 || bins.get(last) != bin) {
+                bins.add(bin);
+                methylated.add(0);
+                total.add(0);
+                last++;
+            }
+            methylated.set(last, methylated.get(last) + Math.round(score.getScore() * count / 100));
+            total.set(last, total.get(last) + count);
+        }
+
+        if (log.isDebugEnabled()) {
+            long dt = System.currentTimeMillis() - t0;
+            log.debug("Summarized " + chr + " into " + bins.size() + " bins in " + dt + "ms");
+        }
+        return new ChromosomeSummary(bins.toArray(), methylated.toArray(), total.toArray());
+    }
+
+    /**
+     * Methylated and total read counts of the non-empty CHROMOSOME_BIN_SIZE bins of a chromosome, in bin order
+     */
+    static class ChromosomeSummary {
+
+        int[] bins;
+        int[] methylated;
+        int[] total;
+
+        ChromosomeSummary(int[] bins, int[] methylated, int[] total) {
+            this.bins = bins;
+            this.methylated = methylated;
+            this.total = total;
+        }
+
+        ChromosomeSummary(WholeGenomeCache.Scores methylatedScores, WholeGenomeCache.Scores totalScores) {
+            int n = methylatedScores.size();
+            bins = new int[n];
+            methylated = new int[n];
+            total = new int[n];
+            for (int i = 0; i < n; i++) {
+                bins[i] = methylatedScores.starts[i] / CHROMOSOME_BIN_SIZE;
+                methylated[i] = (int) methylatedScores.values[i];
+                total[i] = (int) totalScores.values[i];
+            }
+        }
+
+        WholeGenomeCache.Scores toScores(int[] counts) {
+            WholeGenomeCache.Scores scores = new WholeGenomeCache.Scores(bins.length, false);
+            for (int i = 0; i < bins.length; i++) {
+                scores.starts[i] = bins[i] * CHROMOSOME_BIN_SIZE;
+                scores.ends[i] = scores.starts[i] + CHROMOSOME_BIN_SIZE;
+                scores.values[i] = counts[i];
+            }
+            return scores;
+        }
+
+        /**
+         * Add one score per non-empty bin of the given size overlapping the interval, summing the chromosome bins
+         * it covers.
+         */
+        void addScores(String chr, int start, int end, int binSize, List<MethylScore> scores) {
+            int factor = binSize / CHROMOSOME_BIN_SIZE;
+            int firstBin = Math.max(0, start) / binSize;
+            int lastBin = end / binSize;
+
+            int i = Arrays.binarySearch(bins, firstBin * factor);
+            if (i < 0) i = -i - 1;
+
+            int currentBin = -1;
+            long methylatedSum = 0;
+            long totalSum = 0;
+            for (; i < bins.length && bins[i] / factor <= lastBin; i++) {
+                int bin = bins[i] / factor;
+                if (bin != currentBin) {
+                    addScore(chr, currentBin, binSize, methylatedSum, totalSum, scores);
+                    currentBin = bin;
+                    methylatedSum = 0;
+                    totalSum = 0;
+                }
+                methylatedSum += methylated[i];
+                totalSum += total[i];
+            }
+            addScore(chr, currentBin, binSize, methylatedSum, totalSum, scores);
+        }
+
+        private static void addScore(String chr, int bin, int binSize, long methylated, long total,
+                                     List<MethylScore> scores) {
+            if (bin >= 0 && total > 0) {
+                int binStart = bin * binSize;
+                float percent = (100.0f * methylated) / total;
+                scores.add(new MethylScore(chr, binStart, binStart + binSize, Strand.NONE, percent, (int) total));
+            }
+        }
+    }
+
+    static class SummaryTile {
+
+        int start;
+        int binSize;
+        int[] methylated;
+        int[] total;
+
+        SummaryTile(int start, int binSize) {
+            this.start = start;
+            this.binSize = binSize;
+            methylated = new int[TILE_BIN_COUNT];
+            total = new int[TILE_BIN_COUNT];
+        }
+
+        void add(int bin, MethylScore score) {
+            int count = score.getCount();
+            methylated[bin] += Math.round(score.getScore() * count / 100);
+            total[bin] += count;
+        }
+
+        void addScores(String chr, int start, int end, List<MethylScore> scores) {
+            int firstBin = Math.max(0, (start - this.start) / binSize);
+            int lastBin = Math.min(TILE_BIN_COUNT - 1, (end - this.start) / binSize);
+            for (int bin = firstBin; bin <= lastBin; bin++) {
+                if (total[bin] > 0) {
+                    int binStart = this.start + bin * binSize;
+                    float percent = (100.0f * methylated[bin]) / total[bin];
+                    scores.add(new MethylScore(chr, binStart, binStart + binSize, Strand.NONE, percent, total[bin]));
+                }
+            }
+        }
+    }
+}
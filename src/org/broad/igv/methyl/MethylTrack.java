@@ -41,13 +41,15 @@ import java.util.List;
  */
 public class MethylTrack extends AbstractTrack {
 
-    public static final int FIVE_MB = 5000000;
-    public static final int FIFTY_MB = 50000000;
+    /**
+     * Tile size for per-CpG scores, which are only loaded at base pair resolution
+     */
+    private static final int DETAIL_BIN_SIZE = 100000;
 
     private MethylDataSource dataSource;
+    private MethylSummarySource summarySource;
     private Range loadedRange;
     private Renderer renderer;
-    private int resolutionThreshold;
     private boolean loading = false;
 
     public MethylTrack(ResourceLocator dataResourceLocator, BBFileReader reader, Genome genome) throws IOException {
@@ -55,19 +57,17 @@ public class MethylTrack extends AbstractTrack {
         setHeight(60);
         renderer = new PointsRenderer();
 
-        boolean isWGBS;
+        BBMethylDataSource.Type type;
         if (reader.getAutoSql() != null && reader.getAutoSql().startsWith("table BisulfiteSeq")) {
-            resolutionThreshold = FIVE_MB;
-            dataSource = new CachingMethylSource(new BBMethylDataSource(reader, BBMethylDataSource.Type.USC, genome), resolutionThreshold);
-            //dataSource = new BBMethylDataSource(reader, BBMethylDataSource.Type.USC, genome);
+            type = BBMethylDataSource.Type.USC;
         } else {
-            isWGBS = dataResourceLocator.getPath().contains("BiSeq_cpgMethylation");
-            resolutionThreshold = isWGBS ? FIVE_MB : FIFTY_MB;
-            dataSource = new CachingMethylSource(new BBMethylDataSource(reader, BBMethylDataSource.Type.ZILLER, genome), resolutionThreshold);
-            //dataSource = new BBMethylDataSource(reader, BBMethylDataSource.Type.USC, genome);
+            type = BBMethylDataSource.Type.ZILLER;
         }
+        BBMethylDataSource source = new BBMethylDataSource(reader, type, genome);
+        dataSource = new CachingMethylSource(source, DETAIL_BIN_SIZE);
+        summarySource = new MethylSummarySource(source, dataResourceLocator.getPath(), genome);
 
-        loadedRange = new Range("", -1, -1, Collections.<MethylScore>emptyList());
+        loadedRange = new Range("", -1, -1, 0, Collections.<MethylScore>emptyList());
         setDataRange(new DataRange(0, 100));
     }
 
@@ -80,23 +80,26 @@ public class MethylTrack extends AbstractTrack {
      */
     public void render(final RenderContext context, final Rectangle rect) {
 
-        if (context.getChr().equals(Globals.CHR_ALL) || context.getScale() * rect.width > resolutionThreshold) {
+        // Views of any span on a chromosome are summarized, the whole genome view is not
+        if (context.getChr().equals(Globals.CHR_ALL)) {
             Graphics2D g = context.getGraphic2DForColor(Color.gray);
             Rectangle textRect = new Rectangle(rect);
 
             // Keep text near the top of the track rectangle
             textRect.height = Math.min(rect.height, 20);
-            textRect.height = Math.min(rect.height, 20);
-            String message = context.getChr().equals(Globals.CHR_ALL) ? "Zoom in to see features." :
-                    "Zoom in to see features, or right-click to increase Feature Visibility Window.";
-            GraphicUtils.drawCenteredText(message, textRect, g);
+            GraphicUtils.drawCenteredText("Zoom in to see features.", textRect, g);
             return;
         }
 
         final String chr = context.getChr();
         final int start = (int) context.getOrigin();
         final int end = (int) context.getEndLocation();
-        if (loadedRange.contains(chr, start, end)) {
+
+        // Per-CpG scores at base pair resolution, binned summaries otherwise.  A bin size of 0 denotes per-CpG scores.
+        final int binSize = context.getScale() < MethylSummarySource.BASE_BIN_SIZE ? 0 :
+                MethylSummarySource.getBinSize(context.getScale());
+
+        if (loadedRange.binSize == binSize && loadedRange.contains(chr, start, end)) {
             renderer.render(loadedRange.scores, context, rect, this);
         } else {
             if (!loading) {
@@ -109,12 +112,17 @@ public class MethylTrack extends AbstractTrack {
                             int expandedStart = Math.max(0, start - width);
                             int expandedEnd = end + width;
 
-                            List<MethylScore> scores = new ArrayList<MethylScore>(1000);
-                            Iterator<MethylScore> iter = dataSource.query(chr, expandedStart, expandedEnd);
-                            while (iter.hasNext()) {
-                                scores.add(iter.next());
+                            List<MethylScore> scores;
+                            if (binSize > 0) {
+                                scores = summarySource.getSummaryScores(chr, expandedStart, expandedEnd, binSize);
+                            } else {
+                                scores = new ArrayList<MethylScore>(1000);
+                                Iterator<MethylScore> iter = dataSource.query(chr, expandedStart, expandedEnd);
+                                while (iter != null && iter.hasNext()) {
+                                    scores.add(iter.next());
+                                }
                             }
-                            loadedRange = new Range(chr, expandedStart, expandedEnd, scores);
+                            loadedRange = new Range(chr, expandedStart, expandedEnd, binSize, scores);
                             context.getPanel().repaint(); //rect);
                         } finally {
                             loading = false;
@@ -131,10 +139,12 @@ public class MethylTrack extends AbstractTrack {
     }
 
     static class Range extends org.broad.igv.feature.Range {
+        int binSize;
         List<MethylScore> scores;
 
-        Range(String chr, int start, int end, List<MethylScore> scores) {
+        Range(String chr, int start, int end, int binSize, List<MethylScore> scores) {
             super(chr, start, end);
+            this.binSize = binSize;
             this.scores = scores;
         }
     }
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.renderer;
+
+import org.broad.igv.track.RenderContext;
+import org.broad.igv.track.RenderContextImpl;
+import org.broad.igv.ui.panel.FrameManager;
+import org.broad.igv.ui.panel.ReferenceFrame;
+import org.broad.igv.util.collections.LRUCache;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache of offscreen images for a single track, one set per reference frame.  Images are tiles on a fixed grid
+ * in genomic (x) and track (y) coordinates at the current scale, so panning horizontally or scrolling vertically
+ * only paints the tiles which have come into view.
+ * <p/>
+ * Each call to {@link #render} supplies the data being drawn, compared by identity, and a state key compared
+ * by {@code equals}.  The key should capture everything else the painter depends on (chromosome, scale,
+ * options, preferences).  If either changes all tiles for the frame are discarded.
+ */
+public class TileImageCache {
+
+    public static final int TILE_WIDTH = 512;
+    public static final int TILE_HEIGHT = 512;
+
+    private static final int MIN_TILES = 16;
+
+    /**
+     * Paints the part of a track covered by a tile.
+     */
+    public interface TilePainter {
+
+        /**
+         * @param tileContext context whose origin is the left edge of the tile.  The graphics are translated
+         *                    so that y is in track coordinates.
+         * @param tileRect    the region covered by the tile, in the same coordinates
+         */
+        void paintTile(RenderContext tileContext, Rectangle tileRect);
+    }
+
+    private Map<String, FrameTiles> frameTiles = Collections.synchronizedMap(new HashMap<String, FrameTiles>());
+
+    /**
+     * Tiles are only worth keeping for on-screen painting.  Printing, snapshots (including SVG), and the
+     * temporary contexts used for exome views are painted directly.
+     */
+    public static boolean isCacheable(RenderContext context) {
+        if (context.getPanel() == null || context.getReferenceFrame() == null) {
+            return false;
+        }
+        Graphics2D g = context.getGraphics();
+        if (g == null || g.getDeviceConfiguration() == null) {
+            return false;
+        }
+        return g.getDeviceConfiguration().getDevice().getType() == GraphicsDevice.TYPE_RASTER_SCREEN;
+    }
+
+    /**
+     * Draw the visible portion of {@code rect}, painting any tiles not already cached.
+     *
+     * @param context
+     * @param rect    track rectangle.  Only the portion intersecting the visible rectangle is drawn.
+     * @param data    the data being drawn.  Tiles are discarded if a different instance is supplied.
+     * @param state   everything else affecting the rendering.  Tiles are discarded if this is not equal
+     *                to the previous state.
+     * @param painter
+     */
+    public void render(RenderContext context, Rectangle rect, Object data, Object state, TilePainter painter) {
+
+        Rectangle visibleRect = context.getVisibleRect() == null ? rect : context.getVisibleRect().intersection(rect);
+        if (visibleRect.isEmpty()) {
+            return;
+        }
+
+        FrameTiles tiles = getFrameTiles(context.getReferenceFrame().getName(), data, state);
+
+        double scale = context.getScale();
+        double originPixel = context.getOrigin() / scale;
+        // Round the origin once so adjacent tiles always abut, rounding each tile's offset separately can
+        // leave 1 pixel seams between them
+        long roundedOrigin = Math.round(originPixel);
+
+        long firstColumn = (long) Math.floor((originPixel + visibleRect.x - rect.x) / TILE_WIDTH);
+        long lastColumn = (long) Math.floor((originPixel + visibleRect.getMaxX() - 1 - rect.x) / TILE_WIDTH);
+        int firstRow = (visibleRect.y - rect.y) / TILE_HEIGHT;
+        int lastRow = ((int) visibleRect.getMaxY() - 1 - rect.y) / TILE_HEIGHT;
+
+        int nVisible = (int) (lastColumn - firstColumn + 1) * (lastRow - firstRow + 1);
+        tiles.images.setMaxEntries(Math.max(MIN_TILES, 3 * nVisible));
+
+        Graphics2D g = context.getGraphics();
+        for (long column = firstColumn; column <= lastColumn; column++) {
+            int x = rect.x + (int) (column * TILE_WIDTH - roundedOrigin);
+            for (int row = firstRow; row <= lastRow; row++) {
+                TileKey key = new TileKey(column, row);
+                BufferedImage image = tiles.images.get(key);
+                if (image == null) {
+                    image = paintTile(context, rect, column, row, painter);
+                    tiles.images.put(key, image);
+                }
+                g.drawImage(image, x, rect.y + row * TILE_HEIGHT, null);
+            }
+        }
+    }
+
+    private BufferedImage paintTile(RenderContext context, Rectangle rect, long column, int row, TilePainter painter) {
+
+        int tileY = rect.y + row * TILE_HEIGHT;
+        int tileHeight = Math.min(TILE_HEIGHT, rect.y + rect.height - tileY);
+        Rectangle tileRect = new Rectangle(0, tileY, TILE_WIDTH, tileHeight);
+
+        BufferedImage image = context.getGraphics().getDeviceConfiguration().
+                createCompatibleImage(TILE_WIDTH, tileHeight, Transparency.TRANSLUCENT);
+        Graphics2D g = image.createGraphics();
+        g.translate(0, -tileY);
+
+        double tileOrigin = column * TILE_WIDTH * context.getScale();
+        TileRenderContext tileContext = new TileRenderContext(context, g, tileOrigin, tileRect);
+        try {
+            painter.paintTile(tileContext, tileRect);
+        } finally {
+            tileContext.dispose();
+            g.dispose();
+        }
+        return image;
+    }
+
+    private FrameTiles getFrameTiles(String frameName, Object data, Object state) {
+        if (frameTiles.size() > FrameManager.getFrames().size()) {
+            evictRemovedFrames(frameName);
+        }
+        FrameTiles tiles = frameTiles.get(frameName);
+        if (tiles == null || tiles.data != data || !state.equals(tiles.state)) {
+            tiles = new FrameTiles(data, state);
+            frameTiles.put(frameName, tiles);
+        }
+        return tiles;
+    }
+
+    /**
+     * Discard tiles for frames which are no longer displayed, e.g. after leaving gene list mode.
+     */
+    private void evictRemovedFrames(String currentFrameName) {
+        Set<String> frameNames = new HashSet<String>();
+        frameNames.add(currentFrameName);
+        for (ReferenceFrame frame : FrameManager.getFrames()) {
+            frameNames.add(frame.getName());
+        }
+        synchronized (frameTiles) {
+            frameTiles.keySet().retainAll(frameNames);
+        }
+    }
+
+    /**
+     * Discard all tiles, e.g. when the data is reloaded
+     */
+    public void clear() {
+        frameTiles.clear();
+    }
+
+    private static class FrameTiles {
+        Object data;
+        Object state;
+        LRUCache<TileKey, BufferedImage> images;
+
+        FrameTiles(Object data, Object state) {
+            this.data = data;
+            this.state = state;
+            this.images = new LRUCache<TileKey, BufferedImage>(MIN_TILES);
+        }
+    }
+
+    private static class TileKey {
+        final long column;
+        final int row;
+
+        TileKey(long column, int row) {
+            this.column = column;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TileKey)) return false;
+            TileKey tileKey = (TileKey) o;
+            return column == tileKey.column && row == tileKey.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (column ^ (column >>> 32)) + row;
+        }
+    }
+
+    /**
+     * Render context for painting a single tile.  Locations are relative to the left edge of the tile rather
+     * than the frame origin, everything else is delegated to the frame.
+     */
+    private static class TileRenderContext extends RenderContextImpl {
+
+        private double tileOrigin;
+
+        TileRenderContext(RenderContext context, Graphics2D graphics, double tileOrigin, Rectangle tileRect) {
+            super(context.getPanel(), graphics, context.getReferenceFrame(), tileRect);
+            this.tileOrigin = tileOrigin;
+        }
+
+        @Override
+        public double getOrigin() {
+            return tileOrigin;
+        }
+
+        @Override
+        public double getEndLocation() {
+            return tileOrigin + TILE_WIDTH * getScale();
+        }
+    }
+}
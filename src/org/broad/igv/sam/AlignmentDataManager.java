@@ -175,6 +175,7 @@ public class AlignmentDataManager implements IAlignmentDataManager {
             }
             Collections.sort(alignmentRows);
         }
+        packedAlignments.incrementPackingVersion();
         return true;
     }
 
@@ -20,6 +20,7 @@ import com.google.common.collect.Table;
 import org.apache.log4j.Logger;
 import org.broad.igv.feature.Range;
 import org.broad.igv.feature.Strand;
+import org.broad.igv.util.StageTimer;
 
 import java.util.*;
 
@@ -59,6 +60,16 @@ public class AlignmentPacker {
             List<AlignmentInterval> intervalList,
             AlignmentTrack.RenderOptions renderOptions) {
 
+        StageTimer.push(StageTimer.Stage.PACK);
+        try {
+            return pack(intervalList, renderOptions);
+        } finally {
+            StageTimer.pop();
+        }
+    }
+
+    private PackedAlignments pack(List<AlignmentInterval> intervalList, AlignmentTrack.RenderOptions renderOptions) {
+
         if(renderOptions == null) renderOptions = new AlignmentTrack.RenderOptions();
 
         LinkedHashMap<String, List<Row>> packedAlignments = new LinkedHashMap<String, List<Row>>();
@@ -57,6 +57,11 @@ public class AlignmentRenderer implements FeatureRenderer {
 
     private static Stroke thickStroke = new BasicStroke(2.0f);
 
+    /**
+     * Scale (bp / pixel) above which dense rows are rasterized rather than drawn block by block
+     */
+    static final double LOD_SCALE_THRESHOLD = 1.0;
+
     // Bisulfite constants
     private final Color bisulfiteColorFw1 = new Color(195, 195, 195);
     private final Color bisulfiteColorRev1 = new Color(195, 210, 195);
@@ -234,6 +239,20 @@ public class AlignmentRenderer implements FeatureRenderer {
                                  Rectangle trackRect, RenderOptions renderOptions,
                                  boolean leaveMargin,
                                  Map<String, Color> selectedReadNames) {
+        renderAlignments(alignments, context, rowRect, trackRect, renderOptions, leaveMargin, selectedReadNames, true);
+    }
+
+    /**
+     * Render a row of alignments in the given rectangle, optionally omitting the center line.  The center line
+     * is omitted when painting cached tiles, since it moves with the frame center rather than the alignments.
+     */
+    public void renderAlignments(List<Alignment> alignments,
+                                 RenderContext context,
+                                 Rectangle rowRect,
+                                 Rectangle trackRect, RenderOptions renderOptions,
+                                 boolean leaveMargin,
+                                 Map<String, Color> selectedReadNames,
+                                 boolean drawCenterLine) {
 
         double origin = context.getOrigin();
         double locScale = context.getScale();
@@ -242,6 +261,8 @@ public class AlignmentRenderer implements FeatureRenderer {
         if ((alignments != null) && (alignments.size() > 0)) {
 
             int lastPixelDrawn = -1;
+            RowRaster raster = isLevelOfDetail(locScale, rowRect, leaveMargin, renderOptions) ?
+                    new RowRaster(rowRect) : null;
 
             for (Alignment alignment : alignments) {
                 // Compute the start and dend of the alignment in pixels
@@ -253,6 +274,11 @@ public class AlignmentRenderer implements FeatureRenderer {
                     continue;
                 }
 
+                if (raster != null &&
+                        rasterizeAlignment(alignment, raster, rowRect, context, renderOptions, leaveMargin, selectedReadNames)) {
+                    continue;
+                }
+
                 // If the alignment is 3 pixels or less,  draw alignment as a single block,
                 // further detail would not be seen and just add to drawing overhead
                 // Does the change for Bisulfite kill some machines?
@@ -286,21 +312,241 @@ public class AlignmentRenderer implements FeatureRenderer {
                 }
             }
 
-            // Optionally draw a border around the center base
-            boolean showCenterLine = prefs.getAsBoolean(PreferenceManager.SAM_SHOW_CENTER_LINE);
-            final int bottom = rowRect.y + rowRect.height;
-            if (locScale < 5 && showCenterLine) {
-                // Calculate center lines
-                double center = (int) (context.getReferenceFrame().getCenter() - origin);
-                int centerLeftP = (int) (center / locScale);
-                int centerRightP = (int) ((center + 1) / locScale);
-                //float transparency = Math.max(0.5f, (float) Math.round(10 * (1 - .75 * locScale)) / 10);
-                Graphics2D gBlack = context.getGraphic2DForColor(Color.black); //new Color(0, 0, 0, transparency));
-                GraphicUtils.drawDottedDashLine(gBlack, centerLeftP, rowRect.y, centerLeftP, bottom);
-                if ((centerRightP - centerLeftP > 2)) {
-                    GraphicUtils.drawDottedDashLine(gBlack, centerRightP, rowRect.y, centerRightP, bottom);
+            if (raster != null) {
+                raster.paint(context, rowRect, getBlockHeight(rowRect, leaveMargin));
+            }
+
+            if (drawCenterLine) {
+                renderCenterLine(context, rowRect);
+            }
+        }
+    }
+
+    private static int getBlockHeight(Rectangle rowRect, boolean leaveMargin) {
+        return (int) Math.max(1, rowRect.getHeight() - (leaveMargin ? 2 : 0));
+    }
+
+    /**
+     * Use the level of detail path when zoomed out to more than LOD_SCALE_THRESHOLD bp per pixel, and rows are
+     * too short for strand arrows.  This is typically the case for squished tracks with many rows.  Bisulfite
+     * and flow signal views need per-base detail and are always drawn in full.
+     */
+    private boolean isLevelOfDetail(double locScale, Rectangle rowRect, boolean leaveMargin,
+                                    RenderOptions renderOptions) {
+        if (locScale < LOD_SCALE_THRESHOLD || renderOptions.isPairedArcView() ||
+                AlignmentTrack.isBisulfiteColorType(renderOptions.getColorOption())) {
+            return false;
+        }
+        ShadeBasesOption shadeBasesOption = renderOptions.shadeBasesOption;
+        if (shadeBasesOption == ShadeBasesOption.FLOW_SIGNAL_DEVIATION_READ ||
+                shadeBasesOption == ShadeBasesOption.FLOW_SIGNAL_DEVIATION_REFERENCE) {
+            return false;
+        }
+        return getBlockHeight(rowRect, leaveMargin) <= 10;
+    }
+
+    /**
+     * Record an alignment in the row raster, rather than drawing it directly.  Alignments wide enough to be
+     * outlined (zero quality, unmapped mate, or selected) are left to be drawn in full.
+     *
+     * @return true if the alignment was rasterized
+     */
+    private boolean rasterizeAlignment(Alignment alignment,
+                                       RowRaster raster,
+                                       Rectangle rowRect,
+                                       RenderContext context,
+                                       RenderOptions renderOptions,
+                                       boolean leaveMargin,
+                                       Map<String, Color> selectedReadNames) {
+
+        // Alignments less than 4 pixels wide are drawn as a single block, as in renderAlignments
+        double origin = context.getOrigin();
+        double locScale = context.getScale();
+        double pixelStart = (alignment.getStart() - origin) / locScale;
+        double pixelWidth = (alignment.getEnd() - origin) / locScale - pixelStart;
+        if (pixelWidth < 4) {
+            int x = (int) pixelStart;
+            int w = Math.max(1, (int) pixelWidth);
+            raster.fill(RowRaster.COMPACT, x, x + w, getAlignmentColor(alignment, renderOptions));
+            return true;
+        }
+
+        if (alignment instanceof PairedAlignment) {
+            PairedAlignment pair = (PairedAlignment) alignment;
+            if (!isRasterizable(pair.firstAlignment, renderOptions, selectedReadNames) ||
+                    (pair.secondAlignment != null && !isRasterizable(pair.secondAlignment, renderOptions, selectedReadNames))) {
+                return false;
+            }
+
+            Color alignmentColor1 = getAlignmentColor(pair.firstAlignment, renderOptions);
+            rasterizeBlocks(pair.firstAlignment, alignmentColor1, raster, rowRect, context, renderOptions);
+
+            if (pair.secondAlignment != null) {
+                Color alignmentColor2 = getAlignmentColor(pair.secondAlignment, renderOptions);
+                rasterizeBlocks(pair.secondAlignment, alignmentColor2, raster, rowRect, context, renderOptions);
+
+                Color lineColor = alignmentColor1.equals(alignmentColor2) ? alignmentColor1 : grey1;
+                int startX = (int) ((pair.firstAlignment.getEnd() - origin) / locScale);
+                int endX = (int) ((pair.firstAlignment.getMate().getStart() - origin) / locScale);
+                raster.fill(RowRaster.THIN_LINE, startX, endX + 1, lineColor);
+            }
+            return true;
+
+        } else {
+            if (!isRasterizable(alignment, renderOptions, selectedReadNames)) {
+                return false;
+            }
+            rasterizeBlocks(alignment, getAlignmentColor(alignment, renderOptions), raster, rowRect, context, renderOptions);
+            return true;
+        }
+    }
+
+    private boolean isRasterizable(Alignment alignment, RenderOptions renderOptions, Map<String, Color> selectedReadNames) {
+        AlignmentBlock[] blocks = alignment.getAlignmentBlocks();
+        if (blocks == null || blocks.length == 0) {
+            return false;
+        }
+        if (alignment.getMappingQuality() == 0 && renderOptions.flagZeroQualityAlignments) {
+            return false;
+        }
+        if (renderOptions.flagUnmappedPairs && alignment.isPaired() && !alignment.getMate().isMapped()) {
+            return false;
+        }
+        return !selectedReadNames.containsKey(alignment.getReadName());
+    }
+
+    /**
+     * Rasterize the blocks, gaps, strand marker, and mismatches of an alignment.  The layout follows
+     * drawAlignment for rows too short for arrows.
+     */
+    private void rasterizeBlocks(Alignment alignment,
+                                 Color alignmentColor,
+                                 RowRaster raster,
+                                 Rectangle rowRect,
+                                 RenderContext context,
+                                 RenderOptions renderOptions) {
+
+        double origin = context.getOrigin();
+        double locScale = context.getScale();
+        AlignmentBlock[] blocks = alignment.getAlignmentBlocks();
+        AlignmentBlock terminalBlock = alignment.isNegativeStrand() ? blocks[0] : blocks[blocks.length - 1];
+        char[] gapTypes = alignment.getGapTypes();
+        boolean showBases = locScale < 5 && (renderOptions.showMismatches || renderOptions.showAllBases);
+
+        int lastBlockEnd = Integer.MIN_VALUE;
+        for (int blockNumber = 0; blockNumber < blocks.length; blockNumber++) {
+            AlignmentBlock aBlock = blocks[blockNumber];
+            int blockPixelStart = (int) ((aBlock.getStart() - origin) / locScale);
+            int blockPixelWidth = (int) Math.ceil(aBlock.getLength() / locScale);
+
+            raster.fill(RowRaster.BLOCK, blockPixelStart, blockPixelStart + blockPixelWidth, alignmentColor);
+
+            if (aBlock == terminalBlock && blockPixelWidth > 10) {
+                int x = alignment.isNegativeStrand() ? blockPixelStart : blockPixelStart + blockPixelWidth + 1;
+                raster.fill(RowRaster.TERMINAL, x, x + 1, Color.DARK_GRAY);
+            }
+
+            if (showBases) {
+                rasterizeBases(aBlock, alignmentColor, raster, rowRect, context, renderOptions);
+            }
+
+            if (lastBlockEnd > Integer.MIN_VALUE) {
+                int gapIdx = blockNumber - 1;
+                if (gapTypes != null && gapIdx < gapTypes.length && gapTypes[gapIdx] == SamAlignment.SKIPPED_REGION) {
+                    raster.fill(RowRaster.THIN_LINE, lastBlockEnd, blockPixelStart + 1, skippedColor);
+                } else {
+                    raster.fill(RowRaster.THICK_LINE, lastBlockEnd, blockPixelStart + 1, deletionColor);
                 }
             }
+            lastBlockEnd = blockPixelStart + blockPixelWidth;
+
+            if (lastBlockEnd > rowRect.getMaxX()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Rasterize mismatched (or all) bases of a block.  Several bases share each pixel at this zoom, so the last
+     * one drawn wins.  Bases with quality below the minimum shade to within 10% of the alignment color and would
+     * not be visible, so they are skipped.
+     */
+    private void rasterizeBases(AlignmentBlock block,
+                                Color alignmentColor,
+                                RowRaster raster,
+                                Rectangle rowRect,
+                                RenderContext context,
+                                RenderOptions renderOptions) {
+
+        double origin = context.getOrigin();
+        double locScale = context.getScale();
+        final int start = block.getStart();
+        final int end = block.getEnd();
+        if ((end - origin) / locScale < rowRect.x || (start - origin) / locScale > rowRect.getMaxX()) {
+            return;
+        }
+
+        boolean isSoftClipped = block.isSoftClipped();
+        Genome genome = GenomeManager.getInstance().getCurrentGenome();
+        final byte[] reference = isSoftClipped ? softClippedReference : genome.getSequence(context.getChr(), start, end);
+        boolean haveBases = (block.hasBases() && block.getLength() > 0);
+        boolean showAllBases = renderOptions.showAllBases;
+        if (!showAllBases && (!haveBases || reference == null)) {
+            return;
+        }
+        byte[] read = haveBases ? block.getBases() : reference;
+
+        boolean shadeByQuality = renderOptions.shadeBasesOption == ShadeBasesOption.QUALITY;
+        int minQ = prefs.getAsInt(PreferenceManager.SAM_BASE_QUALITY_MIN);
+
+        for (int loc = start; loc < end; loc++) {
+            int idx = loc - start;
+            boolean misMatch = haveBases && AlignmentUtils.isMisMatch(reference, read, isSoftClipped, idx);
+            if (!showAllBases && !misMatch) {
+                continue;
+            }
+
+            int pX = (int) ((loc - origin) / locScale);
+            if (pX > rowRect.getMaxX()) {
+                break;
+            } else if (pX + 1 < rowRect.getX()) {
+                continue;
+            }
+
+            Color color = Globals.nucleotideColors.get((char) read[idx]);
+            if (color == null) {
+                color = Color.black;
+            }
+            if (shadeByQuality) {
+                byte qual = block.getQuality(idx);
+                if (qual < minQ) {
+                    continue;
+                }
+                color = getShadedColor(qual, color, alignmentColor, prefs);
+            }
+            raster.fill(RowRaster.BASE, pX, pX + 1, color);
+        }
+    }
+
+    /**
+     * Optionally draw a border around the center base
+     */
+    public void renderCenterLine(RenderContext context, Rectangle rowRect) {
+        double origin = context.getOrigin();
+        double locScale = context.getScale();
+        boolean showCenterLine = prefs.getAsBoolean(PreferenceManager.SAM_SHOW_CENTER_LINE);
+        final int bottom = rowRect.y + rowRect.height;
+        if (locScale < 5 && showCenterLine) {
+            // Calculate center lines
+            double center = (int) (context.getReferenceFrame().getCenter() - origin);
+            int centerLeftP = (int) (center / locScale);
+            int centerRightP = (int) ((center + 1) / locScale);
+            //float transparency = Math.max(0.5f, (float) Math.round(10 * (1 - .75 * locScale)) / 10);
+            Graphics2D gBlack = context.getGraphic2DForColor(Color.black); //new Color(0, 0, 0, transparency));
+            GraphicUtils.drawDottedDashLine(gBlack, centerLeftP, rowRect.y, centerLeftP, bottom);
+            if ((centerRightP - centerLeftP > 2)) {
+                GraphicUtils.drawDottedDashLine(gBlack, centerRightP, rowRect.y, centerRightP, bottom);
+            }
         }
     }
 
@@ -784,7 +1030,7 @@ public class AlignmentRenderer implements FeatureRenderer {
                 drawBase(g, color, c, pX, pY, dX, dY, bisulfiteMode, bisstatus);
             }
         }
-
+        g.dispose();
     }
 
     /**
@@ -24,10 +24,12 @@ import org.broad.igv.ui.util.MessageUtils;
 import org.broad.igv.ui.util.ProgressMonitor;
 import org.broad.igv.util.ObjectCache;
 import org.broad.igv.util.RuntimeUtils;
+import org.broad.igv.util.StageTimer;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 /**
  * A wrapper for an AlignmentQueryReader that caches query results
@@ -114,13 +116,20 @@ public class AlignmentTileLoader {
         //log.debug("Loading : " + start + " - " + end);
         int alignmentCount = 0;
         WeakReference<AlignmentTileLoader> ref = new WeakReference(this);
+        // Records are read and decoded as they are iterated
+        StageTimer.push(StageTimer.Stage.DECODE);
         try {
             ObjectCache<String, Alignment> mappedMates = new ObjectCache<String, Alignment>(1000);
             ObjectCache<String, Alignment> unmappedMates = new ObjectCache<String, Alignment>(1000);
 
 
             activeLoaders.add(ref);
-            iter = reader.query(chr, start, end, false);
+            StageTimer.push(StageTimer.Stage.INDEX);
+            try {
+                iter = reader.query(chr, start, end, false);
+            } finally {
+                StageTimer.pop();
+            }
 
             while (iter != null && iter.hasNext()) {
 
@@ -233,11 +242,17 @@ public class AlignmentTileLoader {
                     "<br>This is often caused by a corrupt index file.");
             return null;
 
+        } catch (CancellationException e) {
+            log.info("Alignment loading cancelled: " + chr + ":" + start + "-" + end);
+            return null;
+
         } catch (Exception e) {
             log.error("Error loading alignment data", e);
             MessageUtils.showMessage("<html>Error encountered querying alignments: " + e.toString());
             return null;
         } finally {
+            StageTimer.pop();
+
             // reset cancel flag.  It doesn't matter how we got here,  the read is complete and this flag is reset
             // for the next time
             cancel = false;
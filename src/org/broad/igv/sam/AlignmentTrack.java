@@ -29,6 +29,7 @@ import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.goby.GobyCountArchiveDataSource;
 import org.broad.igv.lists.GeneList;
 import org.broad.igv.renderer.GraphicUtils;
+import org.broad.igv.renderer.TileImageCache;
 import org.broad.igv.session.IGVSessionReader;
 import org.broad.igv.session.Session;
 import org.broad.igv.session.SubtlyImportant;
@@ -158,6 +159,7 @@ public class AlignmentTrack extends AbstractTrack implements AlignmentTrackEvent
     private FeatureRenderer renderer;
     private double minVisibleScale = 25;
     private HashMap<String, Color> selectedReadNames = new HashMap();
+    private TileImageCache tileCache = new TileImageCache();
     private int selectionColorIndex = 0;
     private int minHeight = 50;
     private AlignmentDataManager dataManager;
@@ -397,6 +399,13 @@ public class AlignmentTrack extends AbstractTrack implements AlignmentTrackEvent
             h = squishedHeight;
         }
 
+        if (!renderOptions.isPairedArcView() && renderer instanceof AlignmentRenderer &&
+                PreferenceManager.getInstance().getAsBoolean(PreferenceManager.SAM_RENDER_TILE_CACHE) &&
+                TileImageCache.isCacheable(context)) {
+            renderAlignmentTiles(context, inputRect, groups, h, leaveMargin);
+            return;
+        }
+
         // Loop through groups
         Graphics2D groupBorderGraphics = context.getGraphic2DForColor(AlignmentRenderer.GROUP_DIVIDER_COLOR);
         int nGroups = groups.size();
@@ -436,6 +445,75 @@ public class AlignmentTrack extends AbstractTrack implements AlignmentTrackEvent
         groupBorderGraphics.drawLine(inputRect.x, bottom, inputRect.width, bottom);
     }
 
+    /**
+     * Render alignments through the tile cache.  Tiles are repainted only when the packed alignments, zoom,
+     * row height, render options, selection, or preferences change, so panning only paints newly exposed tiles.
+     * The center line depends on the frame center rather than the alignments, so it is drawn over the tiles.
+     */
+    private void renderAlignmentTiles(RenderContext context, final Rectangle inputRect, final PackedAlignments groups,
+                                      final double h, final boolean leaveMargin) {
+
+        final AlignmentRenderer alignmentRenderer = (AlignmentRenderer) renderer;
+        final Map<String, Color> selection = new HashMap<String, Color>(selectedReadNames);
+
+        List<Object> state = Arrays.<Object>asList(context.getChr(), context.getScale(), h, leaveMargin,
+                inputRect.height, groups.getPackingVersion(), renderOptions.getRenderStateKey(), selection,
+                PreferenceManager.getInstance().getVersion());
+
+        tileCache.render(context, inputRect, groups, state, new TileImageCache.TilePainter() {
+            public void paintTile(RenderContext tileContext, Rectangle tileRect) {
+
+                // Draw alignments as though the tile were 3 tiles wide, so ends and arrows crossing the tile
+                // edges are not clipped at the edge.
+                int x = tileRect.x - tileRect.width;
+                int width = 3 * tileRect.width;
+                Graphics2D groupBorderGraphics = tileContext.getGraphic2DForColor(AlignmentRenderer.GROUP_DIVIDER_COLOR);
+
+                double y = inputRect.getY();
+                int nGroups = groups.size();
+                int groupNumber = 0;
+                for (List<Row> rows : groups.values()) {
+                    groupNumber++;
+                    for (Row row : rows) {
+                        if (y > tileRect.getMaxY()) {
+                            return;
+                        }
+                        if (y + h > tileRect.getY()) {
+                            Rectangle rowRectangle = new Rectangle(x, (int) y, width, (int) h);
+                            alignmentRenderer.renderAlignments(row.alignments, tileContext, rowRectangle,
+                                    inputRect, renderOptions, leaveMargin, selection, false);
+                        }
+                        y += h;
+                    }
+                    if (groupNumber < nGroups) {
+                        int borderY = (int) y + GROUP_MARGIN / 2;
+                        groupBorderGraphics.drawLine(x, borderY, x + width, borderY);
+                    }
+                    y += GROUP_MARGIN;
+                }
+
+                final int bottom = inputRect.y + inputRect.height;
+                groupBorderGraphics.drawLine(x, bottom, x + width, bottom);
+            }
+        });
+
+        Rectangle visibleRect = context.getVisibleRect();
+        double y = inputRect.getY();
+        for (List<Row> rows : groups.values()) {
+            for (Row row : rows) {
+                if (y > visibleRect.getMaxY()) {
+                    return;
+                }
+                if (y + h > visibleRect.getY() && row.alignments != null && row.alignments.size() > 0) {
+                    Rectangle rowRectangle = new Rectangle(inputRect.x, (int) y, inputRect.width, (int) h);
+                    alignmentRenderer.renderCenterLine(context, rowRectangle);
+                }
+                y += h;
+            }
+            y += GROUP_MARGIN;
+        }
+    }
+
     /**
      * Sort alignment rows based on alignments that intersect location
      * @return Whether sorting was performed. If data is still loading, this will return false
@@ -1104,6 +1182,18 @@ public class AlignmentTrack extends AbstractTrack implements AlignmentTrackEvent
             return value;
         }
 
+        /**
+         * @return the option values which affect how alignments are drawn.  Used to detect option changes
+         *         invalidating cached renderings.
+         */
+        List<Object> getRenderStateKey() {
+            return Arrays.<Object>asList(shadeBasesOption, shadeCenters, flagUnmappedPairs, showAllBases,
+                    showMismatches, computeIsizes, minInsertSize, maxInsertSize, minInsertSizePercentile,
+                    maxInsertSizePercentile, colorOption, groupByOption, bisulfiteContext, viewPairs,
+                    flagZeroQualityAlignments, colorByTag, groupByTag, flagLargeInsertions, largeInsertionsThreshold,
+                    peStats == null ? null : new HashMap<String, PEStats>(peStats));
+        }
+
         public boolean isPairedArcView() {
             return pairedArcView;
         }
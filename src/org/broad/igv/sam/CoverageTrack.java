@@ -27,6 +27,7 @@ import org.broad.igv.goby.GobyCountArchiveDataSource;
 import org.broad.igv.renderer.BarChartRenderer;
 import org.broad.igv.renderer.DataRange;
 import org.broad.igv.renderer.DataRenderer;
+import org.broad.igv.renderer.TileImageCache;
 import org.broad.igv.session.IGVSessionReader;
 import org.broad.igv.session.SubtlyImportant;
 import org.broad.igv.tdf.TDFDataSource;
@@ -53,6 +54,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -83,6 +85,7 @@ public class CoverageTrack extends AbstractTrack {
     CoverageDataSource dataSource;
     DataRenderer dataSourceRenderer;
     IntervalRenderer intervalRenderer;
+    private TileImageCache tileCache = new TileImageCache();
     PreferenceManager prefs;
     JMenuItem dataRangeItem;
     JMenuItem autoscaleItem;
@@ -242,7 +245,12 @@ public class CoverageTrack extends AbstractTrack {
             if (interval != null) {
                 if (interval.contains(context.getChr(), (int) context.getOrigin(), (int) context.getEndLocation())) {
                     if(autoScale) rescale(context.getReferenceFrame());
-                    intervalRenderer.paint(context, rect, interval.getCounts());
+                    if (TileImageCache.isCacheable(context) &&
+                            PreferenceManager.getInstance().getAsBoolean(PreferenceManager.SAM_RENDER_TILE_CACHE)) {
+                        renderIntervalTiles(context, rect, interval.getCounts());
+                    } else {
+                        intervalRenderer.paint(context, rect, interval.getCounts());
+                    }
                     return;
                 }
             }
@@ -256,6 +264,25 @@ public class CoverageTrack extends AbstractTrack {
 
     }
 
+    /**
+     * Paint coverage computed from loaded alignments through the tile cache.  Tiles are repainted when the
+     * counts, zoom, data range, or display settings change.
+     */
+    private void renderIntervalTiles(RenderContext context, final Rectangle rect, final AlignmentCounts counts) {
+
+        DataRange range = getDataRange();
+        List<Object> state = Arrays.<Object>asList(context.getChr(), context.getScale(), rect.height,
+                range.getMinimum(), range.getBaseline(), range.getMaximum(), range.getType(), getColor(),
+                snpThreshold, dataManager.getExperimentType(), PreferenceManager.getInstance().getVersion());
+
+        tileCache.render(context, rect, counts, state, new TileImageCache.TilePainter() {
+            public void paintTile(RenderContext tileContext, Rectangle tileRect) {
+                Rectangle paintRect = new Rectangle(tileRect.x, rect.y, tileRect.width, rect.height);
+                intervalRenderer.paint(tileContext, paintRect, counts);
+            }
+        });
+    }
+
     /**
      * Draw border and scale
      * @param context
@@ -369,6 +396,9 @@ public class CoverageTrack extends AbstractTrack {
 
                 int dX = (int) (rectX + (pos + 1 - origin) / scale) - pX;
                 dX = dX < 1 ? 1 : dX;
+                if (pX + dX < rectX) {
+                    continue;
+                }
                 if (pX + dX > lastpX) {
                     int pY = (int) rectMaxY - 1;
                     int totalCount = alignmentCounts.getTotalCount(pos);
@@ -425,6 +455,9 @@ public class CoverageTrack extends AbstractTrack {
 
                 int dX = (int) (rectX + (pos + 1 - origin) / scale) - pX;
                 dX = dX < 1 ? 1 : dX;
+                if (pX + dX < rectX) {
+                    continue;
+                }
                 if (pX + dX > lastpX) {
 
 
@@ -35,6 +35,11 @@ public class PackedAlignments extends LinkedHashMap<String, List<Row>> {
      */
     private List<? extends Range> ranges;
 
+    /**
+     * Incremented when rows are reordered in place, e.g. by sorting
+     */
+    private int packingVersion = 0;
+
     PackedAlignments(List<? extends Range> ranges, Map<String, List<Row>> packedAlignments, AlignmentTrack.RenderOptions renderOptions){
         super(packedAlignments);
         this.renderOptions = renderOptions;
@@ -73,4 +78,12 @@ public class PackedAlignments extends LinkedHashMap<String, List<Row>> {
     public List<? extends Range> getRanges() {
         return ranges;
     }
+
+    public int getPackingVersion() {
+        return packingVersion;
+    }
+
+    void incrementPackingVersion() {
+        packingVersion++;
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.sam;
+
+import org.broad.igv.track.RenderContext;
+
+import java.awt.*;
+
+/**
+ * Pixel buffer for a single row of alignments, used when zoomed out far enough that blocks and bases are
+ * a pixel or less wide.  Alignment blocks, gap lines, strand markers, and mismatched bases are recorded as one
+ * color per pixel column in separate layers, then painted with a single fillRect for each run of
+ * same-colored pixels.
+ */
+class RowRaster {
+
+    static final int THIN_LINE = 0;
+    static final int THICK_LINE = 1;
+    static final int COMPACT = 2;
+    static final int BLOCK = 3;
+    static final int TERMINAL = 4;
+    static final int BASE = 5;
+
+    private static final int N_LAYERS = 6;
+
+    private int x0;
+    private int width;
+    private Color[][] layers;
+
+    RowRaster(Rectangle rowRect) {
+        this.x0 = rowRect.x;
+        this.width = Math.max(0, rowRect.width);
+        this.layers = new Color[N_LAYERS][width];
+    }
+
+    /**
+     * Set pixels [start, end) of a layer to the given color.  Pixels outside the row are ignored.
+     */
+    void fill(int layer, int start, int end, Color color) {
+        int s = Math.max(0, start - x0);
+        int e = Math.min(width, end - x0);
+        Color[] pixels = layers[layer];
+        for (int i = s; i < e; i++) {
+            pixels[i] = color;
+        }
+    }
+
+    Color get(int layer, int x) {
+        int i = x - x0;
+        return (i < 0 || i >= width) ? null : layers[layer][i];
+    }
+
+    /**
+     * Paint all layers, lines first and bases last.  Each layer uses the row geometry of the corresponding
+     * element in AlignmentRenderer, so switching between the two paths does not shift anything vertically.
+     *
+     * @param context
+     * @param rowRect the row bounds
+     * @param h       height of the alignment blocks, which are drawn from the top of the row
+     * @return the number of rectangles drawn
+     */
+    int paint(RenderContext context, Rectangle rowRect, int h) {
+        int y = rowRect.y;
+        int rowHeight = rowRect.height;
+        int count = 0;
+        count += paintLayer(context, THIN_LINE, y + h / 2, 1);
+        count += paintLayer(context, THICK_LINE, y + h / 2 - 1, 2);
+
+        // Alignments a few pixels wide are drawn as a single block, centered with a 1 pixel margin
+        int compactHeight = Math.max(1, rowHeight - 2);
+        count += paintLayer(context, COMPACT, y + (rowHeight - compactHeight) / 2, compactHeight);
+
+        count += paintLayer(context, BLOCK, y, h);
+
+        // Strand markers are lines from y to y + max(1, h - 1) inclusive
+        count += paintLayer(context, TERMINAL, y, Math.max(1, h - 1) + 1);
+
+        // Bases are inset on rows 10 pixels or taller, see AlignmentRenderer.drawBase
+        if (rowHeight < 10) {
+            count += paintLayer(context, BASE, y, rowHeight);
+        } else {
+            count += paintLayer(context, BASE, y + 1, rowHeight - 3);
+        }
+        return count;
+    }
+
+    private int paintLayer(RenderContext context, int layer, int y, int h) {
+        Color[] pixels = layers[layer];
+        int count = 0;
+        int i = 0;
+        while (i < width) {
+            Color c = pixels[i];
+            if (c == null) {
+                i++;
+                continue;
+            }
+            int runStart = i;
+            while (i < width && c.equals(pixels[i])) {
+                i++;
+            }
+            context.getGraphic2DForColor(c).fillRect(x0 + runStart, y, i - runStart, h);
+            count++;
+        }
+        return count;
+    }
+}
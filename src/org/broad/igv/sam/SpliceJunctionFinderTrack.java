@@ -23,8 +23,14 @@
 package org.broad.igv.sam;
 
 import org.apache.log4j.Logger;
+import org.broad.igv.Globals;
 import org.broad.igv.PreferenceManager;
+import org.broad.igv.feature.FeatureUtils;
+import org.broad.igv.feature.IGVFeature;
+import org.broad.igv.feature.LocusScore;
 import org.broad.igv.feature.SpliceJunctionFeature;
+import org.broad.igv.feature.Strand;
+import org.broad.igv.feature.genome.GenomeManager;
 import org.broad.igv.renderer.DataRange;
 import org.broad.igv.renderer.SpliceJunctionRenderer;
 import org.broad.igv.track.*;
@@ -32,19 +38,27 @@ import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.event.AlignmentTrackEvent;
 import org.broad.igv.ui.event.AlignmentTrackEventListener;
 import org.broad.igv.ui.panel.IGVPopupMenu;
+import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.ResourceLocator;
+import org.broad.tribble.Feature;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author dhmay
- *         Finds splice junctions in real time and renders them as Features
+ *         Finds splice junctions in real time and renders them as Features.  If a precomputed junctions file
+ *         ({@code <alignment file>.junctions.bed}, see igvtools "junctions") and its index exist, junctions are
+ *         read from it instead, and its zoomed depth summary, if any, is shown when zoomed out.
  */
 public class SpliceJunctionFinderTrack extends FeatureTrack implements AlignmentTrackEventListener {
 
@@ -60,6 +74,9 @@ public class SpliceJunctionFinderTrack extends FeatureTrack implements Alignment
 
     boolean ignoreStrand;
 
+    // Source for precomputed junctions, null if junctions are computed from the loaded alignments
+    FeatureSource<?> junctionSource;
+
     public SpliceJunctionFinderTrack(ResourceLocator locator, String name, IAlignmentDataManager dataManager, boolean ignoreStrand) {
         super(locator, locator.getPath() + "_junctions", name);
 
@@ -68,12 +85,40 @@ public class SpliceJunctionFinderTrack extends FeatureTrack implements Alignment
         this.dataManager = dataManager;
         prefs = PreferenceManager.getInstance();
         this.ignoreStrand = ignoreStrand;
+        initJunctionSource(locator);
         // Register track
         IGV.getInstance().addAlignmentTrackEventListener(this);
     }
 
+    /**
+     * Search for a precomputed, indexed junctions file for the alignment file.  We fall back to
+     * computing junctions on the fly if it doesn't exist or can't be read.
+     *
+     * @param locator
+     */
+    private void initJunctionSource(ResourceLocator locator) {
+        String path = locator.getPath();
+        if (path == null || path.contains("/query.cgi?")) return;
+
+        String junctionsPath = path + ".junctions.bed";
+        if (FileUtils.resourceExists(junctionsPath) && FileUtils.resourceExists(junctionsPath + ".idx")) {
+            try {
+                log.debug("Loading precomputed junctions: " + junctionsPath);
+                junctionSource = TribbleFeatureSource.getFeatureSource(new ResourceLocator(junctionsPath),
+                        GenomeManager.getInstance().getCurrentGenome());
+                visibilityWindow = junctionSource.getFeatureWindowSize();
+            } catch (Exception e) {
+                log.error("Error loading junctions file " + junctionsPath + ".  Junctions will be computed from alignments", e);
+                junctionSource = null;
+            }
+        }
+    }
+
     @Override
     protected boolean isShowFeatures(RenderContext context) {
+        if (junctionSource != null) {
+            return super.isShowFeatures(context);
+        }
         float maxRange = PreferenceManager.getInstance().getAsFloat(PreferenceManager.SAM_MAX_VISIBLE_RANGE);
         float minVisibleScale = (maxRange * 1000) / 700;
         return context.getScale() < minVisibleScale;
@@ -120,6 +165,10 @@ public class SpliceJunctionFinderTrack extends FeatureTrack implements Alignment
     @Override
     protected void loadFeatures(String chr, int start, int end, RenderContext context) {
         parent = context.getPanel();
+        if (junctionSource != null) {
+            loadPrecomputedFeatures(chr, start, end, context);
+            return;
+        }
         AlignmentInterval loadedInterval = dataManager.getLoadedInterval(context.getReferenceFrame().getCurrentRange());
         if (loadedInterval == null) return;
 
@@ -130,11 +179,84 @@ public class SpliceJunctionFinderTrack extends FeatureTrack implements Alignment
         }
         int intervalStart = loadedInterval.getStart();
         int intervalEnd = loadedInterval.getEnd();
-        PackedFeatures pf = new PackedFeaturesSpliceJunctions(chr, intervalStart, intervalEnd, features.iterator(), getName());
+        setPackedFeatures(chr, intervalStart, intervalEnd, features, context);
+    }
+
+    /**
+     * PackedFeaturesSpliceJunctions extends the raw PackedFeatures type, hence the unchecked conversion
+     */
+    @SuppressWarnings("unchecked")
+    private void setPackedFeatures(String chr, int start, int end, List<SpliceJunctionFeature> features,
+                                   RenderContext context) {
+        PackedFeatures<IGVFeature> pf = new PackedFeaturesSpliceJunctions<SpliceJunctionFeature>(chr, start, end,
+                features.iterator(), getName());
         packedFeaturesMap.put(context.getReferenceFrame().getName(), pf);
         if (context.getPanel() != null) context.getPanel().repaint();
     }
 
+    private void loadPrecomputedFeatures(String chr, int start, int end, RenderContext context) {
+        int delta = (end - start) / 2;
+        int expandedStart = Math.max(0, start - delta);
+        int expandedEnd = end + delta;
+
+        List<SpliceJunctionFeature> features;
+        try {
+            features = filterPrecomputedJunctions(junctionSource.getFeatures(chr, expandedStart, expandedEnd));
+        } catch (IOException e) {
+            log.error("Error loading junctions for " + chr + ":" + start + "-" + end, e);
+            features = Collections.emptyList();
+        }
+        setPackedFeatures(chr, expandedStart, expandedEnd, features, context);
+    }
+
+    @Override
+    protected List<LocusScore> getCoverageScores(RenderContext context) {
+        if (junctionSource != null && !context.getChr().equals(Globals.CHR_ALL)) {
+            return junctionSource.getCoverageScores(context.getChr(), (int) context.getOrigin(),
+                    (int) context.getEndLocation(), context.getZoom());
+        }
+        return super.getCoverageScores(context);
+    }
+
+    /**
+     * Apply the current minimum coverage to precomputed junctions, combining strands if required.
+     */
+    private List<SpliceJunctionFeature> filterPrecomputedJunctions(Iterator<? extends Feature> iter) {
+        int minJunctionCoverage = dataManager.getSpliceJunctionLoadOptions().minJunctionCoverage;
+        List<SpliceJunctionFeature> features = new ArrayList<SpliceJunctionFeature>();
+        Map<String, SpliceJunctionFeature> combinedJunctions = new HashMap<String, SpliceJunctionFeature>();
+
+        while (iter != null && iter.hasNext()) {
+            Feature f = iter.next();
+            if (!(f instanceof SpliceJunctionFeature)) continue;
+            SpliceJunctionFeature junction = (SpliceJunctionFeature) f;
+
+            if (ignoreStrand) {
+                String key = junction.getJunctionStart() + "_" + junction.getJunctionEnd();
+                SpliceJunctionFeature combined = combinedJunctions.get(key);
+                if (combined == null) {
+                    combined = new SpliceJunctionFeature(junction.getChr(), junction.getJunctionStart(),
+                            junction.getJunctionEnd(), Strand.POSITIVE);
+                    combinedJunctions.put(key, combined);
+                    features.add(combined);
+                }
+                int newJunctionDepth = combined.getJunctionDepth() + junction.getJunctionDepth();
+                combined.addRead(junction.getStart(), junction.getEnd());
+                combined.setJunctionDepth(newJunctionDepth);
+            } else {
+                features.add(junction);
+            }
+        }
+
+        List<SpliceJunctionFeature> filteredFeatures = new ArrayList<SpliceJunctionFeature>(features.size());
+        for (SpliceJunctionFeature junction : features) {
+            if (junction.getJunctionDepth() >= minJunctionCoverage) {
+                filteredFeatures.add(junction);
+            }
+        }
+        FeatureUtils.sortFeatureList(filteredFeatures);
+        return filteredFeatures;
+    }
 
     @Override
     public boolean handleDataClick(TrackClickEvent te) {
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.sam.reader;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * Minimal reader for BAM index (.bai) files, returning the compressed file spans ("chunks") which may contain
+ * alignments overlapping a region.  Picard does not expose chunks publicly, and we need them to read and inflate
+ * the BGZF blocks ourselves.
+ * <p/>
+ * The index file is read into memory once.  Individual references are parsed on first use.
+ *
+ * @see ParallelBAMQueryIterator
+ */
+public class BAMChunkIndex {
+
+    private static final int MAX_BIN = 37450;  // Pseudo-bin holding metadata, not alignments
+    private static final int LINEAR_SHIFT = 14;
+
+    private ByteBuffer buffer;
+    private int[] refOffsets;
+    private Map<Integer, RefIndex> refIndexCache = new HashMap<Integer, RefIndex>();
+
+    public BAMChunkIndex(File indexFile) throws IOException {
+        byte[] bytes = new byte[(int) indexFile.length()];
+        DataInputStream is = null;
+        try {
+            is = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            is.readFully(bytes);
+        } finally {
+            if (is != null) is.close();
+        }
+
+        buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.get() != 'B' || buffer.get() != 'A' || buffer.get() != 'I' || buffer.get() != 1) {
+            throw new IOException("Invalid BAM index file: " + indexFile.getAbsolutePath());
+        }
+
+        // Record the offset of each reference, skipping over its contents
+        int nRef = buffer.getInt();
+        refOffsets = new int[nRef];
+        for (int i = 0; i < nRef; i++) {
+            refOffsets[i] = buffer.position();
+            int nBin = buffer.getInt();
+            for (int b = 0; b < nBin; b++) {
+                buffer.getInt();
+                int nChunk = buffer.getInt();
+                buffer.position(buffer.position() + 16 * nChunk);
+            }
+            int nIntv = buffer.getInt();
+            buffer.position(buffer.position() + 8 * nIntv);
+        }
+    }
+
+    public int getNumberOfReferences() {
+        return refOffsets.length;
+    }
+
+    /**
+     * Return the chunks which may contain alignments overlapping a region, sorted and with overlapping chunks
+     * merged.  Each chunk is a pair of BGZF virtual file offsets {start, end}.
+     *
+     * @param refIndex index of the sequence in the BAM header
+     * @param start    0-based start, inclusive
+     * @param end      0-based end, exclusive
+     */
+    public synchronized List<long[]> getChunks(int refIndex, int start, int end) {
+
+        if (refIndex < 0 || refIndex >= refOffsets.length) {
+            return Collections.emptyList();
+        }
+        RefIndex ref = getRefIndex(refIndex);
+
+        start = Math.max(0, start);
+        end = Math.max(start + 1, end);
+
+        long minOffset = 0;
+        if (ref.linearIndex.length > 0) {
+            int idx = Math.min(start >> LINEAR_SHIFT, ref.linearIndex.length - 1);
+            minOffset = ref.linearIndex[idx];
+        }
+
+        List<long[]> chunks = new ArrayList<long[]>();
+        for (int bin : regionToBins(start, end)) {
+            long[] binChunks = ref.bins.get(bin);
+            if (binChunks == null) continue;
+            for (int i = 0; i < binChunks.length; i += 2) {
+                if (binChunks[i + 1] > minOffset) {
+                    chunks.add(new long[]{binChunks[i], binChunks[i + 1]});
+                }
+            }
+        }
+        return mergeChunks(chunks);
+    }
+
+    private RefIndex getRefIndex(int refIndex) {
+        RefIndex ref = refIndexCache.get(refIndex);
+        if (ref == null) {
+            ByteBuffer bb = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            bb.position(refOffsets[refIndex]);
+            ref = new RefIndex();
+            int nBin = bb.getInt();
+            for (int b = 0; b < nBin; b++) {
+                int bin = bb.getInt();
+                int nChunk = bb.getInt();
+                long[] chunks = new long[2 * nChunk];
+                for (int c = 0; c < 2 * nChunk; c++) {
+                    chunks[c] = bb.getLong();
+                }
+                if (bin != MAX_BIN) {
+                    ref.bins.put(bin, chunks);
+                }
+            }
+            int nIntv = bb.getInt();
+            ref.linearIndex = new long[nIntv];
+            for (int i = 0; i < nIntv; i++) {
+                ref.linearIndex[i] = bb.getLong();
+            }
+            refIndexCache.put(refIndex, ref);
+        }
+        return ref;
+    }
+
+    static List<long[]> mergeChunks(List<long[]> chunks) {
+        if (chunks.size() < 2) {
+            return chunks;
+        }
+        Collections.sort(chunks, new Comparator<long[]>() {
+            public int compare(long[] c1, long[] c2) {
+                return c1[0] < c2[0] ? -1 : (c1[0] == c2[0] ? 0 : 1);
+            }
+        });
+        List<long[]> merged = new ArrayList<long[]>(chunks.size());
+        long[] current = chunks.get(0);
+        for (int i = 1; i < chunks.size(); i++) {
+            long[] next = chunks.get(i);
+            if (next[0] <= current[1]) {
+                current[1] = Math.max(current[1], next[1]);
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * Bins which may contain features overlapping the region, as defined in the SAM specification.
+     */
+    static List<Integer> regionToBins(int start, int end) {
+        List<Integer> bins = new ArrayList<Integer>();
+        end--;
+        bins.add(0);
+        for (int k = 1 + (start >> 26); k <= 1 + (end >> 26); k++) bins.add(k);
+        for (int k = 9 + (start >> 23); k <= 9 + (end >> 23); k++) bins.add(k);
+        for (int k = 73 + (start >> 20); k <= 73 + (end >> 20); k++) bins.add(k);
+        for (int k = 585 + (start >> 17); k <= 585 + (end >> 17); k++) bins.add(k);
+        for (int k = 4681 + (start >> 14); k <= 4681 + (end >> 14); k++) bins.add(k);
+        return bins;
+    }
+
+    private static class RefIndex {
+        Map<Integer, long[]> bins = new HashMap<Integer, long[]>();
+        long[] linearIndex;
+    }
+}
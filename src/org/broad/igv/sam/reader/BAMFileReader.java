@@ -18,19 +18,25 @@ package org.broad.igv.sam.reader;
 import net.sf.samtools.SAMFileHeader;
 import net.sf.samtools.SAMFileReader;
 import net.sf.samtools.SAMFileReader.ValidationStringency;
+import net.sf.samtools.SAMRecord;
 import net.sf.samtools.SAMRecordIterator;
 import net.sf.samtools.SAMSequenceRecord;
 import net.sf.samtools.util.CloseableIterator;
 import org.apache.log4j.Logger;
+import org.broad.igv.PreferenceManager;
 import org.broad.igv.sam.EmptyAlignmentIterator;
 import org.broad.igv.sam.SamAlignment;
 import org.broad.igv.ui.util.MessageUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 
 /**
  * @author jrobinso
@@ -40,10 +46,14 @@ public class BAMFileReader implements AlignmentReader<SamAlignment> {
     private static Logger log = Logger.getLogger(BAMFileReader.class);
     SAMFileReader reader;
     SAMFileHeader header;
+    File bamFile;
+    File indexFile;
+    BAMChunkIndex chunkIndex;
 
     public BAMFileReader(File bamFile) {
+        this.bamFile = bamFile;
         try {
-            File indexFile = findIndexFile(bamFile);
+            indexFile = findIndexFile(bamFile);
             reader = new SAMFileReader(bamFile, indexFile);
             reader.setValidationStringency(ValidationStringency.SILENT);
             loadHeader();
@@ -93,6 +103,16 @@ public class BAMFileReader implements AlignmentReader<SamAlignment> {
     }
 
     public CloseableIterator<SamAlignment> query(String sequence, int start, int end, boolean contained) {
+
+        if (indexFile != null && PreferenceManager.getInstance().getAsBoolean(PreferenceManager.SAM_PARALLEL_INFLATE)) {
+            try {
+                CloseableIterator<SAMRecord> iter = parallelQuery(sequence, start, end, contained);
+                return new WrappedIterator(new FallbackIterator(iter, sequence, start, end, contained));
+            } catch (Exception e) {
+                log.error("Error in parallel query of " + bamFile.getAbsolutePath() + ", using Picard", e);
+            }
+        }
+
         SAMRecordIterator query = null;
         try {
             query = reader.query(sequence, start + 1, end, contained);
@@ -106,6 +126,104 @@ public class BAMFileReader implements AlignmentReader<SamAlignment> {
 
     }
 
+    /**
+     * Query by reading the index chunks directly and inflating BGZF blocks on a thread pool.
+     *
+     * @param start 0-based start
+     * @param end   0-based end, exclusive
+     */
+    CloseableIterator<SAMRecord> parallelQuery(String sequence, int start, int end, boolean contained) throws IOException {
+        int refIndex = getFileHeader().getSequenceIndex(sequence);
+        if (refIndex < 0) {
+            return new ParallelBAMQueryIterator(bamFile, header, Collections.<long[]>emptyList(), refIndex, start + 1, end, contained);
+        }
+        synchronized (this) {
+            if (chunkIndex == null) {
+                chunkIndex = new BAMChunkIndex(indexFile);
+            }
+        }
+        List<long[]> chunks = chunkIndex.getChunks(refIndex, start, end);
+        return new ParallelBAMQueryIterator(bamFile, header, chunks, refIndex, start + 1, end, contained);
+    }
+
+    /**
+     * Iterator over a parallel query that falls back to the Picard query if reading fails part way through.  Both
+     * queries return records in file order, so the records already returned are skipped on the Picard iterator.
+     * Failures caused by an interrupt are rethrown rather than retried.
+     */
+    class FallbackIterator implements CloseableIterator<SAMRecord> {
+
+        CloseableIterator<SAMRecord> iter;
+        String sequence;
+        int start;
+        int end;
+        boolean contained;
+        boolean parallel = true;
+        int count = 0;
+
+        FallbackIterator(CloseableIterator<SAMRecord> iter, String sequence, int start, int end, boolean contained) {
+            this.iter = iter;
+            this.sequence = sequence;
+            this.start = start;
+            this.end = end;
+            this.contained = contained;
+        }
+
+        public boolean hasNext() {
+            return iter.hasNext();
+        }
+
+        public SAMRecord next() {
+            if (parallel) {
+                try {
+                    SAMRecord record = iter.next();
+                    count++;
+                    return record;
+                } catch (NoSuchElementException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    // A cancelled load is not a decoding error, rereading the file with Picard would ignore it
+                    if (isInterruption(e)) {
+                        throw e;
+                    }
+                    log.error("Error in parallel query of " + bamFile.getAbsolutePath() + ", using Picard", e);
+                    fallBack();
+                }
+            }
+            return iter.next();
+        }
+
+        private boolean isInterruption(Throwable e) {
+            if (Thread.currentThread().isInterrupted()) {
+                return true;
+            }
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t instanceof InterruptedIOException || t instanceof InterruptedException ||
+                        t instanceof CancellationException) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void fallBack() {
+            iter.close();
+            parallel = false;
+            iter = reader.query(sequence, start + 1, end, contained);
+            for (int i = 0; i < count && iter.hasNext(); i++) {
+                iter.next();
+            }
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Remove not supported");
+        }
+
+        public void close() {
+            iter.close();
+        }
+    }
+
     public CloseableIterator<SamAlignment> iterator() {
         return new WrappedIterator(reader.iterator());
     }
@@ -11,6 +11,7 @@
 
 package org.broad.igv.sam.reader;
 
+import com.google.common.util.concurrent.Uninterruptibles;
 import net.sf.picard.sam.SamFileHeaderMerger;
 import net.sf.samtools.SAMFileHeader;
 import net.sf.samtools.util.CloseableIterator;
@@ -21,6 +22,7 @@ import org.broad.igv.sam.Alignment;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
 
 
 /**
@@ -33,6 +35,26 @@ public class MergedAlignmentReader implements AlignmentReader {
 
     private static Logger log = Logger.getLogger(MergedAlignmentReader.class);
 
+    /**
+     * Alignments are passed from the decoding workers in batches of this size, with at most QUEUE_CAPACITY
+     * batches waiting per file.
+     */
+    static final int BATCH_SIZE = 500;
+    static final int QUEUE_CAPACITY = 4;
+
+    private static final List<Alignment> END_OF_FILE = Collections.emptyList();
+
+    /**
+     * Workers block on their queues, so the pool must not be bounded below the number of files being merged.
+     */
+    private static final ExecutorService decoderPool = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Merged alignment decoder");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
     List<AlignmentReader> readers;
     List<String> sequenceNames;
     Map<String, Integer> chrNameIndex;
@@ -124,10 +146,18 @@ public class MergedAlignmentReader implements AlignmentReader {
     }
 
 
+    /**
+     * Iterator over the merged files.  Each file is decoded on its own worker thread, which hands alignments to
+     * this iterator in batches through a bounded queue.  The merge itself happens on the calling thread.
+     * Workers block when their queue is full, so a file is never decoded far ahead of the merge, and stop at the
+     * next batch boundary once the iterator is closed.  If the calling thread is interrupted while waiting for a
+     * batch the workers are stopped and a {@link CancellationException} is thrown.
+     */
     public class MergedFileIterator implements CloseableIterator<Alignment> {
 
-        List<CloseableIterator<Alignment>> allIterators = new ArrayList();
+        List<RecordIterWrapper> allWrappers = new ArrayList<RecordIterWrapper>();
         PriorityQueue<RecordIterWrapper> iteratorQueue;
+        volatile boolean cancelled = false;
 
         public MergedFileIterator() {
             try {
@@ -144,17 +174,30 @@ public class MergedAlignmentReader implements AlignmentReader {
         private void create(String chr, int start, int end, boolean contained) throws IOException {
             iteratorQueue = new PriorityQueue(readers.size(), new AlignmentStartComparator());
             boolean iterate = (start == end) && (start == -1);
-            for (AlignmentReader reader : readers) {
-                CloseableIterator<Alignment> iter;
-                if (iterate) {
-                    iter = reader.iterator();
-                } else {
-                    iter = reader.query(chr, start, end, contained);
+            try {
+                for (AlignmentReader reader : readers) {
+                    CloseableIterator<Alignment> iter;
+                    if (iterate) {
+                        iter = reader.iterator();
+                    } else {
+                        iter = reader.query(chr, start, end, contained);
+                    }
+                    RecordIterWrapper wrapper = new RecordIterWrapper(iter);
+                    allWrappers.add(wrapper);
+                    wrapper.start();
                 }
-                allIterators.add(iter);
-                if (iter.hasNext()) {
-                    iteratorQueue.add(new RecordIterWrapper(iter));
+                for (RecordIterWrapper wrapper : allWrappers) {
+                    wrapper.advance();
+                    if (wrapper.hasNext()) {
+                        iteratorQueue.add(wrapper);
+                    }
                 }
+            } catch (IOException e) {
+                close();
+                throw e;
+            } catch (RuntimeException e) {
+                close();
+                throw e;
             }
         }
 
@@ -175,41 +218,131 @@ public class MergedAlignmentReader implements AlignmentReader {
             throw new UnsupportedOperationException("Remove not implemented");
         }
 
+        /**
+         * Stop the decoding workers and wait for them to close their files.
+         */
         public void close() {
-            for (CloseableIterator<Alignment> iter : allIterators) {
-                iter.close();
+            cancelled = true;
+            for (RecordIterWrapper wrapper : allWrappers) {
+                wrapper.close();
             }
-            allIterators.clear();
+            allWrappers.clear();
             iteratorQueue.clear();
         }
 
-        class RecordIterWrapper {
+        class RecordIterWrapper implements Runnable {
 
             Alignment nextRecord;
             CloseableIterator<Alignment> iterator;
+            BlockingQueue<List<Alignment>> queue = new ArrayBlockingQueue<List<Alignment>>(QUEUE_CAPACITY);
+            List<Alignment> batch;
+            int batchIndex;
+            volatile Throwable error;
+            Future<?> future;
 
             RecordIterWrapper(CloseableIterator<Alignment> iter) {
                 this.iterator = iter;
-                nextRecord = (iterator.hasNext() ? iterator.next() : null);
+            }
+
+            void start() {
+                future = decoderPool.submit(this);
+            }
+
+            /**
+             * Worker loop.  Decodes alignments into batches until the file is exhausted or the merge is
+             * cancelled.  The underlying iterator is closed on this thread.
+             */
+            public void run() {
+                try {
+                    List<Alignment> nextBatch = new ArrayList<Alignment>(BATCH_SIZE);
+                    while (!cancelled && iterator.hasNext()) {
+                        nextBatch.add(iterator.next());
+                        if (nextBatch.size() == BATCH_SIZE) {
+                            if (!put(nextBatch)) return;
+                            nextBatch = new ArrayList<Alignment>(BATCH_SIZE);
+                        }
+                    }
+                    if (nextBatch.size() > 0) {
+                        put(nextBatch);
+                    }
+                } catch (Throwable e) {
+                    error = e;
+                } finally {
+                    iterator.close();
+                    put(END_OF_FILE);
+                }
+            }
+
+            /**
+             * Put a batch on the queue, waiting for space.
+             *
+             * @return false if the merge was cancelled while waiting
+             */
+            private boolean put(List<Alignment> alignments) {
+                try {
+                    while (!cancelled) {
+                        if (queue.offer(alignments, 100, TimeUnit.MILLISECONDS)) {
+                            return true;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return false;
             }
 
             Alignment advance() {
                 Alignment tmp = nextRecord;
-                nextRecord = (iterator.hasNext() ? iterator.next() : null);
+                nextRecord = take();
                 return tmp;
+            }
 
+            private Alignment take() {
+                if (batch == END_OF_FILE) {
+                    return null;
+                }
+                if (batch == null || batchIndex >= batch.size()) {
+                    try {
+                        batch = queue.take();
+                    } catch (InterruptedException e) {
+                        // Loading was cancelled.  Stop the workers, and report the cancellation so a partial
+                        // result is not mistaken for a complete one
+                        cancelled = true;
+                        Thread.currentThread().interrupt();
+                        batch = END_OF_FILE;
+                        throw new CancellationException("Alignment loading interrupted");
+                    }
+                    batchIndex = 0;
+                    if (batch == END_OF_FILE) {
+                        if (error != null) {
+                            throw new RuntimeException("Error reading alignments", error);
+                        }
+                        return null;
+                    }
+                }
+                return batch.get(batchIndex++);
             }
 
             boolean hasNext() {
                 return nextRecord != null;
             }
 
+            /**
+             * Wait for the worker to close its iterator.  The wait is uninterruptible, close is typically called
+             * after a cancellation and the file must not be left open.  Any interrupt is restored afterwards.
+             */
             void close() {
-                if (iterator != null) {
-                    System.out.println("Closing " + this);
-                    iterator.close();
-                    iterator = null;
+                if (future != null) {
+                    try {
+                        Uninterruptibles.getUninterruptibly(future);
+                    } catch (CancellationException e) {
+                        // Worker never started, there is nothing to close
+                    } catch (ExecutionException e) {
+                        log.error("Error closing alignment iterator", e.getCause());
+                    }
+                    future = null;
                 }
+                queue.clear();
             }
         }
 
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.sam.reader;
+
+import net.sf.samtools.BAMRecordCodec;
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMFileReader;
+import net.sf.samtools.SAMRecord;
+import net.sf.samtools.util.CloseableIterator;
+import net.sf.samtools.util.RuntimeIOException;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Query iterator for a local, indexed BAM file which inflates BGZF blocks on a thread pool.
+ * <p/>
+ * The compressed blocks covering the index chunks for the query are read sequentially on the calling thread
+ * and submitted for inflation, up to WINDOW_SIZE blocks ahead of the block being decoded.  Records are decoded
+ * in file order from the inflated blocks, so results are identical to a Picard query.
+ *
+ * @see BAMChunkIndex
+ */
+public class ParallelBAMQueryIterator implements CloseableIterator<SAMRecord> {
+
+    private static Logger log = Logger.getLogger(ParallelBAMQueryIterator.class);
+
+    private static final int BGZF_HEADER_SIZE = 18;
+    private static final int BGZF_FOOTER_SIZE = 8;
+
+    /**
+     * Maximum number of blocks being inflated or waiting to be decoded.  Blocks are at most 64 KB uncompressed.
+     */
+    static final int WINDOW_SIZE = 4 * Runtime.getRuntime().availableProcessors() + 4;
+
+    private static final ExecutorService inflaterPool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "BGZF inflater");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    private RandomAccessFile file;
+    private String path;
+    private LinkedList<long[]> chunks;
+    private LinkedList<Future<byte[]>> window = new LinkedList<Future<byte[]>>();
+
+    // Position of the next block to read, within the current chunk
+    private long[] currentChunk;
+    private long nextBlockAddress;
+
+    private BAMRecordCodec codec;
+    private int refIndex;
+    private int start;
+    private int end;
+    private boolean contained;
+    private SAMRecord nextRecord;
+    private boolean closed = false;
+
+    /**
+     * @param bamFile
+     * @param header
+     * @param chunks    chunks overlapping the query, sorted by file offset.  See {@link BAMChunkIndex#getChunks}.
+     * @param refIndex  index of the query sequence in the header
+     * @param start     1-based start of the query
+     * @param end       1-based end of the query, inclusive
+     * @param contained if true only alignments contained in the region are returned, otherwise overlapping ones
+     * @throws IOException
+     */
+    public ParallelBAMQueryIterator(File bamFile, SAMFileHeader header, List<long[]> chunks,
+                                    int refIndex, int start, int end, boolean contained) throws IOException {
+        this.file = new RandomAccessFile(bamFile, "r");
+        this.path = bamFile.getAbsolutePath();
+        this.chunks = new LinkedList<long[]>(chunks);
+        this.refIndex = refIndex;
+        this.start = start;
+        this.end = end <= 0 ? Integer.MAX_VALUE : end;
+        this.contained = contained;
+        this.codec = new BAMRecordCodec(header);
+        this.codec.setInputStream(new InflatedBlockStream(), path);
+        try {
+            fillWindow();
+            advance();
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public boolean hasNext() {
+        return nextRecord != null;
+    }
+
+    public SAMRecord next() {
+        if (nextRecord == null) {
+            throw new NoSuchElementException();
+        }
+        SAMRecord record = nextRecord;
+        advance();
+        return record;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("Remove not supported");
+    }
+
+    public void close() {
+        if (closed) return;
+        closed = true;
+        nextRecord = null;
+        for (Future<byte[]> future : window) {
+            future.cancel(false);
+        }
+        window.clear();
+        chunks.clear();
+        try {
+            file.close();
+        } catch (IOException e) {
+            log.error("Error closing " + path, e);
+        }
+    }
+
+    /**
+     * Decode records until one passes the query filter, or the region is passed.  Chunks are in file order, and
+     * the file is sorted, so the first record beyond the region ends the query.
+     */
+    private void advance() {
+        nextRecord = null;
+        while (!closed) {
+            SAMRecord record = codec.decode();
+            if (record == null) {
+                close();
+                return;
+            }
+            record.setValidationStringency(SAMFileReader.ValidationStringency.SILENT);
+            int recordRef = record.getReferenceIndex();
+            int alignmentStart = record.getAlignmentStart();
+            if (recordRef > refIndex || recordRef < 0 || (recordRef == refIndex && alignmentStart > end)) {
+                close();
+                return;
+            }
+            if (recordRef != refIndex) {
+                continue;
+            }
+            int alignmentEnd = record.getAlignmentEnd();
+            if (alignmentEnd < alignmentStart) {
+                alignmentEnd = alignmentStart;
+            }
+            boolean match = contained ?
+                    (alignmentStart >= start && alignmentEnd <= end) :
+                    (alignmentEnd >= start && alignmentStart <= end);
+            if (match) {
+                nextRecord = record;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read compressed blocks and submit them for inflation until the window is full or all chunks are read.
+     */
+    private void fillWindow() {
+        try {
+            while (window.size() < WINDOW_SIZE) {
+                if (currentChunk == null) {
+                    if (chunks.isEmpty()) {
+                        return;
+                    }
+                    currentChunk = chunks.removeFirst();
+                    nextBlockAddress = currentChunk[0] >>> 16;
+                }
+
+                long blockAddress = nextBlockAddress;
+                long endAddress = currentChunk[1] >>> 16;
+                int endOffset = (int) (currentChunk[1] & 0xFFFF);
+                if (blockAddress > endAddress || (blockAddress == endAddress && endOffset == 0)) {
+                    currentChunk = null;
+                    continue;
+                }
+
+                byte[] compressed = readBlock(blockAddress);
+                nextBlockAddress = blockAddress + compressed.length;
+
+                int from = (blockAddress == (currentChunk[0] >>> 16)) ? (int) (currentChunk[0] & 0xFFFF) : 0;
+                int to = (blockAddress == endAddress) ? endOffset : -1;
+                window.add(inflaterPool.submit(new InflateTask(compressed, from, to)));
+            }
+        } catch (IOException e) {
+            throw new RuntimeIOException("Error reading " + path, e);
+        }
+    }
+
+    private byte[] readBlock(long blockAddress) throws IOException {
+        byte[] header = new byte[BGZF_HEADER_SIZE];
+        file.seek(blockAddress);
+        file.readFully(header);
+        if ((header[0] & 0xFF) != 31 || (header[1] & 0xFF) != 139 || header[12] != 'B' || header[13] != 'C') {
+            throw new IOException("Invalid BGZF block at " + blockAddress);
+        }
+        int blockSize = ((header[16] & 0xFF) | ((header[17] & 0xFF) << 8)) + 1;
+        byte[] block = new byte[blockSize];
+        System.arraycopy(header, 0, block, 0, BGZF_HEADER_SIZE);
+        file.readFully(block, BGZF_HEADER_SIZE, blockSize - BGZF_HEADER_SIZE);
+        return block;
+    }
+
+    /**
+     * Inflates a block, returning the uncompressed bytes between the offsets [from, to).  A "to" of -1 means
+     * the end of the block.
+     */
+    static class InflateTask implements Callable<byte[]> {
+
+        byte[] compressed;
+        int from;
+        int to;
+
+        InflateTask(byte[] compressed, int from, int to) {
+            this.compressed = compressed;
+            this.from = from;
+            this.to = to;
+        }
+
+        public byte[] call() throws Exception {
+            int n = compressed.length;
+            int uncompressedSize = (compressed[n - 4] & 0xFF) | ((compressed[n - 3] & 0xFF) << 8) |
+                    ((compressed[n - 2] & 0xFF) << 16) | ((compressed[n - 1] & 0xFF) << 24);
+            byte[] uncompressed = new byte[uncompressedSize];
+
+            Inflater inflater = inflaters.get();
+            inflater.reset();
+            inflater.setInput(compressed, BGZF_HEADER_SIZE, n - BGZF_HEADER_SIZE - BGZF_FOOTER_SIZE);
+            try {
+                int inflated = inflater.inflate(uncompressed, 0, uncompressedSize);
+                if (inflated != uncompressedSize) {
+                    throw new IOException("Did not inflate expected number of bytes");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Error inflating BGZF block", e);
+            }
+
+            int end = to < 0 ? uncompressedSize : Math.min(to, uncompressedSize);
+            if (from == 0 && end == uncompressedSize) {
+                return uncompressed;
+            }
+            return Arrays.copyOfRange(uncompressed, from, end);
+        }
+    }
+
+    /**
+     * The concatenated uncompressed contents of the chunks, taken from the window in order.
+     */
+    private class InflatedBlockStream extends InputStream {
+
+        byte[] current = new byte[0];
+        int position = 0;
+
+        private boolean nextBlock() throws IOException {
+            while (position >= current.length) {
+                if (window.isEmpty()) {
+                    fillWindow();
+                    if (window.isEmpty()) {
+                        return false;
+                    }
+                }
+                Future<byte[]> future = window.removeFirst();
+                try {
+                    current = future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted reading " + path);
+                } catch (ExecutionException e) {
+                    throw new IOException("Error reading " + path, e.getCause());
+                }
+                position = 0;
+                fillWindow();
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextBlock()) {
+                return -1;
+            }
+            return current[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextBlock()) {
+                return -1;
+            }
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import org.broad.igv.ui.panel.ReferenceFrame;
 import org.broad.igv.ui.panel.TrackPanel;
 import org.broad.igv.ui.panel.TrackPanelScrollPane;
 import org.broad.igv.ui.util.MessageUtils;
+import org.broad.igv.ui.util.UIUtilities;
 import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.FilterElement.BooleanOperator;
 import org.broad.igv.util.FilterElement.Operator;
@@ -101,7 +102,20 @@ public class IGVSessionReader implements SessionReader {
 
     private Track geneTrack = null;
     private Track seqTrack = null;
-    private boolean hasTrackElments;
+
+    /**
+     * Map of track id -> the panel listing it, and its position there.  Read before resources are loaded, so
+     * tracks can be placed as soon as their resource is loaded.
+     */
+    private final Map<String, PanelSlot> trackSlots = new HashMap<String, PanelSlot>();
+    private boolean panelsPresent = false;
+
+    /**
+     * Tracks placed in panels as their resources loaded, and their positions.  They are placed again, with their
+     * attributes, when their panel element is processed.
+     */
+    private final Map<Track, PanelSlot> placedTracks = new HashMap<Track, PanelSlot>();
+    private List<Map<TrackPanelScrollPane, Integer>> leftoverPanelAttrs;
 
     //Temporary holder for generating tracks
     protected static AbstractTrack nextTrack;
@@ -291,9 +305,6 @@ public class IGVSessionReader implements SessionReader {
             throw new RuntimeException(e);
         }
 
-        NodeList tracks = document.getElementsByTagName("Track");
-        hasTrackElments = tracks.getLength() > 0;
-
         HashMap additionalInformation = new HashMap();
         additionalInformation.put(INPUT_FILE_KEY, sessionPath);
 
@@ -302,6 +313,8 @@ public class IGVSessionReader implements SessionReader {
             nodes = document.getElementsByTagName(SessionElement.SESSION.getText());
         }
 
+        readPanelLayout(document);
+
         processRootNode(session, nodes.item(0), additionalInformation, sessionPath);
 
         // Add tracks not explicitly allocated to panels.  It is legal to define sessions with the Resources
@@ -450,14 +463,15 @@ public class IGVSessionReader implements SessionReader {
         if (version < 3 || !panelElementPresent) {
             log.debug("Adding \"leftover\" tracks");
 
-            //For resetting track panels later
-            List<Map<TrackPanelScrollPane, Integer>> trackPanelAttrs = null;
-            if(IGV.hasInstance()){
+            //For resetting track panels later.  Panels may have changed while resources loaded
+            List<Map<TrackPanelScrollPane, Integer>> trackPanelAttrs = leftoverPanelAttrs;
+            if(IGV.hasInstance() && trackPanelAttrs == null){
                 trackPanelAttrs = IGV.getInstance().getTrackPanelAttrs();
             }
 
             for (List<Track> tracks : tmp) {
                 for (Track track : tracks) {
+                    if (placedTracks.containsKey(track)) continue;
                     if (track != geneTrack && track != seqTrack && track.getResourceLocator() != null) {
 
                         TrackPanel panel = trackPanelCache.get(track.getResourceLocator().getPath());
@@ -561,83 +575,81 @@ public class IGVSessionReader implements SessionReader {
         if (dataFiles.size() > 0) {
 
             final List<String> errors = new ArrayList<String>();
-
-            // Load files concurrently -- TODO, put a limit on # of threads?
-            List<Thread> threads = new ArrayList(dataFiles.size());
+            final int nFiles = dataFiles.size();
             long t0 = System.currentTimeMillis();
-            int i = 0;
-            List<Runnable> synchronousLoads = new ArrayList<Runnable>();
-            for (final ResourceLocator locator : dataFiles) {
 
-                final String suppliedPath = locator.getPath();
-                final String relPath = fullToRelPathMap.get(suppliedPath);
+            SessionLoadScheduler.ResourceLoader loader = new SessionLoadScheduler.ResourceLoader() {
+                public List<Track> load(ResourceLocator locator) throws Exception {
+                    return igv.load(locator);
+                }
+            };
+
+            // Called in resource order, on this thread
+            SessionLoadScheduler.LoadListener listener = new SessionLoadScheduler.LoadListener() {
+                int loaded = 0;
+
+                public void loaded(ResourceLocator locator, List<Track> tracks) {
+                    final String suppliedPath = locator.getPath();
+                    final String relPath = fullToRelPathMap.get(suppliedPath);
+                    final List<String> loadedIds = new ArrayList<String>();
+                    final List<Track> loadedTracks = new ArrayList<Track>();
+                    for (Track track : tracks) {
+                        if (track == null) {
+                            log.info("Null track for resource " + locator.getPath());
+                            continue;
+                        }
 
-                Runnable runnable = new Runnable() {
-                    public void run() {
-                        List<Track> tracks = null;
-                        try {
-                            tracks = igv.load(locator);
-                            for (Track track : tracks) {
-                                if (track == null) {
-                                    log.info("Null track for resource " + locator.getPath());
-                                    continue;
-                                }
+                        String id = track.getId();
+                        if (id == null) {
+                            log.info("Null track id for resource " + locator.getPath());
+                            continue;
+                        }
 
-                                String id = track.getId();
-                                if (id == null) {
-                                    log.info("Null track id for resource " + locator.getPath());
-                                    continue;
-                                }
+                        if (relPath != null) {
+                            id = id.replace(suppliedPath, relPath);
+                        }
 
-                                if (relPath != null) {
-                                    id = id.replace(suppliedPath, relPath);
+                        List<Track> trackList = leftoverTrackDictionary.get(id);
+                        if (trackList == null) {
+                            trackList = new ArrayList();
+                            leftoverTrackDictionary.put(id, trackList);
+                            allTracks.put(id, trackList);
+                        }
+                        trackList.add(track);
+                        loadedIds.add(id);
+                        loadedTracks.add(track);
+                    }
+                    if (igv != null) {
+                        // Track panels are Swing components
+                        UIUtilities.invokeAndWaitOnEventThread(new Runnable() {
+                            public void run() {
+                                for (int i = 0; i < loadedTracks.size(); i++) {
+                                    placeTrack(loadedIds.get(i), loadedTracks.get(i));
                                 }
-
-                                List<Track> trackList = leftoverTrackDictionary.get(id);
-                                if (trackList == null) {
-                                    trackList = new ArrayList();
-                                    leftoverTrackDictionary.put(id, trackList);
-                                    allTracks.put(id, trackList);
+                                if (!Globals.isBatch()) {
+                                    igv.repaintDataPanels();
                                 }
-                                trackList.add(track);
                             }
-                        } catch (Exception e) {
-                            log.error("Error loading resource " + locator.getPath(), e);
-                            String ms = "<b>" + locator.getPath() + "</b><br>&nbs;p&nbsp;" + e.toString() + "<br>";
-                            errors.add(ms);
-                        }
+                        });
                     }
-                };
-
-                boolean isAlignment = locator.getPath().endsWith(".bam") || locator.getPath().endsWith(".entries") ||
-                        locator.getPath().endsWith(".sam");
-
-
-                // Run synchronously if in batch mode or if there are no "track" elments, or if this is an alignment file
-                // EVERYTHING IS RUN SYNCHRONOUSLY FOR NOW UNTIL WE CAN FIGURE OUT WHAT TO DO TO PREVENT MULTIPLE
-                // AUTHENTICATION DIALOGS
-                if (isAlignment || Globals.isBatch() || !hasTrackElments) {
-                    synchronousLoads.add(runnable);
-                } else {
-                    Thread t = new Thread(runnable);
-                    threads.add(t);
-                    t.start();
+                    showProgress();
                 }
-                i++;
-            }
-            // Wait for all threads to complete
-            for (Thread t : threads) {
-                try {
-                    t.join();
-                } catch (InterruptedException ignore) {
+
+                public void failed(ResourceLocator locator, Exception e) {
+                    String ms = "<b>" + locator.getPath() + "</b><br>&nbs;p&nbsp;" + e.toString() + "<br>";
+                    errors.add(ms);
+                    showProgress();
                 }
-            }
 
+                private void showProgress() {
+                    loaded++;
+                    if (igv != null && !Globals.isHeadless()) {
+                        igv.setStatusBarMessage("Loaded " + loaded + " of " + nFiles + " files");
+                    }
+                }
+            };
 
-            // Now load data that must be loaded synchronously
-            for (Runnable runnable : synchronousLoads) {
-                runnable.run();
-            }
+            new SessionLoadScheduler().load(new ArrayList<ResourceLocator>(dataFiles), loader, listener);
 
             long dt = System.currentTimeMillis() - t0;
             log.debug("Total load time = " + dt);
@@ -979,10 +991,97 @@ public class IGVSessionReader implements SessionReader {
             }
         }
 
+        // Tracks placed as their resources loaded are placed again, in session order
+        for (Track track : panelTracks) {
+            PanelSlot slot = placedTracks.remove(track);
+            if (slot != null) {
+                slot.panel.removeTracks(Arrays.asList(track));
+            }
+        }
+
         TrackPanel panel = IGV.getInstance().getTrackPanel(panelName);
         panel.addTracks(panelTracks);
     }
 
+    /**
+     * Record the panel and position of each track listed in a panel element
+     */
+    private void readPanelLayout(Document document) {
+        SessionElement[] panelElements = {SessionElement.PANEL, SessionElement.DATA_TRACKS, SessionElement.FEATURE_TRACKS};
+        for (SessionElement panelElement : panelElements) {
+            NodeList panels = document.getElementsByTagName(panelElement.getText());
+            for (int i = 0; i < panels.getLength(); i++) {
+                panelsPresent = true;
+                Element element = (Element) panels.item(i);
+                String panelName = element.getAttribute("name");
+                NodeList elements = element.getChildNodes();
+                int index = 0;
+                for (int j = 0; j < elements.getLength(); j++) {
+                    Node childNode = elements.item(j);
+                    if (nodeIsTrack(childNode)) {
+                        String id = getAttribute((Element) childNode, SessionAttribute.ID.getText());
+                        if (id != null && !trackSlots.containsKey(id)) {
+                            trackSlots.put(id, new PanelSlot(panelName, index));
+                        }
+                        index++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a track to its panel as soon as its resource is loaded.  Tracks listed in a panel element are kept in the
+     * order of the panel element, other tracks are placed as "leftover" tracks would be.
+     */
+    private void placeTrack(String id, Track track) {
+        PanelSlot slot = trackSlots.get(id);
+        if (slot != null) {
+            TrackPanel panel = igv.getTrackPanel(slot.panelName);
+
+            // Tracks placed earlier which follow this one in the panel element are added again after it
+            List<Track> following = new ArrayList<Track>();
+            for (Track t : panel.getTracks()) {
+                PanelSlot placedSlot = placedTracks.get(t);
+                if (placedSlot != null && placedSlot.panel == panel && placedSlot.index > slot.index) {
+                    following.add(t);
+                }
+            }
+            panel.removeTracks(following);
+            panel.addTrack(track);
+            panel.addTracks(following);
+            placedTracks.put(track, new PanelSlot(panel, slot.index));
+
+        } else if ((version < 3 || !panelsPresent) && track != geneTrack && track != seqTrack &&
+                track.getResourceLocator() != null) {
+            if (leftoverPanelAttrs == null) {
+                leftoverPanelAttrs = igv.getTrackPanelAttrs();
+            }
+            TrackPanel panel = igv.getPanelFor(track.getResourceLocator());
+            panel.addTrack(track);
+            placedTracks.put(track, new PanelSlot(panel, 0));
+        }
+    }
+
+    /**
+     * Position of a track in a panel
+     */
+    private static class PanelSlot {
+        String panelName;
+        TrackPanel panel;
+        int index;
+
+        PanelSlot(String panelName, int index) {
+            this.panelName = panelName;
+            this.index = index;
+        }
+
+        PanelSlot(TrackPanel panel, int index) {
+            this.panel = panel;
+            this.index = index;
+        }
+    }
+
     private void processPanelLayout(Session session, Element element, HashMap additionalInformation) {
 
         String nodeName = element.getNodeName();
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.session;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.track.Track;
+import org.broad.igv.util.ResourceLocator;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Loads the resources of a session on a bounded pool.
+ * <p/>
+ * Resources with the same file, e.g. a file listed more than once, are loaded one after the other by the same
+ * task, so shared indexes are created and read once rather than raced for.  Alignment files are loaded one at a time
+ * on their own thread, to avoid multiple authentication dialogs for remote files.
+ * <p/>
+ * Results are passed to the listener on the calling thread in resource order, as soon as the resource and all
+ * preceding resources are done, so tracks are registered in the same order as a serial load.
+ * <p/>
+ * The genome is loaded before resources are read, and combined and merged tracks are built from the loaded
+ * tracks when the panels are read, so resources do not depend on each other.
+ */
+class SessionLoadScheduler {
+
+    private static Logger log = Logger.getLogger(SessionLoadScheduler.class);
+
+    static final int POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService pool = Executors.newFixedThreadPool(POOL_SIZE, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "IGV session loader");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static final ExecutorService serialPool = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "IGV session alignment loader");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    interface ResourceLoader {
+        List<Track> load(ResourceLocator locator) throws Exception;
+    }
+
+    interface LoadListener {
+        void loaded(ResourceLocator locator, List<Track> tracks);
+
+        void failed(ResourceLocator locator, Exception e);
+    }
+
+    /**
+     * Resources with the same key are loaded by the same task
+     */
+    static String getResourceKey(ResourceLocator locator) {
+        String path = locator.getPath();
+        return locator.getDBUrl() == null ? path : locator.getDBUrl() + " " + path;
+    }
+
+    static boolean isSerial(ResourceLocator locator) {
+        String path = locator.getPath();
+        return path.endsWith(".bam") || path.endsWith(".entries") || path.endsWith(".sam");
+    }
+
+    /**
+     * Load the resources, returning when all are loaded and passed to the listener.
+     *
+     * @param locators
+     * @param loader
+     * @param listener
+     */
+    void load(List<ResourceLocator> locators, ResourceLoader loader, LoadListener listener) {
+
+        final int n = locators.size();
+        List<FutureTask<Result>> tasks = new ArrayList<FutureTask<Result>>(n);
+        List<Future<?>> groupFutures = new ArrayList<Future<?>>();
+        for (int i = 0; i < n; i++) {
+            tasks.add(new FutureTask<Result>(new LoadTask(locators.get(i), loader)));
+        }
+
+        // Group resources by key, in order of first appearance
+        Map<String, List<FutureTask<Result>>> groups = new LinkedHashMap<String, List<FutureTask<Result>>>();
+        List<FutureTask<Result>> serial = new ArrayList<FutureTask<Result>>();
+        for (int i = 0; i < n; i++) {
+            ResourceLocator locator = locators.get(i);
+            FutureTask<Result> task = tasks.get(i);
+            if (isSerial(locator)) {
+                serial.add(task);
+                continue;
+            }
+            String key = getResourceKey(locator);
+            List<FutureTask<Result>> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<FutureTask<Result>>();
+                groups.put(key, group);
+            }
+            group.add(task);
+        }
+
+        try {
+            for (final List<FutureTask<Result>> group : groups.values()) {
+                groupFutures.add(pool.submit(new Runnable() {
+                    public void run() {
+                        for (FutureTask<Result> task : group) {
+                            task.run();
+                        }
+                    }
+                }));
+            }
+            for (FutureTask<Result> task : serial) {
+                serialPool.execute(task);
+            }
+
+            for (int i = 0; i < n; i++) {
+                Result result = getResult(tasks.get(i));
+                if (result.error == null) {
+                    listener.loaded(locators.get(i), result.tracks);
+                } else {
+                    listener.failed(locators.get(i), result.error);
+                }
+            }
+        } finally {
+            for (Future<?> future : groupFutures) {
+                future.cancel(true);
+            }
+            for (FutureTask<Result> task : tasks) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    private static Result getResult(Future<Result> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            // Load errors are caught by the task, this is not expected
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    private static class Result {
+        List<Track> tracks;
+        Exception error;
+    }
+
+    private static class LoadTask implements Callable<Result> {
+
+        ResourceLocator locator;
+        ResourceLoader loader;
+
+        LoadTask(ResourceLocator locator, ResourceLoader loader) {
+            this.locator = locator;
+            this.loader = loader;
+        }
+
+        public Result call() {
+            Result result = new Result();
+            try {
+                result.tracks = loader.load(locator);
+            } catch (Exception e) {
+                log.error("Error loading resource " + locator.getPath(), e);
+                result.error = e;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package org.broad.igv.synteny;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.util.ParsingUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Lifts copy number (cn, snp, xcn), segmented (seg), and bed files from one genome to another through an indexed
+ * set of synteny mappings.  Each record costs a binary search of its chromosome's mappings, so files with
+ * millions of rows are mapped in a single pass.
+ * <p/>
+ * Copy number records are mapped by position and dropped if the position is unmapped.  Segment and bed records
+ * are split into one record per overlapping mapping.  Bed records are written as bed6, with the strand flipped
+ * for inverted mappings, as thick and block coordinates cannot be carried through a split.
+ */
+public class Liftover {
+
+    private static Logger log = Logger.getLogger(Liftover.class);
+
+    public static final String CN = "cn";
+    public static final String SEG = "seg";
+    public static final String BED = "bed";
+
+    private SyntenyIndex index;
+    private int recordCount;
+    private int unmappedCount;
+
+    public Liftover(SyntenyIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Return the liftover format for a file type (extension), or null if the type is not supported.
+     */
+    public static String getFormat(String typeString) {
+        typeString = typeString.toLowerCase();
+        if (typeString.endsWith(".gz")) {
+            typeString = typeString.substring(0, typeString.length() - 3);
+        }
+        if (typeString.endsWith("cn") || typeString.endsWith("snp") || typeString.endsWith("xcn")) {
+            return CN;
+        } else if (typeString.endsWith("seg")) {
+            return SEG;
+        } else if (typeString.endsWith("bed")) {
+            return BED;
+        }
+        return null;
+    }
+
+    /**
+     * Lift a file over, writing the mapped records to the output file.
+     *
+     * @param ifile  input file
+     * @param ofile  output file
+     * @param format one of {@link #CN}, {@link #SEG}, {@link #BED}
+     * @return the number of records that could not be mapped
+     * @throws IOException
+     */
+    public int convert(String ifile, String ofile, String format) throws IOException {
+
+        recordCount = 0;
+        unmappedCount = 0;
+
+        BufferedReader reader = null;
+        PrintWriter pw = null;
+        try {
+            reader = ParsingUtils.openBufferedReader(ifile);
+            pw = new PrintWriter(new BufferedWriter(new FileWriter(ofile)));
+            if (format.equals(CN)) {
+                liftOverCN(reader, pw);
+            } else if (format.equals(SEG)) {
+                liftOverSegments(reader, pw);
+            } else if (format.equals(BED)) {
+                liftOverBed(reader, pw);
+            } else {
+                throw new IllegalArgumentException("Unsupported liftover format: " + format);
+            }
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+            if (pw != null) {
+                pw.close();
+            }
+        }
+
+        if (unmappedCount > 0) {
+            log.debug(unmappedCount + " of " + recordCount + " records could not be mapped");
+        }
+        return unmappedCount;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public int getUnmappedCount() {
+        return unmappedCount;
+    }
+
+    /**
+     * Copy number files have a single header line followed by rows of snp, chr, position, values.
+     */
+    void liftOverCN(BufferedReader reader, PrintWriter pw) throws IOException {
+
+        final int chrCol = 1;
+        final int posCol = 2;
+
+        String nextLine = reader.readLine();
+        if (nextLine == null) {
+            return;
+        }
+        pw.println(nextLine);
+
+        StringBuilder buffer = new StringBuilder();
+        while ((nextLine = reader.readLine()) != null) {
+            if (nextLine.startsWith("#")) {
+                pw.println(nextLine);
+                continue;
+            }
+            String[] tokens = SyntenyUtils.TAB.split(nextLine);
+            if (tokens.length <= posCol) {
+                continue;
+            }
+            recordCount++;
+
+            int position = Integer.parseInt(tokens[posCol].trim());
+            Mapping mapping = index.getMappingContaining(tokens[chrCol], position);
+            int toPos = mapping == null ? -1 : (int) mapping.mapPosition(position);
+            if (toPos <= 0) {
+                unmappedCount++;
+                continue;
+            }
+
+            tokens[chrCol] = mapping.getToChr();
+            tokens[posCol] = String.valueOf(toPos);
+            buffer.setLength(0);
+            buffer.append(tokens[0]);
+            for (int i = 1; i < tokens.length; i++) {
+                buffer.append('\t').append(tokens[i]);
+            }
+            pw.println(buffer);
+        }
+    }
+
+    /**
+     * Segmented files have optional comment lines and a header line followed by rows of sample, chr, start,
+     * end, values.
+     */
+    void liftOverSegments(BufferedReader reader, PrintWriter pw) throws IOException {
+
+        final int sampleColumn = 0;
+        final int chrColumn = 1;
+        final int startColumn = 2;
+        final int endColumn = 3;
+
+        String nextLine;
+        while ((nextLine = reader.readLine()) != null && (nextLine.startsWith("#") || nextLine.trim().length() == 0)) {
+            pw.println(nextLine);
+        }
+        if (nextLine == null) {
+            return;
+        }
+        pw.println(nextLine);
+
+        StringBuilder buffer = new StringBuilder();
+        while ((nextLine = reader.readLine()) != null) {
+            String[] tokens = SyntenyUtils.TAB.split(nextLine);
+            if (nextLine.startsWith("#") || tokens.length <= endColumn + 1) {
+                continue;
+            }
+            recordCount++;
+
+            String chr = tokens[chrColumn];
+            int start = Integer.parseInt(tokens[startColumn].trim());
+            int end = Integer.parseInt(tokens[endColumn].trim());
+
+            boolean mapped = false;
+            for (Mapping mapping : index.getMappingsOverlapping(chr, start, end)) {
+                int[] toInterval = mapInterval(mapping, start, end);
+                if (toInterval == null) {
+                    continue;
+                }
+                mapped = true;
+                buffer.setLength(0);
+                buffer.append(tokens[sampleColumn]).append('\t').append(mapping.getToChr()).append('\t').
+                        append(toInterval[0]).append('\t').append(toInterval[1]);
+                for (int i = endColumn + 1; i < tokens.length; i++) {
+                    buffer.append('\t').append(tokens[i]);
+                }
+                pw.println(buffer);
+            }
+            if (!mapped) {
+                unmappedCount++;
+            }
+        }
+    }
+
+    /**
+     * Bed files have optional browser, track, and comment lines, and rows of chr, start, end, and optionally
+     * name, score, strand and further columns.
+     */
+    void liftOverBed(BufferedReader reader, PrintWriter pw) throws IOException {
+
+        StringBuilder buffer = new StringBuilder();
+        String nextLine;
+        while ((nextLine = reader.readLine()) != null) {
+            if (nextLine.startsWith("#") || nextLine.startsWith("track") || nextLine.startsWith("browser")) {
+                pw.println(nextLine);
+                continue;
+            }
+            String[] tokens = SyntenyUtils.TAB.split(nextLine);
+            if (tokens.length < 3) {
+                continue;
+            }
+            recordCount++;
+
+            // Bed intervals are half open, map the last base and convert back
+            String chr = tokens[0];
+            int start = Integer.parseInt(tokens[1].trim());
+            int last = Math.max(start, Integer.parseInt(tokens[2].trim()) - 1);
+
+            boolean mapped = false;
+            for (Mapping mapping : index.getMappingsOverlapping(chr, start, last)) {
+                int[] toInterval = mapInterval(mapping, start, last);
+                if (toInterval == null) {
+                    continue;
+                }
+                mapped = true;
+                buffer.setLength(0);
+                buffer.append(mapping.getToChr()).append('\t').append(toInterval[0]).append('\t').append(toInterval[1] + 1);
+                int nTokens = Math.min(tokens.length, 6);
+                for (int i = 3; i < nTokens; i++) {
+                    String token = tokens[i];
+                    if (i == 5 && isInverted(mapping)) {
+                        token = token.equals("+") ? "-" : (token.equals("-") ? "+" : token);
+                    }
+                    buffer.append('\t').append(token);
+                }
+                pw.println(buffer);
+            }
+            if (!mapped) {
+                unmappedCount++;
+            }
+        }
+    }
+
+    /**
+     * Map the part of the closed interval start-end covered by the mapping.  The mapping's end is also closed.
+     *
+     * @return the mapped {start, end}, or null if the interval is not covered or either end is unmapped
+     */
+    static int[] mapInterval(Mapping mapping, int start, int end) {
+        int adjustedStart = Math.max(start, mapping.getFromStart());
+        int adjustedEnd = Math.min(end, mapping.getFromEnd());
+        if (adjustedStart > adjustedEnd) {
+            return null;
+        }
+        int p1 = (int) mapping.mapPosition(adjustedStart);
+        int p2 = (int) mapping.mapPosition(adjustedEnd);
+        if (p1 < 0 || p2 < 0) {
+            return null;
+        }
+        return new int[]{Math.min(p1, p2), Math.max(p1, p2)};
+    }
+
+    private static boolean isInverted(Mapping mapping) {
+        return mapping instanceof AbstractMapping && !((AbstractMapping) mapping).getDirection();
+    }
+
+    /**
+     * Convenience method to load a mapping file and lift a file over.
+     *
+     * @param mappingFile synteny mapping file
+     * @param reverse     if true map from the second genome of the mapping file to the first
+     * @param ifile       input file
+     * @param ofile       output file
+     * @return the number of records that could not be mapped
+     * @throws IOException
+     */
+    public static int liftOver(String mappingFile, boolean reverse, String ifile, String ofile) throws IOException {
+        String format = getFormat(ifile);
+        if (format == null) {
+            throw new IllegalArgumentException("Unsupported file type for liftover: " + ifile +
+                    ".  Supported types are cn, snp, xcn, seg, and bed");
+        }
+        SyntenyIndex index = SyntenyIndex.load(mappingFile, reverse);
+        if (index == null) {
+            throw new IOException("Could not load mapping file: " + mappingFile);
+        }
+        return (new Liftover(index)).convert(ifile, ofile, format);
+    }
+}
@@ -0,0 +1,102 @@
+package org.broad.igv.synteny;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Interval index over the mappings of a single "from" chromosome.  Mappings are held in arrays sorted by start,
+ * together with the running maximum of their ends, so containment and overlap queries are a binary search
+ * followed by a walk over the candidates only.  Mappings may overlap.
+ */
+public class MappingIndex {
+
+    private final Mapping[] mappings;
+    private final int[] starts;
+
+    /**
+     * maxEnds[i] is the largest end of mappings[0..i].  A walk back from any index can stop as soon as this
+     * falls below the query start.
+     */
+    private final int[] maxEnds;
+
+    public MappingIndex(List<? extends Mapping> mappingList) {
+
+        mappings = mappingList.toArray(new Mapping[mappingList.size()]);
+        // Stable sort, mappings with equal starts keep their original order
+        Arrays.sort(mappings, new Comparator<Mapping>() {
+            public int compare(Mapping o1, Mapping o2) {
+                int s1 = o1.getFromStart();
+                int s2 = o2.getFromStart();
+                return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+            }
+        });
+
+        int size = mappings.length;
+        starts = new int[size];
+        maxEnds = new int[size];
+        int maxEnd = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            starts[i] = mappings[i].getFromStart();
+            maxEnd = Math.max(maxEnd, mappings[i].getFromEnd());
+            maxEnds[i] = maxEnd;
+        }
+    }
+
+    public int size() {
+        return mappings.length;
+    }
+
+    /**
+     * Return the first mapping, in start order, containing the position, or null if there is none.
+     *
+     * @param fromPosition
+     * @return
+     */
+    public Mapping getMappingContaining(int fromPosition) {
+        Mapping containing = null;
+        for (int i = lastIndexStartingAtOrBefore(fromPosition); i >= 0 && maxEnds[i] >= fromPosition; i--) {
+            if (mappings[i].containsFromPosition(fromPosition)) {
+                containing = mappings[i];
+            }
+        }
+        return containing;
+    }
+
+    /**
+     * Return all mappings overlapping the closed interval [fromStart, fromEnd], in start order.
+     *
+     * @param fromStart
+     * @param fromEnd
+     * @return
+     */
+    public List<Mapping> getMappingsOverlapping(int fromStart, int fromEnd) {
+        List<Mapping> overlaps = new ArrayList<Mapping>();
+        for (int i = lastIndexStartingAtOrBefore(fromEnd); i >= 0 && maxEnds[i] >= fromStart; i--) {
+            if (mappings[i].getFromEnd() >= fromStart) {
+                overlaps.add(mappings[i]);
+            }
+        }
+        Collections.reverse(overlaps);
+        return overlaps;
+    }
+
+    /**
+     * @return the index of the last mapping with start <= position, or -1 if there is none
+     */
+    private int lastIndexStartingAtOrBefore(int position) {
+        int low = 0;
+        int high = starts.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= position) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+}
@@ -11,6 +11,7 @@ import java.util.List;
 public class Region extends AbstractMapping
 {
   List<Anchor> anchors = new ArrayList();
+  private MappingIndex anchorIndex;
 
   public void addAnchor(Anchor a)
   {
@@ -38,6 +39,7 @@ public class Region extends AbstractMapping
     }
 
     this.anchors.add(a);
+    this.anchorIndex = null;
   }
 
   public List<Anchor> getAnchors() {
@@ -46,8 +48,12 @@ public class Region extends AbstractMapping
 
   public double mapPosition(int position)
   {
-    for (Anchor a : this.anchors) {
-      if (a.containsFromPosition(position)) {
+    if (!this.anchors.isEmpty()) {
+      if (this.anchorIndex == null) {
+        this.anchorIndex = new MappingIndex(this.anchors);
+      }
+      Mapping a = this.anchorIndex.getMappingContaining(position);
+      if (a != null) {
         return a.mapPosition(position);
       }
     }
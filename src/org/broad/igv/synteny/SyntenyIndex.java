@@ -0,0 +1,55 @@
+package org.broad.igv.synteny;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexed synteny mappings for all chromosomes of the "from" genome.  Replaces the linear list scans of
+ * {@link SyntenyUtils#getMappingContaining(java.util.List, int)} for bulk liftover.
+ */
+public class SyntenyIndex {
+
+    private final Map<String, MappingIndex> indexes;
+
+    public SyntenyIndex(Map<String, List<Mapping>> mappings) {
+        indexes = new HashMap<String, MappingIndex>(mappings.size());
+        for (Map.Entry<String, List<Mapping>> entry : mappings.entrySet()) {
+            indexes.put(entry.getKey(), new MappingIndex(entry.getValue()));
+        }
+    }
+
+    /**
+     * Load and index a synteny mapping file.
+     *
+     * @param path    mapping file
+     * @param reverse if true map from the second genome of the file to the first
+     * @return the index, or null if the file could not be loaded
+     */
+    public static SyntenyIndex load(String path, boolean reverse) {
+        Map<String, List<Mapping>> mappings = SyntenyUtils.loadMappings(path, reverse);
+        return mappings == null ? null : new SyntenyIndex(mappings);
+    }
+
+    /**
+     * Return the index for a chromosome, trying the "chr" prefixed name if the name is not found as given.
+     */
+    public MappingIndex getIndex(String chr) {
+        MappingIndex index = indexes.get(chr);
+        if (index == null && !chr.startsWith("chr")) {
+            index = indexes.get("chr" + chr);
+        }
+        return index;
+    }
+
+    public Mapping getMappingContaining(String chr, int fromPosition) {
+        MappingIndex index = getIndex(chr);
+        return index == null ? null : index.getMappingContaining(fromPosition);
+    }
+
+    public List<Mapping> getMappingsOverlapping(String chr, int fromStart, int fromEnd) {
+        MappingIndex index = getIndex(chr);
+        return index == null ? Collections.<Mapping>emptyList() : index.getMappingsOverlapping(fromStart, fromEnd);
+    }
+}
@@ -4,7 +4,6 @@ import org.broad.igv.util.ParsingUtils;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
@@ -60,52 +59,7 @@ public class SyntenyUtils {
     }
 
     public static void mapCNFile(String path, String cnFile, String oFile) {
-        Map mappings = loadMappings(path, true);
-        System.out.println("Mappings loaded");
-        int chrCol = 1;
-        int posCol = 2;
-        try {
-            BufferedReader br = new BufferedReader(new FileReader(cnFile));
-            PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(oFile)));
-            String nextLine = br.readLine();
-            pw.println(nextLine);
-            String lastChr = "";
-            while ((nextLine = br.readLine()) != null) {
-                String[] tokens = TAB.split(nextLine);
-                String chr = tokens[chrCol];
-                int position = Integer.parseInt(tokens[posCol]);
-
-                if (!lastChr.equals(chr)) {
-                    lastChr = chr;
-                }
-
-                List mList = (List) mappings.get(chr);
-
-                if (mList != null) {
-                    Region region = (Region) getMappingContaining(mList, position);
-                    if (region != null) {
-                        int toPos = (int) region.mapPosition(position);
-                        if (toPos > 0) {
-                            tokens[chrCol] = region.getToChr();
-                            tokens[posCol] = String.valueOf(toPos);
-                            int nTokens = tokens.length;
-                            pw.print(tokens[0]);
-                            for (int i = 1; i < nTokens; i++) {
-                                pw.print("\t");
-                                pw.print(tokens[i]);
-                            }
-                            pw.println();
-                        }
-                    }
-                }
-            }
-
-            br.close();
-            pw.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-        }
+        liftOver(path, cnFile, oFile, Liftover.CN);
     }
 
 
@@ -116,96 +70,24 @@ public class SyntenyUtils {
      * @param iFile
      * @param oFile
      */
-    private static void mapSegments(String  mappingFile, String iFile, String oFile) {
-        Map mappings = loadMappings(mappingFile, true);
-
-        int sampleColumn = 0;
-        int chrColumn = 1;
-        int startColumn = 2;
-        int endColumn = 3;
+    private static void mapSegments(String mappingFile, String iFile, String oFile) {
+        liftOver(mappingFile, iFile, oFile, Liftover.SEG);
+    }
 
-        BufferedReader reader = null;
-        PrintWriter pw = null;
-        String nextLine = null;
+    private static void liftOver(String mappingFile, String iFile, String oFile, String format) {
+        SyntenyIndex index = SyntenyIndex.load(mappingFile, true);
+        if (index == null) {
+            System.out.println("Could not load mappings: " + mappingFile);
+            return;
+        }
+        System.out.println("Mappings loaded");
         try {
-            reader = new BufferedReader(new FileReader(iFile));
-            pw = new PrintWriter(new BufferedWriter(new FileWriter(oFile)));
-
-
-            nextLine = reader.readLine();
-            while ((nextLine.startsWith("#")) || (nextLine.trim().length() == 0)) {
-                pw.println(nextLine);
-                nextLine = reader.readLine();
-            }
-            pw.println(nextLine);
-
-            String sample;
-            String chr;
-            int start;
-            int end;
-            while (((nextLine = reader.readLine()) != null) && (nextLine.trim().length() > 0)) {
-
-                String[] tokens = TAB.split(nextLine);
-                int nTokens = tokens.length;
-                if (nextLine.startsWith("#") || nTokens <= 4) {
-                    System.out.println(nextLine);
-                    continue;
-                } else {
-                    sample = tokens[sampleColumn];
-                    chr = tokens[chrColumn];
-                    start = Integer.parseInt(tokens[startColumn].trim());
-                    end = Integer.parseInt(tokens[endColumn].trim());
-
-                    String mappingChr = chr.startsWith("chr") ? chr : "chr" + chr;
-                    List tmp = (List) mappings.get(mappingChr);
-                    if (tmp == null) {
-                        System.out.println("No mappings for chr: " + chr);
-                        continue;
-                    }
-
-                    // get all rows overlapping the start-end interval.
-                    // region R:chr18:chr7:D9 chr18 40411303 43748821 + chr7 46638925 49478088 -
-                    // anchor A:chr2:39250:chr10:44583 chr2 63071936 63074348 + chr10 65929165 65931581 + 2469.0
-                    List<Mapping> overlappingMappings = getMappingsOverlapping(tmp, start, end);
-                    if (overlappingMappings == null) {
-                        System.out.println("No mapping for: " + chr + ":" + start + "-" + end);
-                    } else
-                        for (Mapping mapping : overlappingMappings) {
-
-                            int adjustedStart = Math.max(start, mapping.getFromStart());
-                            int adjustedEnd = Math.min(end, mapping.getFromEnd() - 1);
-                            int p1 = (int) mapping.mapPosition(adjustedStart);
-                            int p2 = (int) mapping.mapPosition(adjustedEnd);
-                            if ((p1 < 0) || (p2 < 0)) {
-                                System.out.println("Unmapped position: " + chr + ":" + start + "-" + end + " -> (" + p1 + "  " + p2 + ")");
-                            }
-
-                            if (p1 == p2) {
-                                System.out.println("Warning: start == end in mapped position " + mapping.toString());
-                            }
-
-                            int toStart = Math.min(p1, p2);
-                            int toEnd = Math.max(p1, p2);
-                            pw.print(sample + "\t" + mapping.getToChr() + "\t" + toStart + "\t" + toEnd);
-                            for (int i = endColumn + 1; i < tokens.length; i++) {
-                                pw.print("\t" + tokens[i]);
-                            }
-                            pw.println();
-                        }
-                }
-            }
-        } catch (Exception e) {
+            Liftover liftover = new Liftover(index);
+            int unmapped = liftover.convert(iFile, oFile, format);
+            System.out.println("Mapped " + (liftover.getRecordCount() - unmapped) + " of " +
+                    liftover.getRecordCount() + " records");
+        } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            try {
-                if (reader == null) {
-                    reader.close();
-                }
-                if (pw != null)
-                    pw.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
     }
 
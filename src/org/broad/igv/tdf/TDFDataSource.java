@@ -90,7 +90,16 @@ public class TDFDataSource implements CoverageDataSource {
         boolean normalizeCounts = PreferenceManager.getInstance().getAsBoolean(PreferenceManager.NORMALIZE_COVERAGE);
         setNormalize(normalizeCounts);
 
+        initWholeGenomeTile();
+    }
 
+    /**
+     * Start loading the whole genome tile in the background if it has to be computed rather than read from the file
+     */
+    private void initWholeGenomeTile() {
+        if (genome != null && !isChrOrderValid()) {
+            reader.initWholeGenomeTile(genome, windowFunction == WindowFunction.none ? WindowFunction.mean : windowFunction);
+        }
     }
 
     public void updateGenome(Genome genome) {
@@ -406,6 +415,7 @@ public class TDFDataSource implements CoverageDataSource {
 
     public void setWindowFunction(WindowFunction wf) {
         this.windowFunction = wf;
+        initWholeGenomeTile();
     }
 
     public boolean isLogNormalized() {
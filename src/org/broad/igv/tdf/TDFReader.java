@@ -18,16 +18,19 @@ package org.broad.igv.tdf;
 import net.sf.samtools.seekablestream.SeekableStream;
 import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
+import org.broad.igv.data.WholeGenomeCache;
 import org.broad.igv.exceptions.DataLoadException;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.track.TrackType;
 import org.broad.igv.track.WindowFunction;
 import org.broad.igv.util.CompressionUtils;
 import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.StageTimer;
 import org.broad.igv.util.StringUtils;
 import org.broad.igv.util.collections.LRUCache;
 import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
@@ -52,7 +55,8 @@ public class TDFReader {
     private String genomeId;
     LRUCache<String, TDFGroup> groupCache = new LRUCache(20);
     LRUCache<String, TDFDataset> datasetCache = new LRUCache(20);
-    TDFTile wgTile;
+    Map<WindowFunction, TDFTile> wgTiles = new HashMap<WindowFunction, TDFTile>();
+    Set<WindowFunction> wgTilesRequested = new HashSet<WindowFunction>();
 
     Map<WindowFunction, Double> valueCache = new HashMap();
     private List<WindowFunction> windowFunctions;
@@ -176,7 +180,12 @@ public class TDFReader {
         }
 
 
-        readMasterIndex(idxPosition, idxByteCount);
+        StageTimer.push(StageTimer.Stage.INDEX);
+        try {
+            readMasterIndex(idxPosition, idxByteCount);
+        } finally {
+            StageTimer.pop();
+        }
 
     }
 
@@ -235,6 +244,8 @@ public class TDFReader {
             return datasetCache.get(name);
         }
 
+        // The dataset holds the tile index
+        StageTimer.push(StageTimer.Stage.INDEX);
         try {
             if (datasetIndex.containsKey(name)) {
                 IndexEntry ie = datasetIndex.get(name);
@@ -259,6 +270,8 @@ public class TDFReader {
         } catch (IOException ex) {
             log.error("Error reading dataset: " + getPath() + " (" + name + ")", ex);
             throw new RuntimeException("System error occured while reading dataset: " + name);
+        } finally {
+            StageTimer.pop();
         }
     }
 
@@ -303,6 +316,7 @@ public class TDFReader {
 
     public TDFTile readTile(TDFDataset ds, int tileNumber) {
 
+        StageTimer.push(StageTimer.Stage.DECODE);
         try {
             if (tileNumber >= ds.tilePositions.length) {
                 // TODO - return empty tile
@@ -332,6 +346,8 @@ public class TDFReader {
             String tileName = ds.getName() + "[" + tileNumber + "]";
             log.error("Error reading data tile: " + tileName, ex);
             throw new RuntimeException("System error occured while reading tile: " + tileName);
+        } finally {
+            StageTimer.pop();
         }
     }
 
@@ -419,10 +435,15 @@ public class TDFReader {
 
 
     public synchronized byte[] readBytes(long position, int nBytes) throws IOException {
-        seekableStream.seek(position);
-        byte[] buffer = new byte[nBytes];
-        int read = seekableStream.read(buffer, 0, nBytes);
-        return buffer;
+        StageTimer.push(StageTimer.Stage.IO);
+        try {
+            seekableStream.seek(position);
+            byte[] buffer = new byte[nBytes];
+            int read = seekableStream.read(buffer, 0, nBytes);
+            return buffer;
+        } finally {
+            StageTimer.pop();
+        }
     }
 
     /**
@@ -487,13 +508,48 @@ public class TDFReader {
         }
     }
 
+    /**
+     * Load the whole genome tile for a window function from the persistent cache, or compute and cache it, in
+     * the background.
+     *
+     * @param genome
+     * @param wf
+     */
+    public void initWholeGenomeTile(final Genome genome, final WindowFunction wf) {
+        synchronized (wgTilesRequested) {
+            if (!wgTilesRequested.add(wf)) return;
+        }
+        if (WholeGenomeCache.getCacheFile(getPath(), genome, "tdf_" + wf.name()) == null) return;
+
+        WholeGenomeCache.submit(new Runnable() {
+            public void run() {
+                getWholeGenomeTile(genome, wf);
+            }
+        });
+    }
+
     public TDFTile getWholeGenomeTile(Genome genome, WindowFunction wf) {
 
+        TDFTile wgTile;
+        synchronized (wgTiles) {
+            wgTile = wgTiles.get(wf);
+        }
         if (wgTile == null) {
 
             int binCount = 700;
             int nTracks = this.getTrackNames().length; // TODO -- is there a more direct way to know this?
             double binSize = (genome.getNominalLength() / 1000) / binCount;
+
+            File cacheFile = WholeGenomeCache.getCacheFile(getPath(), genome, "tdf_" + wf.name());
+            float[][] cachedData = readWholeGenomeData(cacheFile, nTracks, binCount);
+            if (cachedData != null) {
+                wgTile = new TDFFixedTile(0, 0, binSize, cachedData);
+                synchronized (wgTiles) {
+                    wgTiles.put(wf, wgTile);
+                }
+                return wgTile;
+            }
+
             Accumulator[][] accumulators = new Accumulator[nTracks][binCount];
 
             for (String chrName : genome.getLongChromosomeNames()) {
@@ -548,8 +604,48 @@ public class TDFReader {
 
             //    public TDFFixedTile(int tileStart, int start, double span, float[][] data) {
             wgTile = new TDFFixedTile(0, 0, binSize, data);
+            synchronized (wgTiles) {
+                wgTiles.put(wf, wgTile);
+            }
+            writeWholeGenomeData(cacheFile, data);
 
         }
         return wgTile;
     }
+
+    /**
+     * Read whole genome bin values cached by writeWholeGenomeData
+     *
+     * @return data[track][bin], or null if there is no usable cache file
+     */
+    private static float[][] readWholeGenomeData(File cacheFile, int nTracks, int binCount) {
+        Map<String, WholeGenomeCache.Scores> cached = WholeGenomeCache.read(cacheFile);
+        if (cached == null || cached.size() != nTracks) {
+            return null;
+        }
+        float[][] data = new float[nTracks][];
+        for (int n = 0; n < nTracks; n++) {
+            WholeGenomeCache.Scores scores = cached.get(String.valueOf(n));
+            if (scores == null || scores.size() != binCount) {
+                return null;
+            }
+            data[n] = scores.values;
+        }
+        return data;
+    }
+
+    private static void writeWholeGenomeData(File cacheFile, float[][] data) {
+        if (cacheFile == null) return;
+        Map<String, WholeGenomeCache.Scores> scores = new LinkedHashMap<String, WholeGenomeCache.Scores>();
+        for (int n = 0; n < data.length; n++) {
+            WholeGenomeCache.Scores s = new WholeGenomeCache.Scores(data[n].length, false);
+            for (int b = 0; b < data[n].length; b++) {
+                s.starts[b] = b;
+                s.ends[b] = b + 1;
+                s.values[b] = data[n][b];
+            }
+            scores.put(String.valueOf(n), s);
+        }
+        WholeGenomeCache.write(cacheFile, scores);
+    }
 }
\ No newline at end of file
@@ -20,6 +20,7 @@ import jargs.gnu.CmdLineParser;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.log4j.*;
 import org.broad.igv.Globals;
+import org.broad.igv.data.seg.SegmentedMappedWriter;
 import org.broad.igv.exceptions.DataLoadException;
 import org.broad.igv.feature.GFFParser;
 import org.broad.igv.feature.genome.FastaUtils;
@@ -29,9 +30,14 @@ import org.broad.igv.feature.genome.GenomeManager;
 import org.broad.igv.feature.tribble.CodecFactory;
 import org.broad.igv.feature.tribble.GFFCodec;
 import org.broad.igv.feature.tribble.IGVBEDCodec;
+import org.broad.igv.gwas.GWASBinaryWriter;
+import org.broad.igv.maf.MAFBinaryWriter;
 import org.broad.igv.sam.reader.AlignmentIndexer;
+import org.broad.igv.synteny.Liftover;
+import org.broad.igv.synteny.SyntenyIndex;
 import org.broad.igv.tdf.TDFUtils;
 import org.broad.igv.tools.converters.BamToBed;
+import org.broad.igv.tools.converters.BamToJunctions;
 import org.broad.igv.tools.converters.ExpressionFormatter;
 import org.broad.igv.tools.converters.GCTtoIGVConverter;
 import org.broad.igv.tools.converters.WigToBed;
@@ -74,6 +80,11 @@ public class IgvTools {
     static final String CMD_GUI = "gui";
     static final String CMD_HELP = "help";
     static final String CMD_BAMTOBED = "bamtobed";
+    static final String CMD_JUNCTIONS = "junctions";
+    static final String CMD_TOBGWAS = "tobgwas";
+    static final String CMD_SEGTOBIN = "segtobin";
+    static final String CMD_MAFTOBIN = "maftobin";
+    static final String CMD_LIFTOVER = "liftover";
 
     /**
      * Stream for writing messages to the user, which we
@@ -101,6 +112,11 @@ public class IgvTools {
             "toTDF    convert an input file (cn, gct, wig) to tiled data format (tdf)",
             "count   compute coverage density for an alignment file",
             "formatexp  center, scale, and log2 normalize an expression file",
+            "junctions  compute an indexed splice junction file for an alignment file",
+            "toBGWAS  convert a GWAS result file to indexed binary format (bgwas)",
+            "segToBin  convert a segmented data file (seg) to memory-mapped binary format (seg.bin)",
+            "mafToBin  convert a multiple alignment file (maf) to block compressed binary format (maf.bin)",
+            "liftover  map a copy number (cn), segmented (seg), or bed file to another genome through a synteny mapping file",
             "gui      Start the gui",
             "help <command>     display this help message, or help on a specific command",
             "See http://www.broadinstitute.org/software/igv/igvtools_commandline for more detailed help"
@@ -149,6 +165,14 @@ public class IgvTools {
     // Trackline
     private static CmdLineParser.Option colorOption = null;
 
+    // options for junctions
+    private static CmdLineParser.Option minJunctionCoverageOption = null;
+    private static CmdLineParser.Option minFlankingWidthOption = null;
+    private static CmdLineParser.Option junctionGenomeOption = null;
+
+    // options for liftover
+    private static CmdLineParser.Option reverseMappingOption = null;
+
     /**
      * The general usage string
      */
@@ -430,6 +454,39 @@ public class IgvTools {
                 String ofile = nonOptionArgs[2];
                 Boolean pairOption = (Boolean) parser.getOptionValue(pairedCoverageOpt, false);
                 BamToBed.convert(new File(ifile), new File(ofile), pairOption);
+            } else if (command.equals(CMD_JUNCTIONS)) {
+                int minJunctionCoverage = (Integer) parser.getOptionValue(minJunctionCoverageOption, 1);
+                int minFlankingWidth = (Integer) parser.getOptionValue(minFlankingWidthOption, 0);
+                String genomeId = (String) parser.getOptionValue(junctionGenomeOption);
+                Genome genome = null;
+                if (genomeId != null) {
+                    genome = loadGenome(genomeId);
+                    if (genome == null) {
+                        throw new PreprocessingException("Genome could not be loaded: " + genomeId);
+                    }
+                }
+                String ofile = nonOptionArgs.length > 2 ? nonOptionArgs[2] : null;
+                if (isList && ofile != null) {
+                    throw new PreprocessingException("An output file cannot be specified for a list of alignment files");
+                }
+                for (String alignmentFile : ifile.split(",")) {
+                    doJunctions(alignmentFile, ofile, minJunctionCoverage, minFlankingWidth, genome);
+                }
+            } else if (command.equals(CMD_MAFTOBIN)) {
+                String ofile = nonOptionArgs.length > 2 ? nonOptionArgs[2] : null;
+                doMAFToBinary(ifile, ofile);
+            } else if (command.equals(CMD_SEGTOBIN)) {
+                String ofile = nonOptionArgs.length > 2 ? nonOptionArgs[2] : null;
+                doSegToBinary(ifile, ofile);
+            } else if (command.equals(CMD_LIFTOVER)) {
+                validateArgsLength(nonOptionArgs, 4, "Error in syntax. Expected: " + command + " [options] inputfile outputfile mappingfile");
+                String ofile = nonOptionArgs[2];
+                String mappingFile = nonOptionArgs[3];
+                boolean reverse = (Boolean) parser.getOptionValue(reverseMappingOption, false);
+                doLiftover(ifile, ofile, mappingFile, typeString, reverse);
+            } else if (command.equals(CMD_TOBGWAS)) {
+                String ofile = nonOptionArgs.length > 2 ? nonOptionArgs[2] : null;
+                doGWASToBinary(ifile, ofile);
             } else if (command.equalsIgnoreCase("genGenomeList")) {
                 //Generate a genomes.txt list file based on a directory
                 //TODO Probably a better place for this. Users won't generally use it
@@ -546,6 +603,16 @@ public class IgvTools {
             }
         }
 
+        if (command.equals(CMD_JUNCTIONS)) {
+            minJunctionCoverageOption = parser.addIntegerOption("minJunctionCoverage");
+            minFlankingWidthOption = parser.addIntegerOption("minFlankingWidth");
+            junctionGenomeOption = parser.addStringOption("genome");
+        }
+
+        if (command.equals(CMD_LIFTOVER)) {
+            reverseMappingOption = parser.addBooleanOption("reverse");
+        }
+
         if (command.equals(CMD_INDEX)) {
             indexTypeOption = parser.addIntegerOption("indexType");
             binSizeOption = parser.addIntegerOption("binSize");
@@ -847,6 +914,152 @@ public class IgvTools {
     }
 
 
+    /**
+     * Convert a sorted GWAS result file to the indexed binary GWAS format.
+     *
+     * @param ifile GWAS result file
+     * @param ofile Output file, or null for {@code <ifile>.bgwas}
+     * @return the path to the binary file
+     * @throws IOException
+     */
+    public String doGWASToBinary(String ifile, String ofile) throws IOException {
+
+        if (ofile == null) {
+            ofile = ifile + GWASBinaryWriter.EXTENSION;
+        } else if (!ofile.endsWith(GWASBinaryWriter.EXTENSION)) {
+            ofile = ofile + GWASBinaryWriter.EXTENSION;
+        }
+
+        userMessageWriter.println("Converting " + ifile + "  -> " + ofile);
+        GWASBinaryWriter.convert(ifile, new File(ofile));
+        userMessageWriter.flush();
+        return ofile;
+    }
+
+    /**
+     * Convert a segmented data file to the memory-mapped binary segment format.
+     *
+     * @param ifile Segmented data file
+     * @param ofile Output file, or null for {@code <ifile>.seg.bin}
+     * @return the path to the binary file
+     * @throws IOException
+     */
+    public String doSegToBinary(String ifile, String ofile) throws IOException {
+
+        if (ofile == null) {
+            ofile = ifile + SegmentedMappedWriter.EXTENSION;
+        } else if (!ofile.endsWith(SegmentedMappedWriter.EXTENSION)) {
+            ofile = ofile + SegmentedMappedWriter.EXTENSION;
+        }
+
+        userMessageWriter.println("Converting " + ifile + "  -> " + ofile);
+        SegmentedMappedWriter.convert(ifile, new File(ofile));
+        userMessageWriter.flush();
+        return ofile;
+    }
+
+    /**
+     * Lift a copy number, segmented, or bed file over to another genome through a synteny mapping file.
+     *
+     * @param ifile       Input file
+     * @param ofile       Output file
+     * @param mappingFile Synteny mapping file (region and anchor records)
+     * @param typeString  Input file type, usually its extension
+     * @param reverse     If true map from the second genome of the mapping file to the first
+     * @return the number of records that could not be mapped
+     * @throws IOException
+     */
+    public int doLiftover(String ifile, String ofile, String mappingFile, String typeString, boolean reverse) throws IOException {
+
+        String format = Liftover.getFormat(typeString);
+        if (format == null) {
+            throw new PreprocessingException("Unsupported file type for liftover: " + typeString +
+                    ".  Supported types are cn, snp, xcn, seg, and bed");
+        }
+        if (!FileUtils.resourceExists(mappingFile)) {
+            throw new PreprocessingException("File not found: " + mappingFile);
+        }
+        SyntenyIndex index = SyntenyIndex.load(mappingFile, reverse);
+        if (index == null) {
+            throw new PreprocessingException("Error loading mapping file: " + mappingFile);
+        }
+
+        userMessageWriter.println("Lifting over " + ifile + "  -> " + ofile);
+        Liftover liftover = new Liftover(index);
+        int unmapped = liftover.convert(ifile, ofile, format);
+        userMessageWriter.println((liftover.getRecordCount() - unmapped) + " of " + liftover.getRecordCount() +
+                " records mapped");
+        userMessageWriter.flush();
+        return unmapped;
+    }
+
+    /**
+     * Convert a multiple alignment file to the block compressed binary MAF format.
+     *
+     * @param ifile MAF file
+     * @param ofile Output file, or null for {@code <ifile>.maf.bin}
+     * @return the path to the binary file
+     * @throws IOException
+     */
+    public String doMAFToBinary(String ifile, String ofile) throws IOException {
+
+        if (ofile == null) {
+            ofile = ifile.toLowerCase().endsWith(".maf") ? ifile + ".bin" : ifile + MAFBinaryWriter.EXTENSION;
+        } else if (!ofile.endsWith(MAFBinaryWriter.EXTENSION)) {
+            ofile = ofile + MAFBinaryWriter.EXTENSION;
+        }
+
+        userMessageWriter.println("Converting " + ifile + "  -> " + ofile);
+        MAFBinaryWriter.convert(ifile, new File(ofile));
+        userMessageWriter.flush();
+        return ofile;
+    }
+
+    /**
+     * Compute splice junctions for an alignment file and write them, with an index, to a junctions.bed file.
+     * If no output file is specified the junctions are written next to the alignment file, where they
+     * will be found by the junction track.
+     *
+     * @param ifile               Alignment file
+     * @param ofile               Output file, or null for {@code <ifile>.junctions.bed}
+     * @param minJunctionCoverage Minimum number of reads spanning a junction
+     * @param minFlankingWidth    Minimum width of the flanking regions of a read for it to be counted
+     * @param genome              Genome for the zoomed junction depth summary, or null to skip the summary
+     * @return the path to the junctions file
+     * @throws IOException
+     */
+    public String doJunctions(String ifile, String ofile, int minJunctionCoverage, int minFlankingWidth,
+                              Genome genome) throws IOException {
+
+        if (ofile == null) {
+            ofile = ifile + BamToJunctions.JUNCTIONS_EXTENSION;
+        } else if (!ofile.toLowerCase().endsWith("junctions.bed")) {
+            // The "junctions.bed" suffix is required for the file to be recognized as a junction file
+            ofile = ofile + BamToJunctions.JUNCTIONS_EXTENSION;
+        }
+
+        userMessageWriter.println("Computing junctions " + ifile + "  -> " + ofile);
+        File outputFile = new File(ofile);
+        try {
+            BamToJunctions.convert(new File(ifile), outputFile, minJunctionCoverage, minFlankingWidth, genome);
+            IGVBEDCodec codec = new IGVBEDCodec();
+            codec.setSpliceJunctions(true);
+            createTribbleIndex(ofile, new File(ofile + ".idx"), LINEAR_INDEX, LINEAR_BIN_SIZE, codec);
+        } catch (IOException e) {
+            // Delete output files as they are probably corrupt
+            if (outputFile.exists()) {
+                outputFile.delete();
+            }
+            File summaryFile = new File(ofile + ".tdf");
+            if (summaryFile.exists()) {
+                summaryFile.delete();
+            }
+            throw e;
+        }
+        userMessageWriter.flush();
+        return ofile;
+    }
+
     public void doWIBtoWIG(File txtFile, File wibFile, File wigFile, String trackLine) {
         UCSCUtils.convertWIBFile(txtFile, wibFile, wigFile, trackLine);
     }
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.tools.converters;
+
+import net.sf.samtools.util.CloseableIterator;
+import org.broad.igv.feature.FeatureUtils;
+import org.broad.igv.feature.SpliceJunctionFeature;
+import org.broad.igv.feature.Strand;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.sam.Alignment;
+import org.broad.igv.sam.SpliceJunctionHelper;
+import org.broad.igv.sam.reader.AlignmentReader;
+import org.broad.igv.sam.reader.AlignmentReaderFactory;
+import org.broad.igv.track.TrackType;
+import org.broad.igv.track.WindowFunction;
+import org.broad.igv.tools.PreprocessingException;
+import org.broad.igv.tools.Preprocessor;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Scans an alignment file once and writes the splice junctions it contains as a "junctions.bed" file, in the
+ * same layout as TopHat.  One record is written per junction and strand, with the junction depth in the
+ * score column and the maximum flanking region widths encoded as the two bed blocks.
+ * <p/>
+ * The minimum junction coverage applies to the depth of both strands combined, so a junction shown with strands
+ * combined is not lost because each strand on its own is below the threshold.
+ * <p/>
+ * The output is sorted by chromosome (in alignment file order) and start, so it can be indexed directly.  Files
+ * named {@code <alignment file>.junctions.bed} are picked up by the junction track and sashimi plot in
+ * place of computing junctions from the alignments.  If a genome is supplied, the combined junction depth is
+ * also written at all zoom levels to {@code <junctions file>.tdf}, which the junction track displays when
+ * zoomed out beyond its visibility window.
+ *
+ * @see org.broad.igv.sam.SpliceJunctionFinderTrack
+ */
+public class BamToJunctions {
+
+    public static final String JUNCTIONS_EXTENSION = ".junctions.bed";
+
+    public static void convert(File inputBam, File outputBed, int minJunctionCoverage, int minFlankingWidth) throws IOException {
+        convert(inputBam, outputBed, minJunctionCoverage, minFlankingWidth, null);
+    }
+
+    /**
+     * @param genome genome for the zoomed summary, or null to write the junctions file only
+     */
+    public static void convert(File inputBam, File outputBed, int minJunctionCoverage, int minFlankingWidth,
+                               Genome genome) throws IOException {
+
+        AlignmentReader<?> reader = null;
+        CloseableIterator<? extends Alignment> iter = null;
+        PrintWriter bedWriter = null;
+        Preprocessor summaryWriter = null;
+
+        // Coverage is filtered after combining strands, see writeJunctions
+        SpliceJunctionHelper.LoadOptions loadOptions = new SpliceJunctionHelper.LoadOptions(1, minFlankingWidth);
+
+        try {
+            bedWriter = new PrintWriter(new BufferedWriter(new FileWriter(outputBed)));
+            bedWriter.println("track name=junctions description=\"" + inputBam.getName() + " junctions\"");
+
+            if (genome != null) {
+                summaryWriter = new Preprocessor(new File(outputBed.getAbsolutePath() + ".tdf"), genome,
+                        Arrays.asList(WindowFunction.mean), -1, null);
+                summaryWriter.setTrackParameters(TrackType.OTHER, null, new String[]{inputBam.getName() + " junctions"});
+            }
+
+            reader = AlignmentReaderFactory.getReader(inputBam.getAbsolutePath(), false);
+            iter = reader.iterator();
+
+            Set<String> visitedChrs = new HashSet<String>();
+            String lastChr = null;
+            SpliceJunctionHelper helper = null;
+            int junctionCount = 0;
+
+            while (iter.hasNext()) {
+                Alignment a = iter.next();
+                if (!passFilter(a)) {
+                    continue;
+                }
+
+                String chr = a.getChr();
+                if (!chr.equals(lastChr)) {
+                    if (helper != null) {
+                        junctionCount = writeJunctions(helper, minJunctionCoverage, bedWriter, summaryWriter,
+                                genome, junctionCount);
+                    }
+                    if (visitedChrs.contains(chr)) {
+                        throw new PreprocessingException("Alignment file must be sorted by position: " +
+                                inputBam.getAbsolutePath());
+                    }
+                    visitedChrs.add(chr);
+                    lastChr = chr;
+                    helper = new SpliceJunctionHelper(loadOptions);
+                }
+                helper.addAlignment(a);
+            }
+
+            if (helper != null) {
+                writeJunctions(helper, minJunctionCoverage, bedWriter, summaryWriter, genome, junctionCount);
+            }
+            if (summaryWriter != null) {
+                summaryWriter.finish();
+            }
+
+        } finally {
+            if (bedWriter != null) bedWriter.close();
+            if (iter != null) iter.close();
+            if (reader != null) reader.close();
+        }
+    }
+
+    /**
+     * Write the junctions of one chromosome.  A junction is written, for each strand, if its depth on both strands
+     * combined reaches {@code minJunctionCoverage}.
+     */
+    private static int writeJunctions(SpliceJunctionHelper helper, int minJunctionCoverage, PrintWriter bedWriter,
+                                      Preprocessor summaryWriter, Genome genome, int junctionCount) {
+        helper.finish();
+        List<SpliceJunctionFeature> junctions = helper.getFilteredJunctions();
+
+        Map<String, SpliceJunctionFeature> combinedJunctions = new HashMap<String, SpliceJunctionFeature>();
+        for (SpliceJunctionFeature junction : junctions) {
+            String key = junction.getJunctionStart() + "_" + junction.getJunctionEnd();
+            SpliceJunctionFeature combined = combinedJunctions.get(key);
+            if (combined == null) {
+                combined = new SpliceJunctionFeature(junction.getChr(), junction.getJunctionStart(),
+                        junction.getJunctionEnd(), Strand.POSITIVE);
+                combinedJunctions.put(key, combined);
+            }
+            int newJunctionDepth = combined.getJunctionDepth() + junction.getJunctionDepth();
+            combined.addRead(junction.getStart(), junction.getEnd());
+            combined.setJunctionDepth(newJunctionDepth);
+        }
+
+        for (SpliceJunctionFeature junction : junctions) {
+            String key = junction.getJunctionStart() + "_" + junction.getJunctionEnd();
+            if (combinedJunctions.get(key).getJunctionDepth() >= minJunctionCoverage) {
+                junctionCount++;
+                bedWriter.println(encode(junction, junctionCount));
+            }
+        }
+
+        if (summaryWriter != null && !junctions.isEmpty()) {
+            List<SpliceJunctionFeature> summary = new ArrayList<SpliceJunctionFeature>(combinedJunctions.values());
+            FeatureUtils.sortFeatureList(summary);
+            String chr = genome.getChromosomeAlias(junctions.get(0).getChr());
+            for (SpliceJunctionFeature junction : summary) {
+                if (junction.getJunctionDepth() >= minJunctionCoverage) {
+                    summaryWriter.addData(chr, junction.getStart(), junction.getEnd(),
+                            new float[]{junction.getJunctionDepth()}, null);
+                }
+            }
+        }
+        return junctionCount;
+    }
+
+    /**
+     * Encode a junction as a TopHat style bed line.  The start and end are the extent of the flanking regions,
+     * and the two blocks are the flanking regions themselves.
+     */
+    static String encode(SpliceJunctionFeature junction, int index) {
+        int start = junction.getStart();
+        int end = junction.getEnd();
+        String strand = junction.getStrand() == Strand.NEGATIVE ? "-" : "+";
+
+        StringBuffer buffer = new StringBuffer();
+        buffer.append(junction.getChr());
+        buffer.append("\t" + start);
+        buffer.append("\t" + end);
+        buffer.append("\t" + String.format("JUNC%08d", index));
+        buffer.append("\t" + junction.getJunctionDepth());
+        buffer.append("\t" + strand);
+        buffer.append("\t" + start);
+        buffer.append("\t" + end);
+        buffer.append("\t.");
+        buffer.append("\t2");
+        buffer.append("\t" + junction.getStartFlankingRegionLength() + "," + junction.getEndFlankingRegionLength());
+        buffer.append("\t0," + (junction.getJunctionEnd() - start));
+        return buffer.toString();
+    }
+
+    private static boolean passFilter(Alignment alignment) {
+        return alignment.isMapped() && !alignment.isDuplicate() && !alignment.isVendorFailedRead();
+    }
+
+}
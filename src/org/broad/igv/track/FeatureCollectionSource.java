@@ -52,6 +52,14 @@ public class FeatureCollectionSource implements FeatureSource {
         sampleGenomeFeatures();
     }
 
+    /**
+     * Constructor for subclasses which store their features elsewhere.  Subclasses override
+     * {@link #getFeatures(String)} and {@link #getChrs()}.
+     */
+    protected FeatureCollectionSource(Genome genome) {
+        this.genome = genome;
+    }
+
     public Class getFeatureClass() {
         return IGVFeature.class;
     }
@@ -74,7 +82,7 @@ public class FeatureCollectionSource implements FeatureSource {
 
     public List<Feature> getFeatureList(String chr, int start, int end) {
 
-        List<Feature> features = featureMap.get(chr);
+        List<Feature> features = getFeatures(chr);
         if (features == null) {
             return Collections.<Feature>emptyList();
         }
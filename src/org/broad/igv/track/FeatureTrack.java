@@ -15,6 +15,7 @@ import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
 import org.broad.igv.cli_plugin.PluginFeatureSource;
 import org.broad.igv.cli_plugin.PluginSource;
+import org.broad.igv.dev.db.SQLCodecSource;
 import org.broad.igv.feature.*;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.genome.GenomeManager;
@@ -704,10 +705,7 @@ public class FeatureTrack extends AbstractTrack {
 
         final String chr = context.getChr();
 
-        List<LocusScore> scores = chr.equals(Globals.CHR_ALL) ?
-                source.getCoverageScores(chr, (int) context.getOrigin(),
-                        (int) context.getEndLocation(), context.getZoom()) :
-                null;
+        List<LocusScore> scores = getCoverageScores(context);
 
         if (scores == null) {
             Graphics2D g = context.getGraphic2DForColor(Color.gray);
@@ -730,6 +728,18 @@ public class FeatureTrack extends AbstractTrack {
         }
     }
 
+    /**
+     * Coverage to display when zoomed out beyond the visibility window, or null if there is none.  By default
+     * coverage is only shown in the whole genome view.
+     */
+    protected List<LocusScore> getCoverageScores(RenderContext context) {
+        final String chr = context.getChr();
+        return chr.equals(Globals.CHR_ALL) ?
+                source.getCoverageScores(chr, (int) context.getOrigin(),
+                        (int) context.getEndLocation(), context.getZoom()) :
+                null;
+    }
+
     private float getMaxEstimate(List<LocusScore> scores) {
         float max = 0;
         int n = Math.min(200, scores.size());
@@ -871,15 +881,24 @@ public class FeatureTrack extends AbstractTrack {
                             if (c != null && end < c.getLength()) expandedEnd = Math.min(c.getLength(), expandedEnd);
                         }
 
-                        Iterator<Feature> iter = source.getFeatures(chr, expandedStart, expandedEnd);
-                        if (iter == null) {
-                            PackedFeatures pf = new PackedFeatures(chr, expandedStart, expandedEnd);
+                        if (source instanceof PackedFeatureSource) {
+                            // Rows were assigned when the source was created
+                            PackedFeatures<IGVFeature> pf = ((PackedFeatureSource) source).getPackedFeatures(
+                                    chr, expandedStart, expandedEnd, getName());
+                            featuresPacked(pf);
                             packedFeaturesMap.put(context.getReferenceFrame().getName(), pf);
                         } else {
-                            //dhmay putting a switch in for different packing behavior in splice junction tracks.
-                            //This should probably be switched somewhere else, but that would require a big refactor.
-                            PackedFeatures pf = new PackedFeatures(chr, expandedStart, expandedEnd, iter, getName());
-                            packedFeaturesMap.put(context.getReferenceFrame().getName(), pf);
+                            Iterator<Feature> iter = source.getFeatures(chr, expandedStart, expandedEnd);
+                            if (iter == null) {
+                                PackedFeatures pf = new PackedFeatures(chr, expandedStart, expandedEnd);
+                                packedFeaturesMap.put(context.getReferenceFrame().getName(), pf);
+                            } else {
+                                //dhmay putting a switch in for different packing behavior in splice junction tracks.
+                                //This should probably be switched somewhere else, but that would require a big refactor.
+                                PackedFeatures pf = new PackedFeatures(chr, expandedStart, expandedEnd, iter, getName());
+                                featuresPacked(pf);
+                                packedFeaturesMap.put(context.getReferenceFrame().getName(), pf);
+                            }
                         }
                     }
 
@@ -913,6 +932,15 @@ public class FeatureTrack extends AbstractTrack {
 
     }
 
+    /**
+     * Called on the loading thread after the features of an interval are packed, before they are visible to
+     * rendering.  Subclasses can precompute per-interval data here rather than on the event dispatch thread.
+     *
+     * @param packedFeatures
+     */
+    protected void featuresPacked(PackedFeatures<?> packedFeatures) {
+    }
+
     public void setForceLoadSync(boolean forceLoadSync){
         this.forceLoadSync = forceLoadSync;
     }
@@ -1095,6 +1123,28 @@ public class FeatureTrack extends AbstractTrack {
      */
     public void clearPackedFeatures() {
         this.packedFeaturesMap.clear();
+        FeatureSource<?> rawSource = getRawSource();
+        if (rawSource instanceof PluginSource) {
+            ((PluginSource<?, ?>) rawSource).clearResultCache();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        FeatureSource<?> rawSource = getRawSource();
+        if (rawSource instanceof PluginSource) {
+            ((PluginSource<?, ?>) rawSource).dispose();
+        } else if (rawSource instanceof SQLCodecSource) {
+            ((SQLCodecSource) rawSource).dispose();
+        }
+    }
+
+    private FeatureSource<?> getRawSource() {
+        if (source instanceof CachingFeatureSource) {
+            return ((CachingFeatureSource) source).getSource();
+        }
+        return source;
     }
 
 }
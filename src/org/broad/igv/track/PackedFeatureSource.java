@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2007-2012 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.track;
+
+import org.broad.igv.feature.IGVFeature;
+
+/**
+ * A feature source which stores the row of each feature, so features do not need to be packed each time they
+ * are loaded.
+ */
+public interface PackedFeatureSource {
+
+    /**
+     * Return the features overlapping the interval, packed into rows
+     *
+     * @param chr
+     * @param start
+     * @param end
+     * @param trackName
+     * @return
+     */
+    PackedFeatures<IGVFeature> getPackedFeatures(String chr, int start, int end, String trackName);
+}
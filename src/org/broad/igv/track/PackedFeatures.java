@@ -14,6 +14,7 @@ package org.broad.igv.track;
 import org.apache.log4j.Logger;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.util.MessageUtils;
+import org.broad.igv.util.StageTimer;
 import org.broad.tribble.Feature;
 
 import java.util.*;
@@ -56,9 +57,70 @@ public class PackedFeatures<T extends Feature>{
         this.start = start;
         this.end = end;
         features = new ArrayList(1000);
-        rows = packFeatures(iter);
+        StageTimer.push(StageTimer.Stage.PACK);
+        try {
+            // Records are decoded as they are iterated
+            rows = packFeatures(StageTimer.wrap(iter, StageTimer.Stage.DECODE));
+        } finally {
+            StageTimer.pop();
+        }
+    }
+
+
+    /**
+     * Create from features which were packed before, e.g. when a compiled annotation file was written.  Rows
+     * without features in the interval are dropped, so the rows are not necessarily those packing would create
+     * for the interval, but features in a row still do not overlap.
+     *
+     * @param features features overlapping the interval, sorted by start
+     * @param rows     the row of each feature, see {@link #packRows(java.util.List)}.  Features with a negative row
+     *                 are not shown.
+     */
+    public PackedFeatures(String chr, int start, int end, List<T> features, int[] rows, String trackName) {
+        this.trackName = trackName;
+        this.chr = chr;
+        this.start = start;
+        this.end = end;
+        this.features = features;
+        SortedMap<Integer, FeatureRow> rowMap = new TreeMap<Integer, FeatureRow>();
+        for (int i = 0; i < features.size(); i++) {
+            T feature = features.get(i);
+            maxFeatureLength = Math.max(maxFeatureLength,
+                    getFeatureEndForPacking(feature) - getFeatureStartForPacking(feature));
+            if (rows[i] < 0) continue;
+            FeatureRow row = rowMap.get(rows[i]);
+            if (row == null) {
+                row = new FeatureRow();
+                rowMap.put(rows[i], row);
+            }
+            row.addFeature(feature);
+        }
+        this.rows = new ArrayList<FeatureRow>(rowMap.values());
     }
 
+    /**
+     * Pack features, returning the row of each, or -1 for features which do not fit in the maximum number of rows
+     *
+     * @param features features sorted by start
+     * @return
+     */
+    public static <T extends Feature> int[] packRows(List<T> features) {
+        PackedFeatures<T> packedFeatures = new PackedFeatures<T>(null, 0, Integer.MAX_VALUE,
+                features.iterator(), null);
+        Map<T, Integer> rowIndex = new IdentityHashMap<T, Integer>(features.size());
+        List<PackedFeatures<T>.FeatureRow> packedRows = packedFeatures.getRows();
+        for (int r = 0; r < packedRows.size(); r++) {
+            for (T feature : packedRows.get(r).getFeatures()) {
+                rowIndex.put(feature, r);
+            }
+        }
+        int[] rows = new int[features.size()];
+        for (int i = 0; i < rows.length; i++) {
+            Integer row = rowIndex.get(features.get(i));
+            rows[i] = row == null ? -1 : row;
+        }
+        return rows;
+    }
 
     /**
      * Some types of Features (splice junctions) should be packed on the same row even if start and end overlap.
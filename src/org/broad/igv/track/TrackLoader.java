@@ -43,12 +43,14 @@ import org.broad.igv.feature.tribble.FeatureFileHeader;
 import org.broad.igv.feature.tribble.TribbleIndexNotFoundException;
 import org.broad.igv.goby.GobyAlignmentQueryReader;
 import org.broad.igv.goby.GobyCountArchiveDataSource;
+import org.broad.igv.gwas.GWASBinaryReader;
 import org.broad.igv.gwas.GWASData;
 import org.broad.igv.gwas.GWASParser;
 import org.broad.igv.gwas.GWASTrack;
 import org.broad.igv.lists.GeneList;
 import org.broad.igv.lists.GeneListManager;
 import org.broad.igv.lists.VariantListManager;
+import org.broad.igv.maf.MAFBinaryReader;
 import org.broad.igv.maf.MultipleAlignmentTrack;
 import org.broad.igv.methyl.MethylTrack;
 import org.broad.igv.peaks.PeakTrack;
@@ -154,7 +156,7 @@ public class TrackLoader {
                 loadIGVFile(locator, newTracks, genome);
             } else if (typeString.endsWith(".cbs") || typeString.endsWith(".seg") ||
                     typeString.endsWith("glad") || typeString.endsWith("birdseye_canary_calls")
-                    || typeString.endsWith(".seg.zip")) {
+                    || typeString.endsWith(".seg.zip") || SegmentedMappedDataSet.isMappedSegFile(typeString)) {
                 loadSegFile(locator, newTracks, genome);
             } else if (typeString.endsWith(".gistic")) {
                 loadGisticFile(locator, newTracks);
@@ -195,6 +197,8 @@ public class TrackLoader {
                 loadMultipleAlignmentTrack(locator, newTracks, genome);
             } else if (typeString.endsWith(".maf.dict")) {
                 loadMultipleAlignmentTrack(locator, newTracks, genome);
+            } else if (MAFBinaryReader.isBinaryMAFFile(typeString)) {
+                loadMultipleAlignmentTrack(locator, newTracks, genome);
             } else if (typeString.contains(".peak.bin")) {
                 loadPeakTrack(locator, newTracks, genome);
             } else if (typeString.endsWith("mage-tab") || ExpressionFileParser.parsableMAGE_TAB(locator)) {
@@ -202,6 +206,8 @@ public class TrackLoader {
                 loadGctFile(locator, newTracks, genome);
             } else if (GWASParser.isGWASFile(typeString)) {
                 loadGWASFile(locator, newTracks, genome);
+            } else if (GWASBinaryReader.isBinaryGWASFile(typeString)) {
+                loadBinaryGWASFile(locator, newTracks, genome);
             } else if (GobyAlignmentQueryReader.supportsFileType(path)) {
                 loadAlignmentsTrack(locator, newTracks, genome);
             } else if (typeString.endsWith(".list")) {
@@ -413,6 +419,20 @@ public class TrackLoader {
 
     }
 
+    /**
+     * Load an indexed binary GWAS file, created with igvtools
+     *
+     * @param locator
+     * @param newTracks
+     */
+    private void loadBinaryGWASFile(ResourceLocator locator, List<Track> newTracks, Genome genome) {
+
+        GWASBinaryReader reader = new GWASBinaryReader(locator, genome);
+
+        GWASTrack gwasTrack = new GWASTrack(locator, locator.getPath(), locator.getFileName(), reader);
+        newTracks.add(gwasTrack);
+    }
+
 
     private void loadRnaiGctFile(ResourceLocator locator, List<Track> newTracks, Genome genome) {
 
@@ -1056,9 +1076,13 @@ public class TrackLoader {
 
         if (path.endsWith("seg.zip")) {
             ds = new SegmentedBinaryDataSet(locator);
+        } else if (SegmentedMappedDataSet.isMappedSegFile(path)) {
+            ds = new SegmentedMappedDataSet(locator, genome);
         } else {
             SegmentFileParser parser = new SegmentFileParser(locator);
-            ds = parser.loadSegments(locator, genome);
+            SegmentedAsciiDataSet asciiDataSet = parser.loadSegments(locator, genome);
+            asciiDataSet.initWholeGenomeScores(locator.getPath());
+            ds = asciiDataSet;
         }
 
         loadSegTrack(locator, newTracks, genome, ds);
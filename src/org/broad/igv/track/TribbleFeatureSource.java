@@ -28,6 +28,7 @@ import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.RuntimeUtils;
+import org.broad.igv.util.StageTimer;
 import org.broad.igv.util.collections.CollUtils;
 import org.broad.igv.variant.VariantTrack;
 import org.broad.tribble.*;
@@ -193,7 +194,12 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
             String seqName = chrNameMap.get(chr);
             if (seqName == null) seqName = chr;
 
-            return reader.query(seqName, start, end);
+            StageTimer.push(StageTimer.Stage.INDEX);
+            try {
+                return reader.query(seqName, start, end);
+            } finally {
+                StageTimer.pop();
+            }
         }
 
         /**
@@ -297,26 +303,30 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
 
             super(locator, basicReader, codec, genome, false);
 
-            featureMap = new HashMap<String, List<Feature>>(25);
-            Iterator<Feature> iter = reader.iterator();
-            while (iter.hasNext()) {
-                Feature f = iter.next();
-                if (f == null) continue;
-
-                String seqName = f.getChr();
-                String igvChr = genome == null ? seqName : genome.getChromosomeAlias(seqName);
-
-                List<Feature> featureList = featureMap.get(igvChr);
-                if (featureList == null) {
-                    featureList = new ArrayList();
-                    featureMap.put(igvChr, featureList);
+            if (ParallelFeatureLoader.canLoad(locator, codec)) {
+                featureMap = ParallelFeatureLoader.loadFeatures(locator, genome);
+            } else {
+                featureMap = new HashMap<String, List<Feature>>(25);
+                Iterator<Feature> iter = reader.iterator();
+                while (iter.hasNext()) {
+                    Feature f = iter.next();
+                    if (f == null) continue;
+
+                    String seqName = f.getChr();
+                    String igvChr = genome == null ? seqName : genome.getChromosomeAlias(seqName);
+
+                    List<Feature> featureList = featureMap.get(igvChr);
+                    if (featureList == null) {
+                        featureList = new ArrayList<Feature>();
+                        featureMap.put(igvChr, featureList);
+                    }
+                    featureList.add(f);
+                    if (f instanceof NamedFeature) FeatureDB.addFeature((NamedFeature) f, genome);
                 }
-                featureList.add(f);
-                if (f instanceof NamedFeature) FeatureDB.addFeature((NamedFeature) f, genome);
-            }
 
-            for (List<Feature> featureList : featureMap.values()) {
-                FeatureUtils.sortFeatureList(featureList);
+                for (List<Feature> featureList : featureMap.values()) {
+                    FeatureUtils.sortFeatureList(featureList);
+                }
             }
 
             if (genome != null) {
@@ -123,6 +123,12 @@ public class IGV {
     private LinkedList<String> recentSessionList = new LinkedList<String>();
     private boolean isExportingSnapshot = false;
 
+    /**
+     * Batch clients load files concurrently (see {@link org.broad.igv.batch.CommandScheduler}).  Loads only parse
+     * files in parallel, changes to the track panels and reads of their track lists hold this lock.
+     */
+    private final Object trackPanelLock = new Object();
+
     // Listeners
     Collection<SoftReference<TrackGroupEventListener>> groupListeners =
             Collections.synchronizedCollection(new ArrayList<SoftReference<TrackGroupEventListener>>());
@@ -719,11 +725,16 @@ public class IGV {
                 public void run() {
 
                     //Collect size statistics before loading
-                    List<Map<TrackPanelScrollPane, Integer>> trackPanelAttrs = getTrackPanelAttrs();
+                    List<Map<TrackPanelScrollPane, Integer>> trackPanelAttrs;
+                    synchronized (trackPanelLock) {
+                        trackPanelAttrs = getTrackPanelAttrs();
+                    }
 
                     loadResources(locators);
 
-                    resetPanelHeights(trackPanelAttrs.get(0), trackPanelAttrs.get(1));
+                    synchronized (trackPanelLock) {
+                        resetPanelHeights(trackPanelAttrs.get(0), trackPanelAttrs.get(1));
+                    }
 
                     showLoadedTrackCount();
                 }
@@ -1684,8 +1695,10 @@ public class IGV {
             }
         }
 
-        resetGroups();
-        resetOverlayTracks();
+        synchronized (trackPanelLock) {
+            resetGroups();
+            resetOverlayTracks();
+        }
 
         if (!messages.isEmpty()) {
             for (String message : messages.getMessages()) {
@@ -1715,6 +1728,12 @@ public class IGV {
      * @param locator
      */
     void addTracks(List<Track> tracks, ResourceLocator locator) {
+        synchronized (trackPanelLock) {
+            addTracksToPanel(tracks, locator);
+        }
+    }
+
+    private void addTracksToPanel(List<Track> tracks, ResourceLocator locator) {
         if (tracks.size() > 0) {
             String path = locator.getPath();
 
@@ -2093,7 +2112,11 @@ public class IGV {
     public Set<ResourceLocator> getDataResourceLocators() {
         HashSet<ResourceLocator> locators = new HashSet();
 
-        for (Track track : getAllTracks()) {
+        List<Track> allTracks;
+        synchronized (trackPanelLock) {
+            allTracks = getAllTracks();
+        }
+        for (Track track : allTracks) {
             Collection<ResourceLocator> tlocators = track.getResourceLocators();
 
             if (tlocators != null) {
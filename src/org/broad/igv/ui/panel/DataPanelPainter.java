@@ -28,6 +28,7 @@ import org.broad.igv.track.Track;
 import org.broad.igv.track.TrackGroup;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.UIConstants;
+import org.broad.igv.util.StageTimer;
 
 import java.awt.*;
 import java.util.ArrayList;
@@ -240,6 +241,16 @@ public class DataPanelPainter {
 
     final private void draw(Track track, Rectangle rect, RenderContext context) {
 
+        StageTimer.push(StageTimer.Stage.PAINT);
+        try {
+            drawTrack(track, rect, context);
+        } finally {
+            StageTimer.pop();
+        }
+    }
+
+    private void drawTrack(Track track, Rectangle rect, RenderContext context) {
+
         track.render(context, rect);
 
         // Get overlays
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util;
+
+import org.broad.tribble.readers.LineReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Line reader that returns lines as ranges of its internal byte buffer, so they can be tokenized with a
+ * {@link ByteTokenizer} without creating a String per line.  Lines are terminated by "\n" or "\r\n".  Lines
+ * returned as Strings are decoded as ISO-8859-1 unless another charset is given.  The charset must be ASCII
+ * compatible, e.g. UTF-8.
+ * <p/>
+ * The reader can also return the stream in line aligned blocks, see {@link #readBlock(int)}, which are themselves
+ * ByteLineReaders and can be parsed on other threads.
+ */
+public class ByteLineReader implements LineReader {
+
+    private static final int DEFAULT_BUFFER_SIZE = 512000;
+
+    private InputStream is;
+    private byte[] buffer;
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+    private Charset charset = ByteTokenizer.LATIN1;
+
+    /**
+     * File position of buffer[0]
+     */
+    private long bufferPosition = 0;
+
+    // Current line
+    private int lineStart = 0;
+    private int lineEnd = 0;
+
+    public ByteLineReader(InputStream is) {
+        this(is, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ByteLineReader(InputStream is, int bufferSize) {
+        this.is = is;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * @param is
+     * @param charset charset used to decode lines returned as Strings
+     */
+    public ByteLineReader(InputStream is, Charset charset) {
+        this(is, DEFAULT_BUFFER_SIZE);
+        this.charset = charset;
+    }
+
+    /**
+     * Create a reader over lines held in memory.
+     *
+     * @param bytes
+     * @param length   number of valid bytes
+     * @param position file position of the first byte, for {@link #getLinePosition()}
+     */
+    public ByteLineReader(byte[] bytes, int length, long position) {
+        this.buffer = bytes;
+        this.limit = length;
+        this.bufferPosition = position;
+        this.eof = true;
+    }
+
+    /**
+     * Advance to the next line.
+     *
+     * @return false if there are no more lines
+     * @throws IOException
+     */
+    public boolean nextLine() throws IOException {
+
+        if (pos >= limit && !fill()) {
+            return false;
+        }
+
+        int scanned = 0;
+        while (true) {
+            for (int i = pos + scanned; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    setLine(pos, i);
+                    pos = i + 1;
+                    return true;
+                }
+            }
+            scanned = limit - pos;
+            if (!fill()) {
+                // Last line, with no line terminator
+                setLine(pos, limit);
+                pos = limit;
+                return true;
+            }
+        }
+    }
+
+    private void setLine(int start, int end) {
+        lineStart = start;
+        lineEnd = (end > start && buffer[end - 1] == '\r') ? end - 1 : end;
+    }
+
+    /**
+     * Read more bytes into the buffer, moving unread bytes to the front and growing the buffer if it is full.
+     *
+     * @return false if the end of the stream has been reached
+     */
+    private boolean fill() throws IOException {
+        if (eof) return false;
+
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            bufferPosition += pos;
+            lineStart -= pos;
+            lineEnd -= pos;
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buffer.length) {
+            byte[] tmp = new byte[2 * buffer.length];
+            System.arraycopy(buffer, 0, tmp, 0, limit);
+            buffer = tmp;
+        }
+        int n = is.read(buffer, limit, buffer.length - limit);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    /**
+     * Return the next line as a String, or null at the end of the stream
+     */
+    public String readLine() throws IOException {
+        return nextLine() ? getLine() : null;
+    }
+
+    /**
+     * Return the bytes of the line following the current line, and all lines up to approximately
+     * {@code blockSize} bytes, as a separate reader.  Blocks contain complete lines only.
+     *
+     * @param blockSize
+     * @return the block, or null at the end of the stream
+     * @throws IOException
+     */
+    public ByteLineReader readBlock(int blockSize) throws IOException {
+
+        while (limit - pos < blockSize && fill()) {
+        }
+        if (pos >= limit) {
+            return null;
+        }
+
+        // End the block after the last complete line, reading further if there is none
+        int end = lastLineEnd(pos);
+        while (end < 0) {
+            int scanned = limit - pos;
+            if (!fill()) {
+                end = limit;
+            } else {
+                end = lastLineEnd(pos + scanned);
+            }
+        }
+
+        byte[] bytes = new byte[end - pos];
+        System.arraycopy(buffer, pos, bytes, 0, bytes.length);
+        ByteLineReader block = new ByteLineReader(bytes, bytes.length, bufferPosition + pos);
+        block.charset = charset;
+        pos = end;
+        return block;
+    }
+
+    private int lastLineEnd(int from) {
+        for (int i = limit - 1; i >= from; i--) {
+            if (buffer[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Start of the current line in the buffer
+     */
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    /**
+     * End of the current line in the buffer, exclusive and excluding the line terminator
+     */
+    public int getLineEnd() {
+        return lineEnd;
+    }
+
+    public String getLine() {
+        return new String(buffer, lineStart, lineEnd - lineStart, charset);
+    }
+
+    public boolean startsWith(String prefix) {
+        if (lineEnd - lineStart < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer[lineStart + i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Return true if the current line is empty or contains only whitespace
+     */
+    public boolean isBlank() {
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (buffer[i] > ' ') return false;
+        }
+        return true;
+    }
+
+    /**
+     * File position of the start of the current line
+     */
+    public long getLinePosition() {
+        return bufferPosition + lineStart;
+    }
+
+    /**
+     * File position following the current line
+     */
+    public long getPosition() {
+        return bufferPosition + pos;
+    }
+
+    public void close() {
+        if (is != null) {
+            try {
+                is.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util;
+
+import java.nio.charset.Charset;
+
+/**
+ * Splits lines held in byte arrays into fields, and parses numeric fields directly from the bytes.  Field strings
+ * are only created on request, so numeric columns can be parsed without allocating per field.  The tokenizer is
+ * reused for each line, and is not thread safe.
+ */
+public class ByteTokenizer {
+
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = 10 * POWERS_OF_TEN[i - 1];
+        }
+    }
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Maps each byte to the char of the same value
+     */
+    static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+    private boolean splitOnSpaces;
+    private Charset charset = LATIN1;
+    private byte[] bytes;
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+    private int count;
+
+    /**
+     * Create a tokenizer for tab delimited lines.  All fields are kept, as for {@code Globals.tabPattern.split(line, -1)}.
+     */
+    public ByteTokenizer() {
+        this(false);
+    }
+
+    /**
+     * @param splitOnSpaces if true fields are delimited by a tab or a run of spaces, and trailing empty fields are
+     *                      dropped, as for {@code Globals.singleTabMultiSpacePattern.split(line)}
+     */
+    public ByteTokenizer(boolean splitOnSpaces) {
+        this.splitOnSpaces = splitOnSpaces;
+    }
+
+    /**
+     * @param splitOnSpaces
+     * @param charset       charset used by {@link #getString(int)}, ISO-8859-1 by default.  Must be ASCII compatible.
+     */
+    public ByteTokenizer(boolean splitOnSpaces, Charset charset) {
+        this.splitOnSpaces = splitOnSpaces;
+        this.charset = charset;
+    }
+
+    /**
+     * Tokenize the current line of the reader
+     *
+     * @return the number of fields
+     */
+    public int tokenize(ByteLineReader reader) {
+        return tokenize(reader.getBuffer(), reader.getLineStart(), reader.getLineEnd());
+    }
+
+    /**
+     * Tokenize the line bytes[start, end)
+     *
+     * @return the number of fields
+     */
+    public int tokenize(byte[] bytes, int start, int end) {
+        this.bytes = bytes;
+        count = 0;
+        int fieldStart = start;
+        int i = start;
+        while (i < end) {
+            byte b = bytes[i];
+            if (b == '\t') {
+                addField(fieldStart, i);
+                fieldStart = ++i;
+            } else if (b == ' ' && splitOnSpaces) {
+                addField(fieldStart, i);
+                while (i < end && bytes[i] == ' ') i++;
+                fieldStart = i;
+            } else {
+                i++;
+            }
+        }
+        addField(fieldStart, end);
+
+        if (splitOnSpaces) {
+            while (count > 0 && starts[count - 1] == ends[count - 1]) {
+                count--;
+            }
+        }
+        return count;
+    }
+
+    private void addField(int start, int end) {
+        if (count == starts.length) {
+            int[] tmp = new int[2 * count];
+            System.arraycopy(starts, 0, tmp, 0, count);
+            starts = tmp;
+            tmp = new int[2 * count];
+            System.arraycopy(ends, 0, tmp, 0, count);
+            ends = tmp;
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    private void checkField(int field) {
+        if (field >= count) {
+            throw new ArrayIndexOutOfBoundsException(field);
+        }
+    }
+
+    public int getTokenCount() {
+        return count;
+    }
+
+    public String getString(int field) {
+        checkField(field);
+        return new String(bytes, starts[field], ends[field] - starts[field], charset);
+    }
+
+    public int getLength(int field) {
+        checkField(field);
+        return ends[field] - starts[field];
+    }
+
+    /**
+     * Return true if the field is equal to the string.
+     */
+    public boolean equals(int field, String s) {
+        checkField(field);
+        if (charset != LATIN1) {
+            return getString(field).equals(s);
+        }
+        int start = starts[field];
+        int length = ends[field] - start;
+        if (length != s.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if ((bytes[start + i] & 0xff) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parse an integer field, with the same results as {@link ParsingUtils#parseInt(String)}.
+     *
+     * @throws NumberFormatException
+     */
+    public int getInt(int field) {
+        checkField(field);
+        return parseInt(bytes, starts[field], ends[field]);
+    }
+
+    /**
+     * Parse a float field, with the same results as {@link Float#parseFloat(String)}.
+     *
+     * @throws NumberFormatException
+     */
+    public float getFloat(int field) {
+        checkField(field);
+        return parseFloat(bytes, starts[field], ends[field]);
+    }
+
+    /**
+     * Parse a float field, returning {@code invalidValue} if the field does not exist or is not a number.  Unlike
+     * {@link #getFloat(int)} no exception is created for common missing value markers such as "NA" or "".
+     */
+    public float getFloat(int field, float invalidValue) {
+        if (field >= count) return invalidValue;
+        int start = starts[field];
+        int end = ends[field];
+        if (start == end) return invalidValue;
+        byte first = bytes[start];
+        if (first == 'N') {
+            // NaN, or a missing value marker such as "NA"
+            return equals(field, "NaN") ? Float.NaN : invalidValue;
+        }
+        if (!(first >= '0' && first <= '9') && first != '-' && first != '+' && first != '.' && first > ' ' &&
+                first != 'I') {
+            return invalidValue;
+        }
+        try {
+            return parseFloat(bytes, start, end);
+        } catch (NumberFormatException e) {
+            return invalidValue;
+        }
+    }
+
+    /**
+     * Parse an integer from bytes[start, end).  Plain decimal integers are parsed directly, other forms (e.g. "1e6")
+     * are parsed as by {@link ParsingUtils#parseInt(String)}.
+     *
+     * @throws NumberFormatException
+     */
+    public static int parseInt(byte[] bytes, int start, int end) {
+        int s = start;
+        int e = end;
+        while (s < e && bytes[s] <= ' ') s++;
+        while (e > s && bytes[e - 1] <= ' ') e--;
+
+        int i = s;
+        boolean negative = false;
+        if (i < e && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        if (i < e && e - i <= 9) {
+            int value = 0;
+            for (; i < e; i++) {
+                int d = bytes[i] - '0';
+                if (d < 0 || d > 9) break;
+                value = 10 * value + d;
+            }
+            if (i == e) {
+                return negative ? -value : value;
+            }
+        }
+        return ParsingUtils.parseInt(new String(bytes, start, end - start, LATIN1));
+    }
+
+    /**
+     * Parse a float from bytes[start, end).  Decimal numbers with up to 18 significant digits are parsed directly,
+     * the result is identical to {@link Float#parseFloat(String)}.  Other forms are delegated to Float.parseFloat.
+     *
+     * @throws NumberFormatException
+     */
+    public static float parseFloat(byte[] bytes, int start, int end) {
+        int s = start;
+        int e = end;
+        while (s < e && bytes[s] <= ' ') s++;
+        while (e > s && bytes[e - 1] <= ' ') e--;
+
+        int i = s;
+        boolean negative = false;
+        if (i < e && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int nDigits = 0;           // significant digits in mantissa
+        int exponent = 0;
+        boolean hasDigits = false;
+        boolean truncated = false; // non-zero digits beyond the 18 kept
+        for (; i < e; i++) {
+            int d = bytes[i] - '0';
+            if (d < 0 || d > 9) break;
+            hasDigits = true;
+            if (nDigits < 18) {
+                mantissa = 10 * mantissa + d;
+                if (mantissa > 0) nDigits++;
+            } else {
+                exponent++;
+                truncated |= d != 0;
+            }
+        }
+        if (i < e && bytes[i] == '.') {
+            i++;
+            for (; i < e; i++) {
+                int d = bytes[i] - '0';
+                if (d < 0 || d > 9) break;
+                hasDigits = true;
+                if (nDigits < 18) {
+                    mantissa = 10 * mantissa + d;
+                    if (mantissa > 0) nDigits++;
+                    exponent--;
+                } else {
+                    truncated |= d != 0;
+                }
+            }
+        }
+        if (hasDigits && i < e && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < e && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExp = bytes[i] == '-';
+                i++;
+            }
+            int exp = 0;
+            boolean hasExpDigits = false;
+            for (; i < e; i++) {
+                int d = bytes[i] - '0';
+                if (d < 0 || d > 9) break;
+                hasExpDigits = true;
+                if (exp < 10000) exp = 10 * exp + d;
+            }
+            if (!hasExpDigits) hasDigits = false;
+            exponent += negativeExp ? -exp : exp;
+        }
+
+        if (hasDigits && i == e) {
+            if (mantissa == 0) {
+                return negative ? -0.0f : 0.0f;
+            }
+            if (!truncated && mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+                // Both operands are exact, so the double result is correctly rounded
+                double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+                // Rounding to float from the double gives the correctly rounded float, unless the double falls
+                // exactly halfway between two floats, or is outside the normal float range
+                long bits = Double.doubleToRawLongBits(value);
+                if ((bits & 0x1FFFFFFFL) != 0x10000000L && value >= Float.MIN_NORMAL && value <= Float.MAX_VALUE) {
+                    return (float) (negative ? -value : value);
+                }
+            }
+        }
+        return Float.parseFloat(new String(bytes, start, end - start, LATIN1));
+    }
+}
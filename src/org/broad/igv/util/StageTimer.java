@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Accumulates time spent in the stages of loading and drawing data, for profiling batch runs.
+ * <p/>
+ * Code marks a stage with
+ * <pre>
+ *     StageTimer.push(StageTimer.Stage.DECODE);
+ *     try {
+ *         ...
+ *     } finally {
+ *         StageTimer.pop();
+ *     }
+ * </pre>
+ * Stages nest, and time is charged to the innermost stage only, so stages never count the same interval twice.
+ * Totals are summed over all threads, so with parallel loading they can exceed the elapsed time.  When timing is
+ * not enabled push and pop do nothing.  Stages left open on a thread when timing is disabled are discarded when
+ * timing is enabled again.
+ */
+public class StageTimer {
+
+    public enum Stage {
+        SEQUENCE("sequence"), INDEX("index"), IO("io"), DECODE("decode"), PACK("pack"), PAINT("paint");
+
+        private String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static volatile boolean enabled = false;
+
+    /**
+     * Incremented each time timing is enabled, to discard stages left open by a previous run
+     */
+    private static volatile int run = 0;
+
+    private static final AtomicLongArray totals = new AtomicLongArray(Stage.values().length);
+
+    private static final ThreadLocal<StageStack> stacks = new ThreadLocal<StageStack>() {
+        @Override
+        protected StageStack initialValue() {
+            return new StageStack();
+        }
+    };
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        if (enabled && !StageTimer.enabled) run++;
+        StageTimer.enabled = enabled;
+    }
+
+    /**
+     * Enter a stage.  Time since the last push or pop on this thread is charged to the enclosing stage.
+     */
+    public static void push(Stage stage) {
+        if (!enabled) return;
+        StageStack stack = stacks.get();
+        if (stack.run != run) {
+            stack.stages.clear();
+            stack.run = run;
+        }
+        stack.charge(System.nanoTime());
+        stack.stages.add(stage);
+    }
+
+    /**
+     * Leave the current stage, charging it the time since the last push or pop on this thread.
+     */
+    public static void pop() {
+        if (!enabled) return;
+        StageStack stack = stacks.get();
+        if (stack.run != run || stack.stages.isEmpty()) {
+            // Timing was enabled inside the stage
+            return;
+        }
+        stack.charge(System.nanoTime());
+        stack.stages.remove(stack.stages.size() - 1);
+    }
+
+    /**
+     * Return the total nanoseconds per stage, indexed by {@link Stage#ordinal()}
+     */
+    public static long[] getTotals() {
+        long[] values = new long[totals.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = totals.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * Wrap an iterator so time spent in hasNext and next is charged to the stage.  Use this where records are
+     * decoded lazily while a consumer, e.g. the packer, iterates.
+     */
+    public static <T> Iterator<T> wrap(final Iterator<T> iter, final Stage stage) {
+        if (!enabled || iter == null) return iter;
+        return new Iterator<T>() {
+            public boolean hasNext() {
+                push(stage);
+                try {
+                    return iter.hasNext();
+                } finally {
+                    pop();
+                }
+            }
+
+            public T next() {
+                push(stage);
+                try {
+                    return iter.next();
+                } finally {
+                    pop();
+                }
+            }
+
+            public void remove() {
+                iter.remove();
+            }
+        };
+    }
+
+    private static class StageStack {
+        List<Stage> stages = new ArrayList<Stage>();
+        long lastTime;
+        int run;
+
+        void charge(long time) {
+            if (!stages.isEmpty()) {
+                totals.addAndGet(stages.get(stages.size() - 1).ordinal(), time - lastTime);
+            }
+            lastTime = time;
+        }
+    }
+}
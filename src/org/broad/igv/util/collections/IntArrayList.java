@@ -56,15 +56,21 @@ public class IntArrayList {
     }
 
     public void addAll(int[] args) {
-        int[] newElements = new int[size + args.length];
-        System.arraycopy(elements, 0, newElements, 0, size);
-        System.arraycopy(args, 0, newElements, size, args.length);
-        elements = newElements;
-        size += args.length;
+        addAll(args, args.length);
     }
 
     public void addAll(IntArrayList aList) {
-        addAll(aList.toArray());
+        addAll(aList.elements, aList.size);
+    }
+
+    private void addAll(int[] args, int length) {
+        if (size + length > elements.length) {
+            int[] newElements = new int[Math.max(size + length, 2 * size)];
+            System.arraycopy(elements, 0, newElements, 0, size);
+            elements = newElements;
+        }
+        System.arraycopy(args, 0, elements, size, length);
+        size += length;
     }
 
 
@@ -57,6 +57,22 @@ public class MultiMap<K, V> {
         }
     }
 
+    /**
+     * Return all values for the key, in insertion order.  Values are stored as a single V, or as a List<V> created
+     * by put, so the casts are safe.
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> getAll(K key) {
+        Object value = map.get(key);
+        if (value == null) {
+            return Collections.emptyList();
+        } else if (value instanceof List) {
+            return Collections.unmodifiableList((List<V>) value);
+        } else {
+            return Collections.singletonList((V) value);
+        }
+    }
+
     public V remove(K key) {
         Object value = map.get(key);
         if (value == null) return null;
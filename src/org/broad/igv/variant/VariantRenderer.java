@@ -16,6 +16,7 @@ import org.broad.igv.track.RenderContext;
 import org.broad.igv.track.Track;
 import org.broad.igv.ui.FontManager;
 import org.broad.igv.ui.color.ColorUtilities;
+import org.broad.igv.variant.vcf.GenotypeMatrix;
 
 import java.awt.*;
 import java.util.HashMap;
@@ -155,6 +156,34 @@ public class VariantRenderer { //extends FeatureRenderer {
     public void renderGenotypeBandSNP(Variant variant, RenderContext context, Rectangle bandRectangle, int pX0, int dX,
                                       String sampleName, VariantTrack.ColorMode coloring, boolean hideFiltered) {
 
+        Genotype genotype = variant.getGenotype(sampleName);
+        if (genotype == null) {
+            log.error("Genotype not found for sample " + sampleName);
+        } else {
+            renderGenotypeBandSNP(variant, genotype, context, bandRectangle, pX0, dX, coloring, hideFiltered);
+        }
+    }
+
+    /**
+     * Render a genotype band colored by genotype type, using the packed code from a {@link GenotypeMatrix}.
+     * This is equivalent to {@link #renderGenotypeBandSNP} with {@code ColorMode.GENOTYPE}, without the overhead
+     * of creating a genotype object and graphics context for each cell.
+     */
+    public void renderGenotypeBand(byte genotypeCode, boolean isFiltered, RenderContext context, Rectangle bandRectangle,
+                                   int pX0, int dX) {
+
+        int pY = (int) bandRectangle.getY();
+        int dY = (int) bandRectangle.getHeight();
+        int y0 = track.getDisplayMode() == Track.DisplayMode.EXPANDED ? pY + 1 : pY;
+        int h = Math.max(1, track.getDisplayMode() == Track.DisplayMode.EXPANDED ? dY - 2 : dY);
+
+        Color color = getGenotypeColor(genotypeCode, isFiltered);
+        context.getGraphic2DForColor(color).fillRect(pX0, y0, dX, h);
+    }
+
+    public void renderGenotypeBandSNP(Variant variant, Genotype genotype, RenderContext context, Rectangle bandRectangle,
+                                      int pX0, int dX, VariantTrack.ColorMode coloring, boolean hideFiltered) {
+
         int pY = (int) bandRectangle.getY();
         int dY = (int) bandRectangle.getHeight();
 
@@ -176,87 +205,82 @@ public class VariantRenderer { //extends FeatureRenderer {
 
         boolean isFiltered = variant.isFiltered() && hideFiltered;
 
-        Genotype genotype = variant.getGenotype(sampleName);
-        if (genotype == null) {
-            log.error("Genotype not found for sample " + sampleName);
-        } else {
-            Color b1Color = Color.gray;
-            Color b2Color = Color.gray;
-            char b1 = ' ';
-            char b2 = ' ';
-            //Assign proper coloring
-            switch (coloring) {
-                case GENOTYPE:
-
-                    b1Color = getGenotypeColor(genotype, isFiltered);
-                    b2Color = b1Color;
-                    break;
-
-                case ALLELE:
-                    final List<Allele> alleleList = genotype.getAlleles();
-                    if (alleleList.size() > 0) {
-                        b1 = getFirstBase(alleleList.get(0));
-                        b1Color = nucleotideColors.get(b1);
-                    }
-                    if (alleleList.size() > 1) {
-                        b2 = getFirstBase(alleleList.get(1));
-                        b2Color = nucleotideColors.get(b2);
-                    }
-                    break;
-                case METHYLATION_RATE:
-
-                    final double goodBaseCount = genotype.getAttributeAsDouble("GB");
-                    b1Color = colorNoCall;
-                    b2Color = b1Color;
-                    final double value = genotype.getAttributeAsDouble("MR");
-                    if (!Double.isNaN(goodBaseCount) && !Double.isNaN(value)) {
-                        if (goodBaseCount < VariantTrack.METHYLATION_MIN_BASE_COUNT || Double.isNaN(value)) {
-                            b1Color = colorNoCall;
-                            b2Color = b1Color;
-
-                        } else {
-                            float mr = (float) value;
-                            mr /= 100f;
-                            b1Color = convertMethylationRateToColor(mr);
-                            b2Color = b1Color;
-                        }
+        Color b1Color = Color.gray;
+        Color b2Color = Color.gray;
+        char b1 = ' ';
+        char b2 = ' ';
+        //Assign proper coloring
+        switch (coloring) {
+            case GENOTYPE:
+
+                b1Color = getGenotypeColor(genotype, isFiltered);
+                b2Color = b1Color;
+                break;
+
+            case ALLELE:
+                final List<Allele> alleleList = genotype.getAlleles();
+                if (alleleList.size() > 0) {
+                    b1 = getFirstBase(alleleList.get(0));
+                    b1Color = nucleotideColors.get(b1);
+                }
+                if (alleleList.size() > 1) {
+                    b2 = getFirstBase(alleleList.get(1));
+                    b2Color = nucleotideColors.get(b2);
+                }
+                break;
+            case METHYLATION_RATE:
+
+                final double goodBaseCount = genotype.getAttributeAsDouble("GB");
+                b1Color = colorNoCall;
+                b2Color = b1Color;
+                final double value = genotype.getAttributeAsDouble("MR");
+                if (!Double.isNaN(goodBaseCount) && !Double.isNaN(value)) {
+                    if (goodBaseCount < VariantTrack.METHYLATION_MIN_BASE_COUNT || Double.isNaN(value)) {
+                        b1Color = colorNoCall;
+                        b2Color = b1Color;
+
                     } else {
-                        log.error("GB and MR fields must be defined for all records in a VCF methylation file.");
+                        float mr = (float) value;
+                        mr /= 100f;
+                        b1Color = convertMethylationRateToColor(mr);
+                        b2Color = b1Color;
                     }
-                    break;
+                } else {
+                    log.error("GB and MR fields must be defined for all records in a VCF methylation file.");
+                }
+                break;
 
-                default:
-                    b1Color = colorNoCall;
-                    b2Color = b1Color;
-            }
+            default:
+                b1Color = colorNoCall;
+                b2Color = b1Color;
+        }
 
 
-            int y0 = track.getDisplayMode() == Track.DisplayMode.EXPANDED ? pY + 1 : pY;
-            int h = Math.max(1, track.getDisplayMode() == Track.DisplayMode.EXPANDED ? dY - 2 : dY);
+        int y0 = track.getDisplayMode() == Track.DisplayMode.EXPANDED ? pY + 1 : pY;
+        int h = Math.max(1, track.getDisplayMode() == Track.DisplayMode.EXPANDED ? dY - 2 : dY);
 
-            if (coloring == VariantTrack.ColorMode.GENOTYPE) {
+        if (coloring == VariantTrack.ColorMode.GENOTYPE) {
 
-                g.setColor(b1Color);
-                g.fillRect(pX0, y0, dX, h);
-            } else {
-                // Color by allele
-                g.setColor(b1Color);
-                g.fillRect(pX0, y0, (dX / 2), h);
-                g.setColor(b2Color);
-                g.fillRect(pX0 + (dX / 2), y0, (dX / 2), h);
+            g.setColor(b1Color);
+            g.fillRect(pX0, y0, dX, h);
+        } else {
+            // Color by allele
+            g.setColor(b1Color);
+            g.fillRect(pX0, y0, (dX / 2), h);
+            g.setColor(b2Color);
+            g.fillRect(pX0 + (dX / 2), y0, (dX / 2), h);
 
-            }
+        }
 
 
-            if ((dX >= 10) && (dY >= 18)) {
-                if (b1Color == Color.blue) {
-                    g.setColor(Color.white);
-                } else {
-                    g.setColor(Color.black);
-                }
-                drawCenteredText(g, new char[]{b1}, pX0, pY - tOffset, dX, dY);
-                drawCenteredText(g, new char[]{b2}, pX0, pY + (dY / 2) - bOffset, dX, dY);
+        if ((dX >= 10) && (dY >= 18)) {
+            if (b1Color == Color.blue) {
+                g.setColor(Color.white);
+            } else {
+                g.setColor(Color.black);
             }
+            drawCenteredText(g, new char[]{b1}, pX0, pY - tOffset, dX, dY);
+            drawCenteredText(g, new char[]{b2}, pX0, pY + (dY / 2) - bOffset, dX, dY);
         }
         g.dispose();
     }
@@ -297,6 +321,21 @@ public class VariantRenderer { //extends FeatureRenderer {
         return Color.white;
     }
 
+    public Color getGenotypeColor(byte genotypeCode, boolean isFiltered) {
+        switch (genotypeCode) {
+            case GenotypeMatrix.NO_CALL:
+                return isFiltered ? colorNoCallAlpha : colorNoCall;
+            case GenotypeMatrix.HOM_REF:
+                return isFiltered ? colorHomRefAlpha : colorHomRef;
+            case GenotypeMatrix.HOM_VAR:
+                return isFiltered ? colorHomVarAlpha : colorHomVar;
+            case GenotypeMatrix.HET:
+                return isFiltered ? colorHetAlpha : colorHet;
+            default:
+                return Color.white;
+        }
+    }
+
     private void drawCenteredText(Graphics2D g, char[] chars, int x, int y,
                                   int w, int h) {
 
@@ -32,6 +32,7 @@ import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.LongRunningTask;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.variant.vcf.GenotypeMatrix;
 import org.broad.tribble.Feature;
 import org.broadinstitute.variant.variantcontext.GenotypeType;
 
@@ -154,6 +155,13 @@ public class VariantTrack extends FeatureTrack implements TrackGroupEventListene
      */
     private List<String> selectedSamples = new ArrayList<String>();
 
+    /**
+     * Genotype matrices for loaded intervals, keyed by the packed features they were built from.  Matrices are
+     * built on the loading thread, entries are discarded with the interval.
+     */
+    private Map<PackedFeatures<?>, GenotypeMatrix> genotypeMatrices =
+            Collections.synchronizedMap(new WeakHashMap<PackedFeatures<?>, GenotypeMatrix>());
+
     /**
      * Experimental "mode" to couple VCF & BAM files
      */
@@ -434,6 +442,11 @@ public class VariantTrack extends FeatureTrack implements TrackGroupEventListene
 
         int curRowTop = top;
 
+        // Genotypes are not drawn when collapsed, avoid decoding them
+        boolean showGenotypes = getGenotypeBandHeight() > 0;
+        GenotypeMatrix matrix = showGenotypes ? getGenotypeMatrix(packedFeatures) : null;
+        int[] sampleIndices = getDisplayedSampleIndices(matrix);
+
         if (rows.size() > 0) {
             final double locScale = context.getScale();
             final double origin = context.getOrigin();
@@ -486,7 +499,14 @@ public class VariantTrack extends FeatureTrack implements TrackGroupEventListene
                         lastEndX = x + w - 1;
                     }
 
-                    renderSamples(g2D, visibleRectangle, variant, context, overallSampleRect, x, w);
+                    if (showGenotypes) {
+                        int variantIdx = matrix == null ? -1 : matrix.getVariantIndex(variant);
+                        if (variantIdx >= 0) {
+                            renderSamples(visibleRectangle, matrix, variantIdx, sampleIndices, context, overallSampleRect, x, w);
+                        } else {
+                            renderSamples(g2D, visibleRectangle, variant, context, overallSampleRect, x, w);
+                        }
+                    }
                     boolean isSelected = selectedVariant != null && selectedVariant == variant;
                     if (isSelected) {
                         Graphics2D selectionGraphics = context.getGraphic2DForColor(Color.black);
@@ -546,6 +566,95 @@ public class VariantTrack extends FeatureTrack implements TrackGroupEventListene
         }
     }
 
+    /**
+     * Render the genotypes of a variant from the genotype matrix.  Samples are in display order, see
+     * {@link #getDisplayedSampleIndices(GenotypeMatrix)}.
+     */
+    private void renderSamples(Rectangle visibleRectangle, GenotypeMatrix matrix, int variantIdx, int[] sampleIndices,
+                               RenderContext context, Rectangle overallSampleRect, int x, int w) {
+
+        Variant variant = matrix.getVariant(variantIdx);
+        boolean isFiltered = variant.isFiltered() && hideFiltered;
+        Rectangle tmpRect = new Rectangle(overallSampleRect);
+        tmpRect.height = getGenotypeBandHeight();
+
+        // Skip to the first visible sample
+        int first = 0;
+        if (tmpRect.y < visibleRectangle.y) {
+            first = Math.min(sampleIndices.length, (visibleRectangle.y - tmpRect.y) / tmpRect.height);
+            tmpRect.y += first * tmpRect.height;
+        }
+        for (int i = first; i < sampleIndices.length && tmpRect.y <= visibleRectangle.getMaxY(); i++) {
+            int sampleIdx = sampleIndices[i];
+            if (sampleIdx < 0) {
+                log.error("Genotype not found for sample at row " + i);
+            } else if (coloring == ColorMode.GENOTYPE) {
+                renderer.renderGenotypeBand(matrix.getCode(variantIdx, sampleIdx), isFiltered, context, tmpRect, x, w);
+            } else {
+                Genotype genotype = matrix.getGenotype(variantIdx, sampleIdx);
+                if (genotype != null) {
+                    renderer.renderGenotypeBandSNP(variant, genotype, context, tmpRect, x, w, coloring, hideFiltered);
+                }
+            }
+            tmpRect.y += tmpRect.height;
+        }
+    }
+
+    /**
+     * Build the genotype matrix for a newly loaded interval, while still on the loading thread.  When genotypes
+     * are hidden the matrix is left until they are shown, so they are not decoded for nothing.
+     */
+    @Override
+    protected void featuresPacked(PackedFeatures<?> packedFeatures) {
+        if (!allSamples.isEmpty() && getGenotypeBandHeight() > 0) {
+            genotypeMatrices.put(packedFeatures, new GenotypeMatrix(packedFeatures.getFeatures()));
+        }
+    }
+
+    /**
+     * Return the genotype matrix for a loaded interval.  Matrices are normally built when the interval is loaded,
+     * one is only created here for intervals packed some other way.
+     */
+    private GenotypeMatrix getGenotypeMatrix(PackedFeatures<?> packedFeatures) {
+        if (allSamples.isEmpty()) {
+            return null;
+        }
+        GenotypeMatrix matrix = genotypeMatrices.get(packedFeatures);
+        if (matrix == null) {
+            matrix = new GenotypeMatrix(packedFeatures.getFeatures());
+            genotypeMatrices.put(packedFeatures, matrix);
+        }
+        return matrix;
+    }
+
+    /**
+     * Return the matrix index of each sample, in the order samples are displayed.  An index of -1 indicates a sample
+     * which is not in the matrix.
+     */
+    private int[] getDisplayedSampleIndices(GenotypeMatrix matrix) {
+        if (matrix == null) {
+            return new int[0];
+        }
+        List<String> samples = getDisplayedSamples();
+        int[] indices = new int[samples.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = matrix.getSampleIndex(samples.get(i));
+        }
+        return indices;
+    }
+
+    private List<String> getDisplayedSamples() {
+        if (grouped) {
+            List<String> samples = new ArrayList<String>(allSamples.size());
+            for (List<String> groupSamples : samplesByGroups.values()) {
+                samples.addAll(groupSamples);
+            }
+            return samples;
+        } else {
+            return allSamples;
+        }
+    }
+
     /**
      * Renders the top line, bottom track line, and border between variants / genotypes
      *
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.variant.vcf;
+
+import org.broad.igv.variant.Variant;
+import org.broad.tribble.Feature;
+import org.broadinstitute.variant.variantcontext.Genotype;
+import org.broadinstitute.variant.variantcontext.GenotypeType;
+import org.broadinstitute.variant.variantcontext.GenotypesContext;
+
+import java.util.*;
+
+/**
+ * Columnar store of the genotypes for the variants in a loaded interval.  Genotype types are packed into a single
+ * byte array, one column of samples per variant, so rendering a genotype band does not require looking up
+ * genotype objects by sample name.
+ * <p/>
+ * The matrix is built from the genotypes the variants have already decoded, and shares rather than copies them.
+ * It is built on the loading thread (see {@link org.broad.igv.variant.VariantTrack}), so genotypes are never parsed
+ * while painting.  GQ, DP, and AD columns for a variant are extracted the first time one of them is requested.
+ *
+ * @see VCFVariant
+ */
+public class GenotypeMatrix {
+
+    public static final byte NO_CALL = 0;
+    public static final byte HOM_REF = 1;
+    public static final byte HET = 2;
+    public static final byte HOM_VAR = 3;
+    public static final byte UNAVAILABLE = 4;
+    public static final byte MIXED = 5;
+
+    /**
+     * Value returned for missing GQ and DP values
+     */
+    public static final int MISSING = -1;
+
+    private List<String> samples;
+    private Map<String, Integer> sampleIndex;
+    private List<VCFVariant> variants;
+    private Map<Variant, Integer> variantIndex;
+
+    // codes[v * nSamples + s]
+    private byte[] codes;
+
+    // Lazily decoded attribute columns, indexed by variant
+    private int[][] gqColumns;
+    private int[][] dpColumns;
+    private int[][][] adColumns;
+    private Genotype[][] genotypeColumns;
+
+    /**
+     * Build a matrix for the VCF variants in the list.  Other feature types are ignored.  Samples are ordered as
+     * the genotypes of the first variant.
+     *
+     * @param features
+     */
+    public GenotypeMatrix(List<? extends Feature> features) {
+
+        variants = new ArrayList<VCFVariant>(features.size());
+        variantIndex = new IdentityHashMap<Variant, Integer>(features.size());
+        for (Feature f : features) {
+            if (f instanceof VCFVariant) {
+                variantIndex.put((VCFVariant) f, variants.size());
+                variants.add((VCFVariant) f);
+            }
+        }
+
+        samples = new ArrayList<String>();
+        sampleIndex = new HashMap<String, Integer>();
+        if (variants.size() > 0) {
+            for (Genotype genotype : variants.get(0).getVariantContext().getGenotypes()) {
+                sampleIndex.put(genotype.getSampleName(), samples.size());
+                samples.add(genotype.getSampleName());
+            }
+        }
+
+        int nSamples = samples.size();
+        codes = new byte[variants.size() * nSamples];
+        for (int v = 0; v < variants.size(); v++) {
+            Genotype[] column = getGenotypeColumn(v);
+            int offset = v * nSamples;
+            for (int s = 0; s < nSamples; s++) {
+                codes[offset + s] = column[s] == null ? UNAVAILABLE : toCode(column[s].getType());
+            }
+        }
+
+        gqColumns = new int[variants.size()][];
+        dpColumns = new int[variants.size()][];
+        adColumns = new int[variants.size()][][];
+        genotypeColumns = new Genotype[variants.size()][];
+    }
+
+    public int getSampleCount() {
+        return samples.size();
+    }
+
+    public int getVariantCount() {
+        return variants.size();
+    }
+
+    public List<String> getSamples() {
+        return Collections.unmodifiableList(samples);
+    }
+
+    /**
+     * @return the index of the sample, or -1 if there is no such sample
+     */
+    public int getSampleIndex(String sample) {
+        Integer idx = sampleIndex.get(sample);
+        return idx == null ? -1 : idx;
+    }
+
+    /**
+     * @return the index of the variant, or -1 if it is not in this matrix
+     */
+    public int getVariantIndex(Variant variant) {
+        Integer idx = variantIndex.get(variant);
+        return idx == null ? -1 : idx;
+    }
+
+    public VCFVariant getVariant(int variantIdx) {
+        return variants.get(variantIdx);
+    }
+
+    public byte getCode(int variantIdx, int sampleIdx) {
+        return codes[variantIdx * samples.size() + sampleIdx];
+    }
+
+    /**
+     * Return the genotype object for a cell, for uses which need more than its type (e.g. alleles or attributes).
+     * The genotype column of the variant is built on first request.
+     */
+    public synchronized org.broad.igv.variant.Genotype getGenotype(int variantIdx, int sampleIdx) {
+        if (genotypeColumns[variantIdx] == null) {
+            genotypeColumns[variantIdx] = getGenotypeColumn(variantIdx);
+        }
+        Genotype genotype = genotypeColumns[variantIdx][sampleIdx];
+        return genotype == null ? null : new VCFGenotype(genotype);
+    }
+
+    public synchronized int getGQ(int variantIdx, int sampleIdx) {
+        if (gqColumns[variantIdx] == null) {
+            decodeAttributes(variantIdx);
+        }
+        return gqColumns[variantIdx][sampleIdx];
+    }
+
+    public synchronized int getDP(int variantIdx, int sampleIdx) {
+        if (dpColumns[variantIdx] == null) {
+            decodeAttributes(variantIdx);
+        }
+        return dpColumns[variantIdx][sampleIdx];
+    }
+
+    /**
+     * @return the allelic depths for a cell, or null if not recorded
+     */
+    public synchronized int[] getAD(int variantIdx, int sampleIdx) {
+        if (adColumns[variantIdx] == null) {
+            decodeAttributes(variantIdx);
+        }
+        return adColumns[variantIdx][sampleIdx];
+    }
+
+    private void decodeAttributes(int variantIdx) {
+        Genotype[] column = genotypeColumns[variantIdx];
+        if (column == null) {
+            column = getGenotypeColumn(variantIdx);
+        }
+        int nSamples = samples.size();
+        int[] gq = new int[nSamples];
+        int[] dp = new int[nSamples];
+        int[][] ad = new int[nSamples][];
+        for (int s = 0; s < nSamples; s++) {
+            Genotype genotype = column[s];
+            gq[s] = genotype != null && genotype.hasGQ() ? genotype.getGQ() : MISSING;
+            dp[s] = genotype != null && genotype.hasDP() ? genotype.getDP() : MISSING;
+            ad[s] = genotype != null && genotype.hasAD() ? genotype.getAD() : null;
+        }
+        gqColumns[variantIdx] = gq;
+        dpColumns[variantIdx] = dp;
+        adColumns[variantIdx] = ad;
+    }
+
+    /**
+     * Return the genotypes of a variant in sample order.  Genotypes are normally in the same order for every
+     * variant, we only fall back to lookup by name if they are not.
+     */
+    private Genotype[] getGenotypeColumn(int variantIdx) {
+        GenotypesContext genotypes = variants.get(variantIdx).getVariantContext().getGenotypes();
+        int nSamples = samples.size();
+        Genotype[] column = new Genotype[nSamples];
+        boolean ordered = genotypes.size() == nSamples;
+        for (int s = 0; s < nSamples && ordered; s++) {
+            Genotype genotype = genotypes.get(s);
+            if (samples.get(s).equals(genotype.getSampleName())) {
+                column[s] = genotype;
+            } else {
+                ordered = false;
+            }
+        }
+        if (!ordered) {
+            for (int s = 0; s < nSamples; s++) {
+                column[s] = genotypes.get(samples.get(s));
+            }
+        }
+        return column;
+    }
+
+    public static byte toCode(GenotypeType type) {
+        switch (type) {
+            case NO_CALL:
+                return NO_CALL;
+            case HOM_REF:
+                return HOM_REF;
+            case HET:
+                return HET;
+            case HOM_VAR:
+                return HOM_VAR;
+            case MIXED:
+                return MIXED;
+            default:
+                return UNAVAILABLE;
+        }
+    }
+}
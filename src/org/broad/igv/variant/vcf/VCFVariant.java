@@ -16,6 +16,7 @@ import org.broad.igv.variant.Allele;
 import org.broad.igv.variant.Genotype;
 import org.broad.igv.variant.Variant;
 import org.broad.igv.variant.VariantTrack;
+import org.broadinstitute.variant.variantcontext.GenotypeType;
 import org.broadinstitute.variant.variantcontext.VariantContext;
 import org.broadinstitute.variant.variantcontext.VariantContextBuilder;
 
@@ -38,32 +39,34 @@ public class VCFVariant implements Variant {
     private double methylationRate = Double.NaN;  // <= signals unknown / not applicable
     private double coveredSampleFraction = Double.NaN;
 
-    Map<String, VCFGenotype> genotypeMap;
-
     private int start = -1;
 
+    /**
+     * Decoder for genotypes deferred by the codec, null if genotypes were decoded by the codec.
+     */
+    private GenotypeDecoder genotypeDecoder;
+    private boolean genotypesDecoded;
+
     public VCFVariant(VariantContext variantContext, String chr) {
+        this(variantContext, chr, null);
+    }
+
+    /**
+     * @param variantContext
+     * @param chr
+     * @param genotypeDecoder decoder for genotypes which have not been parsed yet, or null.  Genotypes are decoded
+     *                        on first access, site level fields do not require them.
+     */
+    public VCFVariant(VariantContext variantContext, String chr, GenotypeDecoder genotypeDecoder) {
         this.variantContext = variantContext;
         this.chr = chr;
+        this.genotypeDecoder = genotypeDecoder;
+        this.genotypesDecoded = genotypeDecoder == null;
         init();
     }
 
     private void init() {
 
-        // Copy the genotype map.  Calls to variantContext.getGenotype() are expensive
-        genotypeMap = new HashMap<String, VCFGenotype>();
-        for (String sample : getSampleNames()) {
-            org.broadinstitute.variant.variantcontext.Genotype genotype = variantContext.getGenotype(sample);
-            VCFGenotype vcfGenotype = genotype == null ? null : new VCFGenotype(genotype);
-            genotypeMap.put(sample, vcfGenotype);
-        }
-
-        zygosityCount = new ZygosityCount();
-        for (String sample : getSampleNames()) {
-            Genotype genotype = getGenotype(sample);
-            zygosityCount.incrementCount(genotype);
-        }
-
         String afString = null;
         String[] alleleFreqKeys = {"AF", "GMAF"};
         try {
@@ -96,17 +99,52 @@ public class VCFVariant implements Variant {
         return result;
     }
 
+    /**
+     * Decode the genotypes, if they were deferred by the codec.
+     */
+    private synchronized void decodeGenotypes() {
+        if (!genotypesDecoded) {
+            variantContext = genotypeDecoder.decodeGenotypes(variantContext);
+            genotypesDecoded = true;
+        }
+    }
+
+    /**
+     * @return true if the genotypes have been parsed.  Site level fields are always available.
+     */
+    public synchronized boolean isGenotypesDecoded() {
+        return genotypesDecoded;
+    }
+
+    /**
+     * Count genotypes by iterating over them in order.  Genotypes are not copied, lookups by sample name are
+     * expensive and a per-variant map is prohibitive for files with thousands of samples.  Renderers should
+     * use a GenotypeMatrix.
+     */
+    private synchronized ZygosityCount getZygosityCount() {
+        if (zygosityCount == null) {
+            decodeGenotypes();
+            ZygosityCount counts = new ZygosityCount();
+            for (org.broadinstitute.variant.variantcontext.Genotype genotype : variantContext.getGenotypes()) {
+                counts.incrementCount(genotype.getType());
+            }
+            zygosityCount = counts;
+        }
+        return zygosityCount;
+    }
+
     /**
      * Compute the average methylation rate for those samples with data (i.e. with methylation rate recorded).
      */
     private void computeMethylationRate() {
 
+        decodeGenotypes();
         double methTotal = 0;
         int samplesWithData = 0;
         final int size = getSampleNames().size();
         if (size > 0) {
-            for (String sample : getSampleNames()) {
-                Genotype genotype = getGenotype(sample);
+            for (org.broadinstitute.variant.variantcontext.Genotype g : variantContext.getGenotypes()) {
+                Genotype genotype = new VCFGenotype(g);
                 double mr = genotype.getAttributeAsDouble("MR");
                 double goodBaseCount = genotype.getAttributeAsDouble("MR");
                 if (!Double.isNaN(mr) && !Double.isNaN(goodBaseCount) && goodBaseCount > VariantTrack.METHYLATION_MIN_BASE_COUNT) {
@@ -195,6 +233,7 @@ public class VCFVariant implements Variant {
     }
 
     public Collection<String> getSampleNames() {
+        decodeGenotypes();
         return variantContext.getSampleNames();
     }
 
@@ -204,7 +243,9 @@ public class VCFVariant implements Variant {
 
     @Override
     public Genotype getGenotype(String sample) {
-        return genotypeMap.get(sample);
+        decodeGenotypes();
+        org.broadinstitute.variant.variantcontext.Genotype genotype = variantContext.getGenotype(sample);
+        return genotype == null ? null : new VCFGenotype(genotype);
     }
 
     public Collection<String> getFilters() {
@@ -213,22 +254,22 @@ public class VCFVariant implements Variant {
 
     @Override
     public int getHomVarCount() {
-        return zygosityCount.getHomVar();
+        return getZygosityCount().getHomVar();
     }
 
     @Override
     public int getHetCount() {
-        return zygosityCount.getHet();
+        return getZygosityCount().getHet();
     }
 
     @Override
     public int getHomRefCount() {
-        return zygosityCount.getHomRef();
+        return getZygosityCount().getHomRef();
     }
 
     @Override
     public int getNoCallCount() {
-        return zygosityCount.getNoCall();
+        return getZygosityCount().getNoCall();
     }
 
     @Override
@@ -268,7 +309,11 @@ public class VCFVariant implements Variant {
         return variantContext.getSource();
     }
 
+    /**
+     * @return the wrapped variant context, with genotypes decoded
+     */
     public VariantContext getVariantContext() {
+        decodeGenotypes();
         return variantContext;
     }
 
@@ -286,6 +331,22 @@ public class VCFVariant implements Variant {
         }
     }
 
+    /**
+     * Decodes genotypes which the codec deferred, to avoid parsing sample columns for views which only show sites.
+     *
+     * @see org.broad.igv.feature.tribble.VCFWrapperCodec
+     * @see org.broad.igv.feature.tribble.BCF2WrapperCodec
+     */
+    public interface GenotypeDecoder {
+
+        /**
+         * Decode the genotypes of a variant context.
+         *
+         * @return the variant context, or a replacement if it had to be decoded again
+         */
+        VariantContext decodeGenotypes(VariantContext variantContext);
+    }
+
     /**
      * @author Jim Robinson
      * @date Aug 1, 2011
@@ -310,6 +371,22 @@ public class VCFVariant implements Variant {
             }
         }
 
+        public void incrementCount(GenotypeType type) {
+            switch (type) {
+                case HOM_VAR:
+                    homVar++;
+                    break;
+                case HET:
+                    het++;
+                    break;
+                case HOM_REF:
+                    homRef++;
+                    break;
+                default:
+                    noCall++;
+            }
+        }
+
         public int getHomVar() {
             return homVar;
         }
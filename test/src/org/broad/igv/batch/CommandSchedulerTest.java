@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.batch;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.*;
+
+public class CommandSchedulerTest {
+
+    @Test
+    public void testGetPolicy() throws Exception {
+        assertEquals(CommandScheduler.Policy.SHARED, CommandScheduler.getPolicy("load test.bam"));
+        assertEquals(CommandScheduler.Policy.SHARED, CommandScheduler.getPolicy("load \"a file.bed\" name=test"));
+        assertEquals(CommandScheduler.Policy.EXCLUSIVE, CommandScheduler.getPolicy("load session.xml"));
+        assertEquals(CommandScheduler.Policy.EXCLUSIVE, CommandScheduler.getPolicy("load test.bam merge=false"));
+        assertEquals(CommandScheduler.Policy.EXCLUSIVE, CommandScheduler.getPolicy("goto chr1:1-100"));
+        assertEquals(CommandScheduler.Policy.EXCLUSIVE, CommandScheduler.getPolicy("snapshot"));
+        assertEquals(CommandScheduler.Policy.SHARED, CommandScheduler.getPolicy("snapshotregions regions.bed svg"));
+        assertEquals(CommandScheduler.Policy.EXCLUSIVE, CommandScheduler.getPolicy("genome hg18"));
+        assertEquals(CommandScheduler.Policy.EXCLUSIVE, CommandScheduler.getPolicy("preference SAM.MAX_VISIBLE_RANGE 100"));
+        assertEquals(CommandScheduler.Policy.EXCLUSIVE, CommandScheduler.getPolicy("new"));
+        assertEquals(CommandScheduler.Policy.NONE, CommandScheduler.getPolicy("echo"));
+        assertEquals(CommandScheduler.Policy.NONE, CommandScheduler.getPolicy(""));
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("file", "test.bam");
+        assertEquals(CommandScheduler.Policy.SHARED, CommandListener.getPolicy("/load", params));
+        params.put("locus", "chr1:1-100");
+        assertEquals(CommandScheduler.Policy.EXCLUSIVE, CommandListener.getPolicy("/load", params));
+        assertEquals(CommandScheduler.Policy.EXCLUSIVE, CommandListener.getPolicy("/goto", params));
+    }
+
+    /**
+     * Shared commands run in parallel, exclusive commands run alone
+     */
+    @Test
+    public void testPolicy() throws Exception {
+
+        final CommandScheduler scheduler = new CommandScheduler();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxShared = new AtomicInteger();
+        final AtomicInteger exclusiveOverlaps = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (int i = 0; i < 40; i++) {
+            final CommandScheduler.Policy policy = i % 4 == 0 ?
+                    CommandScheduler.Policy.EXCLUSIVE : CommandScheduler.Policy.SHARED;
+            futures.add(pool.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return scheduler.execute(policy, new Callable<String>() {
+                        public String call() throws Exception {
+                            int n = running.incrementAndGet();
+                            if (policy == CommandScheduler.Policy.EXCLUSIVE && n > 1) {
+                                exclusiveOverlaps.incrementAndGet();
+                            }
+                            synchronized (maxShared) {
+                                maxShared.set(Math.max(maxShared.get(), n));
+                            }
+                            Thread.sleep(20);
+                            running.decrementAndGet();
+                            return "OK";
+                        }
+                    });
+                }
+            }));
+        }
+        for (Future<String> future : futures) {
+            assertEquals("OK", future.get(30, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        assertEquals(0, exclusiveOverlaps.get());
+        assertTrue(maxShared.get() > 1);
+        assertEquals(0, scheduler.getQueueDepth());
+        assertEquals(0, scheduler.getRunningCount());
+        String status = scheduler.getStatus();
+        assertTrue(status, status.startsWith("queued=0 running=0"));
+        assertTrue(status, status.contains("shared: count=30"));
+        assertTrue(status, status.contains("exclusive: count=10"));
+    }
+
+    @Test
+    public void testException() throws Exception {
+        CommandScheduler scheduler = new CommandScheduler();
+        try {
+            scheduler.execute(CommandScheduler.Policy.EXCLUSIVE, new Callable<String>() {
+                public String call() throws Exception {
+                    throw new IllegalStateException("test");
+                }
+            });
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        // The lock is released
+        assertEquals("OK", scheduler.execute(CommandScheduler.Policy.EXCLUSIVE, new Callable<String>() {
+            public String call() throws Exception {
+                return "OK";
+            }
+        }));
+    }
+}
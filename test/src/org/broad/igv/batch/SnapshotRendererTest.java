@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.batch;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.feature.RegionOfInterest;
+import org.broad.igv.track.Track;
+import org.broad.igv.track.TrackLoader;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static junit.framework.Assert.*;
+
+public class SnapshotRendererTest extends AbstractHeadlessTest {
+
+    @Test
+    public void testReadRegions() throws Exception {
+
+        File regionsFile = new File(TestUtils.DATA_DIR, "out/regions.bed");
+        PrintWriter pw = new PrintWriter(new FileWriter(regionsFile));
+        pw.println("#comment");
+        pw.println("track name=regions");
+        pw.println("chr2\t178707289\t178707561\tHs.666133");
+        pw.println("chr2:178709700-178711955");
+        pw.close();
+
+        List<RegionOfInterest> regions = SnapshotRenderer.readRegions(regionsFile.getPath());
+        assertEquals(2, regions.size());
+        assertEquals(178707289, regions.get(0).getStart());
+        assertEquals("Hs.666133", regions.get(0).getDescription());
+        assertEquals(178709699, regions.get(1).getStart());
+        assertEquals(178711955, regions.get(1).getEnd());
+
+        File directory = new File(TestUtils.DATA_DIR, "out");
+        assertEquals("Hs.666133.png", SnapshotRenderer.getFile(regions.get(0), directory, "png").getName());
+        assertEquals("chr2_178709700_178711955.svg",
+                SnapshotRenderer.getFile(regions.get(1), directory, "svg").getName());
+
+        pw = new PrintWriter(new FileWriter(regionsFile));
+        pw.println("chr2 start end");
+        pw.close();
+        try {
+            SnapshotRenderer.readRegions(regionsFile.getPath());
+            fail("Expected an error parsing the regions file");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testRender() throws Exception {
+
+        String path = TestUtils.DATA_DIR + "bed/Unigene.sample.bed";
+        List<Track> tracks = new TrackLoader().load(new ResourceLocator(path), genome);
+
+        // More regions than the pipeline window
+        List<RegionOfInterest> regions = new ArrayList<RegionOfInterest>();
+        for (int i = 0; i < 20; i++) {
+            int start = 178700000 + i * 5000;
+            regions.add(new RegionOfInterest("chr2", start, start + 10000, null));
+        }
+
+        File directory = new File(TestUtils.DATA_DIR, "out");
+        int width = 400;
+        SnapshotRenderer renderer = new SnapshotRenderer(tracks, width, genome);
+        List<File> files = renderer.render(regions, directory, "png");
+        assertEquals(regions.size(), files.size());
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            assertEquals(SnapshotRenderer.getFile(regions.get(i), directory, "png"), file);
+            BufferedImage image = ImageIO.read(file);
+            assertEquals(SnapshotRenderer.NAME_PANEL_WIDTH + width, image.getWidth());
+        }
+
+        files = renderer.render(regions.subList(0, 2), directory, "svg");
+        for (File file : files) {
+            assertTrue(file.length() > 0);
+        }
+    }
+
+    /**
+     * Snapshots rendered with data loaded ahead must match snapshots rendered one region at a time
+     */
+    @Test
+    public void testRenderMatchesSerial() throws Exception {
+
+        List<Track> tracks = loadTracks();
+        List<RegionOfInterest> regions = createRegions(178700000);
+
+        File parallelDirectory = new File(TestUtils.DATA_DIR, "out/parallel");
+        parallelDirectory.mkdirs();
+
+        SnapshotRenderer renderer = new SnapshotRenderer(tracks, 400, genome);
+        List<File> files = renderer.render(regions, parallelDirectory, "png");
+        assertMatchesSerial(renderer, regions, files);
+    }
+
+    /**
+     * Renderers of concurrent batch clients share the tracks, but must not share frames
+     */
+    @Test
+    public void testConcurrentRenderers() throws Exception {
+
+        List<Track> tracks = loadTracks();
+        final SnapshotRenderer renderer = new SnapshotRenderer(tracks, 400, genome);
+        final List<RegionOfInterest> regions1 = createRegions(178700000);
+        final List<RegionOfInterest> regions2 = createRegions(178730000);
+        final File directory1 = new File(TestUtils.DATA_DIR, "out/client1");
+        final File directory2 = new File(TestUtils.DATA_DIR, "out/client2");
+        directory1.mkdirs();
+        directory2.mkdirs();
+
+        ExecutorService clients = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<File>> files1 = clients.submit(new Callable<List<File>>() {
+                public List<File> call() throws Exception {
+                    return renderer.render(regions1, directory1, "png");
+                }
+            });
+            Future<List<File>> files2 = clients.submit(new Callable<List<File>>() {
+                public List<File> call() throws Exception {
+                    return renderer.render(regions2, directory2, "png");
+                }
+            });
+            assertMatchesSerial(renderer, regions1, files1.get());
+            assertMatchesSerial(renderer, regions2, files2.get());
+        } finally {
+            clients.shutdown();
+        }
+    }
+
+    @Test
+    public void testRendererIds() throws Exception {
+        int id1 = SnapshotRenderer.acquireId();
+        int id2 = SnapshotRenderer.acquireId();
+        assertTrue(id1 != id2);
+        SnapshotRenderer.releaseId(id1);
+        assertEquals(id1, SnapshotRenderer.acquireId());
+        SnapshotRenderer.releaseId(id1);
+        SnapshotRenderer.releaseId(id2);
+    }
+
+    private List<Track> loadTracks() {
+        List<Track> tracks = new ArrayList<Track>();
+        tracks.addAll(new TrackLoader().load(new ResourceLocator(TestUtils.DATA_DIR + "bed/Unigene.sample.bed"), genome));
+        tracks.addAll(new TrackLoader().load(new ResourceLocator(TestUtils.DATA_DIR + "bed/Unigene.sample.bed"), genome));
+        return tracks;
+    }
+
+    /**
+     * Regions are far enough apart that data cached for one region is never reused for another
+     */
+    private List<RegionOfInterest> createRegions(int offset) {
+        List<RegionOfInterest> regions = new ArrayList<RegionOfInterest>();
+        for (int i = 0; i < 20; i++) {
+            int start = offset + i * 60000;
+            regions.add(new RegionOfInterest("chr2", start, start + 10000 + i * 1000, "region" + i));
+        }
+        return regions;
+    }
+
+    private void assertMatchesSerial(SnapshotRenderer renderer, List<RegionOfInterest> regions, List<File> files)
+            throws Exception {
+
+        File serialDirectory = new File(TestUtils.DATA_DIR, "out/serial");
+        serialDirectory.mkdirs();
+
+        assertEquals(regions.size(), files.size());
+        for (int i = 0; i < regions.size(); i++) {
+            File serialFile = renderer.render(regions.subList(i, i + 1), serialDirectory, "png").get(0);
+            BufferedImage expected = ImageIO.read(serialFile);
+            BufferedImage image = ImageIO.read(files.get(i));
+            assertEquals(expected.getWidth(), image.getWidth());
+            assertEquals(expected.getHeight(), image.getHeight());
+            for (int x = 0; x < image.getWidth(); x++) {
+                for (int y = 0; y < image.getHeight(); y++) {
+                    assertEquals("Pixel " + x + "," + y + " of " + files.get(i).getName(),
+                            expected.getRGB(x, y), image.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownChromosome() throws Exception {
+
+        List<RegionOfInterest> regions = new ArrayList<RegionOfInterest>();
+        regions.add(new RegionOfInterest("noSuchChr", 0, 1000, null));
+        SnapshotRenderer renderer = new SnapshotRenderer(new ArrayList<Track>(), 400, genome);
+        try {
+            renderer.render(regions, new File(TestUtils.DATA_DIR, "out"), "png");
+            fail("Expected an error for an unknown chromosome");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.batch;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.broad.igv.util.StageTimer;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static junit.framework.Assert.*;
+
+public class TimingReportTest {
+
+    @Test
+    public void testReport() throws Exception {
+
+        TimingReport report = new TimingReport("report.csv");
+        StageTimer.setEnabled(true);
+        try {
+            report.start();
+            StageTimer.push(StageTimer.Stage.PAINT);
+            Thread.sleep(20);
+            StageTimer.pop();
+            report.end("snapshot a,b.png", "OK");
+
+            report.start();
+            report.end("echo", "echo");
+        } finally {
+            StageTimer.setEnabled(false);
+        }
+
+        TimingReport.Entry entry = report.getEntries().get(0);
+        assertTrue(entry.wall >= entry.stages[StageTimer.Stage.PAINT.ordinal()]);
+        assertTrue(entry.stages[StageTimer.Stage.PAINT.ordinal()] >= 20e6);
+
+        StringWriter csv = new StringWriter();
+        report.writeCSV(new PrintWriter(csv));
+        String[] lines = csv.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("command,result,wall_ms,sequence_ms,index_ms,io_ms,decode_ms,pack_ms,paint_ms"));
+        assertTrue(lines[1].startsWith("\"snapshot a,b.png\",OK,"));
+        assertEquals(9, lines[2].split(",").length);
+        assertTrue(lines[3].startsWith("total,"));
+
+        StringWriter json = new StringWriter();
+        report.writeJSON(new PrintWriter(json));
+        JsonObject root = new JsonParser().parse(json.toString()).getAsJsonObject();
+        assertEquals(2, root.getAsJsonArray("commands").size());
+        JsonObject first = root.getAsJsonArray("commands").get(0).getAsJsonObject();
+        assertEquals("snapshot a,b.png", first.get("command").getAsString());
+        assertTrue(first.getAsJsonObject("stagesMs").get("paint").getAsDouble() >= 20);
+        assertNotNull(root.getAsJsonObject("total").get("wallMs"));
+    }
+}
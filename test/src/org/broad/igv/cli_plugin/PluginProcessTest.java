@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.cli_plugin;
+
+import org.broad.igv.track.FeatureTrack;
+import org.broad.igv.track.TrackLoader;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.broad.tribble.Feature;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.*;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Tools reading features from standard input, run once per query or kept running between queries
+ */
+public class PluginProcessTest extends AbstractPluginTest {
+
+    /**
+     * Echo input lines, flushing each line
+     */
+    private static final String ECHO_SCRIPT = "while IFS= read -r line; do echo \"$line\"; done";
+
+    private FeatureTrack track;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        pluginPath = TestUtils.DATA_DIR + "cli_plugin/stdin_plugin.xml";
+        AbstractPluginTest.setUpClass();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        String testFile = TestUtils.DATA_DIR + "bed/Unigene.sample.bed";
+        track = (FeatureTrack) (new TrackLoader()).load(new ResourceLocator(testFile), genome).get(0);
+    }
+
+    private PluginFeatureSource getSource(String commandName, String script) {
+        PluginSpecReader.Command command = null;
+        for (PluginSpecReader.Command curCmd : tool.commandList) {
+            if (curCmd.name.equals(commandName)) {
+                command = curCmd;
+            }
+        }
+        LinkedHashMap<Argument, Object> arguments = new LinkedHashMap<Argument, Object>();
+        arguments.put(command.argumentList.get(0), script);
+        arguments.put(command.argumentList.get(1), track);
+        return new PluginFeatureSource(Arrays.asList(toolPath), arguments, command.outputList.get(0), pluginPath);
+    }
+
+    private static List<Feature> getFeatures(PluginFeatureSource source, String chr) throws Exception {
+        List<Feature> features = new ArrayList<Feature>();
+        Iterator<Feature> iter = source.getFeatures(chr, 0, Integer.MAX_VALUE);
+        while (iter.hasNext()) {
+            features.add(iter.next());
+        }
+        return features;
+    }
+
+    private void assertSameFeatures(String chr, List<Feature> actual) {
+        List<Feature> expected = track.getFeatures(chr, 0, Integer.MAX_VALUE);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getStart(), actual.get(i).getStart());
+            assertEquals(expected.get(i).getEnd(), actual.get(i).getEnd());
+        }
+    }
+
+    @Test
+    public void testStdin() throws Exception {
+
+        PluginFeatureSource source = getSource("Run", "cat");
+        List<Feature> features = getFeatures(source, "chr2");
+        assertEquals(72, features.size());
+        assertSameFeatures("chr2", features);
+
+        // The tool does not read all of its input
+        source = getSource("Run", "head -n 5");
+        assertEquals(5, getFeatures(source, "chr2").size());
+    }
+
+    @Test
+    public void testPersistent() throws Exception {
+
+        PluginFeatureSource source = getSource("Run persistent", ECHO_SCRIPT);
+        for (String chr : new String[]{"chr2", "chr1", "chr2"}) {
+            source.clearResultCache();
+            assertSameFeatures(chr, getFeatures(source, chr));
+        }
+    }
+
+    @Test
+    public void testResultCache() throws Exception {
+
+        // Output differs for each run
+        PluginFeatureSource source = getSource("Run", "head -n 1; date +%N | awk '{print \"chr2\\t\" $1 \"\\t\" $1+1}'");
+        List<Feature> first = getFeatures(source, "chr2");
+        assertEquals(2, first.size());
+        List<Feature> second = getFeatures(source, "chr2");
+        assertEquals(first.get(1).getStart(), second.get(1).getStart());
+
+        source.clearResultCache();
+        assertFalse(first.get(1).getStart() == getFeatures(source, "chr2").get(1).getStart());
+
+        // Another source with the same track does not share results
+        PluginFeatureSource other = getSource("Run", "head -n 1; date +%N | awk '{print \"chr2\\t\" $1 \"\\t\" $1+1}'");
+        assertFalse(first.get(1).getStart() == getFeatures(other, "chr2").get(1).getStart());
+    }
+
+    @Test
+    public void testResultCacheInput() throws Exception {
+
+        final List<Feature> input = new ArrayList<Feature>(track.getFeatures("chr2", 0, Integer.MAX_VALUE));
+        track = new FeatureTrack("input", "input") {
+            @Override
+            public List<Feature> getFeatures(String chr, int start, int end) {
+                return new ArrayList<Feature>(input);
+            }
+        };
+        PluginFeatureSource source = getSource("Run", "cat");
+        assertEquals(72, getFeatures(source, "chr2").size());
+
+        // The input features changed, the cached results must not be used
+        input.remove(0);
+        assertSameFeatures("chr2", getFeatures(source, "chr2"));
+        assertEquals(71, getFeatures(source, "chr2").size());
+    }
+
+    @Test
+    public void testDelimitedInputStream() throws Exception {
+
+        InputStream is = new ByteArrayInputStream("a\nbb\r\n#END\nc\n#END\n".getBytes());
+        PluginProcess.DelimitedInputStream first = new PluginProcess.DelimitedInputStream(is, "#END");
+        byte[] buffer = new byte[100];
+        int n = 0;
+        int count;
+        while ((count = first.read(buffer, n, buffer.length - n)) > 0) {
+            n += count;
+        }
+        assertEquals("a\nbb\r\n", new String(buffer, 0, n));
+        assertEquals(-1, first.read());
+
+        PluginProcess.DelimitedInputStream second = new PluginProcess.DelimitedInputStream(is, "#END");
+        assertEquals('c', second.read());
+        second.close();
+        assertEquals(-1, is.read());
+    }
+}
@@ -16,6 +16,7 @@
 package org.broad.igv.data;
 
 import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.exceptions.ParserException;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.TestUtils;
 import org.junit.Test;
@@ -25,8 +26,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 /**
  * @author jrobinso
@@ -110,5 +110,49 @@ public class IGVDatasetTest extends AbstractHeadlessTest {
 
     }
 
+    /**
+     * Test that scanning in small blocks, which are parsed in parallel, gives the same dataset as a single block
+     */
+    @Test
+    public void testScanBlocks() {
+        String path = TestUtils.DATA_DIR + "cn/HindForGISTIC.hg16.cn";
+        int blockSize = IGVDatasetParser.scanBlockSize;
+        IGVDataset expected;
+        IGVDataset actual;
+        try {
+            IGVDatasetParser.scanBlockSize = 100000000;
+            expected = new IGVDataset(new ResourceLocator(path), genome);
+            IGVDatasetParser.scanBlockSize = 10000;
+            actual = new IGVDataset(new ResourceLocator(path), genome);
+        } finally {
+            IGVDatasetParser.scanBlockSize = blockSize;
+        }
+
+        assertEquals(expected.getDataMin(), actual.getDataMin(), 0);
+        assertEquals(expected.getDataMax(), actual.getDataMax(), 0);
+        assertEquals(expected.isLogNormalized(), actual.isLogNormalized());
+        assertArrayEquals(expected.getChromosomes(), actual.getChromosomes());
+        assertArrayEquals(expected.getTrackNames(), actual.getTrackNames());
+        for (String chr : expected.getChromosomes()) {
+            assertEquals(expected.getLongestFeature(chr), actual.getLongestFeature(chr));
+            assertArrayEquals(expected.getStartLocations(chr), actual.getStartLocations(chr));
+            assertArrayEquals(expected.getFeatureNames(chr), actual.getFeatureNames(chr));
+            for (String track : expected.getTrackNames()) {
+                assertArrayEquals(expected.getData(track, chr), actual.getData(track, chr), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testUnsorted() {
+        try {
+            new IGVDataset(new ResourceLocator(TestUtils.DATA_DIR + "cn/1klines.cn"), genome);
+            fail("Expected ParserException");
+        } catch (ParserException e) {
+            // rs6455 on chr6 is before the preceding chr6 snp
+            assertEquals(9, e.getLineNumber());
+        }
+    }
+
 
 }
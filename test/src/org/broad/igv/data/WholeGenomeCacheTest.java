@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.data;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.data.seg.Segment;
+import org.broad.igv.data.seg.SegmentFileParser;
+import org.broad.igv.data.seg.SegmentedAsciiDataSet;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.tdf.TDFReader;
+import org.broad.igv.tdf.TDFTile;
+import org.broad.igv.track.WindowFunction;
+import org.broad.igv.util.FileUtils;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.*;
+
+public class WholeGenomeCacheTest extends AbstractHeadlessTest {
+
+    private static final String SEG_PATH = TestUtils.DATA_DIR + "seg/canFam2_hg18.seg";
+    private static final String TDF_PATH = TestUtils.DATA_DIR + "tdf/wholeGenomeTest.tdf";
+
+    /**
+     * Cache files are written to the output directory, which is cleared after each test
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        File outDir = new File(TestUtils.DATA_DIR, "out");
+        outDir.mkdirs();
+        WholeGenomeCache.cacheDirectory = outDir;
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+
+        File cacheFile = WholeGenomeCache.getCacheFile(SEG_PATH, genome, "test");
+        assertNotNull(cacheFile);
+        assertNull(WholeGenomeCache.read(cacheFile));
+
+        Map<String, WholeGenomeCache.Scores> scores = new LinkedHashMap<String, WholeGenomeCache.Scores>();
+        WholeGenomeCache.Scores s1 = new WholeGenomeCache.Scores(3, true);
+        for (int i = 0; i < 3; i++) {
+            s1.starts[i] = i * 10;
+            s1.ends[i] = i * 10 + 5;
+            s1.values[i] = i * 0.5f;
+        }
+        s1.descriptions[1] = "description";
+        scores.put("s1", s1);
+        scores.put("s2", new WholeGenomeCache.Scores(0, false));
+        WholeGenomeCache.write(cacheFile, scores);
+
+        Map<String, WholeGenomeCache.Scores> actual = WholeGenomeCache.read(cacheFile);
+        assertNotNull(actual);
+        assertEquals(2, actual.size());
+        WholeGenomeCache.Scores a1 = actual.get("s1");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(s1.starts[i], a1.starts[i]);
+            assertEquals(s1.ends[i], a1.ends[i]);
+            assertEquals(s1.values[i], a1.values[i]);
+        }
+        assertNull(a1.descriptions[0]);
+        assertEquals("description", a1.descriptions[1]);
+        assertEquals(0, actual.get("s2").size());
+        assertNull(actual.get("s2").descriptions);
+    }
+
+    @Test
+    public void testCacheFile() throws Exception {
+
+        File cacheFile = WholeGenomeCache.getCacheFile(SEG_PATH, genome, "seg");
+        assertEquals(cacheFile, WholeGenomeCache.getCacheFile(SEG_PATH, genome, "seg"));
+        assertFalse(cacheFile.equals(WholeGenomeCache.getCacheFile(SEG_PATH, genome, "tdf_mean")));
+        assertFalse(cacheFile.equals(WholeGenomeCache.getCacheFile(TDF_PATH, genome, "seg")));
+
+        assertNull(WholeGenomeCache.getCacheFile(SEG_PATH, null, "seg"));
+        assertNull(WholeGenomeCache.getCacheFile("http://www.example.com/test.seg", genome, "seg"));
+        assertNull(WholeGenomeCache.getCacheFile(TestUtils.DATA_DIR + "noSuchFile.seg", genome, "seg"));
+    }
+
+    /**
+     * Editing a file, even without changing its length or sampled bytes, changes its cache file
+     */
+    @Test
+    public void testModifiedFile() throws Exception {
+
+        File segFile = new File(TestUtils.DATA_DIR, "out/modified.seg");
+        FileUtils.copyFile(new File(SEG_PATH), segFile);
+        File cacheFile = WholeGenomeCache.getCacheFile(segFile.getPath(), genome, "seg");
+        assertNotNull(cacheFile);
+
+        assertTrue(segFile.setLastModified(segFile.lastModified() - 60000));
+        assertFalse(cacheFile.equals(WholeGenomeCache.getCacheFile(segFile.getPath(), genome, "seg")));
+    }
+
+    @Test
+    public void testSegmentedScores() throws Exception {
+
+        ResourceLocator locator = new ResourceLocator(SEG_PATH);
+        SegmentedAsciiDataSet expected = (new SegmentFileParser(locator)).loadSegments(locator, genome);
+        expected.initWholeGenomeScores(SEG_PATH);
+        // Wait for the cache file to be written
+        WholeGenomeCache.submit(new Runnable() {
+            public void run() {
+            }
+        }).get();
+        assertTrue(WholeGenomeCache.getCacheFile(SEG_PATH, genome, "seg").exists());
+
+        SegmentedAsciiDataSet actual = (new SegmentFileParser(locator)).loadSegments(locator, genome);
+        actual.initWholeGenomeScores(SEG_PATH);
+        WholeGenomeCache.submit(new Runnable() {
+            public void run() {
+            }
+        }).get();
+
+        for (String sample : expected.getSampleNames()) {
+            List<LocusScore> expectedScores = expected.getWholeGenomeScores(sample);
+            List<LocusScore> actualScores = actual.getWholeGenomeScores(sample);
+            assertEquals(expectedScores.size(), actualScores.size());
+            for (int i = 0; i < expectedScores.size(); i++) {
+                Segment e = (Segment) expectedScores.get(i);
+                Segment a = (Segment) actualScores.get(i);
+                assertEquals(e.getStart(), a.getStart());
+                assertEquals(e.getEnd(), a.getEnd());
+                assertEquals(e.getScore(), a.getScore());
+                assertEquals(e.getDescription(), a.getDescription());
+            }
+        }
+    }
+
+    @Test
+    public void testTDFTile() throws Exception {
+
+        TDFReader reader = TDFReader.getReader(TDF_PATH);
+        TDFTile expected = reader.getWholeGenomeTile(genome, WindowFunction.mean);
+        assertTrue(WholeGenomeCache.getCacheFile(TDF_PATH, genome, "tdf_mean").exists());
+        assertFalse(WholeGenomeCache.getCacheFile(TDF_PATH, genome, "tdf_max").exists());
+
+        TDFTile actual = TDFReader.getReader(TDF_PATH).getWholeGenomeTile(genome, WindowFunction.mean);
+        assertEquals(expected.getSize(), actual.getSize());
+        for (int i = 0; i < expected.getSize(); i++) {
+            assertEquals(expected.getStartPosition(i), actual.getStartPosition(i));
+            assertEquals(expected.getEndPosition(i), actual.getEndPosition(i));
+            assertEquals(expected.getValue(0, i), actual.getValue(0, i));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.data.seg;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.track.TrackType;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class SegmentedMappedDataSetTest extends AbstractHeadlessTest {
+
+    private static final String SEG_PATH = TestUtils.DATA_DIR + "seg/canFam2_hg18.seg";
+
+    private File binaryFile;
+
+    /**
+     * Convert the test file.  The output directory is cleared after each test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        binaryFile = new File(TestUtils.DATA_DIR, "out/canFam2_hg18" + SegmentedMappedWriter.EXTENSION);
+        SegmentedMappedWriter.convert(SEG_PATH, binaryFile);
+    }
+
+    @Test
+    public void testSegments() throws Exception {
+
+        ResourceLocator locator = new ResourceLocator(SEG_PATH);
+        SegmentedAsciiDataSet expected = (new SegmentFileParser(locator)).loadSegments(locator, genome);
+        SegmentedMappedDataSet actual = new SegmentedMappedDataSet(new ResourceLocator(binaryFile.getPath()), genome);
+
+        assertEquals(expected.getSampleNames(), actual.getSampleNames());
+        assertEquals(expected.getChromosomes(), actual.getChromosomes());
+        assertEquals(TrackType.CNV, actual.getType());
+        assertEquals(expected.isLogNormalized(), actual.isLogNormalized());
+        assertEquals(expected.getDataMin(null), actual.getDataMin(null));
+        assertEquals(expected.getDataMax(null), actual.getDataMax(null));
+
+        for (String sample : expected.getSampleNames()) {
+            for (String chr : expected.getChromosomes()) {
+                List<LocusScore> expectedSegments = expected.getSegments(sample, chr);
+                List<LocusScore> actualSegments = actual.getSegments(sample, chr);
+                if (expectedSegments == null) {
+                    assertNull(actualSegments);
+                    assertEquals(0, actual.getSegmentCount(sample, chr));
+                    continue;
+                }
+                assertEquals(expectedSegments.size(), actualSegments.size());
+                assertEquals(expectedSegments.size(), actual.getSegmentCount(sample, chr));
+                for (int i = 0; i < expectedSegments.size(); i++) {
+                    LocusScore e = expectedSegments.get(i);
+                    LocusScore a = actualSegments.get(i);
+                    assertEquals(e.getStart(), a.getStart());
+                    assertEquals(e.getEnd(), a.getEnd());
+                    assertEquals(e.getScore(), a.getScore());
+                }
+            }
+        }
+        assertNull(actual.getSegments("noSuchSample", "chr1"));
+    }
+
+    @Test
+    public void testWholeGenomeScores() throws Exception {
+
+        SegmentedMappedDataSet ds = new SegmentedMappedDataSet(new ResourceLocator(binaryFile.getPath()), genome);
+
+        for (String sample : ds.getSampleNames()) {
+            List<LocusScore> scores = ds.getWholeGenomeScores(sample);
+            assertNotNull(scores);
+            assertFalse(scores.isEmpty());
+            int lastStart = 0;
+            for (LocusScore score : scores) {
+                assertTrue(score.getStart() >= lastStart);
+                assertTrue(score.getEnd() >= score.getStart());
+                lastStart = score.getStart();
+            }
+        }
+    }
+
+    /**
+     * Adjacent small segments are merged in the whole genome view, segments separated by a gap are not
+     */
+    @Test
+    public void testWholeGenomeGap() throws Exception {
+
+        File segFile = new File(TestUtils.DATA_DIR, "out/wholeGenomeGap.seg");
+        PrintWriter pw = new PrintWriter(new FileWriter(segFile));
+        pw.println("SampleID\tChr\tStart\tEnd\tignore\tValue");
+        pw.println("s1\tchr1\t1000\t2000\t1\t1");
+        pw.println("s1\tchr1\t2000\t3000\t1\t3");
+        pw.println("s1\tchr1\t100000000\t100001000\t1\t5");
+        pw.close();
+
+        File segBinFile = new File(TestUtils.DATA_DIR, "out/wholeGenomeGap" + SegmentedMappedWriter.EXTENSION);
+        SegmentedMappedWriter.convert(segFile.getPath(), segBinFile);
+        SegmentedMappedDataSet ds = new SegmentedMappedDataSet(new ResourceLocator(segBinFile.getPath()), genome);
+
+        List<LocusScore> scores = ds.getWholeGenomeScores("s1");
+        assertEquals(2, scores.size());
+        assertEquals(2.0f, scores.get(0).getScore(), 1.0e-6);
+        assertEquals(genome.getGenomeCoordinate("chr1", 3000), scores.get(0).getEnd());
+        assertEquals(genome.getGenomeCoordinate("chr1", 100000000), scores.get(1).getStart());
+        assertEquals(5.0f, scores.get(1).getScore(), 1.0e-6);
+    }
+}
@@ -22,8 +22,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.Statement;
 
-import static junit.framework.Assert.assertEquals;
-import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.*;
 
 
 /**
@@ -36,6 +35,13 @@ public class DBManagerTest extends AbstractHeadlessTest {
     public void tearDown() throws Exception {
         super.tearDown();
         DBManager.shutdown();
+        DBManager.maxIdleConnections = 4;
+        DBManager.maxIdleTime = 10 * 60 * 1000;
+    }
+
+    private static ResourceLocator getUnigeneLocator() {
+        File dataDir = new File(TestUtils.DATA_DIR);
+        return new ResourceLocator(DBManager.createConnectionURL("sqlite", dataDir.getAbsolutePath(), "sql/unigene.db", null));
     }
 
     static ResultSet getAllFromSQLTable(String path, String table) throws Exception {
@@ -70,4 +76,64 @@ public class DBManagerTest extends AbstractHeadlessTest {
         conn.close();
     }
 
+    @Test
+    public void testConnectionPool() throws Exception {
+        ResourceLocator locator = getUnigeneLocator();
+
+        Connection conn0 = DBManager.getConnection(locator);
+        Connection conn1 = DBManager.getConnection(locator);
+        assertNotSame(conn0, conn1);
+
+        // Released connections stay open and are reused
+        DBManager.releaseConnection(conn0);
+        DBManager.releaseConnection(conn0);
+        assertFalse(conn0.isClosed());
+        assertSame(conn0, DBManager.getConnection(locator));
+        assertNotSame(conn0, DBManager.getConnection(locator));
+
+        // Closing a result set returns its connection
+        Statement st = conn1.createStatement();
+        ResultSet rs = st.executeQuery("SELECT * FROM unigene");
+        DBManager.closeAll(rs);
+        assertFalse(conn1.isClosed());
+        assertSame(conn1, DBManager.getConnection(locator));
+
+        // Connections closed by the caller aren't reused
+        conn1.close();
+        DBManager.releaseConnection(conn1);
+        assertNotSame(conn1, DBManager.getConnection(locator));
+    }
+
+    @Test
+    public void testConnectionPoolLimits() throws Exception {
+        ResourceLocator locator = getUnigeneLocator();
+        DBManager.maxIdleConnections = 1;
+
+        Connection conn0 = DBManager.getConnection(locator);
+        Connection conn1 = DBManager.getConnection(locator);
+        DBManager.releaseConnection(conn0);
+        DBManager.releaseConnection(conn1);
+        assertFalse(conn0.isClosed());
+        assertTrue(conn1.isClosed());
+
+        // Idle too long
+        DBManager.maxIdleTime = -1;
+        assertNotSame(conn0, DBManager.getConnection(locator));
+        assertTrue(conn0.isClosed());
+    }
+
+    @Test
+    public void testDiscardConnection() throws Exception {
+        ResourceLocator locator = getUnigeneLocator();
+
+        Connection conn0 = DBManager.getConnection(locator);
+        Connection conn1 = DBManager.getConnection(locator);
+        DBManager.releaseConnection(conn1);
+
+        // Idle connections released before a failed one are closed with it
+        DBManager.discardConnection(conn0);
+        assertTrue(conn0.isClosed());
+        assertTrue(conn1.isClosed());
+        assertNotSame(conn1, DBManager.getConnection(locator));
+    }
 }
@@ -12,6 +12,7 @@
 package org.broad.igv.dev.db;
 
 import junit.framework.Assert;
+import org.broad.igv.feature.BasicFeature;
 import org.broad.igv.feature.tribble.IGVBEDCodec;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.TestUtils;
@@ -22,10 +23,17 @@ import org.broad.tribble.Feature;
 import org.junit.Test;
 
 import java.io.File;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
 
 public class SQLCodecSourceTest {
 
@@ -88,6 +96,129 @@ public class SQLCodecSourceTest {
         Assert.assertEquals(72, count);
     }
 
+    /**
+     * Range queries are served from cached, fixed size intervals. Check against
+     * the query condition applied to all features, for windows spanning several intervals
+     */
+    @Test
+    public void testQueryCachedBins() throws Exception {
+        int binSize = SQLCodecSource.queryBinSize;
+        SQLCodecSource.queryBinSize = 10000;
+        try {
+            SQLCodecSource reader = getUnigene("sql/unigene.db");
+            List<Feature> allFeatures = new ArrayList<Feature>();
+            Iterator<Feature> iter = reader.iterator();
+            while (iter.hasNext()) {
+                allFeatures.add(iter.next());
+            }
+
+            int queries = 0;
+            for (Feature window : allFeatures) {
+                int start = window.getStart() - 5000;
+                int end = window.getStart() + 25000;
+
+                List<Feature> expected = new ArrayList<Feature>();
+                for (Feature f : allFeatures) {
+                    if (f.getChr().equals(window.getChr()) &&
+                            ((f.getStart() >= start && f.getStart() < end) || (f.getStart() < start && f.getEnd() >= start))) {
+                        expected.add(f);
+                    }
+                }
+
+                List<Feature> actual = new ArrayList<Feature>();
+                Iterator<Feature> features = reader.getFeatures(window.getChr(), start, end);
+                while (features.hasNext()) {
+                    actual.add(features.next());
+                }
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    TestUtils.assertFeaturesEqual(expected.get(i), actual.get(i));
+                }
+
+                // Second query comes from the cache
+                Iterator<Feature> cached = reader.getFeatures(window.getChr(), start, end);
+                for (Feature f : actual) {
+                    assertSame(f, cached.next());
+                }
+                queries++;
+            }
+            assertTrue(queries > 0);
+        } finally {
+            SQLCodecSource.queryBinSize = binSize;
+        }
+    }
+
+    /**
+     * Panning within a queried region doesn't touch the database
+     */
+    @Test
+    public void testPanCachedRegion() throws Exception {
+        SQLCodecSource reader = getUnigene("sql/Unigene.unsorted.db");
+        int start = 178700000;
+        int end = 179700000;
+        Set<String> expected = new HashSet<String>();
+        Iterator<Feature> iter = reader.getFeatures("chr2", start, end);
+        while (iter.hasNext()) {
+            expected.add(getKey(iter.next()));
+        }
+        assertTrue(expected.size() > 0);
+
+        DBManager.shutdown();
+        reader.locator = new ResourceLocator("jdbc:none:" + TestUtils.DATA_DIR + "sql/Unigene.unsorted.db");
+
+        int step = (end - start) / 10;
+        for (int ss = start; ss < end - step; ss += step) {
+            iter = reader.getFeatures("chr2", ss, ss + 2 * step);
+            while (iter.hasNext()) {
+                Feature f = iter.next();
+                assertTrue(expected.contains(getKey(f)));
+            }
+        }
+    }
+
+    /**
+     * Connections are only borrowed for a query, and prepared statements are reused on the same connection
+     */
+    @Test
+    public void testReleaseConnection() throws Exception {
+        SQLCodecSource reader = getUnigene("sql/unigene.db");
+        String url = reader.locator.getPath();
+        try {
+            countFeatures(reader.getFeatures("chr2", 0, 1000000));
+            assertEquals(1, DBManager.connectionPool.get(url).size());
+            Connection conn = DBManager.getConnection(reader.locator);
+            DBManager.releaseConnection(conn);
+
+            // Not cached, queried on the same connection
+            countFeatures(reader.getFeatures("chr1", 0, 1000000));
+            assertEquals(1, DBManager.connectionPool.get(url).size());
+            assertSame(conn, DBManager.getConnection(reader.locator));
+            DBManager.releaseConnection(conn);
+
+            // Connections closed in between are replaced
+            DBManager.shutdown();
+            assertTrue(conn.isClosed());
+            assertTrue(countFeatures(reader.getFeatures("chr2", 178700000, 179700000)) > 0);
+            assertEquals(1, DBManager.connectionPool.get(url).size());
+        } finally {
+            reader.dispose();
+            DBManager.shutdown();
+        }
+    }
+
+    private static int countFeatures(Iterator<Feature> iter) {
+        int count = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            count++;
+        }
+        return count;
+    }
+
+    private static String getKey(Feature f) {
+        return f.getChr() + ":" + f.getStart() + "-" + f.getEnd() + ":" + ((BasicFeature) f).getName();
+    }
+
     //Don't support reordering by index
     //@Test
     public void testLoadReorderedColumnsIndex() throws Exception {
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.genome;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.feature.*;
+import org.broad.igv.track.FeatureCollectionSource;
+import org.broad.igv.track.FeatureTrack;
+import org.broad.igv.track.PackedFeatures;
+import org.broad.igv.util.FileUtils;
+import org.broad.igv.util.TestUtils;
+import org.broad.tribble.Feature;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.*;
+
+import static junit.framework.Assert.*;
+
+public class GenomeCacheTest extends AbstractHeadlessTest {
+
+    private static final String GENOME_PATH = TestUtils.DATA_DIR + "genomes/hg18_truncated_aliased.genome";
+
+    /**
+     * Cache files are written to the output directory, which is cleared after each test
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        File outDir = new File(TestUtils.DATA_DIR, "out");
+        outDir.mkdirs();
+        GenomeCache.cacheDirectory = outDir;
+    }
+
+    @Test
+    public void testCacheFile() throws Exception {
+
+        File cacheFile = GenomeCache.getCacheFile(new File(GENOME_PATH));
+        assertEquals(cacheFile, GenomeCache.getCacheFile(new File(GENOME_PATH)));
+        assertFalse(cacheFile.equals(GenomeCache.getCacheFile(
+                new File(TestUtils.DATA_DIR + "genomes/hg18_truncated_aliased_reversed.genome"))));
+        assertNull(GenomeCache.getCacheFile(new File(TestUtils.DATA_DIR + "genomes/noSuchFile.genome")));
+        assertNull(GenomeCache.read(cacheFile));
+
+        // A modified archive gets a new cache file
+        File archiveFile = new File(TestUtils.DATA_DIR, "out/modified.genome");
+        FileUtils.copyFile(new File(GENOME_PATH), archiveFile);
+        assertTrue(archiveFile.setLastModified(1000000000000L));
+        File modifiedCacheFile = GenomeCache.getCacheFile(archiveFile);
+        assertEquals(modifiedCacheFile, GenomeCache.getCacheFile(archiveFile));
+        assertTrue(archiveFile.setLastModified(1000000001000L));
+        assertFalse(modifiedCacheFile.equals(GenomeCache.getCacheFile(archiveFile)));
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+
+        File cacheFile = GenomeCache.getCacheFile(new File(GENOME_PATH));
+
+        GenomeCache.Entry entry = new GenomeCache.Entry();
+        Cytoband band = new Cytoband("chr1");
+        band.setName("p36.33");
+        band.setStart(0);
+        band.setEnd(2300000);
+        band.setType('n');
+        band.setStain((short) 25);
+        entry.cytobands = new LinkedHashMap<String, List<Cytoband>>();
+        entry.cytobands.put("chr1", Arrays.asList(band));
+        entry.aliases = new ArrayList<Collection<String>>();
+        entry.aliases.add(Arrays.asList("chr1", "1"));
+
+        BasicFeature gene = new BasicFeature("chr1", 100, 500, Strand.NEGATIVE);
+        gene.setName("GENE1");
+        gene.setIdentifier("NM_1");
+        Exon exon = new Exon("chr1", 100, 200, Strand.NEGATIVE);
+        exon.setCodingStart(150);
+        exon.setCodingEnd(200);
+        exon.setNumber(2);
+        gene.addExon(exon);
+        gene.addExon(new Exon("chr1", 300, 500, Strand.NEGATIVE));
+        gene.setThickStart(150);
+        gene.setThickEnd(400);
+        entry.genes = new FeatureCollectionSource(Arrays.<Feature>asList(gene), genome);
+        entry.nameIndex = new LinkedHashMap<String, List<NamedFeature>>();
+        entry.nameIndex.put("GENE1", Arrays.<NamedFeature>asList(gene));
+        entry.nameIndex.put("EXON", Arrays.<NamedFeature>asList(exon));
+        entry.nameIndex.put("OTHER", Arrays.<NamedFeature>asList(new BasicFeature("chr2", 0, 10)));
+
+        GenomeCache.write(cacheFile, entry);
+        GenomeCache.Entry actual = GenomeCache.read(cacheFile);
+        assertNotNull(actual);
+
+        Cytoband actualBand = actual.cytobands.get("chr1").get(0);
+        assertEquals("chr1", actualBand.getChr());
+        assertEquals("p36.33", actualBand.getName());
+        assertEquals(2300000, actualBand.getEnd());
+        assertEquals('n', actualBand.getType());
+        assertEquals(25, actualBand.getStain());
+        assertEquals(Arrays.asList("chr1", "1"), actual.aliases.iterator().next());
+
+        assertTrue(actual.genes instanceof MappedGeneSource);
+        BasicFeature actualGene = (BasicFeature) actual.genes.getFeatures("chr1").get(0);
+        assertEquals("GENE1", actualGene.getName());
+        assertEquals("NM_1", actualGene.getIdentifier());
+        assertEquals(Strand.NEGATIVE, actualGene.getStrand());
+        assertEquals(150, actualGene.getThickStart());
+        assertEquals(400, actualGene.getThickEnd());
+        assertEquals(2, actualGene.getExons().size());
+        Exon actualExon = actualGene.getExons().get(0);
+        assertEquals(150, actualExon.getCdStart());
+        assertEquals(2, actualExon.getNumber());
+
+        // Name index entries refer to the features, and are decoded when looked up
+        assertEquals(2, actual.nameIndex.size());
+        NamedFeature geneReference = actual.nameIndex.get("GENE1").get(0);
+        assertEquals("GENE1", geneReference.getName());
+        assertEquals(100, geneReference.getStart());
+        assertEquals(500, geneReference.getEnd());
+        assertSame(actualGene, ((FeatureDB.FeatureReference) geneReference).getFeature());
+        assertSame(actualExon, ((FeatureDB.FeatureReference) actual.nameIndex.get("EXON").get(0)).getFeature());
+    }
+
+    /**
+     * Features read from a cache file are packed into the rows assigned when it was written
+     */
+    @Test
+    public void testPackedFeatures() throws Exception {
+
+        List<Feature> genes = new ArrayList<Feature>();
+        for (int i = 0; i < 20; i++) {
+            BasicFeature gene = new BasicFeature("chr1", i * 100, i * 100 + 250 + (i % 3) * 100, Strand.POSITIVE);
+            gene.setName("GENE" + i);
+            genes.add(gene);
+        }
+        File cacheFile = GenomeCache.getCacheFile(new File(GENOME_PATH));
+        GenomeCache.Entry entry = new GenomeCache.Entry();
+        entry.genes = new FeatureCollectionSource(genes, genome);
+        GenomeCache.write(cacheFile, entry);
+
+        MappedGeneSource source = (MappedGeneSource) GenomeCache.read(cacheFile).genes;
+        int[] expectedRows = PackedFeatures.packRows(source.getFeatures("chr1"));
+
+        PackedFeatures<IGVFeature> packedFeatures = source.getPackedFeatures("chr1", 550, 1200, "Genes");
+        List<Feature> expectedFeatures = source.getFeatureList("chr1", 550, 1200);
+        assertEquals(expectedFeatures, new ArrayList<Feature>(packedFeatures.getFeatures()));
+
+        // Rows without features in the interval are dropped, and features in a row do not overlap
+        Set<Integer> usedRows = new HashSet<Integer>();
+        for (Feature f : expectedFeatures) {
+            usedRows.add(expectedRows[source.getFeatures("chr1").indexOf(f)]);
+        }
+        assertEquals(usedRows.size(), packedFeatures.getRows().size());
+        int count = 0;
+        for (PackedFeatures<IGVFeature>.FeatureRow row : packedFeatures.getRows()) {
+            List<IGVFeature> rowFeatures = row.getFeatures();
+            for (int i = 1; i < rowFeatures.size(); i++) {
+                assertTrue(rowFeatures.get(i).getStart() > rowFeatures.get(i - 1).getEnd());
+            }
+            count += rowFeatures.size();
+        }
+        assertEquals(expectedFeatures.size(), count);
+
+        assertEquals(0, source.getPackedFeatures("chr2", 0, 1000, "Genes").getFeatures().size());
+    }
+
+    @Test
+    public void testInvalidFile() throws Exception {
+
+        File cacheFile = GenomeCache.getCacheFile(new File(GENOME_PATH));
+        FileOutputStream os = new FileOutputStream(cacheFile);
+        os.write(new byte[]{1, 2, 3});
+        os.close();
+        assertNull(GenomeCache.read(cacheFile));
+
+        // Written for a different archive
+        GenomeCache.write(cacheFile, new GenomeCache.Entry());
+        assertNotNull(GenomeCache.read(cacheFile));
+        File otherFile = new File(cacheFile.getParentFile(), "other" + cacheFile.getName());
+        assertTrue(cacheFile.renameTo(otherFile));
+        assertNull(GenomeCache.read(otherFile));
+    }
+
+    @Test
+    public void testLoadGenome() throws Exception {
+
+        File cacheFile = GenomeCache.getCacheFile(new File(GENOME_PATH));
+        Genome expected = GenomeManager.getInstance().loadGenome(GENOME_PATH, null);
+        assertTrue(cacheFile.exists());
+        int expectedNames = FeatureDB.getNameIndex().size();
+        NamedFeature expectedFeature = FeatureDB.getFeature("CAMK2D");
+
+        Genome actual = GenomeManager.getInstance().loadGenome(GENOME_PATH, null);
+        assertNotSame(expected, actual);
+
+        assertEquals(expected.getAllChromosomeNames(), actual.getAllChromosomeNames());
+        List<Cytoband> expectedBands = expected.getChromosome("chr1").getCytobands();
+        List<Cytoband> actualBands = actual.getChromosome("chr1").getCytobands();
+        assertEquals(expectedBands.size(), actualBands.size());
+        for (int i = 0; i < expectedBands.size(); i++) {
+            assertEquals(expectedBands.get(i).getName(), actualBands.get(i).getName());
+            assertEquals(expectedBands.get(i).getEnd(), actualBands.get(i).getEnd());
+        }
+        assertEquals("chr14", actual.getChromosomeAlias("c14quattordici"));
+
+        FeatureTrack expectedTrack = expected.getGeneTrack();
+        FeatureTrack actualTrack = actual.getGeneTrack();
+        assertEquals(expectedTrack.getName(), actualTrack.getName());
+        List<Feature> expectedGenes = expectedTrack.getFeatures("chr1", 0, Integer.MAX_VALUE);
+        List<Feature> actualGenes = actualTrack.getFeatures("chr1", 0, Integer.MAX_VALUE);
+        assertTrue(expectedGenes.size() > 0);
+        assertEquals(expectedGenes.size(), actualGenes.size());
+        for (int i = 0; i < expectedGenes.size(); i++) {
+            BasicFeature e = (BasicFeature) expectedGenes.get(i);
+            BasicFeature a = (BasicFeature) actualGenes.get(i);
+            assertEquals(e.getName(), a.getName());
+            assertEquals(e.getStart(), a.getStart());
+            assertEquals(e.getEnd(), a.getEnd());
+            assertEquals(e.getThickStart(), a.getThickStart());
+            assertEquals(e.getExonCount(), a.getExonCount());
+        }
+
+        assertEquals(expectedNames, FeatureDB.getNameIndex().size());
+        NamedFeature actualFeature = FeatureDB.getFeature("CAMK2D");
+        assertTrue(actualFeature instanceof BasicFeature);
+        assertEquals(expectedFeature.getStart(), actualFeature.getStart());
+    }
+}
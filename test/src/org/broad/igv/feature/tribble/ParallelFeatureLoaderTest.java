@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.tribble;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.feature.FeatureDB;
+import org.broad.igv.feature.FeatureUtils;
+import org.broad.igv.feature.IGVFeature;
+import org.broad.igv.feature.NamedFeature;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.broad.tribble.AbstractFeatureReader;
+import org.broad.tribble.Feature;
+import org.broad.tribble.FeatureCodec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static junit.framework.Assert.*;
+
+public class ParallelFeatureLoaderTest extends AbstractHeadlessTest {
+
+    private int blockSize;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        // Many small blocks
+        blockSize = ParallelFeatureLoader.blockSize;
+        ParallelFeatureLoader.blockSize = 5000;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ParallelFeatureLoader.blockSize = blockSize;
+        super.tearDown();
+    }
+
+    @Test
+    public void testLoadBed() throws Exception {
+        // Unsorted, no header
+        tstLoadFeatures(TestUtils.DATA_DIR + "bed/GSM1004654_10k.bed");
+    }
+
+    @Test
+    public void testLoadGFF() throws Exception {
+        // The version is read from the header
+        tstLoadFeatures(TestUtils.DATA_DIR + "gff/aliased.unsorted.gff");
+    }
+
+    @Test
+    public void testNameIndex() throws Exception {
+        // Names are registered in file order, as a sequential load would
+        ResourceLocator locator = new ResourceLocator(TestUtils.DATA_DIR + "gff/aliased.unsorted.gff");
+        FeatureDB.clearFeatures();
+        loadSequentialNames(locator);
+        Map<String, List<NamedFeature>> expected = FeatureDB.getNameIndex();
+
+        FeatureDB.clearFeatures();
+        ParallelFeatureLoader.loadFeatures(locator, genome);
+        Map<String, List<NamedFeature>> actual = FeatureDB.getNameIndex();
+        FeatureDB.clearFeatures();
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String name : expected.keySet()) {
+            List<NamedFeature> expectedFeatures = expected.get(name);
+            List<NamedFeature> actualFeatures = actual.get(name);
+            assertEquals(name, expectedFeatures.size(), actualFeatures.size());
+            for (int i = 0; i < expectedFeatures.size(); i++) {
+                assertEquals(name, expectedFeatures.get(i).getChr(), actualFeatures.get(i).getChr());
+                assertEquals(name, expectedFeatures.get(i).getStart(), actualFeatures.get(i).getStart());
+                assertEquals(name, expectedFeatures.get(i).getEnd(), actualFeatures.get(i).getEnd());
+            }
+        }
+    }
+
+    @Test
+    public void testCanLoad() throws Exception {
+        ResourceLocator locator = new ResourceLocator(TestUtils.DATA_DIR + "bed/GSM1004654_10k.bed");
+        assertTrue(ParallelFeatureLoader.canLoad(locator, CodecFactory.getCodec(locator, genome)));
+
+        locator = new ResourceLocator(TestUtils.DATA_DIR + "vcf/example4-last-gsnap-2_fixed.vcf");
+        assertFalse(ParallelFeatureLoader.canLoad(locator, CodecFactory.getCodec(locator, genome)));
+
+        ParallelFeatureLoader.blockSize = blockSize;
+        locator = new ResourceLocator(TestUtils.DATA_DIR + "bed/GSM1004654_10k.bed");
+        assertFalse(ParallelFeatureLoader.canLoad(locator, CodecFactory.getCodec(locator, genome)));
+    }
+
+    private void tstLoadFeatures(String path) throws Exception {
+
+        ResourceLocator locator = new ResourceLocator(path);
+        Map<String, List<Feature>> expected = loadSequential(locator);
+        Map<String, List<Feature>> actual = ParallelFeatureLoader.loadFeatures(locator, genome);
+
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String chr : expected.keySet()) {
+            List<Feature> expectedFeatures = expected.get(chr);
+            List<Feature> actualFeatures = actual.get(chr);
+            assertEquals(expectedFeatures.size(), actualFeatures.size());
+            for (int i = 0; i < expectedFeatures.size(); i++) {
+                IGVFeature e = (IGVFeature) expectedFeatures.get(i);
+                IGVFeature a = (IGVFeature) actualFeatures.get(i);
+                assertEquals(e.getChr(), a.getChr());
+                assertEquals(e.getStart(), a.getStart());
+                assertEquals(e.getEnd(), a.getEnd());
+                assertEquals(e.getName(), a.getName());
+                assertEquals(e.getIdentifier(), a.getIdentifier());
+            }
+        }
+    }
+
+    private Map<String, List<Feature>> loadSequential(ResourceLocator locator) throws Exception {
+        FeatureCodec codec = CodecFactory.getCodec(locator, genome);
+        AbstractFeatureReader reader = AbstractFeatureReader.getFeatureReader(locator.getPath(), codec, false);
+        Map<String, List<Feature>> featureMap = new HashMap<String, List<Feature>>();
+        Iterator<Feature> iter = reader.iterator();
+        while (iter.hasNext()) {
+            Feature f = iter.next();
+            String chr = genome.getChromosomeAlias(f.getChr());
+            List<Feature> features = featureMap.get(chr);
+            if (features == null) {
+                features = new ArrayList<Feature>();
+                featureMap.put(chr, features);
+            }
+            features.add(f);
+        }
+        reader.close();
+        for (List<Feature> features : featureMap.values()) {
+            FeatureUtils.sortFeatureList(features);
+        }
+        return featureMap;
+    }
+
+    private void loadSequentialNames(ResourceLocator locator) throws Exception {
+        FeatureCodec codec = CodecFactory.getCodec(locator, genome);
+        AbstractFeatureReader reader = AbstractFeatureReader.getFeatureReader(locator.getPath(), codec, false);
+        Iterator<Feature> iter = reader.iterator();
+        while (iter.hasNext()) {
+            Feature f = iter.next();
+            if (f instanceof NamedFeature) {
+                FeatureDB.addFeature((NamedFeature) f, genome);
+            }
+        }
+        reader.close();
+    }
+}
@@ -12,13 +12,16 @@
 package org.broad.igv.feature.tribble;
 
 import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.PreferenceManager;
 import org.broad.igv.track.TribbleFeatureSource;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.TestUtils;
 import org.broad.igv.variant.vcf.VCFVariant;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -65,4 +68,55 @@ public class VCFWrapperCodecTest extends AbstractHeadlessTest {
 
 
     }
+
+    /**
+     * Genotypes should be parsed on first access when lazy decoding is enabled, with the same results as eager
+     * decoding, including lines which must be reformatted.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLazyGenotypes() throws Exception {
+
+        String filePath = TestUtils.DATA_DIR + "vcf/missingFields.vcf";
+        TestUtils.createIndex(filePath);
+
+        PreferenceManager.getInstance().put(PreferenceManager.VCF_LAZY_GENOTYPES, "false");
+        List<VCFVariant> eager = loadVariants(filePath);
+        PreferenceManager.getInstance().put(PreferenceManager.VCF_LAZY_GENOTYPES, "true");
+        List<VCFVariant> lazy = loadVariants(filePath);
+
+        assertEquals(26, lazy.size());
+        assertEquals(eager.size(), lazy.size());
+        for (int i = 0; i < lazy.size(); i++) {
+            VCFVariant e = eager.get(i);
+            VCFVariant l = lazy.get(i);
+            assertTrue(e.isGenotypesDecoded());
+            assertFalse(l.isGenotypesDecoded());
+
+            // Site level fields do not require genotypes
+            assertEquals(e.getStart(), l.getStart());
+            assertEquals(e.getType(), l.getType());
+            assertEquals(e.getAttributes(), l.getAttributes());
+            assertFalse(l.isGenotypesDecoded());
+
+            assertEquals(e.getHetCount(), l.getHetCount());
+            assertTrue(l.isGenotypesDecoded());
+            assertEquals(e.getSampleNames(), l.getSampleNames());
+            for (String sample : e.getSampleNames()) {
+                assertEquals(e.getGenotype(sample).getType(), l.getGenotype(sample).getType());
+                assertEquals(e.getGenotype(sample).getAttributes(), l.getGenotype(sample).getAttributes());
+            }
+        }
+    }
+
+    private List<VCFVariant> loadVariants(String filePath) throws Exception {
+        TribbleFeatureSource src = TribbleFeatureSource.getFeatureSource(new ResourceLocator(filePath), genome);
+        Iterator iter = src.getFeatures("chr2", 3321000, 13346000);
+        List<VCFVariant> variants = new ArrayList<VCFVariant>();
+        while (iter.hasNext()) {
+            variants.add((VCFVariant) iter.next());
+        }
+        return variants;
+    }
 }
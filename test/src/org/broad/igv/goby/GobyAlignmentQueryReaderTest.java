@@ -41,6 +41,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertTrue;
@@ -405,6 +406,84 @@ public class GobyAlignmentQueryReaderTest extends AbstractHeadlessTest{
 
     }
 
+    /**
+     * Alignments decoded in parallel sub-windows, including linked splice components, should be identical
+     * to those decoded on the calling thread.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testParallelQuery() throws IOException {
+        String[] files = {"goby/paired-end/paired-alignment.entries", "goby/spliced/spliced-1.entries",
+                "goby/tricky/sorted-tricky-spliced-17.entries"};
+        for (String file : files) {
+            GobyAlignmentQueryReader reader = new GobyAlignmentQueryReader(TestUtils.DATA_DIR + file);
+            for (String chr : reader.getSequenceNames()) {
+                assertParallelQuery(reader, chr, 0, 250000000);
+            }
+            reader.close();
+        }
+
+        // A window spreading the alignments over several sub-windows.  The spliced test files are not
+        // sorted by position, so only the paired-end file can be split.
+        GobyAlignmentQueryReader reader = new GobyAlignmentQueryReader(TestUtils.DATA_DIR + "goby/paired-end/paired-alignment.entries");
+        assertEquals(12, assertParallelQuery(reader, "1", 1000000, 1004700));
+        reader.close();
+    }
+
+    /**
+     * Interrupting the consumer should end a parallel query with a cancellation, not a silently truncated result
+     */
+    @Test(timeout = 10000)
+    public void testParallelQueryInterrupt() throws IOException {
+        GobyAlignmentQueryReader reader = new GobyAlignmentQueryReader(TestUtils.DATA_DIR + "goby/paired-end/paired-alignment.entries");
+        CloseableIterator<Alignment> iter = reader.query("1", 1000000, 1004700, 7);
+        Thread.currentThread().interrupt();
+        boolean cancelled = false;
+        try {
+            while (iter.hasNext()) {
+                iter.next();
+            }
+        } catch (CancellationException e) {
+            cancelled = true;
+        } finally {
+            // Clear the interrupt flag for the following tests
+            assertTrue(Thread.interrupted());
+            iter.close();
+            reader.close();
+        }
+        assertTrue(cancelled);
+    }
+
+    private int assertParallelQuery(GobyAlignmentQueryReader reader, String chr, int start, int end) {
+        List<Alignment> expected = collect(reader.query(chr, start, end, 1));
+        List<Alignment> alignments = collect(reader.query(chr, start, end, 7));
+        assertEquals(expected.size(), alignments.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Alignment exp = expected.get(i);
+            Alignment act = alignments.get(i);
+            assertEquals(exp.getStart(), act.getStart());
+            assertEquals(exp.getEnd(), act.getEnd());
+            assertEquals(exp.getGapTypes().length, act.getGapTypes().length);
+            assertEquals(exp.getAlignmentBlocks().length, act.getAlignmentBlocks().length);
+            for (int b = 0; b < exp.getAlignmentBlocks().length; b++) {
+                assertEquals(exp.getAlignmentBlocks()[b].getStart(), act.getAlignmentBlocks()[b].getStart());
+                assertEquals(basesToText(exp.getAlignmentBlocks()[b].getBases()),
+                        basesToText(act.getAlignmentBlocks()[b].getBases()));
+            }
+        }
+        return expected.size();
+    }
+
+    private List<Alignment> collect(CloseableIterator<Alignment> iter) {
+        List<Alignment> alignments = new ObjectArrayList<Alignment>();
+        while (iter.hasNext()) {
+            alignments.add(iter.next());
+        }
+        iter.close();
+        return alignments;
+    }
+
     @Test
     public void testOldGobyHybrid() throws IOException {
         AlignmentReader reader = new AlignmentReaderImpl(TestUtils.DATA_DIR + "goby/GDFQPGI-pickrellNA18486_yale-hybrid.entries");
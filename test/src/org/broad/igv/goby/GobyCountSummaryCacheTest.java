@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.goby;
+
+import edu.cornell.med.icb.goby.counts.CountsReaderI;
+import org.broad.igv.feature.LocusScore;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class GobyCountSummaryCacheTest {
+
+    static final int CHR_LENGTH = 2000000;
+
+    /**
+     * Bin scores should match the mean and max computed from per-base counts, and repeated queries should be
+     * served from cached tiles.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSummaryScores() throws Exception {
+
+        // Random runs of constant count, including runs of zero
+        Random random = new Random(7);
+        int[] baseCounts = new int[CHR_LENGTH];
+        int position = 0;
+        while (position < CHR_LENGTH) {
+            int length = 1 + random.nextInt(200);
+            int count = random.nextInt(3) == 0 ? 0 : random.nextInt(50);
+            for (int i = position; i < Math.min(CHR_LENGTH, position + length); i++) {
+                baseCounts[i] = count;
+            }
+            position += length;
+        }
+
+        final RunReader reader = new RunReader(baseCounts);
+        GobyCountSummaryCache cache = new GobyCountSummaryCache(new GobyCountSummaryCache.ReaderSource() {
+            public CountsReaderI getCountsReader(String chr) {
+                return chr.equals("chr1") ? reader : null;
+            }
+
+            public boolean hasIndex() {
+                return true;
+            }
+        });
+
+        int start = 123456;
+        int end = 1543210;
+        int binSize = GobyCountSummaryCache.getZoomBinSize((end - start) / 2000);
+        assertEquals(256, binSize);
+
+        for (boolean useMax : new boolean[]{false, true}) {
+            List<LocusScore> scores = cache.getSummaryScores("chr1", start, end, binSize, useMax, 2.0);
+            assertTrue(scores.size() > 0);
+            for (LocusScore score : scores) {
+                assertEquals(0, score.getStart() % binSize);
+                assertTrue(score.getEnd() > start && score.getStart() <= end);
+                long sum = 0;
+                int max = 0;
+                for (int i = score.getStart(); i < score.getEnd(); i++) {
+                    sum += baseCounts[i];
+                    max = Math.max(max, baseCounts[i]);
+                }
+                double expected = useMax ? max : ((double) sum) / binSize;
+                assertEquals((float) (expected / 2.0), score.getScore(), 1.0e-4);
+            }
+        }
+
+        int repositionCount = reader.repositionCount;
+        cache.getSummaryScores("chr1", start + 1000, end - 1000, binSize, false, 1.0);
+        assertEquals(repositionCount, reader.repositionCount);
+
+        assertEquals(0, cache.getSummaryScores("chr2", start, end, binSize, false, 1.0).size());
+    }
+
+    @Test
+    public void testZoomBinSize() {
+        assertEquals(-1, GobyCountSummaryCache.getZoomBinSize(15));
+        assertEquals(16, GobyCountSummaryCache.getZoomBinSize(16));
+        assertEquals(16, GobyCountSummaryCache.getZoomBinSize(63));
+        assertEquals(64, GobyCountSummaryCache.getZoomBinSize(64));
+        assertEquals(16 << 16, GobyCountSummaryCache.getZoomBinSize(Integer.MAX_VALUE));
+    }
+
+    /**
+     * Counts reader over the runs of constant count of a per-base count array
+     */
+    static class RunReader implements CountsReaderI {
+
+        int[] counts;
+        int nextPosition;
+        int position;
+        int length;
+        int count;
+        int repositionCount;
+
+        RunReader(int[] counts) {
+            this.counts = counts;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        public boolean hasNextTransition() {
+            return nextPosition < counts.length;
+        }
+
+        public void nextTransition() {
+            position = nextPosition;
+            count = counts[position];
+            int p = position;
+            while (p < counts.length && counts[p] == count) p++;
+            length = p - position;
+            nextPosition = p;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void skipTo(int target) {
+            // Position on the run containing target, so the next transition returns it
+            while (hasNextTransition()) {
+                int save = nextPosition;
+                nextTransition();
+                if (position + length > target) {
+                    nextPosition = save;
+                    return;
+                }
+            }
+        }
+
+        public void reposition(int target) {
+            repositionCount++;
+            nextPosition = 0;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public void close() throws IOException {
+        }
+    }
+}
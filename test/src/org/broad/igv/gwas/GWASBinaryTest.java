@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.gwas;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.track.Track;
+import org.broad.igv.track.TrackLoader;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.broad.igv.util.collections.DoubleArrayList;
+import org.broad.igv.util.collections.IntArrayList;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.*;
+
+public class GWASBinaryTest extends AbstractHeadlessTest {
+
+    private static final String GWAS_PATH = TestUtils.DATA_DIR + "gwas/smallp.gwas";
+
+    private File binaryFile;
+    private GWASData gData;
+
+    /**
+     * Convert the test file.  The output directory is cleared after each test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        binaryFile = new File(TestUtils.DATA_DIR, "out/smallp" + GWASBinaryWriter.EXTENSION);
+        GWASBinaryWriter.convert(GWAS_PATH, binaryFile);
+        gData = new GWASParser(new ResourceLocator(GWAS_PATH), genome).parse();
+    }
+
+    @Test
+    public void testPoints() throws Exception {
+        GWASBinaryReader reader = new GWASBinaryReader(new ResourceLocator(binaryFile.getPath()), genome);
+
+        assertEquals(new ArrayList<String>(gData.getLocations().keySet()), new ArrayList<String>(reader.getChromosomes()));
+        assertEquals(gData.getMaxValue(), reader.getMaxValue());
+
+        for (String chr : reader.getChromosomes()) {
+            IntArrayList locations = gData.getLocations().get(chr);
+            DoubleArrayList values = gData.getValues().get(chr);
+            GWASBinaryReader.Points points = reader.getPoints(chr, 0, Integer.MAX_VALUE);
+            assertEquals(locations.size(), points.size());
+            for (int i = 0; i < locations.size(); i++) {
+                assertEquals(locations.get(i), points.getLocations().get(i));
+                assertEquals(values.get(i), points.getValues().get(i));
+            }
+
+            // Interval query
+            int start = locations.get(1);
+            int end = locations.get(locations.size() - 2);
+            points = reader.getPoints(chr, start, end);
+            for (int i = 0; i < points.size(); i++) {
+                int location = points.getLocations().get(i);
+                assertTrue(location >= start && location <= end);
+            }
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testDescription() throws Exception {
+        GWASBinaryReader reader = new GWASBinaryReader(new ResourceLocator(binaryFile.getPath()), genome);
+
+        double value = gData.getValues().get("chr6").get(1);
+        String description = reader.getDescription("chr6", 29623739, value);
+        assertTrue(description.startsWith("rs29228"));
+        assertTrue(description.endsWith("0.931148124684"));
+        assertNull(reader.getDescription("chr6", 29623740, value));
+        reader.close();
+    }
+
+    @Test
+    public void testSummary() throws Exception {
+        GWASBinaryReader reader = new GWASBinaryReader(new ResourceLocator(binaryFile.getPath()), genome);
+
+        assertNull(reader.getSummary("chr6", 100));
+
+        for (int binSize : GWASBinaryWriter.ZOOM_BIN_SIZES) {
+            GWASBinaryReader.Points summary = reader.getSummary("chr6", binSize);
+            assertNotNull(summary);
+            double max = 0;
+            for (int i = 0; i < summary.size(); i++) {
+                max = Math.max(max, summary.getValues().get(i));
+                // Summary points are placed at data locations
+                assertTrue(gData.getNearestIndexByLocation("chr6", summary.getLocations().get(i), -1, Double.MAX_VALUE, 0) >= 0);
+            }
+            assertEquals(reader.getMaxValue(), max);
+        }
+        reader.close();
+    }
+
+    /**
+     * Compare the binary search for the nearest point with a linear scan
+     */
+    @Test
+    public void testNearestIndex() throws Exception {
+        IntArrayList locations = gData.getLocations().get("chr6");
+        DoubleArrayList values = gData.getValues().get("chr6");
+        int first = locations.get(0);
+        int last = locations.get(locations.size() - 1);
+
+        Random random = new Random(12345);
+        for (int i = 0; i < 1000; i++) {
+            int location = first - 1000 + random.nextInt(last - first + 2000);
+            double minValue = random.nextDouble() * 10;
+            double maxValue = minValue + random.nextDouble() * 100;
+            int maxDistance = random.nextInt(5000);
+
+            int expected = linearNearestIndex(locations, values, location, minValue, maxValue, maxDistance);
+            assertEquals(expected, gData.getNearestIndexByLocation("chr6", location, minValue, maxValue, maxDistance));
+        }
+        assertEquals(-1, gData.getNearestIndexByLocation("noSuchChr", first, 0, 100, 1000));
+    }
+
+    @Test
+    public void testLoadTrack() throws Exception {
+        List<Track> tracks = (new TrackLoader()).load(new ResourceLocator(binaryFile.getPath()), genome);
+        assertEquals(1, tracks.size());
+        assertTrue(tracks.get(0) instanceof GWASTrack);
+    }
+
+    /**
+     * The original linear search
+     */
+    private static int linearNearestIndex(IntArrayList locations, DoubleArrayList values, int location,
+                                          double minValue, double maxValue, int maxDistance) {
+        int iBefore = -1;
+        int iAfter = -1;
+        int i = 0;
+        while (i < locations.size() && locations.get(i) < location) {
+            if (values.get(i) > minValue && values.get(i) < maxValue)
+                iBefore = i;
+            i++;
+        }
+        while (i < locations.size()) {
+            if (values.get(i) > minValue && values.get(i) < maxValue) {
+                iAfter = i;
+                break;
+            }
+            i++;
+        }
+        int index = iAfter;
+        if (iBefore >= 0 && (iAfter < 0 || location - locations.get(iBefore) < locations.get(iAfter) - location)) {
+            index = iBefore;
+        }
+        if (index >= 0 && Math.abs(location - locations.get(index)) > maxDistance) {
+            index = -1;
+        }
+        return index;
+    }
+}
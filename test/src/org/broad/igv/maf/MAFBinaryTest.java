@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.maf;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.util.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class MAFBinaryTest extends AbstractHeadlessTest {
+
+    private static final String MAF_PATH = TestUtils.DATA_DIR + "maf/ucscSample.maf";
+
+    private File binaryFile;
+
+    /**
+     * Convert the test file.  The output directory is cleared after each test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        binaryFile = new File(TestUtils.DATA_DIR, "out/ucscSample" + MAFBinaryWriter.EXTENSION);
+        MAFBinaryWriter.convert(MAF_PATH, binaryFile);
+    }
+
+    @Test
+    public void testAlignments() throws Exception {
+
+        MAFParser parser = new MAFParser(MAF_PATH, MAFIndex.createIndex(MAF_PATH));
+        MAFBinaryReader reader = new MAFBinaryReader(binaryFile.getPath());
+
+        assertEquals(parser.getTrackName(), reader.getTrackName());
+        assertEquals(parser.getRefId(), reader.getRefId());
+        assertEquals(new ArrayList<String>(parser.getSpecies()), new ArrayList<String>(reader.getSpecies()));
+        assertEquals(new ArrayList<String>(parser.getChrNames()), new ArrayList<String>(reader.getChrNames()));
+
+        List<MultipleAlignmentBlock> expected = parser.loadAlignments("chr1", 0, 1000000);
+        List<MultipleAlignmentBlock> actual = reader.loadAlignments("chr1", 0, 1000000);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            MultipleAlignmentBlock e = expected.get(i);
+            MultipleAlignmentBlock a = actual.get(i);
+            assertEquals(e.getChr(), a.getChr());
+            assertEquals(e.getStart(), a.getStart());
+            assertEquals(e.getEnd(), a.getEnd());
+            assertEquals(e.getGaps().size(), a.getGaps().size());
+            assertEquals(e.getSequences().size(), a.getSequences().size());
+            for (MultipleAlignmentBlock.Sequence es : e.getSequences()) {
+                MultipleAlignmentBlock.Sequence as = a.getSequence(es.getSpecies());
+                assertNotNull(as);
+                assertEquals(es.getChr(), as.getChr());
+                assertEquals(es.getStart(), as.getStart());
+                assertEquals(es.getSize(), as.getSize());
+                assertEquals(es.getStrand(), as.getStrand());
+                assertEquals(es.getSrcSize(), as.getSrcSize());
+                assertEquals(es.getText(), as.getText());
+            }
+        }
+
+        // Interval query, the last block starts at 43219
+        actual = reader.loadAlignments("chr1", 43220, 43230);
+        assertEquals(1, actual.size());
+        assertEquals(43219, actual.get(0).getStart());
+
+        assertNull(reader.loadAlignments("chr1", 1000000, 2000000));
+        assertNull(reader.loadAlignments("chr2", 0, 1000000));
+        reader.close();
+    }
+
+    @Test
+    public void testSpeciesProjection() throws Exception {
+
+        MAFBinaryReader reader = new MAFBinaryReader(binaryFile.getPath());
+        List<String> selected = Arrays.asList("panTro2", "cavPor3");
+
+        List<MultipleAlignmentBlock> alignments = reader.loadAlignments("chr1", 0, 1000000, selected);
+        assertEquals(3, alignments.size());
+        for (MultipleAlignmentBlock ma : alignments) {
+            assertEquals("hg18", ma.getRefSequence().getSpecies());
+            for (MultipleAlignmentBlock.Sequence seq : ma.getSequences().subList(1, ma.getSequences().size())) {
+                assertTrue(selected.contains(seq.getSpecies()));
+            }
+        }
+        MultipleAlignmentBlock last = alignments.get(2);
+        assertEquals("GGACATGGAACAATAATAACTGATGCAC-TGTAGAGCACAATATGATATAGTTTCT",
+                last.getSequence("cavPor3").getText());
+        reader.close();
+    }
+}
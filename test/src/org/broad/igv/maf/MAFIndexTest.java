@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.maf;
+
+import net.sf.samtools.util.BlockCompressedOutputStream;
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.util.TestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class MAFIndexTest extends AbstractHeadlessTest {
+
+    private static final String MAF_PATH = TestUtils.DATA_DIR + "maf/ucscSample.maf";
+
+    private int blockSize;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        // One alignment block per interval
+        blockSize = MAFIndex.blockSize;
+        MAFIndex.blockSize = 1;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        MAFIndex.blockSize = blockSize;
+        super.tearDown();
+    }
+
+    @Test
+    public void testBinaryIndex() throws Exception {
+
+        MAFIndex index = MAFIndex.createIndex(MAF_PATH);
+        File binaryFile = new File(TestUtils.DATA_DIR, "out/ucscSample.maf" + MAFIndex.BINARY_EXTENSION);
+        MAFIndex.writeBinaryIndex(index, binaryFile.getPath());
+        File textFile = new File(TestUtils.DATA_DIR, "out/ucscSample.maf.index");
+        MAFIndex.writeIndex(index, textFile.getPath());
+
+        MAFIndex binaryIndex = MAFIndex.loadBinaryIndex(binaryFile.getPath());
+        MAFIndex textIndex = MAFIndex.loadIndex(textFile.getPath());
+
+        assertEquals(index.getSpecies(), binaryIndex.getSpecies());
+        assertEquals(index.getSpecies(), textIndex.getSpecies());
+        assertEquals(index.getChromosomes(), binaryIndex.getChromosomes());
+
+        int[][] queries = {{0, 1000000}, {40187, 40190}, {40250, 40260}, {43220, 43230}, {50000, 60000}};
+        for (int[] q : queries) {
+            long expected = index.getStartPosition("chr1", q[0], q[1]);
+            assertEquals(expected, binaryIndex.getStartPosition("chr1", q[0], q[1]));
+            assertEquals(expected, textIndex.getStartPosition("chr1", q[0], q[1]));
+        }
+        assertEquals(-1, index.getStartPosition("chr1", 50000, 60000));
+        assertEquals(-1, binaryIndex.getStartPosition("chr2", 0, 1000000));
+    }
+
+    /**
+     * Interval offsets point to the first alignment block of the interval
+     */
+    @Test
+    public void testStartPosition() throws Exception {
+
+        MAFParser parser = new MAFParser(MAF_PATH, MAFIndex.createIndex(MAF_PATH));
+        List<MultipleAlignmentBlock> alignments = parser.loadAlignments("chr1", 40250, 40260);
+        assertEquals(1, alignments.size());
+        assertEquals(40242, alignments.get(0).getStart());
+    }
+
+    @Test
+    public void testBGZFIndex() throws Exception {
+
+        File gzFile = new File(TestUtils.DATA_DIR, "out/ucscSample.maf.gz");
+        InputStream is = new FileInputStream(MAF_PATH);
+        OutputStream os = new BlockCompressedOutputStream(gzFile);
+        try {
+            byte[] buffer = new byte[1000];
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                os.write(buffer, 0, n);
+            }
+        } finally {
+            is.close();
+            os.close();
+        }
+        assertTrue(MAFIndex.isBGZF(gzFile.getPath()));
+        assertFalse(MAFIndex.isBGZF(MAF_PATH));
+
+        MAFParser expectedParser = new MAFParser(MAF_PATH, MAFIndex.createIndex(MAF_PATH));
+        MAFParser parser = new MAFParser(gzFile.getPath());
+        assertTrue(new File(gzFile.getPath() + MAFIndex.BINARY_EXTENSION).exists());
+        assertEquals("hg18 Multiz", parser.getTrackName());
+        assertEquals(expectedParser.getSpecies(), parser.getSpecies());
+
+        int[][] queries = {{0, 1000000}, {40250, 40260}, {43220, 43230}};
+        for (int[] q : queries) {
+            List<MultipleAlignmentBlock> expected = expectedParser.loadAlignments("chr1", q[0], q[1]);
+            List<MultipleAlignmentBlock> actual = parser.loadAlignments("chr1", q[0], q[1]);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getStart(), actual.get(i).getStart());
+                assertEquals(expected.get(i).getSequences().size(), actual.get(i).getSequences().size());
+            }
+        }
+
+        // The binary index records that offsets are virtual file pointers
+        assertEquals(Boolean.TRUE, MAFIndex.loadBinaryIndex(gzFile.getPath() + MAFIndex.BINARY_EXTENSION).isBGZF());
+        assertEquals(Boolean.FALSE, MAFIndex.createIndex(MAF_PATH).isBGZF());
+
+        // Text indexes do not, compression is detected from the file
+        String textIndexPath = gzFile.getPath() + ".index";
+        MAFIndex.writeIndex(MAFIndex.loadBinaryIndex(gzFile.getPath() + MAFIndex.BINARY_EXTENSION), textIndexPath);
+        MAFIndex textIndex = MAFIndex.loadIndex(textIndexPath);
+        assertNull(textIndex.isBGZF());
+        parser = new MAFParser(gzFile.getPath(), textIndex);
+        assertEquals(expectedParser.loadAlignments("chr1", 40250, 40260).size(),
+                parser.loadAlignments("chr1", 40250, 40260).size());
+    }
+}
@@ -72,6 +72,7 @@ public class MAFParserTest {
 
         String indexFile = mafFile + ".index";
         (new File(indexFile)).delete();
+        (new File(mafFile + MAFIndex.BINARY_EXTENSION)).delete();
 
     }
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.methyl;
+
+import org.broad.igv.bbfile.BBFileReader;
+import org.broad.igv.feature.Strand;
+import org.broad.igv.util.TestUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+public class MethylSummarySourceTest {
+
+    @Test
+    public void testBinSize() throws Exception {
+        assertEquals(MethylSummarySource.BASE_BIN_SIZE, MethylSummarySource.getBinSize(1));
+        assertEquals(MethylSummarySource.BASE_BIN_SIZE, MethylSummarySource.getBinSize(32));
+        assertEquals(128, MethylSummarySource.getBinSize(33));
+        assertEquals(524288, MethylSummarySource.getBinSize(250000));
+        // Coarsest zoom level
+        assertEquals(2097152, MethylSummarySource.getBinSize(1.0e9));
+    }
+
+    @Test
+    public void testSummaryScores() throws Exception {
+
+        final List<MethylScore> cpgs = new ArrayList<MethylScore>();
+        for (int i = 0; i < 100; i++) {
+            cpgs.add(new MethylScore("chr1", i * 100, i * 100 + 2, Strand.NONE, i % 2 == 0 ? 100 : 0, 10));
+        }
+        final int[] queryCount = new int[1];
+        MethylDataSource source = new MethylDataSource() {
+            public Iterator<MethylScore> query(String chr, int start, int end) {
+                queryCount[0]++;
+                List<MethylScore> scores = new ArrayList<MethylScore>();
+                for (MethylScore s : cpgs) {
+                    if (s.getChr().equals(chr) && s.getEnd() >= start && s.getStart() <= end) scores.add(s);
+                }
+                return scores.iterator();
+            }
+        };
+
+        MethylSummarySource summarySource = new MethylSummarySource(source);
+
+        // 512 bp bins hold 5 or 6 CpGs, every other CpG is methylated
+        List<MethylScore> scores = summarySource.getSummaryScores("chr1", 0, 10000, 512);
+        assertEquals(20, scores.size());
+        MethylScore first = scores.get(0);
+        assertEquals(0, first.getStart());
+        assertEquals(512, first.getEnd());
+        assertEquals(60, first.getCount());
+        assertEquals(50.0f, first.getScore(), 1.0e-6);
+        MethylScore second = scores.get(1);
+        assertEquals(50, second.getCount());
+        assertEquals(60.0f, second.getScore(), 1.0e-6);
+        assertEquals(1, queryCount[0]);
+
+        // Served from the cached tile
+        scores = summarySource.getSummaryScores("chr1", 1024, 2047, 512);
+        assertEquals(2, scores.size());
+        assertEquals(1024, scores.get(0).getStart());
+        assertEquals(1, queryCount[0]);
+
+        assertEquals(0, summarySource.getSummaryScores("chr2", 0, 10000, 512).size());
+    }
+
+    @Test
+    public void testSumTiles() throws Exception {
+
+        final List<MethylScore> cpgs = new ArrayList<MethylScore>();
+        for (int i = 0; i < 400; i++) {
+            cpgs.add(new MethylScore("chr1", i * 997, i * 997 + 2, Strand.NONE, i % 3 == 0 ? 100 : 25, 1 + i % 7));
+        }
+        final int[] queryCount = new int[1];
+        MethylDataSource source = new MethylDataSource() {
+            public Iterator<MethylScore> query(String chr, int start, int end) {
+                queryCount[0]++;
+                List<MethylScore> scores = new ArrayList<MethylScore>();
+                for (MethylScore s : cpgs) {
+                    if (s.getChr().equals(chr) && s.getEnd() >= start && s.getStart() <= end) scores.add(s);
+                }
+                return scores.iterator();
+            }
+        };
+
+        // A 512 bp tile covers the 4 tiles of 128 bp bins
+        int tileEnd = 512 * MethylSummarySource.TILE_BIN_COUNT - 1;
+        List<MethylScore> expected = new MethylSummarySource(source).getSummaryScores("chr1", 0, tileEnd, 512);
+
+        MethylSummarySource summarySource = new MethylSummarySource(source);
+        summarySource.getSummaryScores("chr1", 0, tileEnd, 128);
+        queryCount[0] = 0;
+
+        // Summed from the cached tiles
+        List<MethylScore> scores = summarySource.getSummaryScores("chr1", 0, tileEnd, 512);
+        assertEquals(0, queryCount[0]);
+        assertEquals(expected.size(), scores.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getStart(), scores.get(i).getStart());
+            assertEquals(expected.get(i).getEnd(), scores.get(i).getEnd());
+            assertEquals(expected.get(i).getCount(), scores.get(i).getCount());
+            assertEquals(expected.get(i).getScore(), scores.get(i).getScore(), 1.0e-4);
+        }
+    }
+
+    /**
+     * Coarse zoom levels are summed from a single chromosome wide query
+     */
+    @Test
+    public void testChromosomeSummary() throws Exception {
+
+        final List<MethylScore> cpgs = new ArrayList<MethylScore>();
+        for (int i = 0; i < 2000; i++) {
+            cpgs.add(new MethylScore("chr1", i * 4999, i * 4999 + 2, Strand.NONE, i % 4 == 0 ? 100 : 0, 1 + i % 5));
+        }
+        final int[] queryCount = new int[1];
+        MethylDataSource source = new MethylDataSource() {
+            public Iterator<MethylScore> query(String chr, int start, int end) {
+                queryCount[0]++;
+                List<MethylScore> scores = new ArrayList<MethylScore>();
+                for (MethylScore s : cpgs) {
+                    if (s.getChr().equals(chr) && s.getEnd() >= start && s.getStart() <= end) scores.add(s);
+                }
+                return scores.iterator();
+            }
+        };
+
+        MethylSummarySource summarySource = new MethylSummarySource(source);
+        int[] binSizes = {MethylSummarySource.CHROMOSOME_BIN_SIZE, 4 * MethylSummarySource.CHROMOSOME_BIN_SIZE, 2097152};
+        for (int binSize : binSizes) {
+            int start = 1000000;
+            int end = 9000000;
+            List<MethylScore> scores = summarySource.getSummaryScores("chr1", start, end, binSize);
+
+            // Expected scores, binning the CpGs directly
+            int firstBin = start / binSize;
+            int lastBin = end / binSize;
+            int nBins = lastBin - firstBin + 1;
+            int[] methylated = new int[nBins];
+            int[] total = new int[nBins];
+            for (MethylScore cpg : cpgs) {
+                int bin = cpg.getStart() / binSize;
+                if (bin >= firstBin && bin <= lastBin) {
+                    methylated[bin - firstBin] += Math.round(cpg.getScore() * cpg.getCount() / 100);
+                    total[bin - firstBin] += cpg.getCount();
+                }
+            }
+            int idx = 0;
+            for (int b = 0; b < nBins; b++) {
+                if (total[b] == 0) continue;
+                MethylScore score = scores.get(idx++);
+                assertEquals((firstBin + b) * binSize, score.getStart());
+                assertEquals((firstBin + b + 1) * binSize, score.getEnd());
+                assertEquals(total[b], score.getCount());
+                assertEquals(100.0f * methylated[b] / total[b], score.getScore(), 1.0e-4);
+            }
+            assertEquals(idx, scores.size());
+        }
+        assertEquals(1, queryCount[0]);
+    }
+
+    @Test
+    public void testBBSummary() throws Exception {
+
+        // chr11	10001654	10001656	.	1000	.	100.000	7
+        // chr11	10001667	10001669	.	833	.	83.333	6
+        // chr11	10001752	10001754	.	625	.	62.500	8
+        String testFile = TestUtils.DATA_DIR +
+                "/methylation/usc/jhu-usc.edu_UCEC.IlluminaHiSeq_WGBS.Level_3.1.0.0.hg18.SAMPLE.bb";
+        BBFileReader reader = new BBFileReader(testFile);
+        MethylSummarySource summarySource =
+                new MethylSummarySource(new BBMethylDataSource(reader, BBMethylDataSource.Type.USC, null));
+
+        // One CpG per 32 bp bin
+        int[] expectedCounts = {7, 6, 8};
+        float[] expectedPercents = {100.0f, 83.333f, 62.5f};
+        List<MethylScore> scores = summarySource.getSummaryScores("chr11", 10001654, 10001754, 32);
+        assertEquals(3, scores.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expectedCounts[i], scores.get(i).getCount());
+            assertEquals(expectedPercents[i], scores.get(i).getScore(), 1.0e-3);
+        }
+
+        // 15 CpGs in the 2048 bp bin starting at 10000384
+        scores = summarySource.getSummaryScores("chr11", 10001000, 10002000, 2048);
+        assertEquals(1, scores.size());
+        MethylScore score = scores.get(0);
+        assertEquals(10000384, score.getStart());
+        assertEquals(154, score.getCount());
+        assertEquals(100.0f * 128 / 154, score.getScore(), 1.0e-4);
+
+        // The 8192 bp bin starting at 9994240, summarized from the whole chromosome, covers four 2048 bp bins
+        int total = 0;
+        for (MethylScore s : summarySource.getSummaryScores("chr11", 9994240, 10002431, 2048)) {
+            total += s.getCount();
+        }
+        scores = summarySource.getSummaryScores("chr11", 9994240, 10002431, 8192);
+        assertEquals(1, scores.size());
+        assertEquals(9994240, scores.get(0).getStart());
+        assertEquals(total, scores.get(0).getCount());
+    }
+}
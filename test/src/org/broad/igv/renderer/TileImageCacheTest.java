@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.renderer;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.feature.Locus;
+import org.broad.igv.track.RenderContext;
+import org.broad.igv.track.RenderContextImpl;
+import org.broad.igv.ui.panel.ReferenceFrame;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+public class TileImageCacheTest extends AbstractHeadlessTest {
+
+    private static final int WIDTH = 1024;
+    private static final int HEIGHT = 100;
+
+    /**
+     * Records the origin of each tile painted, and draws a 1 bp wide black bar at {@code featurePosition}
+     */
+    private static class RecordingPainter implements TileImageCache.TilePainter {
+
+        List<Double> tileOrigins = new ArrayList<Double>();
+        int featurePosition;
+
+        RecordingPainter(int featurePosition) {
+            this.featurePosition = featurePosition;
+        }
+
+        public void paintTile(RenderContext tileContext, Rectangle tileRect) {
+            tileOrigins.add(tileContext.getOrigin());
+            int x = tileContext.bpToScreenPixel(featurePosition);
+            tileContext.getGraphic2DForColor(Color.black).fillRect(x, tileRect.y, 1, tileRect.height);
+        }
+    }
+
+    @Test
+    public void testPanReusesTiles() throws Exception {
+
+        ReferenceFrame frame = new ReferenceFrame("tileTest");
+        frame.setBounds(0, WIDTH);
+        frame.jumpTo(new Locus("chr1", 1000, 1000 + WIDTH));
+        double scale = frame.getScale();
+
+        TileImageCache cache = new TileImageCache();
+        Object data = new Object();
+        Rectangle rect = new Rectangle(0, 0, WIDTH, HEIGHT);
+        RecordingPainter painter = new RecordingPainter(1600);
+
+        render(cache, frame, rect, data, "state", painter);
+        int nTiles = painter.tileOrigins.size();
+        assertEquals(3, nTiles);
+        for (Double origin : painter.tileOrigins) {
+            assertEquals(0.0, (origin / scale) % TileImageCache.TILE_WIDTH, 1.0e-6);
+        }
+
+        // Nothing changed, nothing should be repainted
+        render(cache, frame, rect, data, "state", painter);
+        assertEquals(nTiles, painter.tileOrigins.size());
+
+        // Panning by one tile exposes a single new column
+        frame.setOrigin(frame.getOrigin() + TileImageCache.TILE_WIDTH * scale);
+        render(cache, frame, rect, data, "state", painter);
+        assertEquals(nTiles + 1, painter.tileOrigins.size());
+
+        // A change in state discards all tiles
+        render(cache, frame, rect, data, "newState", painter);
+        assertEquals(nTiles + 4, painter.tileOrigins.size());
+
+        // A new data instance also discards all tiles
+        render(cache, frame, rect, new Object(), "newState", painter);
+        assertEquals(nTiles + 7, painter.tileOrigins.size());
+    }
+
+    @Test
+    public void testTilePosition() throws Exception {
+
+        ReferenceFrame frame = new ReferenceFrame("tileTest");
+        frame.setBounds(0, WIDTH);
+        frame.jumpTo(new Locus("chr1", 1000, 1000 + WIDTH));
+
+        int featurePosition = 1600;
+        BufferedImage image = render(new TileImageCache(), frame, new Rectangle(0, 0, WIDTH, HEIGHT),
+                new Object(), "state", new RecordingPainter(featurePosition));
+
+        int expectedX = (int) ((featurePosition - frame.getOrigin()) / frame.getScale());
+        assertEquals(Color.black.getRGB(), image.getRGB(expectedX, HEIGHT / 2));
+        assertEquals(0, image.getRGB(expectedX + 2, HEIGHT / 2));
+    }
+
+    private BufferedImage render(TileImageCache cache, ReferenceFrame frame, Rectangle rect, Object data,
+                                 Object state, TileImageCache.TilePainter painter) {
+        BufferedImage image = new BufferedImage(rect.width, rect.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        RenderContextImpl context = new RenderContextImpl(null, g, frame, new Rectangle(rect));
+        cache.render(context, rect, data, state, painter);
+        context.dispose();
+        g.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.sam;
+
+import org.broad.igv.track.RenderContextImpl;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+public class RowRasterTest {
+
+    /**
+     * Adjacent fills of the same color should be painted as a single rectangle
+     */
+    @Test
+    public void testRuns() throws Exception {
+
+        Rectangle rowRect = new Rectangle(10, 0, 100, 4);
+        RowRaster raster = new RowRaster(rowRect);
+
+        // Three adjacent blocks, one color -> one run
+        raster.fill(RowRaster.BLOCK, 10, 20, Color.gray);
+        raster.fill(RowRaster.BLOCK, 20, 30, Color.gray);
+        raster.fill(RowRaster.BLOCK, 30, 40, new Color(Color.gray.getRGB()));
+
+        // A different color, then a gap, then the first color again -> two more runs
+        raster.fill(RowRaster.BLOCK, 40, 50, Color.red);
+        raster.fill(RowRaster.BLOCK, 60, 70, Color.gray);
+
+        // Off the edges of the row
+        raster.fill(RowRaster.BLOCK, -50, 5, Color.blue);
+        raster.fill(RowRaster.BLOCK, 200, 300, Color.blue);
+
+        assertNull(raster.get(RowRaster.BLOCK, 55));
+        assertEquals(Color.red, raster.get(RowRaster.BLOCK, 45));
+
+        BufferedImage image = new BufferedImage(120, 4, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        RenderContextImpl context = new RenderContextImpl(null, g, null, null);
+        int nRects = raster.paint(context, rowRect, 4);
+        context.dispose();
+        g.dispose();
+
+        assertEquals(3, nRects);
+        assertEquals(Color.gray.getRGB(), image.getRGB(25, 1));
+        assertEquals(Color.red.getRGB(), image.getRGB(45, 1));
+        assertEquals(0, image.getRGB(55, 1));
+        assertEquals(0, image.getRGB(5, 1));
+    }
+
+    /**
+     * Bases are painted over blocks
+     */
+    @Test
+    public void testLayerOrder() throws Exception {
+
+        Rectangle rowRect = new Rectangle(0, 0, 50, 4);
+        RowRaster raster = new RowRaster(rowRect);
+        raster.fill(RowRaster.BLOCK, 0, 50, Color.gray);
+        raster.fill(RowRaster.BASE, 20, 21, Color.green);
+
+        BufferedImage image = new BufferedImage(50, 4, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        RenderContextImpl context = new RenderContextImpl(null, g, null, null);
+        raster.paint(context, rowRect, 4);
+        context.dispose();
+        g.dispose();
+
+        assertEquals(Color.green.getRGB(), image.getRGB(20, 1));
+        assertEquals(Color.gray.getRGB(), image.getRGB(21, 1));
+    }
+
+    /**
+     * Layers should be painted with the same row geometry as the vector renderer
+     */
+    @Test
+    public void testRowGeometry() throws Exception {
+
+        Rectangle rowRect = new Rectangle(0, 0, 50, 12);
+        RowRaster raster = new RowRaster(rowRect);
+        raster.fill(RowRaster.COMPACT, 0, 10, Color.gray);
+        raster.fill(RowRaster.BLOCK, 10, 20, Color.gray);
+        raster.fill(RowRaster.TERMINAL, 20, 21, Color.darkGray);
+        raster.fill(RowRaster.BASE, 30, 31, Color.green);
+
+        BufferedImage image = new BufferedImage(50, 12, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        RenderContextImpl context = new RenderContextImpl(null, g, null, null);
+        raster.paint(context, rowRect, 10);
+        context.dispose();
+        g.dispose();
+
+        // Compact alignments are centered, with a 1 pixel margin
+        assertEquals(0, image.getRGB(5, 0));
+        assertEquals(Color.gray.getRGB(), image.getRGB(5, 1));
+        assertEquals(Color.gray.getRGB(), image.getRGB(5, 10));
+        assertEquals(0, image.getRGB(5, 11));
+
+        // Blocks are drawn from the top of the row
+        assertEquals(Color.gray.getRGB(), image.getRGB(15, 0));
+        assertEquals(Color.gray.getRGB(), image.getRGB(15, 9));
+        assertEquals(0, image.getRGB(15, 10));
+
+        // Strand markers span the block height
+        assertEquals(Color.darkGray.getRGB(), image.getRGB(20, 9));
+        assertEquals(0, image.getRGB(20, 10));
+
+        // Bases are inset on rows 10 pixels or taller
+        assertEquals(0, image.getRGB(30, 0));
+        assertEquals(Color.green.getRGB(), image.getRGB(30, 1));
+        assertEquals(Color.green.getRGB(), image.getRGB(30, 9));
+        assertEquals(0, image.getRGB(30, 10));
+    }
+}
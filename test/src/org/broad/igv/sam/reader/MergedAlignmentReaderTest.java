@@ -25,8 +25,11 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
 
 /**
  * @author jacob
@@ -94,4 +97,97 @@ public class MergedAlignmentReaderTest extends AbstractHeadlessTest {
         }
     }
 
+    /**
+     * Merging a file with itself should return every alignment twice, in position order
+     */
+    @Test
+    public void testMergeOrder() throws Exception {
+
+        String path = TestUtils.DATA_DIR + "sam/test_2.sam";
+        int expectedCount = 2 * countAlignments(AlignmentReaderFactory.getReader(path, false).iterator());
+
+        AlignmentReader mergedReader = AlignmentReaderFactory.getMergedReader(path + "," + path, false);
+        assertTrue(mergedReader instanceof MergedAlignmentReader);
+
+        CloseableIterator<Alignment> iter = mergedReader.iterator();
+        int count = 0;
+        Alignment last = null;
+        while (iter.hasNext()) {
+            Alignment a = iter.next();
+            if (last != null && last.getChr().equals(a.getChr())) {
+                assertTrue(a.getAlignmentStart() >= last.getAlignmentStart());
+            }
+            last = a;
+            count++;
+        }
+        iter.close();
+        mergedReader.close();
+
+        assertEquals(expectedCount, count);
+    }
+
+    /**
+     * Closing a partially consumed iterator should stop the decoding workers
+     */
+    @Test(timeout = 10000)
+    public void testEarlyClose() throws Exception {
+
+        String path = TestUtils.DATA_DIR + "sam/test_2.sam";
+        String mergedPath = path;
+        for (int i = 0; i < 20; i++) {
+            mergedPath += "," + path;
+        }
+        AlignmentReader mergedReader = AlignmentReaderFactory.getMergedReader(mergedPath, false);
+
+        CloseableIterator<Alignment> iter = mergedReader.iterator();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(iter.hasNext());
+            iter.next();
+        }
+        iter.close();
+        assertFalse(iter.hasNext());
+        mergedReader.close();
+    }
+
+    /**
+     * Interrupting the consumer should end the iteration with a cancellation, not a silently truncated result
+     */
+    @Test(timeout = 10000)
+    public void testInterrupt() throws Exception {
+
+        String path = TestUtils.DATA_DIR + "sam/test_2.sam";
+        String mergedPath = path;
+        for (int i = 0; i < 20; i++) {
+            mergedPath += "," + path;
+        }
+        AlignmentReader mergedReader = AlignmentReaderFactory.getMergedReader(mergedPath, false);
+
+        CloseableIterator<Alignment> iter = mergedReader.iterator();
+        Thread.currentThread().interrupt();
+        boolean cancelled = false;
+        try {
+            while (iter.hasNext()) {
+                iter.next();
+            }
+        } catch (CancellationException e) {
+            cancelled = true;
+        } finally {
+            // Clear the interrupt flag for the following tests
+            assertTrue(Thread.interrupted());
+            iter.close();
+            mergedReader.close();
+        }
+        assertTrue(cancelled);
+    }
+
+    private int countAlignments(CloseableIterator<Alignment> iter) {
+        int count = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            count++;
+        }
+        iter.close();
+        return count;
+    }
+
 }
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.sam.reader;
+
+import net.sf.samtools.*;
+import net.sf.samtools.util.CloseableIterator;
+import net.sf.samtools.util.RuntimeIOException;
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.util.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class ParallelBAMQueryIteratorTest extends AbstractHeadlessTest {
+
+    private static final int N_COPIES = 50;
+    private static final int COPY_SPACING = 5000;
+
+    private File bamFile;
+    private int firstStart;
+    private int nRecords;
+
+    /**
+     * Create an indexed BAM spanning many BGZF blocks, from shifted copies of the alignments in a small SAM file.
+     * The output directory is cleared after each test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        SAMFileReader samReader = new SAMFileReader(new File(TestUtils.DATA_DIR, "sam/test_2.sam"));
+        samReader.setValidationStringency(SAMFileReader.ValidationStringency.SILENT);
+        SAMFileHeader header = samReader.getFileHeader();
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        List<SAMRecord> records = new ArrayList<SAMRecord>();
+        for (SAMRecord record : samReader) {
+            records.add(record);
+        }
+        samReader.close();
+        firstStart = records.get(0).getAlignmentStart();
+        nRecords = records.size();
+
+        bamFile = new File(TestUtils.DATA_DIR, "out/parallelQueryTest.bam");
+        SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, true, bamFile);
+        for (int i = 0; i < N_COPIES; i++) {
+            for (SAMRecord record : records) {
+                SAMRecord copy = (SAMRecord) record.clone();
+                copy.setReadName(record.getReadName() + "_" + i);
+                copy.setAlignmentStart(record.getAlignmentStart() + i * COPY_SPACING);
+                copy.setMateUnmappedFlag(true);
+                copy.setMateReferenceName(SAMRecord.NO_ALIGNMENT_REFERENCE_NAME);
+                copy.setMateAlignmentStart(0);
+                writer.addAlignment(copy);
+            }
+        }
+        writer.close();
+    }
+
+    /**
+     * Parallel queries should return exactly the records returned by Picard
+     */
+    @Test
+    public void testQuery() throws Exception {
+
+        BAMFileReader reader = new BAMFileReader(bamFile);
+        SAMFileReader picardReader = new SAMFileReader(bamFile, new File(bamFile.getPath().replace(".bam", ".bai")));
+        picardReader.setValidationStringency(SAMFileReader.ValidationStringency.SILENT);
+
+        int[][] regions = {
+                {firstStart - 100, firstStart + 1000},
+                {firstStart + 3 * COPY_SPACING, firstStart + 10 * COPY_SPACING},
+                {firstStart, firstStart + N_COPIES * COPY_SPACING},
+                {firstStart + N_COPIES * COPY_SPACING + 10000, firstStart + N_COPIES * COPY_SPACING + 20000}
+        };
+
+        for (boolean contained : new boolean[]{false, true}) {
+            for (int[] region : regions) {
+                List<String> expected = new ArrayList<String>();
+                CloseableIterator<SAMRecord> picardIter = picardReader.query("chr3", region[0] + 1, region[1], contained);
+                while (picardIter.hasNext()) {
+                    SAMRecord record = picardIter.next();
+                    expected.add(record.getReadName() + ":" + record.getAlignmentStart());
+                }
+                picardIter.close();
+
+                List<String> actual = new ArrayList<String>();
+                CloseableIterator<SAMRecord> iter = reader.parallelQuery("chr3", region[0], region[1], contained);
+                while (iter.hasNext()) {
+                    SAMRecord record = iter.next();
+                    actual.add(record.getReadName() + ":" + record.getAlignmentStart());
+                }
+                iter.close();
+
+                assertEquals(expected, actual);
+            }
+        }
+        assertEquals(N_COPIES * nRecords, countAll(reader));
+
+        picardReader.close();
+        reader.close();
+    }
+
+    @Test
+    public void testUnknownSequence() throws Exception {
+        BAMFileReader reader = new BAMFileReader(bamFile);
+        CloseableIterator<SAMRecord> iter = reader.parallelQuery("noSuchChr", 0, 1000, false);
+        assertTrue(!iter.hasNext());
+        iter.close();
+        reader.close();
+    }
+
+    /**
+     * A read error part way through a parallel query should continue from the same record with Picard
+     */
+    @Test
+    public void testFallback() throws Exception {
+        BAMFileReader reader = new BAMFileReader(bamFile);
+        int start = firstStart;
+        int end = firstStart + N_COPIES * COPY_SPACING;
+
+        List<String> expected = new ArrayList<String>();
+        CloseableIterator<SAMRecord> iter = reader.parallelQuery("chr3", start, end, false);
+        while (iter.hasNext()) {
+            SAMRecord record = iter.next();
+            expected.add(record.getReadName() + ":" + record.getAlignmentStart());
+        }
+        iter.close();
+        assertTrue(expected.size() > 10);
+
+        // Fail on the 11th record
+        final CloseableIterator<SAMRecord> parallelIter = reader.parallelQuery("chr3", start, end, false);
+        CloseableIterator<SAMRecord> failingIter = new CloseableIterator<SAMRecord>() {
+            int count = 0;
+
+            public boolean hasNext() {
+                return parallelIter.hasNext();
+            }
+
+            public SAMRecord next() {
+                if (++count > 10) {
+                    throw new RuntimeException("Simulated read error");
+                }
+                return parallelIter.next();
+            }
+
+            public void remove() {
+            }
+
+            public void close() {
+                parallelIter.close();
+            }
+        };
+
+        List<String> actual = new ArrayList<String>();
+        iter = reader.new FallbackIterator(failingIter, "chr3", start, end, false);
+        while (iter.hasNext()) {
+            SAMRecord record = iter.next();
+            actual.add(record.getReadName() + ":" + record.getAlignmentStart());
+        }
+        iter.close();
+
+        assertEquals(expected, actual);
+        reader.close();
+    }
+
+    /**
+     * An interrupted read should be rethrown, not retried with Picard
+     */
+    @Test
+    public void testInterruptNotRetried() throws Exception {
+        BAMFileReader reader = new BAMFileReader(bamFile);
+        int start = firstStart;
+        int end = firstStart + N_COPIES * COPY_SPACING;
+
+        final CloseableIterator<SAMRecord> parallelIter = reader.parallelQuery("chr3", start, end, false);
+        CloseableIterator<SAMRecord> interruptedIter = new CloseableIterator<SAMRecord>() {
+            public boolean hasNext() {
+                return parallelIter.hasNext();
+            }
+
+            public SAMRecord next() {
+                throw new RuntimeIOException("Read interrupted", new InterruptedIOException("Interrupted"));
+            }
+
+            public void remove() {
+            }
+
+            public void close() {
+                parallelIter.close();
+            }
+        };
+
+        CloseableIterator<SAMRecord> iter = reader.new FallbackIterator(interruptedIter, "chr3", start, end, false);
+        try {
+            iter.next();
+            fail("Expected the interruption to be rethrown");
+        } catch (RuntimeIOException e) {
+            assertTrue(e.getCause() instanceof InterruptedIOException);
+        } finally {
+            iter.close();
+            reader.close();
+        }
+    }
+
+    private int countAll(BAMFileReader reader) throws Exception {
+        CloseableIterator<SAMRecord> iter = reader.parallelQuery("chr3", 0, Integer.MAX_VALUE, false);
+        int count = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            count++;
+        }
+        iter.close();
+        return count;
+    }
+}
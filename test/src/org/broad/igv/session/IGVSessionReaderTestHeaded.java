@@ -31,6 +31,8 @@ import org.junit.Assume;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static junit.framework.Assert.*;
@@ -420,6 +422,25 @@ public class IGVSessionReaderTestHeaded extends AbstractHeadedTest{
         assertEquals(3, IGV.getInstance().getVisibleTrackCount());
     }
 
+    /**
+     * Tracks are placed as their resources load, in a different order than the panels list them
+     */
+    @Test
+    public void testLoadPanelOrder() throws Exception {
+        String sessionPath = TestUtils.DATA_DIR + "sessions/panel_order.xml";
+        rewriteRestoreSession(sessionPath);
+
+        List<String> names = new ArrayList<String>();
+        for (Track track : IGV.getInstance().getTrackPanel("FeaturePanel").getTracks()) {
+            if (track.getName().startsWith("GSM")) names.add(track.getName());
+        }
+        assertEquals(Arrays.asList("GSM1004654_100k.bed", "GSM1004654_10k.bed"), names);
+
+        List<Track> otherTracks = IGV.getInstance().getTrackPanel("OtherPanel").getTracks();
+        assertEquals(1, otherTracks.size());
+        assertEquals("Unigene", otherTracks.get(0).getName());
+    }
+
     private boolean listContainsFeature(List<Feature> featureList, Feature feature){
         for (Feature listFeature : featureList) {
             if ((feature.getChr().equals(listFeature.getChr())) &&
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.session;
+
+import org.broad.igv.track.Track;
+import org.broad.igv.util.ResourceLocator;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.*;
+
+public class SessionLoadSchedulerTest {
+
+    /**
+     * Results are delivered in resource order, on the calling thread, with errors reported per resource
+     */
+    @Test
+    public void testLoad() throws Exception {
+
+        final List<ResourceLocator> locators = new ArrayList<ResourceLocator>();
+        for (int i = 0; i < 50; i++) {
+            locators.add(new ResourceLocator("file" + i + (i % 10 == 0 ? ".bam" : ".bed")));
+        }
+        // Listed twice
+        locators.add(new ResourceLocator("file1.bed"));
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final Map<String, AtomicInteger> runningPerPath = new ConcurrentHashMap<String, AtomicInteger>();
+        final Set<String> loadThreads = Collections.synchronizedSet(new HashSet<String>());
+        final Random random = new Random(1);
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+
+        SessionLoadScheduler.ResourceLoader loader = new SessionLoadScheduler.ResourceLoader() {
+            public List<Track> load(ResourceLocator locator) throws Exception {
+                String path = locator.getPath();
+                if (SessionLoadScheduler.isSerial(locator)) {
+                    loadThreads.add(Thread.currentThread().getName());
+                }
+                runningPerPath.putIfAbsent(path, new AtomicInteger());
+                if (runningPerPath.get(path).incrementAndGet() > 1) {
+                    failures.add("Concurrent loads of " + path);
+                }
+                int n = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), n));
+                }
+                try {
+                    int delay;
+                    synchronized (random) {
+                        delay = random.nextInt(10);
+                    }
+                    Thread.sleep(delay);
+                    if (path.equals("file7.bed")) {
+                        throw new RuntimeException("Error loading " + path);
+                    }
+                    return Collections.emptyList();
+                } finally {
+                    running.decrementAndGet();
+                    runningPerPath.get(path).decrementAndGet();
+                }
+            }
+        };
+
+        final List<ResourceLocator> delivered = new ArrayList<ResourceLocator>();
+        final List<ResourceLocator> failed = new ArrayList<ResourceLocator>();
+        final Thread caller = Thread.currentThread();
+        SessionLoadScheduler.LoadListener listener = new SessionLoadScheduler.LoadListener() {
+            public void loaded(ResourceLocator locator, List<Track> tracks) {
+                assertSame(caller, Thread.currentThread());
+                delivered.add(locator);
+            }
+
+            public void failed(ResourceLocator locator, Exception e) {
+                delivered.add(locator);
+                failed.add(locator);
+            }
+        };
+
+        new SessionLoadScheduler().load(locators, loader, listener);
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(locators, delivered);
+        assertEquals(Arrays.asList(new ResourceLocator("file7.bed")), failed);
+        assertTrue(maxRunning.get() <= SessionLoadScheduler.POOL_SIZE + 1);
+        // Alignment files are loaded one at a time, off the calling thread
+        assertEquals(1, loadThreads.size());
+        assertFalse(loadThreads.contains(caller.getName()));
+    }
+
+    /**
+     * A result is passed to the listener without waiting for resources loaded after it by the same thread
+     */
+    @Test
+    public void testDeliveredWhenLoaded() throws Exception {
+
+        final List<ResourceLocator> locators = Arrays.asList(
+                new ResourceLocator("a.bam"), new ResourceLocator("b.bam"),
+                new ResourceLocator("c.bed"), new ResourceLocator("c.bed"));
+        final CountDownLatch bamDelivered = new CountDownLatch(1);
+        final CountDownLatch bedDelivered = new CountDownLatch(1);
+
+        SessionLoadScheduler.ResourceLoader loader = new SessionLoadScheduler.ResourceLoader() {
+            boolean bedLoaded = false;
+
+            public List<Track> load(ResourceLocator locator) throws Exception {
+                if (locator.getPath().equals("b.bam")) {
+                    assertTrue("a.bam not delivered", bamDelivered.await(10, TimeUnit.SECONDS));
+                } else if (locator.getPath().equals("c.bed")) {
+                    // The second load of c.bed waits for the first to be delivered
+                    if (bedLoaded) assertTrue("c.bed not delivered", bedDelivered.await(10, TimeUnit.SECONDS));
+                    bedLoaded = true;
+                }
+                return Collections.emptyList();
+            }
+        };
+
+        final List<ResourceLocator> delivered = new ArrayList<ResourceLocator>();
+        SessionLoadScheduler.LoadListener listener = new SessionLoadScheduler.LoadListener() {
+            public void loaded(ResourceLocator locator, List<Track> tracks) {
+                delivered.add(locator);
+                if (locator.getPath().equals("a.bam")) bamDelivered.countDown();
+                if (locator.getPath().equals("c.bed")) bedDelivered.countDown();
+            }
+
+            public void failed(ResourceLocator locator, Exception e) {
+                fail(e.toString());
+            }
+        };
+
+        new SessionLoadScheduler().load(locators, loader, listener);
+        assertEquals(locators, delivered);
+    }
+}
@@ -14,12 +14,20 @@ package org.broad.igv.synteny;
 import org.broad.igv.util.TestUtils;
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * User: jrobinso
@@ -57,4 +65,159 @@ public class SyntenyUtilsTest {
         assertEquals("Forward mapping", humanPosition, toPosition, 1.0);
 
     }
+
+    /**
+     * Index queries should agree with a brute force scan of all mappings
+     */
+    @Test
+    public void testIndexMatchesScan() throws IOException {
+
+        Map<String, List<Mapping>> mappings = SyntenyUtils.loadMappings(testMappings, false);
+        SyntenyIndex index = new SyntenyIndex(mappings);
+
+        for (Map.Entry<String, List<Mapping>> entry : mappings.entrySet()) {
+            String chr = entry.getKey();
+            List<Mapping> mappingList = entry.getValue();
+            Mapping last = mappingList.get(mappingList.size() - 1);
+            int maxPosition = last.getFromEnd() + 1000;
+            int step = Math.max(1, maxPosition / 500);
+
+            for (int position = 0; position < maxPosition; position += step) {
+                Mapping expected = null;
+                for (Mapping m : mappingList) {
+                    if (m.containsFromPosition(position)) {
+                        expected = m;
+                        break;
+                    }
+                }
+                assertSame(chr + ":" + position, expected, index.getMappingContaining(chr, position));
+
+                int end = position + step * 3;
+                List<Mapping> expectedOverlaps = new ArrayList<Mapping>();
+                for (Mapping m : mappingList) {
+                    if (m.getFromEnd() >= position && m.getFromStart() <= end) {
+                        expectedOverlaps.add(m);
+                    }
+                }
+                assertEquals(expectedOverlaps, index.getMappingsOverlapping(chr, position, end));
+            }
+        }
+
+        assertNull(index.getMappingContaining("noSuchChr", 1000));
+        assertEquals(0, index.getMappingsOverlapping("noSuchChr", 1000, 2000).size());
+    }
+
+    @Test
+    public void testLiftoverCN() throws IOException {
+
+        //region R:chr2:chr2:D10 chr2 139839284 176464687 + chr2 39414197 74293149 +
+        File cnFile = new File(TestUtils.TMP_OUTPUT_DIR, "liftover_test.cn");
+        File outFile = new File(TestUtils.TMP_OUTPUT_DIR, "liftover_test.mapped.cn");
+        cnFile.getParentFile().mkdirs();
+
+        PrintWriter pw = new PrintWriter(new FileWriter(cnFile));
+        pw.println("SNP\tChromosome\tPhysicalPosition\tsample1");
+        pw.println("snp1\tchr2\t139839284\t1.5");
+        pw.println("snp2\t2\t139839284\t2.5");
+        pw.println("snp3\tchr2\t1\t3.5");
+        pw.close();
+
+        SyntenyIndex index = SyntenyIndex.load(testMappings, false);
+        Liftover liftover = new Liftover(index);
+        int unmapped = liftover.convert(cnFile.getAbsolutePath(), outFile.getAbsolutePath(), Liftover.CN);
+        assertEquals(3, liftover.getRecordCount());
+        assertEquals(1, unmapped);
+
+        BufferedReader reader = new BufferedReader(new FileReader(outFile));
+        assertEquals("SNP\tChromosome\tPhysicalPosition\tsample1", reader.readLine());
+        for (String snp : new String[]{"snp1", "snp2"}) {
+            String[] tokens = reader.readLine().split("\t");
+            assertEquals(snp, tokens[0]);
+            assertEquals("chr2", tokens[1]);
+            assertEquals(39414197, Integer.parseInt(tokens[2]), 1);
+        }
+        assertNull(reader.readLine());
+        reader.close();
+    }
+
+    /**
+     * Two regions on chr1 with a gap between them, the second inverted
+     */
+    private static SyntenyIndex getSplitIndex() throws IOException {
+        File mappingFile = new File(TestUtils.TMP_OUTPUT_DIR, "liftover_split.regions");
+        mappingFile.getParentFile().mkdirs();
+        PrintWriter pw = new PrintWriter(new FileWriter(mappingFile));
+        pw.println("region R1 chr1 1000 2000 + chrA 0 1000 +");
+        pw.println("region R2 chr1 2500 3500 + chrB 5000 6000 -");
+        pw.close();
+        return SyntenyIndex.load(mappingFile.getAbsolutePath(), false);
+    }
+
+    private static List<String> liftOver(SyntenyIndex index, String format, String... lines) throws IOException {
+        File inFile = new File(TestUtils.TMP_OUTPUT_DIR, "liftover_split." + format);
+        File outFile = new File(TestUtils.TMP_OUTPUT_DIR, "liftover_split.mapped." + format);
+        PrintWriter pw = new PrintWriter(new FileWriter(inFile));
+        for (String line : lines) {
+            pw.println(line);
+        }
+        pw.close();
+
+        (new Liftover(index)).convert(inFile.getAbsolutePath(), outFile.getAbsolutePath(), format);
+
+        List<String> mapped = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(outFile));
+        String nextLine;
+        while ((nextLine = reader.readLine()) != null) {
+            mapped.add(nextLine);
+        }
+        reader.close();
+        return mapped;
+    }
+
+    @Test
+    public void testLiftoverSegSplit() throws IOException {
+        List<String> mapped = liftOver(getSplitIndex(), Liftover.SEG,
+                "Sample\tChromosome\tStart\tEnd\tValue",
+                "s1\tchr1\t1500\t3000\t0.5");
+
+        assertEquals(3, mapped.size());
+        assertEquals("Sample\tChromosome\tStart\tEnd\tValue", mapped.get(0));
+        assertEquals("s1\tchrA\t500\t1000\t0.5", mapped.get(1));
+        assertEquals("s1\tchrB\t5500\t6000\t0.5", mapped.get(2));
+    }
+
+    @Test
+    public void testLiftoverBedSplit() throws IOException {
+        List<String> mapped = liftOver(getSplitIndex(), Liftover.BED,
+                "track name=test",
+                "chr1\t1500\t3000\tf1\t100\t+\t1500\t3000",
+                "chr1\t900\t1000\tf2\t100\t-");
+
+        // Half open, so the bases 1500-2000 and 2500-2999 are mapped.  The second mapping is inverted, which flips
+        // the strand.  f2 ends where the first mapping starts, and is not mapped.
+        assertEquals(3, mapped.size());
+        assertEquals("track name=test", mapped.get(0));
+        assertEquals("chrA\t500\t1001\tf1\t100\t+", mapped.get(1));
+        assertEquals("chrB\t5501\t6001\tf1\t100\t-", mapped.get(2));
+    }
+
+    /**
+     * Mapping ends are closed, a record starting on the last base of a mapping keeps that base
+     */
+    @Test
+    public void testLiftoverMappingEnd() throws IOException {
+        List<String> mapped = liftOver(getSplitIndex(), Liftover.BED,
+                "chr1\t2000\t2100\tf1\t100\t+",
+                "chr1\t2001\t2100\tf2\t100\t+");
+
+        assertEquals(1, mapped.size());
+        assertEquals("chrA\t1000\t1001\tf1\t100\t+", mapped.get(0));
+
+        mapped = liftOver(getSplitIndex(), Liftover.SEG,
+                "Sample\tChromosome\tStart\tEnd\tValue",
+                "s1\tchr1\t2000\t2100\t0.5");
+
+        assertEquals(2, mapped.size());
+        assertEquals("s1\tchrA\t1000\t1000\t0.5", mapped.get(1));
+    }
 }
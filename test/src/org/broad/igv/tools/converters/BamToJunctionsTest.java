@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.tools.converters;
+
+import net.sf.samtools.util.CloseableIterator;
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.feature.SpliceJunctionFeature;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.feature.tribble.IGVBEDCodec;
+import org.broad.igv.sam.Alignment;
+import org.broad.igv.sam.SpliceJunctionHelper;
+import org.broad.igv.sam.reader.AlignmentReader;
+import org.broad.igv.sam.reader.AlignmentReaderFactory;
+import org.broad.igv.tdf.TDFDataSource;
+import org.broad.igv.tdf.TDFReader;
+import org.broad.igv.tools.IgvTools;
+import org.broad.igv.util.TestUtils;
+import org.broad.tribble.AbstractFeatureReader;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class BamToJunctionsTest extends AbstractHeadlessTest {
+
+    /**
+     * Junctions read back from the converted file should be identical to those computed
+     * directly from the alignments.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConvert() throws Exception {
+
+        String inputPath = TestUtils.DATA_DIR + "sam/cufflinks_test_data.sam";
+        File outputFile = new File(TestUtils.DATA_DIR, "out/cufflinks_test_data.junctions.bed");
+
+        BamToJunctions.convert(new File(inputPath), outputFile, 1, 0);
+
+        List<SpliceJunctionFeature> expectedJunctions = computeJunctions(inputPath);
+        assertTrue(expectedJunctions.size() > 0);
+
+        IGVBEDCodec codec = new IGVBEDCodec();
+        AbstractFeatureReader bfr = AbstractFeatureReader.getFeatureReader(outputFile.getAbsolutePath(), codec, false);
+        Iterator<BasicFeature> iter = bfr.iterator();
+        List<SpliceJunctionFeature> junctions = new ArrayList<SpliceJunctionFeature>();
+        while (iter.hasNext()) {
+            BasicFeature feature = iter.next();
+            assertTrue(feature instanceof SpliceJunctionFeature);
+            junctions.add((SpliceJunctionFeature) feature);
+        }
+
+        assertEquals(expectedJunctions.size(), junctions.size());
+        for (int i = 0; i < junctions.size(); i++) {
+            SpliceJunctionFeature expected = expectedJunctions.get(i);
+            SpliceJunctionFeature actual = junctions.get(i);
+            assertEquals(expected.getChr(), actual.getChr());
+            assertEquals(expected.getStart(), actual.getStart());
+            assertEquals(expected.getEnd(), actual.getEnd());
+            assertEquals(expected.getJunctionStart(), actual.getJunctionStart());
+            assertEquals(expected.getJunctionEnd(), actual.getJunctionEnd());
+            assertEquals(expected.getJunctionDepth(), actual.getJunctionDepth());
+            assertEquals(expected.getStrand(), actual.getStrand());
+        }
+    }
+
+    /**
+     * The minimum coverage applies to the depth of both strands combined
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMinJunctionCoverage() throws Exception {
+
+        String inputPath = TestUtils.DATA_DIR + "sam/cufflinks_test_data.sam";
+        File outputFile = new File(TestUtils.DATA_DIR, "out/cufflinks_test_data.junctions.bed");
+
+        List<SpliceJunctionFeature> allJunctions = computeJunctions(inputPath);
+        Map<String, Integer> combinedDepths = new HashMap<String, Integer>();
+        int maxDepth = 0;
+        for (SpliceJunctionFeature junction : allJunctions) {
+            String key = junction.getJunctionStart() + "_" + junction.getJunctionEnd();
+            Integer depth = combinedDepths.get(key);
+            depth = (depth == null ? 0 : depth) + junction.getJunctionDepth();
+            combinedDepths.put(key, depth);
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        for (int minCoverage = 2; minCoverage <= maxDepth + 1; minCoverage++) {
+            BamToJunctions.convert(new File(inputPath), outputFile, minCoverage, 0);
+            int expected = 0;
+            for (SpliceJunctionFeature junction : allJunctions) {
+                if (combinedDepths.get(junction.getJunctionStart() + "_" + junction.getJunctionEnd()) >= minCoverage) {
+                    expected++;
+                }
+            }
+            assertEquals(expected, readJunctions(outputFile).size());
+        }
+    }
+
+    /**
+     * With a genome the combined junction depth is written to a tdf file, for display when zoomed out
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testZoomSummary() throws Exception {
+
+        String inputPath = TestUtils.DATA_DIR + "sam/cufflinks_test_data.sam";
+        File outputFile = new File(TestUtils.DATA_DIR, "out/cufflinks_test_data.junctions.bed");
+        File sizesFile = new File(TestUtils.DATA_DIR, "out/junctions_test.chrom.sizes");
+        PrintWriter pw = new PrintWriter(new FileWriter(sizesFile));
+        pw.println("test_chromosome\t100000");
+        pw.close();
+        Genome testGenome = IgvTools.loadGenome(sizesFile.getAbsolutePath());
+
+        BamToJunctions.convert(new File(inputPath), outputFile, 1, 0, testGenome);
+
+        int maxDepth = 0;
+        for (SpliceJunctionFeature junction : readJunctions(outputFile)) {
+            maxDepth = Math.max(maxDepth, junction.getJunctionDepth());
+        }
+
+        File summaryFile = new File(outputFile.getAbsolutePath() + ".tdf");
+        assertTrue(summaryFile.exists());
+        TDFDataSource summary = new TDFDataSource(TDFReader.getReader(summaryFile.getAbsolutePath()), 0, "", testGenome);
+        List<LocusScore> scores = summary.getSummaryScoresForRange("test_chromosome", 0, 100000, 0);
+        assertTrue(scores.size() > 0);
+        for (LocusScore score : scores) {
+            assertTrue(score.getScore() > 0);
+            assertTrue(score.getScore() <= 2 * maxDepth);
+        }
+    }
+
+    private List<SpliceJunctionFeature> readJunctions(File file) throws Exception {
+        IGVBEDCodec codec = new IGVBEDCodec();
+        AbstractFeatureReader bfr = AbstractFeatureReader.getFeatureReader(file.getAbsolutePath(), codec, false);
+        Iterator<BasicFeature> iter = bfr.iterator();
+        List<SpliceJunctionFeature> junctions = new ArrayList<SpliceJunctionFeature>();
+        while (iter.hasNext()) {
+            junctions.add((SpliceJunctionFeature) iter.next());
+        }
+        bfr.close();
+        return junctions;
+    }
+
+    private List<SpliceJunctionFeature> computeJunctions(String path) throws Exception {
+        SpliceJunctionHelper helper = new SpliceJunctionHelper(new SpliceJunctionHelper.LoadOptions(1, 0));
+        AlignmentReader reader = AlignmentReaderFactory.getReader(path, false);
+        CloseableIterator<Alignment> iter = reader.iterator();
+        while (iter.hasNext()) {
+            Alignment a = iter.next();
+            if (a.isMapped() && !a.isDuplicate() && !a.isVendorFailedRead()) {
+                helper.addAlignment(a);
+            }
+        }
+        iter.close();
+        reader.close();
+        helper.finish();
+        return helper.getFilteredJunctions();
+    }
+}
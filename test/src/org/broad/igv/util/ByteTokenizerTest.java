@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util;
+
+import org.broad.igv.Globals;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.*;
+
+public class ByteTokenizerTest {
+
+    @Test
+    public void testParseFloat() throws Exception {
+
+        String[] values = {"0", "-0", "1", "+1.5", "0.1", "3.14159", "-2.5e-3", "1E10", "1.", ".5", "123456789012345678901",
+                "0.000000000000000000000000000000000000000001", "3.4028236e38", "1e-50", "16777217", "NaN", "-Infinity",
+                "1.5f", " 7 ", "0.33333334", "1.0000000596046448"};
+        for (String v : values) {
+            assertEquals(v, Float.parseFloat(v), parseFloat(v));
+        }
+
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            String v;
+            switch (i % 4) {
+                case 0:
+                    v = String.valueOf(random.nextFloat() * 1000 - 500);
+                    break;
+                case 1:
+                    v = String.valueOf(random.nextDouble());
+                    break;
+                case 2:
+                    v = String.format("%.4f", random.nextGaussian());
+                    break;
+                default:
+                    v = String.valueOf(Float.intBitsToFloat(random.nextInt()));
+            }
+            assertEquals(v, Float.floatToIntBits(Float.parseFloat(v)), Float.floatToIntBits(parseFloat(v)));
+        }
+
+        String[] invalid = {"", "-", ".", "1e", "abc", "1.2.3", "--1"};
+        for (String v : invalid) {
+            try {
+                parseFloat(v);
+                fail("Expected NumberFormatException: " + v);
+            } catch (NumberFormatException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testParseInt() throws Exception {
+        String[] values = {"0", "-12", "+7", "123456789", "2147483647", "-2147483648", "1e6", " 42 ", "3.7"};
+        for (String v : values) {
+            byte[] bytes = v.getBytes();
+            assertEquals(v, ParsingUtils.parseInt(v), ByteTokenizer.parseInt(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    public void testTokenize() throws Exception {
+
+        String[] lines = {"a\tb\tc", "a\t\tc\t", "\t", "", "single", "1.5\tNA\t\t-2"};
+        ByteTokenizer tokenizer = new ByteTokenizer();
+        for (String line : lines) {
+            String[] expected = Globals.tabPattern.split(line, -1);
+            assertTokens(expected, tokenizer, line);
+        }
+
+        String[] spaceLines = {"chr1 10  20\t1.5", "100   2.5  ", " 1 2", "a\t b", "1\t\t2\t"};
+        tokenizer = new ByteTokenizer(true);
+        for (String line : spaceLines) {
+            String[] expected = Globals.singleTabMultiSpacePattern.split(line);
+            assertTokens(expected, tokenizer, line);
+        }
+
+        byte[] bytes = "1.5\tNA\t\tNaN\tx".getBytes();
+        tokenizer = new ByteTokenizer();
+        tokenizer.tokenize(bytes, 0, bytes.length);
+        assertEquals(1.5f, tokenizer.getFloat(0, Float.NaN));
+        assertTrue(Float.isNaN(tokenizer.getFloat(1, Float.NaN)));
+        assertEquals(-1f, tokenizer.getFloat(2, -1f));
+        assertTrue(Float.isNaN(tokenizer.getFloat(3, 0)));
+        assertEquals(-1f, tokenizer.getFloat(4, -1f));
+        assertEquals(-1f, tokenizer.getFloat(5, -1f));
+    }
+
+    /**
+     * Strings are decoded with the charset given, ISO-8859-1 by default
+     */
+    @Test
+    public void testCharset() throws Exception {
+
+        String line = "g\u00e8ne\tcaf\u00e9\t1.5";
+        byte[] utf8 = line.getBytes("UTF-8");
+        ByteTokenizer tokenizer = new ByteTokenizer(false, Charset.forName("UTF-8"));
+        tokenizer.tokenize(utf8, 0, utf8.length);
+        assertEquals("g\u00e8ne", tokenizer.getString(0));
+        assertTrue(tokenizer.equals(1, "caf\u00e9"));
+        assertEquals(1.5f, tokenizer.getFloat(2, Float.NaN));
+
+        ByteLineReader reader = new ByteLineReader(new ByteArrayInputStream(utf8), Charset.forName("UTF-8"));
+        assertEquals(line, reader.readLine());
+
+        byte[] latin1 = line.getBytes("ISO-8859-1");
+        tokenizer = new ByteTokenizer();
+        tokenizer.tokenize(latin1, 0, latin1.length);
+        assertEquals("g\u00e8ne", tokenizer.getString(0));
+        assertTrue(tokenizer.equals(1, "caf\u00e9"));
+    }
+
+    private void assertTokens(String[] expected, ByteTokenizer tokenizer, String line) {
+        byte[] bytes = line.getBytes();
+        assertEquals(line, expected.length, tokenizer.tokenize(bytes, 0, bytes.length));
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], tokenizer.getString(i));
+            assertTrue(tokenizer.equals(i, expected[i]));
+        }
+    }
+
+    @Test
+    public void testLineReader() throws Exception {
+
+        StringBuilder buffer = new StringBuilder();
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            String line = "line " + i + (i % 7 == 0 ? " with some longer text" : "");
+            lines.add(line);
+            buffer.append(line).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        buffer.append("last");
+        lines.add("last");
+        byte[] bytes = buffer.toString().getBytes();
+
+        // Small buffer, so that lines span buffer refills
+        ByteLineReader reader = new ByteLineReader(new ByteArrayInputStream(bytes), 16);
+        for (String line : lines) {
+            assertTrue(reader.nextLine());
+            assertEquals(line, reader.getLine());
+            assertEquals(line, new String(bytes, (int) reader.getLinePosition(), line.length()));
+        }
+        assertFalse(reader.nextLine());
+
+        // Blocks contain complete lines, in order
+        reader = new ByteLineReader(new ByteArrayInputStream(bytes), 16);
+        assertEquals(lines.get(0), reader.readLine());
+        List<String> blockLines = new ArrayList<String>();
+        ByteLineReader block;
+        int nBlocks = 0;
+        while ((block = reader.readBlock(100)) != null) {
+            nBlocks++;
+            while (block.nextLine()) {
+                blockLines.add(block.getLine());
+                assertTrue(new String(bytes, (int) block.getLinePosition(), bytes.length - (int) block.getLinePosition())
+                        .startsWith(block.getLine()));
+            }
+        }
+        assertTrue(nBlocks > 10);
+        assertEquals(lines.subList(1, lines.size()), blockLines);
+    }
+
+    private static float parseFloat(String s) {
+        byte[] bytes = s.getBytes();
+        return ByteTokenizer.parseFloat(bytes, 0, bytes.length);
+    }
+}
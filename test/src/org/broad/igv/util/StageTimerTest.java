@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static junit.framework.Assert.*;
+
+public class StageTimerTest {
+
+    @Before
+    public void setUp() {
+        StageTimer.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        StageTimer.setEnabled(false);
+    }
+
+    /**
+     * Time in a nested stage is not charged to the enclosing stage
+     */
+    @Test
+    public void testNesting() throws Exception {
+
+        long[] start = StageTimer.getTotals();
+        StageTimer.push(StageTimer.Stage.DECODE);
+        try {
+            Thread.sleep(50);
+            StageTimer.push(StageTimer.Stage.IO);
+            try {
+                Thread.sleep(200);
+            } finally {
+                StageTimer.pop();
+            }
+        } finally {
+            StageTimer.pop();
+        }
+        long[] end = StageTimer.getTotals();
+
+        long decode = end[StageTimer.Stage.DECODE.ordinal()] - start[StageTimer.Stage.DECODE.ordinal()];
+        long io = end[StageTimer.Stage.IO.ordinal()] - start[StageTimer.Stage.IO.ordinal()];
+        assertTrue(io >= 200e6);
+        assertTrue(decode >= 50e6);
+        assertTrue(decode < 200e6);
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+
+        StageTimer.setEnabled(false);
+        long[] start = StageTimer.getTotals();
+        StageTimer.push(StageTimer.Stage.PAINT);
+        Thread.sleep(10);
+        StageTimer.pop();
+        assertTrue(Arrays.equals(start, StageTimer.getTotals()));
+
+        Iterator<String> iter = Arrays.asList("a").iterator();
+        assertSame(iter, StageTimer.wrap(iter, StageTimer.Stage.DECODE));
+    }
+
+    /**
+     * A stage left open when timing is disabled is not charged after timing is enabled again
+     */
+    @Test
+    public void testDisabledInsideStage() throws Exception {
+
+        StageTimer.push(StageTimer.Stage.SEQUENCE);
+        StageTimer.setEnabled(false);
+        StageTimer.pop();
+        StageTimer.setEnabled(true);
+
+        long[] start = StageTimer.getTotals();
+        StageTimer.push(StageTimer.Stage.IO);
+        Thread.sleep(50);
+        StageTimer.pop();
+        Thread.sleep(50);
+        StageTimer.push(StageTimer.Stage.IO);
+        StageTimer.pop();
+        long[] end = StageTimer.getTotals();
+
+        assertEquals(start[StageTimer.Stage.SEQUENCE.ordinal()], end[StageTimer.Stage.SEQUENCE.ordinal()]);
+        assertTrue(end[StageTimer.Stage.IO.ordinal()] - start[StageTimer.Stage.IO.ordinal()] >= 50e6);
+    }
+
+    @Test
+    public void testWrap() throws Exception {
+
+        long[] start = StageTimer.getTotals();
+        StageTimer.push(StageTimer.Stage.PACK);
+        try {
+            Iterator<String> iter = StageTimer.wrap(Arrays.asList("a", "b").iterator(), StageTimer.Stage.DECODE);
+            int count = 0;
+            while (iter.hasNext()) {
+                iter.next();
+                count++;
+            }
+            assertEquals(2, count);
+        } finally {
+            StageTimer.pop();
+        }
+        long[] end = StageTimer.getTotals();
+        assertTrue(end[StageTimer.Stage.DECODE.ordinal()] > start[StageTimer.Stage.DECODE.ordinal()]);
+        assertTrue(end[StageTimer.Stage.PACK.ordinal()] > start[StageTimer.Stage.PACK.ordinal()]);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.variant.vcf;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.track.TribbleFeatureSource;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.broad.igv.variant.Genotype;
+import org.broad.tribble.Feature;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GenotypeMatrixTest extends AbstractHeadlessTest {
+
+    private List<Feature> loadFeatures() throws Exception {
+        String filePath = TestUtils.DATA_DIR + "vcf/ex2.vcf";
+        TribbleFeatureSource src = TribbleFeatureSource.getFeatureSource(new ResourceLocator(filePath), genome);
+        List<Feature> features = new ArrayList<Feature>();
+        Iterator<Feature> iter = src.getFeatures("chr20", 0, Integer.MAX_VALUE);
+        while (iter.hasNext()) {
+            features.add(iter.next());
+        }
+        return features;
+    }
+
+    @Test
+    public void testCodes() throws Exception {
+
+        List<Feature> features = loadFeatures();
+        GenotypeMatrix matrix = new GenotypeMatrix(features);
+
+        assertEquals(5, matrix.getVariantCount());
+        assertEquals(Arrays.asList("NA00001", "NA00002", "NA00003"), matrix.getSamples());
+        assertEquals(-1, matrix.getSampleIndex("NA99999"));
+
+        byte[][] expected = {
+                {GenotypeMatrix.HOM_REF, GenotypeMatrix.HET, GenotypeMatrix.NO_CALL},
+                {GenotypeMatrix.HOM_REF, GenotypeMatrix.HET, GenotypeMatrix.HOM_REF},
+                {GenotypeMatrix.HET, GenotypeMatrix.HET, GenotypeMatrix.HOM_VAR},
+                {GenotypeMatrix.HOM_REF, GenotypeMatrix.HOM_REF, GenotypeMatrix.NO_CALL},
+                {GenotypeMatrix.HET, GenotypeMatrix.HET, GenotypeMatrix.HOM_VAR}
+        };
+
+        for (int v = 0; v < features.size(); v++) {
+            VCFVariant variant = (VCFVariant) features.get(v);
+            assertEquals(v, matrix.getVariantIndex(variant));
+            for (String sample : matrix.getSamples()) {
+                int s = matrix.getSampleIndex(sample);
+                assertEquals(expected[v][s], matrix.getCode(v, s));
+
+                // Matrix values should agree with lookup by sample name
+                Genotype genotype = variant.getGenotype(sample);
+                assertEquals(genotype.getType(), matrix.getGenotype(v, s).getType());
+                assertEquals(GenotypeMatrix.toCode(genotype.getType()), matrix.getCode(v, s));
+            }
+        }
+
+        // Zygosity counts are computed without the per-variant genotype map
+        VCFVariant first = (VCFVariant) features.get(0);
+        assertEquals(1, first.getHomRefCount());
+        assertEquals(1, first.getHetCount());
+        assertEquals(0, first.getHomVarCount());
+        assertEquals(1, first.getNoCallCount());
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+
+        GenotypeMatrix matrix = new GenotypeMatrix(loadFeatures());
+
+        assertEquals(48, matrix.getGQ(0, 0));
+        assertEquals(8, matrix.getDP(0, 1));
+        assertEquals(17, matrix.getGQ(4, 1));
+        assertEquals(3, matrix.getDP(4, 2));
+        assertEquals(GenotypeMatrix.MISSING, matrix.getGQ(3, 2));
+        assertEquals(GenotypeMatrix.MISSING, matrix.getDP(3, 2));
+        assertNull(matrix.getAD(0, 0));
+    }
+
+    /**
+     * The matrix should be built from the genotypes decoded by the variants, not parse them again
+     */
+    @Test
+    public void testSharedGenotypes() throws Exception {
+
+        List<Feature> features = loadFeatures();
+        GenotypeMatrix matrix = new GenotypeMatrix(features);
+
+        for (Feature f : features) {
+            assertTrue(((VCFVariant) f).isGenotypesDecoded());
+        }
+
+        VCFVariant first = (VCFVariant) features.get(0);
+        assertEquals(1, first.getHetCount());
+        assertEquals(GenotypeMatrix.HET, GenotypeMatrix.toCode(matrix.getGenotype(0, 1).getType()));
+        assertEquals(48, matrix.getGQ(0, 0));
+        assertEquals(first.getGenotype("NA00002").getType(), matrix.getGenotype(0, 1).getType());
+    }
+
+    @Test
+    public void testNonVariantFeatures() throws Exception {
+        GenotypeMatrix matrix = new GenotypeMatrix(new ArrayList<Feature>());
+        assertEquals(0, matrix.getVariantCount());
+        assertEquals(0, matrix.getSampleCount());
+    }
+}